@@ -0,0 +1,31 @@
+package com.karasov.file_service.config;
+
+import com.karasov.file_service.filter.AccessLogFilter;
+import com.karasov.file_service.service.accesslog.AccessLog;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Регистрирует фильтр журнала доступа первым в цепочке фильтров.
+ */
+@Configuration
+@ConditionalOnProperty(name = "file.accesslog.enabled", havingValue = "true")
+public class AccessLogConfig {
+
+    /**
+     * Создаёт регистрацию фильтра журнала доступа.
+     *
+     * @param accessLog журнал доступа
+     * @return регистрация фильтра
+     */
+    @Bean
+    public FilterRegistrationBean<AccessLogFilter> accessLogFilter(AccessLog accessLog) {
+        FilterRegistrationBean<AccessLogFilter> registration = new FilterRegistrationBean<>(new AccessLogFilter(accessLog));
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,39 @@
+package com.karasov.file_service.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.filter.ConcurrencyLimitFilter;
+import com.karasov.file_service.service.limiter.AdaptiveConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Регистрирует фильтр адаптивного ограничения нагрузки.
+ * Фильтр выполняется после фильтров безопасности, поэтому запросы без авторизации не занимают лимит.
+ */
+@Configuration
+@ConditionalOnProperty(name = "file.limiter.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+    /**
+     * Создаёт регистрацию фильтра ограничения нагрузки.
+     *
+     * @param limiter      адаптивный лимит
+     * @param objectMapper сериализатор тела ответа об отказе
+     * @param retryAfter   значение заголовка Retry-After в секундах
+     * @return регистрация фильтра
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            AdaptiveConcurrencyLimiter limiter,
+            ObjectMapper objectMapper,
+            @Value("${file.limiter.retry-after}") long retryAfter
+    ) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limiter, objectMapper, retryAfter));
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+}
@@ -0,0 +1,147 @@
+package com.karasov.file_service.config;
+
+import com.karasov.file_service.filter.ReplicationWatermarkFilter;
+import com.karasov.file_service.service.replica.ReplicaMonitor;
+import com.karasov.file_service.service.replica.ReplicaRoutingDataSource;
+import com.karasov.file_service.service.replica.ReplicationWatermark;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Маршрутизация читающих транзакций запросов на реплики базы данных.
+ * <p>
+ * Основная база данных настраивается свойствами {@code spring.datasource.*}, реплики — списком адресов
+ * {@code file.replica.urls} с теми же учётными данными. Без этой конфигурации приложение работает
+ * с единственным источником данных, который создаёт Spring Boot.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "file.replica.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    /**
+     * Создаёт пул соединений основной базы данных.
+     *
+     * @param properties свойства источника данных Spring Boot
+     * @return пул соединений основной базы данных
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Создаёт хранилище LSN собственных записей пользователей.
+     *
+     * @return хранилище LSN
+     */
+    @Bean
+    public ReplicationWatermark replicationWatermark() {
+        return new ReplicationWatermark();
+    }
+
+    /**
+     * Создаёт пулы соединений реплик и монитор их отставания.
+     *
+     * @param primaryDataSource основная база данных
+     * @param properties        свойства источника данных Spring Boot
+     * @param watermark         хранилище LSN собственных записей пользователей
+     * @param meterRegistry     реестр метрик
+     * @param urls              адреса реплик
+     * @param poolSize          размер пула соединений каждой реплики
+     * @param connectionTimeout время ожидания соединения с репликой в миллисекундах
+     * @param maxLagBytes       допустимое отставание реплики в байтах журнала
+     * @return монитор реплик
+     */
+    @Bean
+    public ReplicaMonitor replicaMonitor(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            ReplicationWatermark watermark,
+            MeterRegistry meterRegistry,
+            @Value("${file.replica.urls}") List<String> urls,
+            @Value("${file.replica.pool-size}") int poolSize,
+            @Value("${file.replica.connection-timeout}") long connectionTimeout,
+            @Value("${file.replica.max-lag-bytes}") long maxLagBytes
+    ) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls.get(i));
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeout);
+            replica.setReadOnly(true);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaMonitor(primaryDataSource, replicas, watermark, maxLagBytes, meterRegistry);
+    }
+
+    /**
+     * Создаёт источник данных приложения, направляющий читающие транзакции запросов на реплики.
+     *
+     * @param primaryDataSource основная база данных
+     * @param monitor           монитор реплик
+     * @param watermark         хранилище LSN собственных записей пользователей
+     * @return источник данных
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource,
+                                 ReplicaMonitor monitor,
+                                 ReplicationWatermark watermark) {
+        Map<Object, Object> targets = monitor.targetDataSources();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(monitor, watermark);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * Переносит контекст чтения своих записей в потоки асинхронной записи ответа (например, списка файлов).
+     *
+     * @param watermark хранилище LSN собственных записей пользователей
+     * @return декоратор задач исполнителя приложения
+     */
+    @Bean
+    public TaskDecorator replicationWatermarkTaskDecorator(ReplicationWatermark watermark) {
+        return watermark::propagate;
+    }
+
+    /**
+     * Создаёт регистрацию фильтра контекста чтения своих записей.
+     * Фильтр выполняется после фильтров безопасности, чтобы знать пользователя запроса.
+     *
+     * @param watermark хранилище LSN собственных записей пользователей
+     * @return регистрация фильтра
+     */
+    @Bean
+    public FilterRegistrationBean<ReplicationWatermarkFilter> replicationWatermarkFilter(ReplicationWatermark watermark) {
+        FilterRegistrationBean<ReplicationWatermarkFilter> registration =
+                new FilterRegistrationBean<>(new ReplicationWatermarkFilter(watermark));
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE - 2);
+        return registration;
+    }
+}
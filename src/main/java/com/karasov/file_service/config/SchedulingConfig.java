@@ -0,0 +1,12 @@
+package com.karasov.file_service.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает выполнение фоновых задач по расписанию.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,6 +2,7 @@ package com.karasov.file_service.config;
 
 import com.karasov.file_service.filter.JwtAuthenticationFilter;
 import com.karasov.file_service.service.impl.SystemUserDetailService;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -104,6 +105,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(auth -> auth
+                        // Асинхронная и error-диспетчеризация продолжают уже проверенный запрос.
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         .requestMatchers("/login", "/logout").permitAll()
                         .anyRequest().authenticated()
                 )
@@ -0,0 +1,175 @@
+package com.karasov.file_service.config;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileRevisionService;
+import com.karasov.file_service.service.FileService;
+import com.karasov.file_service.service.impl.FileRevisionServiceImpl;
+import com.karasov.file_service.service.impl.FileServiceImpl;
+import com.karasov.file_service.service.shard.ShardRouter;
+import com.karasov.file_service.service.shard.ShardRoutingDataSource;
+import com.karasov.file_service.service.shard.ShardSchemaInitializer;
+import com.karasov.file_service.service.shard.ShardTransfer;
+import com.karasov.file_service.service.shard.ShardedFileRevisionService;
+import com.karasov.file_service.service.shard.ShardedFileService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Распределение файлов по нескольким базам данных (шардам) по согласованному хешу имени файла.
+ * <p>
+ * Шард {@value ShardRouter#DEFAULT_SHARD} - база данных из свойств {@code spring.datasource.*}, остальные
+ * перечисляются в {@code file.shard.urls} и используют те же учётные данные. Без {@code file.shard.enabled}
+ * приложение работает с единственным источником данных, который создаёт Spring Boot, а роутер шардов
+ * ничего не переключает. Шардирование не сочетается с чтением с реплик ({@code file.replica.enabled}).
+ * </p>
+ */
+@Configuration
+public class ShardingConfig {
+
+    private static final String ENABLED = "file.shard.enabled";
+
+    /**
+     * Создаёт роутер шардов и пулы соединений их баз данных.
+     *
+     * @param properties        свойства источника данных Spring Boot
+     * @param enabled           распределять файлы по шардам
+     * @param replicaEnabled    направлять чтение на реплики
+     * @param urls              адреса дополнительных шардов
+     * @param previousCount     количество шардов до добавления новых; 0 - перераспределение не выполняется
+     * @param virtualNodes      количество точек каждого шарда на кольце хеширования
+     * @param poolSize          размер пула соединений каждого шарда
+     * @param connectionTimeout время ожидания соединения с шардом в миллисекундах
+     * @return роутер шардов
+     */
+    @Bean
+    public ShardRouter shardRouter(
+            DataSourceProperties properties,
+            @Value("${" + ENABLED + "}") boolean enabled,
+            @Value("${file.replica.enabled}") boolean replicaEnabled,
+            @Value("${file.shard.urls}") List<String> urls,
+            @Value("${file.shard.previous-count}") int previousCount,
+            @Value("${file.shard.virtual-nodes}") int virtualNodes,
+            @Value("${file.shard.pool-size}") int poolSize,
+            @Value("${file.shard.connection-timeout}") long connectionTimeout
+    ) {
+        if (!enabled) {
+            return ShardRouter.single();
+        }
+        if (replicaEnabled) {
+            throw new IllegalStateException("Шардирование не поддерживает чтение с реплик: "
+                    + "file.shard.enabled и file.replica.enabled не включаются одновременно");
+        }
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        shards.put(ShardRouter.DEFAULT_SHARD, pool(ShardRouter.DEFAULT_SHARD, properties.determineUrl(),
+                properties, poolSize, connectionTimeout));
+        for (int i = 0; i < urls.size(); i++) {
+            String shard = "shard-" + (i + 1);
+            shards.put(shard, pool(shard, urls.get(i), properties, poolSize, connectionTimeout));
+        }
+        return new ShardRouter(shards, previousCount, virtualNodes);
+    }
+
+    /**
+     * Создаёт источник данных приложения, выдающий соединения шарда текущего потока.
+     *
+     * @param shardRouter роутер шардов
+     * @return источник данных
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public DataSource shardRoutingDataSource(ShardRouter shardRouter) {
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(shardRouter);
+        routing.setTargetDataSources(new HashMap<>(shardRouter.dataSources()));
+        routing.setDefaultTargetDataSource(shardRouter.dataSource(ShardRouter.DEFAULT_SHARD));
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * Применяет журнал изменений Liquibase к дополнительным шардам.
+     *
+     * @param shardRouter    роутер шардов
+     * @param resourceLoader загрузчик журнала изменений
+     * @param changeLog      журнал изменений Liquibase
+     * @param defaultSchema  схема базы данных
+     * @return подготовка баз данных шардов
+     */
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public ShardSchemaInitializer shardSchemaInitializer(
+            ShardRouter shardRouter,
+            ResourceLoader resourceLoader,
+            @Value("${spring.liquibase.change-log}") String changeLog,
+            @Value("${spring.liquibase.default-schema}") String defaultSchema
+    ) {
+        return new ShardSchemaInitializer(shardRouter, resourceLoader, changeLog, defaultSchema);
+    }
+
+    /**
+     * Создаёт сервис файлов, выполняющий операции в шарде файла.
+     *
+     * @param fileService    сервис файлов одной базы данных
+     * @param fileRepository репозиторий файлов
+     * @param shardRouter    роутер шардов
+     * @param shardTransfer  перенос файлов между шардами
+     * @param searchMaxLimit максимальный размер страницы результатов поиска
+     * @param folderMaxLimit максимальное количество файлов на странице содержимого папки
+     * @return сервис файлов
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public FileService shardedFileService(FileServiceImpl fileService,
+                                          FileRepository fileRepository,
+                                          ShardRouter shardRouter,
+                                          ShardTransfer shardTransfer,
+                                          @Value("${file.search.max-limit}") int searchMaxLimit,
+                                          @Value("${file.folder.max-limit}") int folderMaxLimit) {
+        return new ShardedFileService(fileService, fileRepository, shardRouter, shardTransfer,
+                searchMaxLimit, folderMaxLimit);
+    }
+
+    /**
+     * Создаёт сервис истории версий, читающий историю из шарда файла.
+     *
+     * @param fileRevisionService сервис истории версий одной базы данных
+     * @param shardRouter         роутер шардов
+     * @return сервис истории версий
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public FileRevisionService shardedFileRevisionService(FileRevisionServiceImpl fileRevisionService,
+                                                          ShardRouter shardRouter) {
+        return new ShardedFileRevisionService(fileRevisionService, shardRouter);
+    }
+
+    private static HikariDataSource pool(String shard,
+                                         String url,
+                                         DataSourceProperties properties,
+                                         int poolSize,
+                                         long connectionTimeout) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(shard);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(properties.determineUsername());
+        dataSource.setPassword(properties.determinePassword());
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setConnectionTimeout(connectionTimeout);
+        return dataSource;
+    }
+}
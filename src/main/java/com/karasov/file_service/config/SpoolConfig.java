@@ -0,0 +1,46 @@
+package com.karasov.file_service.config;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileService;
+import com.karasov.file_service.service.impl.FileServiceImpl;
+import com.karasov.file_service.service.spool.SpoolFlusher;
+import com.karasov.file_service.service.spool.SpooledFileService;
+import com.karasov.file_service.service.spool.UploadSpool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Подтверждение загрузок после записи в локальный спул ({@code file.spool.enabled}); в базу данных файлы
+ * переносятся в фоне пакетами. Спул локален для узла и не сочетается с шардированием ({@code file.shard.enabled}).
+ */
+@Configuration
+@ConditionalOnProperty(name = "file.spool.enabled", havingValue = "true")
+public class SpoolConfig {
+
+    /**
+     * Создаёт сервис файлов, сохраняющий новые файлы через спул.
+     *
+     * @param fileService    сервис файлов, сохраняющий файлы в базу данных
+     * @param fileRepository репозиторий файлов
+     * @param uploadSpool    спул загрузок
+     * @param spoolFlusher   перенос загрузок из спула в базу данных
+     * @param shardEnabled   распределять файлы по шардам
+     * @return сервис файлов
+     */
+    @Bean
+    @Primary
+    public FileService spooledFileService(FileServiceImpl fileService,
+                                          FileRepository fileRepository,
+                                          UploadSpool uploadSpool,
+                                          SpoolFlusher spoolFlusher,
+                                          @Value("${file.shard.enabled}") boolean shardEnabled) {
+        if (shardEnabled) {
+            throw new IllegalStateException("Спул загрузок не поддерживает шардирование: "
+                    + "file.spool.enabled и file.shard.enabled не включаются одновременно");
+        }
+        return new SpooledFileService(fileService, fileRepository, uploadSpool, spoolFlusher);
+    }
+}
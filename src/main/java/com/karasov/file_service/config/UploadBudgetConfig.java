@@ -0,0 +1,44 @@
+package com.karasov.file_service.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.filter.UploadBudgetFilter;
+import com.karasov.file_service.service.limiter.UploadByteBudget;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Регистрирует фильтр бюджета байтов загрузок.
+ * Фильтр выполняется после фильтров безопасности, чтобы бюджет учитывался по пользователям,
+ * и до ограничения параллельных запросов, чтобы ожидающая бюджета загрузка не занимала место в лимите.
+ */
+@Configuration
+@ConditionalOnProperty(name = "file.upload.budget.enabled", havingValue = "true", matchIfMissing = true)
+public class UploadBudgetConfig {
+
+    /**
+     * Создаёт регистрацию фильтра бюджета загрузок.
+     *
+     * @param budget         бюджет байтов загрузок
+     * @param objectMapper   сериализатор тела ответа об отказе
+     * @param retryAfter     значение заголовка Retry-After в секундах
+     * @param bufferedWeight множитель резерва для загрузок, содержимое которых держится в памяти
+     * @return регистрация фильтра
+     */
+    @Bean
+    public FilterRegistrationBean<UploadBudgetFilter> uploadBudgetFilter(
+            UploadByteBudget budget,
+            ObjectMapper objectMapper,
+            @Value("${file.upload.budget.retry-after}") long retryAfter,
+            @Value("${file.upload.budget.buffered-weight}") int bufferedWeight
+    ) {
+        FilterRegistrationBean<UploadBudgetFilter> registration =
+                new FilterRegistrationBean<>(new UploadBudgetFilter(budget, objectMapper, retryAfter, bufferedWeight));
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        return registration;
+    }
+}
@@ -0,0 +1,134 @@
+package com.karasov.file_service.controller;
+
+import com.karasov.file_service.dto.ArchiveUploadResultDto;
+import com.karasov.file_service.handler.exception.FileOperationException;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
+import com.karasov.file_service.handler.exception.InvalidTokenException;
+import com.karasov.file_service.model.ArchiveFormat;
+import com.karasov.file_service.model.FileInfo;
+import com.karasov.file_service.service.FileArchiveService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Контроллер для работы с несколькими файлами одним архивом.
+ */
+@RestController
+@RequiredArgsConstructor
+public class FileArchiveController {
+
+    private static final MediaType APPLICATION_ZIP = MediaType.parseMediaType("application/zip");
+
+    private final FileArchiveService fileArchiveService;
+
+    /**
+     * Скачивание набора файлов одним ZIP-архивом.
+     * <p>
+     * Архив формируется во время передачи ответа, поэтому его размер заранее не известен
+     * и ответ передаётся частями.
+     * </p>
+     *
+     * @param token     Токен авторизации.
+     * @param fileNames Имена файлов, которые требуется скачать.
+     * @param prefix    Префикс имён файлов, которые требуется скачать.
+     * @return Если все перечисленные файлы найдены, возвращается поток с ZIP-архивом,
+     * иначе ошибка 400. В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException     если токен авторизации отсутствует или недействителен.
+     * @throws InvalidInputDataException если не указаны файлы или какой-либо из файлов не найден.
+     * @throws FileOperationException    если не удалось определить состав архива.
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestHeader("auth-token") String token,
+            @RequestParam(value = "filename", required = false) List<String> fileNames,
+            @RequestParam(value = "prefix", defaultValue = "") String prefix
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        List<String> names = fileNames == null ? List.of() : fileNames;
+        if (names.isEmpty() && prefix.isEmpty()) {
+            throw new InvalidInputDataException();
+        }
+
+        Optional<List<FileInfo>> entries;
+        try {
+            entries = fileArchiveService.resolveEntries(names, prefix);
+        } catch (Exception e) {
+            throw new FileOperationException("Error download archive");
+        }
+        if (entries.isEmpty()) {
+            throw new InvalidInputDataException();
+        }
+
+        StreamingResponseBody body = outputStream -> fileArchiveService.writeZip(entries.get(), outputStream);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                .contentType(APPLICATION_ZIP)
+                .body(body);
+    }
+
+    /**
+     * Загрузка архива с распаковкой на сервере.
+     * <p>
+     * Архив передаётся телом запроса без multipart-обёртки (с типом содержимого application/octet-stream,
+     * application/zip, application/x-tar или application/gzip) и распаковывается по мере чтения:
+     * каждая запись сохраняется как отдельный файл с именем {@code prefix + имя записи}.
+     * </p>
+     *
+     * @param token       Токен авторизации.
+     * @param format      Формат архива: zip, tar или tgz.
+     * @param prefix      Префикс, добавляемый к именам файлов.
+     * @param inputStream Содержимое архива.
+     * @return Результат распаковки каждой записи. Если формат не поддерживается или тело запроса
+     * не является архивом, возвращается ошибка 400. В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException     если токен авторизации отсутствует или недействителен.
+     * @throws InvalidInputDataException если формат архива не поддерживается или архив повреждён.
+     * @throws FileOperationException    если распаковка завершилась системной ошибкой.
+     */
+    @PostMapping(value = "/archive", consumes = {
+            MediaType.APPLICATION_OCTET_STREAM_VALUE, "application/zip", "application/x-tar", "application/gzip"
+    })
+    public ResponseEntity<ArchiveUploadResultDto> uploadArchive(
+            @RequestHeader("auth-token") String token,
+            @RequestParam(value = "format", defaultValue = "zip") String format,
+            @RequestParam(value = "prefix", defaultValue = "") String prefix,
+            InputStream inputStream
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        ArchiveFormat archiveFormat;
+        try {
+            archiveFormat = ArchiveFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputDataException();
+        }
+
+        try {
+            return ResponseEntity.ok(fileArchiveService.extractArchive(inputStream, archiveFormat, prefix));
+        } catch (IOException e) {
+            throw new InvalidInputDataException();
+        } catch (Exception e) {
+            throw new FileOperationException("Error upload archive");
+        }
+    }
+}
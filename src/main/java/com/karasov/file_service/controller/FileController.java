@@ -2,12 +2,20 @@ package com.karasov.file_service.controller;
 
 import com.karasov.file_service.dto.ErrorResponseDto;
 import com.karasov.file_service.dto.FileNameEditDto;
+import com.karasov.file_service.dto.FileStatRequestDto;
+import com.karasov.file_service.dto.UploadPrecheckResponseDto;
+import com.karasov.file_service.handler.exception.FileOperationException;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
 import com.karasov.file_service.handler.exception.InvalidTokenException;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
 import com.karasov.file_service.service.FileService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -20,18 +28,32 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
 
 
 /**
  * Контроллер для управления файлами.
- * Обеспечивает функции загрузки, скачивания, удаления, изменения имени файлов, а также получения списка файлов.
+ * Обеспечивает функции загрузки, скачивания, удаления, изменения имени и копирования файлов,
+ * а также получения списка файлов и поиска файлов по имени.
  */
 @RestController
 @RequiredArgsConstructor
 public class FileController {
 
+    private static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-fA-F]{64}");
+
     private final FileService fileService;
 
+    @Value("${file.stat.max-names}")
+    private int statMaxNames;  // Максимальное количество имён в одном запросе метаданных файлов.
+
     /**
      * Скачивание файла с сервера.
      *
@@ -67,19 +89,26 @@ public class FileController {
 
     /**
      * Загрузка нового файла на сервер.
+     * Новый файл передаётся в хранилище потоком из временного файла multipart, не загружаясь в память целиком;
+     * при замене файла содержимое читается в память, чтобы сохранить разницу в истории версий.
      *
-     * @param token    Токен авторизации.
-     * @param fileName Имя загружаемого файла.
-     * @param file     Содержимое загружаемого файла в формате {@link MultipartFile}.
+     * @param token     Токен авторизации.
+     * @param fileName  Имя загружаемого файла.
+     * @param file      Содержимое загружаемого файла в формате {@link MultipartFile}.
+     * @param overwrite Заменить существующий файл с тем же именем; прежнее содержимое сохраняется в истории версий.
+     * @param sha256    Контрольная сумма SHA-256 содержимого; если указана, содержимое сверяется с ней.
      * @return Если файл успешно загружен, возвращается сообщение об успешной загрузке,
-     * иначе ошибка 400. В случае системной ошибки возвращается ошибка 500.
+     * иначе ошибка 400 (в том числе если содержимое не совпадает с контрольной суммой).
+     * В случае системной ошибки возвращается ошибка 500.
      * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
      */
     @PostMapping("/file")
     public ResponseEntity<?> uploadFile(
             @RequestHeader("auth-token") String token,
             @RequestParam("filename") String fileName,
-            @RequestPart("file") MultipartFile file
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(value = "overwrite", defaultValue = "false") boolean overwrite,
+            @RequestParam(value = "sha256", required = false) String sha256
     ) {
 
         if (token == null || token.isEmpty()) {
@@ -87,9 +116,23 @@ public class FileController {
         }
 
         try {
-            return fileService.saveFile(fileName, file.getBytes(), file.getSize()) ?
-                    ResponseEntity.ok("Success upload")
-                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+            if (overwrite) {
+                if (sha256 == null) {
+                    fileService.overwriteFile(fileName, file.getBytes(), file.getSize());
+                } else {
+                    fileService.overwriteFile(fileName, file.getBytes(), file.getSize(), sha256);
+                }
+                return ResponseEntity.ok("Success upload");
+            }
+            try (InputStream content = file.getInputStream()) {
+                boolean saved = sha256 == null ? fileService.saveFile(fileName, content, file.getSize())
+                        : fileService.saveFile(fileName, content, file.getSize(), sha256);
+                return saved ? ResponseEntity.ok("Success upload")
+                        : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new ErrorResponseDto("Error input data", 400));
+            }
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new ErrorResponseDto("Error input data", 400));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -97,6 +140,52 @@ public class FileController {
         }
     }
 
+    /**
+     * Предварительная проверка загрузки по контрольной сумме.
+     * <p>
+     * Если сервер уже хранит содержимое с такими размером и контрольной суммой, файл создаётся из него
+     * без передачи тела, иначе клиент должен загрузить файл через {@code POST /file}, передав ту же
+     * контрольную сумму в параметре {@code sha256}.
+     * </p>
+     *
+     * @param token    Токен авторизации.
+     * @param fileName Имя создаваемого файла.
+     * @param size     Размер содержимого в байтах.
+     * @param sha256   Контрольная сумма SHA-256 содержимого в шестнадцатеричном виде.
+     * @return Имя файла и признак того, что файл нужно загрузить. Если файл с таким именем уже существует
+     * или параметры некорректны, возвращается ошибка 400. В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @PostMapping("/file/precheck")
+    public ResponseEntity<?> precheckUpload(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("filename") String fileName,
+            @RequestParam("size") long size,
+            @RequestParam("sha256") String sha256
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        if (size < 0 || !SHA256_PATTERN.matcher(sha256).matches()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        }
+
+        try {
+            return switch (fileService.precheckUpload(fileName, size, sha256)) {
+                case CREATED -> ResponseEntity.ok(new UploadPrecheckResponseDto(fileName, false));
+                case UPLOAD_REQUIRED -> ResponseEntity.ok(new UploadPrecheckResponseDto(fileName, true));
+                case FILE_EXISTS -> ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new ErrorResponseDto("Error input data", 400));
+            };
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error precheck upload", 500));
+        }
+    }
+
     /**
      * Удаление файла с сервера.
      *
@@ -162,16 +251,56 @@ public class FileController {
     }
 
     /**
-     * Получение списка файлов с сервера.
+     * Копирование файла на сервере.
      *
-     * @param token Токен авторизации.
-     * @param limit Максимальное количество файлов в списке.
-     * @return Список файлов в формате JSON. В случае системной ошибки возвращается ошибка 500.
+     * @param token           Токен авторизации.
+     * @param sourceFileName  Имя исходного файла.
+     * @param fileNameEditDto DTO с именем копии.
+     * @return Если файл успешно скопирован, возвращается сообщение об успешном копировании,
+     * иначе ошибка 400. В случае системной ошибки возвращается ошибка 500.
      * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
      */
+    @PostMapping("/file/copy")
+    public ResponseEntity<?> copyFile(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("filename") String sourceFileName,
+            @RequestBody FileNameEditDto fileNameEditDto
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        try {
+            return fileService.copyFile(sourceFileName, fileNameEditDto.filename()) ?
+                    ResponseEntity.ok("Success copied")
+                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error copy file", 500));
+        }
+    }
+
+    /**
+     * Получение списка файлов с сервера.
+     * <p>
+     * Формат ответа выбирается по заголовку Accept: JSON (по умолчанию), CBOR ({@code application/cbor})
+     * или Smile ({@code application/x-jackson-smile}). Список передаётся частями по мере чтения из базы данных,
+     * поэтому его размер заранее не известен.
+     * </p>
+     *
+     * @param token  Токен авторизации.
+     * @param accept Заголовок Accept.
+     * @param limit  Максимальное количество файлов в списке.
+     * @return Список файлов, упорядоченный по имени. В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException  если токен авторизации отсутствует или недействителен.
+     * @throws FileOperationException если не удалось получить список файлов.
+     */
     @GetMapping("/list")
-    public ResponseEntity<?> getListOfFiles(
+    public ResponseEntity<StreamingResponseBody> getListOfFiles(
             @RequestHeader("auth-token") String token,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
             @RequestParam("limit") int limit
     ) {
 
@@ -179,11 +308,133 @@ public class FileController {
             throw new InvalidTokenException();
         }
 
+        ListingFormat format = negotiateListingFormat(accept);
+        StreamingResponseBody body = outputStream -> {
+            try {
+                fileService.writeFileList(limit, format, outputStream);
+            } catch (RuntimeException e) {
+                throw new FileOperationException("Error getting file list");
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(switch (format) {
+                    case JSON -> MediaType.APPLICATION_JSON;
+                    case CBOR -> MediaType.APPLICATION_CBOR;
+                    case SMILE -> APPLICATION_SMILE;
+                })
+                .body(body);
+    }
+
+    /**
+     * Получение метаданных набора файлов по именам.
+     * <p>
+     * Для каждого имени из запроса возвращаются размер, контрольная сумма SHA-256 и время создания и изменения
+     * файла либо признак отсутствия файла; содержимое файлов не читается. Ответ передаётся частями
+     * по мере чтения метаданных из базы данных, в порядке имён в запросе.
+     * </p>
+     *
+     * @param token   Токен авторизации.
+     * @param request DTO со списком имён файлов (не больше {@code file.stat.max-names}).
+     * @return Массив метаданных файлов в формате JSON. При некорректном списке имён возвращается ошибка 400.
+     * В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException     если токен авторизации отсутствует или недействителен.
+     * @throws InvalidInputDataException если список имён пуст, слишком велик или содержит пустые значения.
+     * @throws FileOperationException    если не удалось получить метаданные файлов.
+     */
+    @PostMapping("/file/stat")
+    public ResponseEntity<StreamingResponseBody> statFiles(
+            @RequestHeader("auth-token") String token,
+            @RequestBody FileStatRequestDto request
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        List<String> fileNames = request.filenames();
+        if (fileNames == null || fileNames.isEmpty() || fileNames.size() > statMaxNames
+                || fileNames.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidInputDataException();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                fileService.writeFileStats(fileNames, outputStream);
+            } catch (RuntimeException e) {
+                throw new FileOperationException("Error getting file stats");
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Поиск файлов по фрагменту имени.
+     *
+     * @param token Токен авторизации.
+     * @param query Строка поиска.
+     * @param mode  Режим поиска: substring, prefix или glob.
+     * @param after Имя последнего файла предыдущей страницы (для получения следующей страницы).
+     * @param limit Максимальное количество файлов на странице.
+     * @return Список найденных файлов в формате JSON. При некорректных параметрах возвращается ошибка 400.
+     * В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchFiles(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("query") String query,
+            @RequestParam(value = "mode", defaultValue = "substring") String mode,
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        SearchMode searchMode;
+        try {
+            searchMode = SearchMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            searchMode = null;
+        }
+        if (searchMode == null || query.isEmpty() || limit <= 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        }
+
         try {
-            return ResponseEntity.ok(fileService.getFileList(limit));
+            return ResponseEntity.ok(fileService.searchFiles(query, searchMode, after, limit));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new ErrorResponseDto("Error getting file list", 500));
+                    .body(new ErrorResponseDto("Error search files", 500));
+        }
+    }
+
+    private static ListingFormat negotiateListingFormat(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return ListingFormat.JSON;
+        }
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                if (mediaType.getQualityValue() == 0) {
+                    continue;
+                }
+                if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                    return ListingFormat.CBOR;
+                }
+                if (mediaType.equalsTypeAndSubtype(APPLICATION_SMILE)) {
+                    return ListingFormat.SMILE;
+                }
+                if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                    return ListingFormat.JSON;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return ListingFormat.JSON;
         }
+        return ListingFormat.JSON;
     }
-}
\ No newline at end of file
+}
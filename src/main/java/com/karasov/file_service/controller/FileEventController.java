@@ -0,0 +1,51 @@
+package com.karasov.file_service.controller;
+
+import com.karasov.file_service.handler.exception.InvalidTokenException;
+import com.karasov.file_service.service.FileEventService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Контроллер ленты изменений файлов.
+ */
+@RestController
+@RequiredArgsConstructor
+public class FileEventController {
+
+    private final FileEventService fileEventService;
+
+    /**
+     * Подписка на изменения файлов.
+     * <p>
+     * Ответ передаётся в формате Server-Sent Events. Событие {@code change} содержит номер, тип изменения
+     * (CREATED, UPDATED, DELETED, RENAMED, FOLDER_RENAMED), имя файла и новое имя при переименовании
+     * (для FOLDER_RENAMED - прежний и новый путь папки, все файлы которой переименованы). При переподключении
+     * клиент передаёт идентификатор последнего полученного события в заголовке {@code Last-Event-ID}
+     * и получает пропущенные события; если их восстановить нельзя, первым приходит событие {@code reset},
+     * после которого клиенту следует заново запросить список файлов. События всех узлов приложения передаются
+     * через общий журнал в базе данных с едиными номерами, поэтому клиент может переподключиться к любому узлу;
+     * изменения, сделанные на других узлах, приходят с задержкой до {@code file.events.poll-interval}.
+     * </p>
+     *
+     * @param token       Токен авторизации.
+     * @param lastEventId Идентификатор последнего полученного события.
+     * @return Поток событий изменения файлов.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @GetMapping(value = "/file/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(
+            @RequestHeader("auth-token") String token,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        return fileEventService.subscribe(lastEventId);
+    }
+}
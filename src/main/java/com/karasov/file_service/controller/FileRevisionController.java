@@ -0,0 +1,94 @@
+package com.karasov.file_service.controller;
+
+import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.dto.FileRevisionDto;
+import com.karasov.file_service.handler.exception.InvalidTokenException;
+import com.karasov.file_service.service.FileRevisionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Контроллер для работы с историей версий файлов.
+ */
+@RestController
+@RequiredArgsConstructor
+public class FileRevisionController {
+
+    private final FileRevisionService fileRevisionService;
+
+    /**
+     * Получение списка версий файла.
+     *
+     * @param token    Токен авторизации.
+     * @param fileName Имя файла.
+     * @return Список версий файла в формате JSON, начиная с текущей. Если файл не найден, возвращается ошибка 400.
+     * В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @GetMapping("/file/revisions")
+    public ResponseEntity<?> getRevisions(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("filename") String fileName
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        try {
+            Optional<List<FileRevisionDto>> revisions = fileRevisionService.getRevisions(fileName);
+            return revisions.isPresent() ? ResponseEntity.ok(revisions.get())
+                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error getting revisions", 500));
+        }
+    }
+
+    /**
+     * Скачивание версии файла.
+     *
+     * @param token    Токен авторизации.
+     * @param fileName Имя файла.
+     * @param revision Номер версии.
+     * @return Если версия найдена, возвращается поток данных с содержимым версии,
+     * иначе возвращается ошибка 400. В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @GetMapping("/file/revision")
+    public ResponseEntity<?> downloadRevision(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("filename") String fileName,
+            @RequestParam("revision") int revision
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        try {
+            Optional<InputStreamResource> resource = fileRevisionService.getRevision(fileName, revision);
+            return resource.isPresent() ? ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(resource.get())
+                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error download revision", 500));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.karasov.file_service.controller;
+
+import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.dto.FolderPathEditDto;
+import com.karasov.file_service.handler.exception.InvalidTokenException;
+import com.karasov.file_service.service.FileService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Optional;
+
+/**
+ * Контроллер для работы с папками.
+ * Папкой файла считается часть его имени до последней косой черты; путь корневой папки - пустая строка.
+ */
+@RestController
+@RequiredArgsConstructor
+public class FolderController {
+
+    private static final int MAX_PATH_LENGTH = 255;
+
+    private final FileService fileService;
+
+    /**
+     * Получение содержимого папки.
+     *
+     * @param token Токен авторизации.
+     * @param path  Путь папки (пустая строка - корень).
+     * @param after Имя последнего файла предыдущей страницы (для получения следующей страницы).
+     * @param limit Максимальное количество файлов на странице.
+     * @return Суммарный размер и количество файлов папки, вложенные папки и страница файлов папки в формате JSON.
+     * Если папка не найдена или параметры некорректны, возвращается ошибка 400.
+     * В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @GetMapping("/folder")
+    public ResponseEntity<?> listFolder(
+            @RequestHeader("auth-token") String token,
+            @RequestParam(value = "path", defaultValue = "") String path,
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        if (!(path.isEmpty() || isValidPath(path)) || limit <= 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        }
+
+        try {
+            Optional<FolderListingResponseDto> listing = fileService.listFolder(path, after, limit);
+            return listing.isPresent() ? ResponseEntity.ok(listing.get())
+                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error getting folder", 500));
+        }
+    }
+
+    /**
+     * Переименование или перемещение папки вместе со всеми вложенными файлами и папками.
+     *
+     * @param token             Токен авторизации.
+     * @param path              Путь папки.
+     * @param folderPathEditDto DTO с новым путём папки.
+     * @return Если папка успешно переименована, возвращается сообщение об успешном изменении, иначе ошибка 400
+     * (папка не найдена, папка с новым путём уже существует или новый путь находится внутри папки).
+     * В случае системной ошибки возвращается ошибка 500.
+     * @throws InvalidTokenException если токен авторизации отсутствует или недействителен.
+     */
+    @PutMapping("/folder")
+    public ResponseEntity<?> moveFolder(
+            @RequestHeader("auth-token") String token,
+            @RequestParam("path") String path,
+            @RequestBody FolderPathEditDto folderPathEditDto
+    ) {
+
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException();
+        }
+
+        if (!isValidPath(path) || !isValidPath(folderPathEditDto.path())) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        }
+
+        try {
+            return fileService.moveFolder(path, folderPathEditDto.path()) ?
+                    ResponseEntity.ok("Success edited")
+                    : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponseDto("Error input data", 400));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponseDto("Error edit folder", 500));
+        }
+    }
+
+    /**
+     * Путь некорневой папки: непустые части, разделённые одной косой чертой.
+     */
+    private static boolean isValidPath(String path) {
+        return path != null && !path.isEmpty() && path.length() < MAX_PATH_LENGTH
+                && !path.startsWith("/") && !path.endsWith("/") && !path.contains("//");
+    }
+}
@@ -0,0 +1,10 @@
+package com.karasov.file_service.dto;
+
+import com.karasov.file_service.model.ArchiveEntryStatus;
+
+public record ArchiveEntryResultDto(
+        String filename,
+        long size,
+        ArchiveEntryStatus status
+) {
+}
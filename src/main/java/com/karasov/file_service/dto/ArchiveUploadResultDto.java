@@ -0,0 +1,11 @@
+package com.karasov.file_service.dto;
+
+import java.util.List;
+
+public record ArchiveUploadResultDto(
+        int created,
+        int skipped,
+        int failed,
+        List<ArchiveEntryResultDto> entries
+) {
+}
@@ -0,0 +1,14 @@
+package com.karasov.file_service.dto;
+
+import com.karasov.file_service.model.FileChangeType;
+
+import java.time.Instant;
+
+public record FileChangeEventDto(
+        long sequence,
+        FileChangeType type,
+        String filename,
+        String newFilename,
+        Instant time
+) {
+}
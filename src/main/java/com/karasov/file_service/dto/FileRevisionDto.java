@@ -0,0 +1,11 @@
+package com.karasov.file_service.dto;
+
+import java.time.Instant;
+
+public record FileRevisionDto(
+        int revision,
+        long size,
+        boolean current,
+        Instant archivedAt
+) {
+}
@@ -0,0 +1,8 @@
+package com.karasov.file_service.dto;
+
+import java.util.List;
+
+public record FileStatRequestDto(
+        List<String> filenames
+) {
+}
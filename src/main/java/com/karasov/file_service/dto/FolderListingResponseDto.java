@@ -0,0 +1,12 @@
+package com.karasov.file_service.dto;
+
+import java.util.List;
+
+public record FolderListingResponseDto(
+        String path,
+        long size,
+        long fileCount,
+        List<FolderResponseDto> folders,
+        List<FileResponseDto> files
+) {
+}
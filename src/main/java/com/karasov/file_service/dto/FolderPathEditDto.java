@@ -0,0 +1,6 @@
+package com.karasov.file_service.dto;
+
+public record FolderPathEditDto(
+        String path
+) {
+}
@@ -0,0 +1,8 @@
+package com.karasov.file_service.dto;
+
+public record FolderResponseDto(
+        String path,
+        long size,
+        long fileCount
+) {
+}
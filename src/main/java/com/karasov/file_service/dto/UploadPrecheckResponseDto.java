@@ -0,0 +1,7 @@
+package com.karasov.file_service.dto;
+
+public record UploadPrecheckResponseDto(
+        String filename,
+        boolean uploadRequired
+) {
+}
@@ -0,0 +1,96 @@
+package com.karasov.file_service.filter;
+
+import com.karasov.file_service.service.accesslog.AccessLog;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фильтр, передающий в журнал доступа ({@link AccessLog}) метод, путь, статус и время обработки каждого запроса.
+ * <p>
+ * Выполняется первым, поэтому время включает проверку авторизации и ограничения нагрузки. Запросы
+ * с асинхронно записываемым ответом попадают в журнал после завершения записи. Имя пользователя передаёт
+ * {@link JwtAuthenticationFilter} в атрибуте запроса {@link #USER_ATTRIBUTE}.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    /**
+     * Атрибут запроса с именем аутентифицированного пользователя.
+     */
+    public static final String USER_ATTRIBUTE = AccessLogFilter.class.getName() + ".user";
+
+    private final AccessLog accessLog;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        Completion completion = new Completion(request, response);
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            completion.run(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(completion);
+        } else {
+            completion.run(response.getStatus());
+        }
+    }
+
+    /**
+     * Запись события в журнал: выполняется один раз, после синхронного или асинхронного завершения запроса.
+     */
+    private final class Completion implements AsyncListener {
+        private final long start = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private Completion(HttpServletRequest request, HttpServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        private void run(int status) {
+            if (recorded.compareAndSet(false, true)) {
+                accessLog.record(start, request.getMethod(), request.getRequestURI(), status,
+                        (System.nanoTime() - startNanos) / 1000, (String) request.getAttribute(USER_ATTRIBUTE),
+                        request.getRemoteAddr());
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run(response.getStatus());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.karasov.file_service.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.model.RequestPriority;
+import com.karasov.file_service.service.limiter.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фильтр, ограничивающий количество одновременно выполняемых запросов к файлам.
+ * <p>
+ * Запрос, для которого нет места в лимите {@link AdaptiveConcurrencyLimiter}, сразу отклоняется со статусом 503
+ * и заголовком {@code Retry-After}, не дожидаясь соединения с базой данных. Запросы с асинхронно записываемым
+ * ответом занимают место до завершения записи. Вход, выход, лента изменений и служебные эндпоинты
+ * не ограничиваются.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ObjectMapper objectMapper;
+    private final long retryAfter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        RequestPriority priority = classify(request);
+        if (priority == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        OptionalLong start = limiter.tryAcquire(priority);
+        if (start.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new ErrorResponseDto("Service overloaded", 503));
+            return;
+        }
+
+        Release release = new Release(priority, start.getAsLong(), response);
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            release.run(true);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(release);
+        } else {
+            release.run(false);
+        }
+    }
+
+    /**
+     * Определяет приоритет запроса по пути и методу.
+     *
+     * @param request запрос
+     * @return приоритет запроса или null, если запрос не ограничивается
+     */
+    static RequestPriority classify(HttpServletRequest request) {
+        String path = request.getServletPath();
+        String method = request.getMethod();
+        if (path.equals("/login") || path.equals("/logout") || path.equals("/file/events")
+                || path.startsWith("/actuator")) {
+            return null;
+        }
+        if (path.equals("/archive") || path.equals("/file/revision") || path.equals("/file/stat")) {
+            return RequestPriority.BULK;
+        }
+        if (path.equals("/file") && (method.equals("GET") || method.equals("POST"))) {
+            return RequestPriority.BULK;
+        }
+        return RequestPriority.METADATA;
+    }
+
+    /**
+     * Освобождение места запроса: выполняется один раз, после синхронного или асинхронного завершения.
+     */
+    @RequiredArgsConstructor
+    private final class Release implements AsyncListener {
+        private final RequestPriority priority;
+        private final long start;
+        private final HttpServletResponse response;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private void run(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(priority, start, failed || response.getStatus() >= 500);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run(false);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.karasov.file_service.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ответ, подсчитывающий байты, записанные в тело.
+ */
+class CountingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final AtomicLong written = new AtomicLong();
+    private ServletOutputStream outputStream;
+
+    CountingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * @return количество байт, записанных в тело ответа
+     */
+    long getWritten() {
+        return written.get();
+    }
+
+    @Override
+    public synchronized ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            ServletOutputStream delegate = super.getOutputStream();
+            outputStream = new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return delegate.isReady();
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    delegate.setWriteListener(writeListener);
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    delegate.write(b);
+                    written.incrementAndGet();
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    delegate.write(b, off, len);
+                    written.addAndGet(len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    delegate.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    delegate.close();
+                }
+            };
+        }
+        return outputStream;
+    }
+}
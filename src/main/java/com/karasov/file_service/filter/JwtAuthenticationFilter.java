@@ -1,12 +1,22 @@
 package com.karasov.file_service.filter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.model.EndpointClass;
+import com.karasov.file_service.model.RequestPriority;
 import com.karasov.file_service.service.impl.JwtService;
+import com.karasov.file_service.service.limiter.UserRateLimiter;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -15,9 +25,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Фильтр для обработки аутентификации с использованием JWT
+ * и ограничения частоты запросов пользователя ({@link UserRateLimiter}).
  */
 @Slf4j
 @Component
@@ -26,6 +38,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final UserRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
 
     /**
      * Метод, выполняющий фильтрацию запроса на основе JWT.
@@ -35,6 +49,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
      * 3. Если токен отсутствует или невалиден, устанавливает статус 401 (Unauthorized) и завершает обработку.
      * 4. Если токен валиден, извлекает имя пользователя, загружает его детали с помощью {@link UserDetailsService},
      * и устанавливает аутентификацию в {@link SecurityContextHolder}.
+     * 5. Если пользователь превысил частоту запросов класса эндпоинта ({@link EndpointClass}), устанавливает
+     * статус 429 (Too Many Requests) с заголовком {@code Retry-After} и завершает обработку. Допущенные запросы
+     * получают заголовки {@code RateLimit-Limit}, {@code RateLimit-Remaining} и {@code RateLimit-Reset}.
+     * Скачивание оплачивает записанные байты после ответа, загрузка - объявленный размер заранее; стоимость
+     * отклонённой загрузки возвращается.
      * </p>
      *
      * @param request     объект запроса, содержащий информацию о текущем запросе.
@@ -69,10 +88,133 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 SecurityContextHolder.getContext().setAuthentication(authentication);
-                log.info("Аутентификация установлена для пользователя: {}", username);
+                log.debug("Аутентификация установлена для пользователя: {}", username);
             }
         }
-        filterChain.doFilter(request, response);
+
+        if (username != null) {
+            request.setAttribute(AccessLogFilter.USER_ATTRIBUTE, username);
+        }
+
+        EndpointClass endpoint = username == null ? null : classify(request);
+        if (endpoint == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long cost = endpoint.getPriority() == RequestPriority.METADATA ? 1
+                : endpoint == EndpointClass.DOWNLOAD ? 0 : Math.max(0, request.getContentLengthLong());
+        UserRateLimiter.Decision decision = rateLimiter.tryAcquire(username, endpoint, cost);
+        if (!decision.unlimited()) {
+            response.setHeader("RateLimit-Limit", Long.toString(decision.limit()));
+            response.setHeader("RateLimit-Remaining", Long.toString(decision.remaining()));
+            response.setHeader("RateLimit-Reset", Long.toString(decision.reset()));
+        }
+        if (!decision.allowed()) {
+            log.warn("Превышена частота запросов пользователем: {}", username);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfter()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                    new ErrorResponseDto("Too many requests", HttpStatus.TOO_MANY_REQUESTS.value()));
+            return;
+        }
+        if (decision.unlimited() || endpoint != EndpointClass.DOWNLOAD && endpoint != EndpointClass.UPLOAD) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        CountingResponseWrapper counting = new CountingResponseWrapper(response);
+        Settlement settlement = new Settlement(username, endpoint, cost, counting);
+        try {
+            filterChain.doFilter(request, counting);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(settlement);
+            } else {
+                settlement.run();
+            }
+        }
+    }
+
+    /**
+     * Определяет класс эндпоинта запроса для ограничения частоты.
+     *
+     * @param request запрос
+     * @return класс эндпоинта или null, если частота запроса не ограничивается
+     */
+    static EndpointClass classify(HttpServletRequest request) {
+        if (ConcurrencyLimitFilter.classify(request) == null) {
+            return null;
+        }
+        String path = request.getServletPath();
+        String method = request.getMethod();
+        if (path.equals("/file/stat")) {
+            return EndpointClass.STAT;
+        }
+        if (path.equals("/file") || path.equals("/archive")) {
+            if (method.equals("GET")) {
+                return EndpointClass.DOWNLOAD;
+            }
+            if (method.equals("POST")) {
+                return EndpointClass.UPLOAD;
+            }
+        }
+        if (path.equals("/file/revision")) {
+            return EndpointClass.DOWNLOAD;
+        }
+        if (path.equals("/search")) {
+            return EndpointClass.SEARCH;
+        }
+        if (method.equals("GET")) {
+            return EndpointClass.LIST;
+        }
+        return EndpointClass.MODIFY;
+    }
+
+    /**
+     * Расчёт за передачу содержимого: выполняется один раз, после синхронного или асинхронного завершения.
+     * Скачивание оплачивает записанные в ответ байты, отклонённая загрузка (статус 4xx или 5xx, например,
+     * 503 при исчерпании бюджета загрузок) получает обратно стоимость, списанную заранее.
+     */
+    @RequiredArgsConstructor
+    private final class Settlement implements AsyncListener {
+        private final String username;
+        private final EndpointClass endpoint;
+        private final long prepaid;
+        private final CountingResponseWrapper response;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private void run() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (endpoint == EndpointClass.DOWNLOAD) {
+                rateLimiter.charge(username, endpoint, response.getWritten());
+            } else if (response.getStatus() >= 400) {
+                rateLimiter.refund(username, endpoint, prepaid);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
     }
 }
 
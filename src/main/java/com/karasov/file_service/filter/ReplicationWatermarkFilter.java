@@ -0,0 +1,52 @@
+package com.karasov.file_service.filter;
+
+import com.karasov.file_service.service.replica.ReplicationWatermark;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Фильтр, устанавливающий контекст чтения своих записей на время запроса.
+ * <p>
+ * Клиент может передать в заголовке {@value #HEADER} LSN, полученный в ответе на свою запись, в том числе
+ * от другого экземпляра приложения: чтения запроса пойдут только на реплики, воспроизведшие этот LSN.
+ * Ответ на запрос, зафиксировавший запись, содержит этот заголовок с LSN основной базы после фиксации.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class ReplicationWatermarkFilter extends OncePerRequestFilter {
+
+    /**
+     * Заголовок с LSN записи клиента.
+     */
+    public static final String HEADER = "X-Replication-LSN";
+
+    private final ReplicationWatermark watermark;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        watermark.begin(authentication == null ? null : authentication.getName(),
+                ReplicationWatermark.parseLsn(request.getHeader(HEADER)),
+                lsn -> {
+                    if (!response.isCommitted()) {
+                        response.setHeader(HEADER, ReplicationWatermark.formatLsn(lsn));
+                    }
+                });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            watermark.end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.karasov.file_service.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.service.limiter.UploadByteBudget;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Фильтр допуска загрузок по бюджету байтов {@link UploadByteBudget}.
+ * <p>
+ * Решение принимается по заголовку {@code Content-Length} до чтения тела запроса и до разбора multipart:
+ * загрузка без заголовка отклоняется со статусом 411, загрузка, которая никогда не поместится в бюджет, -
+ * со статусом 413, а загрузка, не дождавшаяся бюджета, - со статусом 503 и заголовком {@code Retry-After}.
+ * Ограничиваются загрузка файла и загрузка архива.
+ * </p>
+ * <p>
+ * Новые файлы и архивы передаются в хранилище потоком, и бюджет для них ограничивает прежде всего временный диск.
+ * Замена файла ({@code overwrite=true}) держит в памяти несколько копий содержимого (загруженное содержимое,
+ * прежнюю версию и копии при записи), поэтому такая загрузка резервирует в {@code bufferedWeight} раз больше
+ * объявленного размера.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class UploadBudgetFilter extends OncePerRequestFilter {
+
+    private final UploadByteBudget budget;
+    private final ObjectMapper objectMapper;
+    private final long retryAfter;
+    private final int bufferedWeight;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String path = request.getServletPath();
+        if (!request.getMethod().equals("POST") || !(path.equals("/file") || path.equals("/archive"))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long declared = request.getContentLengthLong();
+        if (declared < 0) {
+            reject(response, HttpServletResponse.SC_LENGTH_REQUIRED, "Content-Length required");
+            return;
+        }
+        long length = isBuffered(request) ? declared * bufferedWeight : declared;
+        if (!budget.accepts(length)) {
+            reject(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Upload too large");
+            return;
+        }
+
+        String user = user(request);
+        boolean reserved;
+        try {
+            reserved = budget.reserve(user, length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reserved = false;
+        }
+        if (!reserved) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Upload budget exhausted");
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            budget.release(user, length);
+        }
+    }
+
+    /**
+     * Проверяет, заменяет ли загрузка существующий файл. Параметр читается из строки запроса,
+     * потому что {@code getParameter} разобрал бы тело multipart-запроса.
+     */
+    private static boolean isBuffered(HttpServletRequest request) {
+        String query = request.getQueryString();
+        if (query == null) {
+            return false;
+        }
+        String overwrite = UriComponentsBuilder.newInstance().query(query).build().getQueryParams()
+                .getFirst("overwrite");
+        return Boolean.parseBoolean(overwrite);
+    }
+
+    private static String user(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponseDto(message, status));
+    }
+}
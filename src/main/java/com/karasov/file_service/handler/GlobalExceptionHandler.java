@@ -1,6 +1,8 @@
 package com.karasov.file_service.handler;
 
 import com.karasov.file_service.dto.ErrorResponseDto;
+import com.karasov.file_service.handler.exception.FileOperationException;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
 import com.karasov.file_service.handler.exception.InvalidTokenException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -14,4 +16,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(new ErrorResponseDto("Unauthorized error", 401));
     }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponseDto> handleInvalidInputDataException(InvalidInputDataException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new ErrorResponseDto("Error input data", 400));
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponseDto> handleFileOperationException(FileOperationException ex) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ErrorResponseDto(ex.getMessage(), 500));
+    }
 }
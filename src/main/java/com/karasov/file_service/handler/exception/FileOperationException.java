@@ -0,0 +1,7 @@
+package com.karasov.file_service.handler.exception;
+
+public class FileOperationException extends RuntimeException {
+    public FileOperationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,6 @@
+package com.karasov.file_service.handler.exception;
+
+public class InvalidInputDataException extends RuntimeException {
+    public InvalidInputDataException() {
+    }
+}
@@ -1,18 +1,30 @@
 package com.karasov.file_service.mapper;
 
 import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.model.FileContent;
 import com.karasov.file_service.model.FileEntity;
+import com.karasov.file_service.model.FileInfo;
 
 public class FileEntityMapper {
-    public static FileEntity mapToFileEntity(String fileName, byte[] bytes, long size) {
+    public static FileEntity mapToFileEntity(String fileName, long size) {
         FileEntity fileEntity = new FileEntity();
         fileEntity.setName(fileName);
-        fileEntity.setBytes(bytes);
         fileEntity.setSize(size);
         return fileEntity;
     }
 
+    public static FileContent mapToFileContent(String fileName, byte[] bytes) {
+        FileContent fileContent = new FileContent();
+        fileContent.setName(fileName);
+        fileContent.setBytes(bytes);
+        return fileContent;
+    }
+
     public static FileResponseDto mapFileEntityToFileResponseDto(FileEntity fileEntity) {
         return new FileResponseDto(fileEntity.getName(), fileEntity.getSize());
     }
+
+    public static FileResponseDto mapFileInfoToFileResponseDto(FileInfo fileInfo) {
+        return new FileResponseDto(fileInfo.getName(), fileInfo.getSize());
+    }
 }
@@ -0,0 +1,23 @@
+package com.karasov.file_service.model;
+
+/**
+ * Результат распаковки одной записи архива.
+ */
+public enum ArchiveEntryStatus {
+    /**
+     * Файл создан.
+     */
+    CREATED,
+    /**
+     * Файл с таким именем уже существует, запись пропущена.
+     */
+    ALREADY_EXISTS,
+    /**
+     * Запись отклонена: недопустимое имя или превышен размер записи.
+     */
+    REJECTED,
+    /**
+     * Запись не сохранена из-за ошибки или превышения ограничений архива.
+     */
+    FAILED
+}
@@ -0,0 +1,13 @@
+package com.karasov.file_service.model;
+
+/**
+ * Формат загружаемого архива.
+ */
+public enum ArchiveFormat {
+    ZIP,
+    TAR,
+    /**
+     * TAR, сжатый gzip.
+     */
+    TGZ
+}
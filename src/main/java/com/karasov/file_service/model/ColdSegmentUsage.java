@@ -0,0 +1,11 @@
+package com.karasov.file_service.model;
+
+/**
+ * Проекция занятого места в сегменте холодного хранилища.
+ * Копии файла ссылаются на одно и то же сжатое содержимое, поэтому оно учитывается один раз.
+ */
+public interface ColdSegmentUsage {
+    Integer getSegment();
+
+    Long getLiveBytes();
+}
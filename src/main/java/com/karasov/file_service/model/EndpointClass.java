@@ -0,0 +1,40 @@
+package com.karasov.file_service.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Класс эндпоинтов при ограничении частоты запросов пользователя: у каждого класса собственная корзина и лимит.
+ * Запросы классов с приоритетом {@link RequestPriority#METADATA} стоят один запрос, с приоритетом
+ * {@link RequestPriority#BULK} - количество переданных байт.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum EndpointClass {
+    /**
+     * Список файлов, содержимое папки и список версий файла.
+     */
+    LIST(RequestPriority.METADATA),
+    /**
+     * Поиск файлов.
+     */
+    SEARCH(RequestPriority.METADATA),
+    /**
+     * Удаление, переименование и копирование файлов, переименование папок и проверка перед загрузкой.
+     */
+    MODIFY(RequestPriority.METADATA),
+    /**
+     * Пакетный запрос метаданных файлов.
+     */
+    STAT(RequestPriority.BULK),
+    /**
+     * Загрузка файлов и архивов.
+     */
+    UPLOAD(RequestPriority.BULK),
+    /**
+     * Скачивание файлов, архивов и версий.
+     */
+    DOWNLOAD(RequestPriority.BULK);
+
+    private final RequestPriority priority;
+}
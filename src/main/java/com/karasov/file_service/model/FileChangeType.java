@@ -0,0 +1,27 @@
+package com.karasov.file_service.model;
+
+/**
+ * Тип изменения в пространстве имён файлов.
+ */
+public enum FileChangeType {
+    /**
+     * Файл создан: загружен, распакован из архива или скопирован.
+     */
+    CREATED,
+    /**
+     * Содержимое файла заменено новой версией.
+     */
+    UPDATED,
+    /**
+     * Файл удалён.
+     */
+    DELETED,
+    /**
+     * Файл переименован.
+     */
+    RENAMED,
+    /**
+     * Папка переименована или перемещена вместе с вложенными файлами; в событии указаны прежний и новый путь папки.
+     */
+    FOLDER_RENAMED
+}
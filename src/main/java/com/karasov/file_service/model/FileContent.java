@@ -0,0 +1,36 @@
+package com.karasov.file_service.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Содержимое файла горячего уровня.
+ * <p>
+ * Хранится отдельно от метаданных {@link FileEntity} в таблице с тем же первичным ключом, поэтому загрузка
+ * и проверка метаданных не читают страницы содержимого. Строка удаляется и переименовывается вместе со строкой
+ * файла (внешний ключ с каскадом); у файлов холодного уровня и сегментного хранилища строки содержимого нет.
+ * </p>
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString(exclude = "bytes")
+@Table(name = "file_contents")
+public class FileContent {
+    @Id
+    @Column(name = "name", nullable = false)
+    private String name;
+    @Column(name = "bytes", nullable = false)
+    private byte[] bytes;
+}
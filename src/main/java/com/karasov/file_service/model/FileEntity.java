@@ -3,7 +3,6 @@ package com.karasov.file_service.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -12,6 +11,9 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 
+/**
+ * Метаданные файла. Содержимое файлов горячего уровня хранится отдельно, в {@link FileContent}.
+ */
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,9 +26,6 @@ public class FileEntity {
     @Id
     @Column(name = "name", nullable = false)
     private String name;
-    @Lob
-    @Column(name = "bytes", nullable = false)
-    private byte[] bytes;
     @Column(name = "size", nullable = false)
     private Long size;
 }
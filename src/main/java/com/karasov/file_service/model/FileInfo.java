@@ -0,0 +1,16 @@
+package com.karasov.file_service.model;
+
+/**
+ * Проекция метаданных файла без содержимого.
+ * Используется в запросах, которым не нужны байты файла.
+ */
+public interface FileInfo {
+    String getName();
+
+    Long getSize();
+
+    /**
+     * MIME-тип, определённый фоновой обработкой; {@code null}, пока обработка не завершена.
+     */
+    String getMimeType();
+}
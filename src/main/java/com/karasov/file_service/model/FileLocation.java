@@ -0,0 +1,26 @@
+package com.karasov.file_service.model;
+
+/**
+ * Проекция расположения содержимого файла.
+ * Для холодного уровня содержит номер сегмента, смещение и длину сжатого содержимого в сегменте,
+ * для сегментного хранилища - ключ записи.
+ */
+public interface FileLocation {
+    String getName();
+
+    Long getSize();
+
+    StorageTier getTier();
+
+    Integer getColdSegment();
+
+    Long getColdOffset();
+
+    Long getColdLength();
+
+    /**
+     * Ключ записи в сегментном хранилище: имя, под которым было записано содержимое файла.
+     * После переименования папки файл сохраняет прежний ключ, поэтому ключ может не совпадать с именем.
+     */
+    String getSegmentKey();
+}
@@ -0,0 +1,50 @@
+package com.karasov.file_service.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Предыдущая версия файла.
+ * <p>
+ * Если {@code delta} равно {@code true}, в {@code content} хранится дельта, восстанавливающая эту версию
+ * из следующей (более новой) версии файла, иначе - полное содержимое версии.
+ * </p>
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Table(name = "file_revisions")
+public class FileRevision {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+    @Column(name = "revision", nullable = false)
+    private int revision;
+    @Column(name = "size", nullable = false)
+    private long size;
+    @Column(name = "delta", nullable = false)
+    private boolean delta;
+    @Column(name = "content", nullable = false)
+    private byte[] content;
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+}
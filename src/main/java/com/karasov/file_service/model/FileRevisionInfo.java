@@ -0,0 +1,14 @@
+package com.karasov.file_service.model;
+
+import java.time.Instant;
+
+/**
+ * Проекция метаданных предыдущей версии файла без содержимого.
+ */
+public interface FileRevisionInfo {
+    Integer getRevision();
+
+    Long getSize();
+
+    Instant getArchivedAt();
+}
@@ -0,0 +1,21 @@
+package com.karasov.file_service.model;
+
+import java.time.Instant;
+
+/**
+ * Метаданные файла для сверки клиентом синхронизации, без содержимого.
+ *
+ * @param name       имя файла
+ * @param size       размер файла в байтах
+ * @param checksum   контрольная сумма SHA-256; {@code null}, пока фоновая обработка её не вычислила
+ * @param createdAt  время создания файла; {@code null}, пока загрузка не перенесена из спула в базу данных
+ * @param modifiedAt время последнего изменения содержимого; {@code null}, пока загрузка находится в спуле
+ */
+public record FileStat(
+        String name,
+        long size,
+        String checksum,
+        Instant createdAt,
+        Instant modifiedAt
+) {
+}
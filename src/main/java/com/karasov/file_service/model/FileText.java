@@ -0,0 +1,28 @@
+package com.karasov.file_service.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Table(name = "file_texts")
+public class FileText {
+    @Id
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+    @Column(name = "content", nullable = false, columnDefinition = "TEXT")
+    private String content;
+}
@@ -0,0 +1,14 @@
+package com.karasov.file_service.model;
+
+import java.time.Instant;
+
+/**
+ * Проекция версии содержимого файла.
+ * Номер версии растёт при каждой перезаписи, а время создания отличает файл, созданный заново под тем же именем
+ * после удаления (его версии снова начинаются с первой).
+ */
+public interface FileVersion {
+    Integer getRevision();
+
+    Instant getCreatedAt();
+}
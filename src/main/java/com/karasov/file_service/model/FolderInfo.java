@@ -0,0 +1,15 @@
+package com.karasov.file_service.model;
+
+/**
+ * Папка и суммарные показатели всех файлов в ней, включая вложенные папки.
+ *
+ * @param path      путь папки; у корня - пустая строка
+ * @param size      суммарный размер файлов в байтах
+ * @param fileCount количество файлов
+ */
+public record FolderInfo(
+        String path,
+        long size,
+        long fileCount
+) {
+}
@@ -0,0 +1,16 @@
+package com.karasov.file_service.model;
+
+/**
+ * Формат ответа со списком файлов.
+ */
+public enum ListingFormat {
+    JSON,
+    /**
+     * Двоичный формат CBOR (application/cbor).
+     */
+    CBOR,
+    /**
+     * Двоичный формат Smile (application/x-jackson-smile).
+     */
+    SMILE
+}
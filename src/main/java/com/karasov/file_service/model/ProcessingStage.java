@@ -0,0 +1,19 @@
+package com.karasov.file_service.model;
+
+/**
+ * Этап фоновой обработки загруженного файла.
+ */
+public enum ProcessingStage {
+    /**
+     * Определение MIME-типа содержимого.
+     */
+    MIME_TYPE,
+    /**
+     * Вычисление контрольной суммы SHA-256.
+     */
+    CHECKSUM,
+    /**
+     * Извлечение текста для индексации.
+     */
+    TEXT_EXTRACTION
+}
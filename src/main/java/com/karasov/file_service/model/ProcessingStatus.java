@@ -0,0 +1,19 @@
+package com.karasov.file_service.model;
+
+/**
+ * Состояние задания фоновой обработки файла.
+ */
+public enum ProcessingStatus {
+    /**
+     * Задание ожидает исполнителя.
+     */
+    PENDING,
+    /**
+     * Задание взято в работу одним из исполнителей.
+     */
+    RUNNING,
+    /**
+     * Задание исчерпало попытки и больше не выполняется.
+     */
+    FAILED
+}
@@ -0,0 +1,15 @@
+package com.karasov.file_service.model;
+
+/**
+ * Приоритет запроса при ограничении параллельной нагрузки на базу данных.
+ */
+public enum RequestPriority {
+    /**
+     * Дешёвые запросы к метаданным: список файлов, поиск, удаление, переименование.
+     */
+    METADATA,
+    /**
+     * Передача содержимого: загрузка и скачивание файлов, архивов и версий, а также пакетные запросы метаданных.
+     */
+    BULK
+}
@@ -0,0 +1,86 @@
+package com.karasov.file_service.model;
+
+import java.util.regex.Pattern;
+
+/**
+ * Режим поиска файлов по имени.
+ */
+public enum SearchMode {
+    /**
+     * Имя содержит строку запроса.
+     */
+    SUBSTRING,
+    /**
+     * Имя начинается со строки запроса.
+     */
+    PREFIX,
+    /**
+     * Имя соответствует glob-шаблону ({@code *} - любая последовательность символов, {@code ?} - один символ).
+     */
+    GLOB;
+
+    /**
+     * Преобразует строку запроса в шаблон для оператора LIKE.
+     *
+     * @param query строка запроса
+     * @return шаблон LIKE, в котором служебные символы запроса экранированы
+     */
+    public String toLikePattern(String query) {
+        return switch (this) {
+            case SUBSTRING -> "%" + escape(query) + "%";
+            case PREFIX -> escape(query) + "%";
+            case GLOB -> globToLike(query);
+        };
+    }
+
+    /**
+     * Проверяет, соответствует ли имя файла строке запроса так же, как шаблону {@link #toLikePattern(String)}.
+     *
+     * @param query    строка запроса
+     * @param fileName имя файла
+     * @return true, если имя соответствует строке запроса
+     */
+    public boolean matches(String query, String fileName) {
+        return switch (this) {
+            case SUBSTRING -> fileName.contains(query);
+            case PREFIX -> fileName.startsWith(query);
+            case GLOB -> globToRegex(query).matcher(fileName).matches();
+        };
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 8);
+        for (char c : value.toCharArray()) {
+            if (c == '\\' || c == '%' || c == '_') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static String globToLike(String glob) {
+        StringBuilder builder = new StringBuilder(glob.length() + 8);
+        for (char c : glob.toCharArray()) {
+            switch (c) {
+                case '*' -> builder.append('%');
+                case '?' -> builder.append('_');
+                case '\\', '%', '_' -> builder.append('\\').append(c);
+                default -> builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder builder = new StringBuilder(glob.length() + 8);
+        glob.codePoints().forEach(c -> {
+            switch (c) {
+                case '*' -> builder.append(".*");
+                case '?' -> builder.append('.');
+                default -> builder.append(Pattern.quote(Character.toString(c)));
+            }
+        });
+        return Pattern.compile(builder.toString(), Pattern.DOTALL);
+    }
+}
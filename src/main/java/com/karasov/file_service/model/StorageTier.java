@@ -0,0 +1,19 @@
+package com.karasov.file_service.model;
+
+/**
+ * Уровень хранения содержимого файла.
+ */
+public enum StorageTier {
+    /**
+     * Содержимое хранится в таблице {@code file_contents} основной базы данных.
+     */
+    HOT,
+    /**
+     * Содержимое сжато и вынесено в сегментные файлы холодного хранилища, в базе данных остаются метаданные.
+     */
+    COLD,
+    /**
+     * Содержимое небольшого файла хранится в сегментном хранилище с дозаписью, в базе данных остаются метаданные.
+     */
+    SEGMENT
+}
@@ -0,0 +1,19 @@
+package com.karasov.file_service.model;
+
+/**
+ * Результат предварительной проверки загрузки по контрольной сумме.
+ */
+public enum UploadPrecheckStatus {
+    /**
+     * Такое содержимое уже хранится, файл создан из него без передачи тела.
+     */
+    CREATED,
+    /**
+     * Такого содержимого нет, клиент должен загрузить файл.
+     */
+    UPLOAD_REQUIRED,
+    /**
+     * Файл с таким именем уже существует.
+     */
+    FILE_EXISTS
+}
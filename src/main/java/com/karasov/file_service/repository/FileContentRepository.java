@@ -0,0 +1,29 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FileContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface FileContentRepository extends JpaRepository<FileContent, String> {
+    @Modifying
+    @Query(value = "INSERT INTO file_contents (name, bytes) VALUES (:name, :bytes) " +
+            "ON CONFLICT (name) DO UPDATE SET bytes = EXCLUDED.bytes",
+            nativeQuery = true)
+    void upsert(@Param("name") String name,
+                @Param("bytes") byte[] bytes);
+
+    @Modifying
+    @Query(value = "INSERT INTO file_contents (name, bytes) " +
+            "SELECT :target_name, bytes FROM file_contents WHERE name = :source_name " +
+            "ON CONFLICT (name) DO NOTHING",
+            nativeQuery = true)
+    void copy(@Param("source_name") String sourceFileName,
+              @Param("target_name") String targetFileName);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_contents WHERE name = :name",
+            nativeQuery = true)
+    void deleteByFileName(@Param("name") String fileName);
+}
@@ -0,0 +1,93 @@
+package com.karasov.file_service.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Доступ к содержимому файлов по частям.
+ * <p>
+ * Содержимое читается фрагментами через {@code substring(bytes FROM ? FOR ?)}, поэтому ни сервер,
+ * ни драйвер не держат в памяти файл целиком. Для столбца {@code file_contents.bytes} установлен режим хранения
+ * {@code EXTERNAL} (без сжатия TOAST), при котором PostgreSQL читает только страницы запрошенного фрагмента.
+ * </p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileContentStreamRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Читает фрагмент содержимого файла.
+     *
+     * @param fileName имя файла
+     * @param offset   смещение фрагмента от начала файла (с нуля)
+     * @param length   максимальная длина фрагмента
+     * @return фрагмент содержимого (короче {@code length} в конце файла) или пустое значение, если файл не найден
+     */
+    public Optional<byte[]> readChunk(String fileName, long offset, int length) {
+        List<byte[]> chunks = jdbcTemplate.query(
+                "SELECT substring(bytes FROM CAST(? AS INTEGER) FOR ?) FROM file_contents WHERE name = ?",
+                (rs, rowNum) -> rs.getBytes(1),
+                offset + 1, length, fileName
+        );
+        return chunks.stream().findFirst();
+    }
+
+    /**
+     * Создаёт файл, передавая содержимое в базу данных потоком.
+     *
+     * @param fileName имя файла
+     * @param content  поток с содержимым файла, из которого будет прочитано ровно {@code size} байт
+     * @param size     размер файла
+     * @return true, если файл создан, false, если файл с таким именем уже существует
+     */
+    public boolean insert(String fileName, InputStream content, long size) {
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO files (name, size) VALUES (?, ?) ON CONFLICT (name) DO NOTHING",
+                fileName, size
+        );
+        if (inserted == 0) {
+            return false;
+        }
+        writeContent(fileName, content, size);
+        return true;
+    }
+
+    /**
+     * Возвращает содержимое файла из холодного хранилища в таблицу {@code file_contents}, передавая его потоком.
+     *
+     * @param fileName имя файла
+     * @param content  поток с содержимым файла, из которого будет прочитано ровно {@code size} байт
+     * @param size     размер файла
+     * @return true, если содержимое возвращено, false, если файл не найден
+     */
+    public boolean restore(String fileName, InputStream content, long size) {
+        int updated = jdbcTemplate.update(
+                "UPDATE files SET tier = 'HOT', cold_segment = NULL, cold_offset = NULL, " +
+                        "cold_length = NULL, access_count = 0, last_accessed_at = now() WHERE name = ?",
+                fileName
+        );
+        if (updated == 0) {
+            return false;
+        }
+        writeContent(fileName, content, size);
+        return true;
+    }
+
+    private void writeContent(String fileName, InputStream content, long size) {
+        jdbcTemplate.update(
+                "INSERT INTO file_contents (name, bytes) VALUES (?, ?) " +
+                        "ON CONFLICT (name) DO UPDATE SET bytes = EXCLUDED.bytes",
+                ps -> {
+                    ps.setString(1, fileName);
+                    ps.setBinaryStream(2, content, size);
+                }
+        );
+    }
+}
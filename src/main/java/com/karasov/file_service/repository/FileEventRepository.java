@@ -0,0 +1,113 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.dto.FileChangeEventDto;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Журнал изменений файлов в таблице {@code file_events}.
+ * <p>
+ * Журнал хранится в шарде {@value ShardRouter#DEFAULT_SHARD}, поэтому номера событий едины для всех шардов
+ * и всех узлов приложения. Запись пачки событий берёт транзакционную advisory-блокировку: номера выдаются
+ * и фиксируются в одном порядке, и читатель, продвигающийся по номерам, не пропускает событие, номер которого
+ * меньше уже прочитанного, но зафиксированное позже.
+ * </p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileEventRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+
+    /**
+     * Записывает события в журнал в порядке списка.
+     *
+     * @param events события; номер и время события назначаются при записи
+     */
+    public void insertAll(List<FileChangeEventDto> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        template().update(
+                "WITH lock AS (SELECT pg_advisory_xact_lock(hashtext('file_events'))) " +
+                        "INSERT INTO file_events (type, file_name, new_file_name) " +
+                        "SELECT e.type, e.file_name, e.new_file_name FROM lock, " +
+                        "unnest(?, ?, ?) WITH ORDINALITY AS e(type, file_name, new_file_name, position) " +
+                        "ORDER BY e.position",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar",
+                            events.stream().map(event -> event.type().name()).toArray()));
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar",
+                            events.stream().map(FileChangeEventDto::filename).toArray()));
+                    ps.setArray(3, ps.getConnection().createArrayOf("varchar",
+                            events.stream().map(FileChangeEventDto::newFilename).toArray()));
+                }
+        );
+    }
+
+    /**
+     * Читает события с номерами в диапазоне {@code (after, upTo]}.
+     *
+     * @param after номер, после которого читаются события
+     * @param upTo  наибольший номер читаемого события
+     * @param limit максимальное количество событий
+     * @return события в порядке номеров
+     */
+    public List<FileChangeEventDto> findAfter(long after, long upTo, int limit) {
+        return template().query(
+                "SELECT id, type, file_name, new_file_name, created_at FROM file_events " +
+                        "WHERE id > ? AND id <= ? ORDER BY id LIMIT ?",
+                FileEventRepository::mapEvent,
+                after, upTo, limit
+        );
+    }
+
+    /**
+     * @return номер самого раннего хранимого события или 0, если журнал пуст
+     */
+    public long findFirstId() {
+        Long id = template().queryForObject("SELECT min(id) FROM file_events", Long.class);
+        return id != null ? id : 0;
+    }
+
+    /**
+     * @return номер последнего события или 0, если журнал пуст
+     */
+    public long findLastId() {
+        Long id = template().queryForObject("SELECT max(id) FROM file_events", Long.class);
+        return id != null ? id : 0;
+    }
+
+    /**
+     * Удаляет из журнала события с номерами не больше заданного.
+     *
+     * @param id наибольший номер удаляемого события
+     * @return количество удалённых событий
+     */
+    public int deleteUpTo(long id) {
+        return template().update("DELETE FROM file_events WHERE id <= ?", id);
+    }
+
+    private JdbcTemplate template() {
+        return shardRouter.isEnabled() ? shardRouter.jdbcTemplate(ShardRouter.DEFAULT_SHARD) : jdbcTemplate;
+    }
+
+    private static FileChangeEventDto mapEvent(ResultSet rs, int rowNum) throws SQLException {
+        return new FileChangeEventDto(
+                rs.getLong("id"),
+                FileChangeType.valueOf(rs.getString("type")),
+                rs.getString("file_name"),
+                rs.getString("new_file_name"),
+                rs.getObject("created_at", OffsetDateTime.class).toInstant()
+        );
+    }
+}
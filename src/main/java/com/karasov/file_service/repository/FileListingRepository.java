@@ -0,0 +1,158 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Потоковое чтение списка файлов.
+ * <p>
+ * Метаданные читаются курсором базы данных порциями по {@value #FETCH_SIZE} строк и передаются обработчику
+ * по одной строке без создания сущностей и проекций, поэтому объём памяти не зависит от размера списка.
+ * Курсор PostgreSQL работает только внутри транзакции, поэтому методы вызываются из транзакционного кода.
+ * </p>
+ * <p>
+ * Если файлы распределены по шардам, курсоры открываются во всех шардах одновременно, каждый в собственной
+ * транзакции, и упорядоченные по имени потоки строк объединяются слиянием, поэтому в памяти находится
+ * не больше одной порции строк каждого шарда.
+ * </p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileListingRepository {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+
+    /**
+     * Передаёт обработчику имена и размеры файлов в порядке имён.
+     *
+     * @param limit   максимальное количество файлов
+     * @param handler обработчик строки
+     * @throws IOException если обработчик не смог обработать строку
+     */
+    public void forEachFile(int limit, FileRowHandler handler) throws IOException {
+        if (shardRouter.isEnabled()) {
+            forEachFileOnShards(limit, handler);
+            return;
+        }
+        try {
+            jdbcTemplate.query(
+                    connection -> {
+                        var statement = connection.prepareStatement(
+                                "SELECT name, size FROM files ORDER BY name LIMIT ?");
+                        statement.setFetchSize(FETCH_SIZE);
+                        statement.setInt(1, limit);
+                        return statement;
+                    },
+                    rs -> {
+                        try {
+                            handler.handle(rs.getString(1), rs.getLong(2));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+            );
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void forEachFileOnShards(int limit, FileRowHandler handler) throws IOException {
+        List<ShardCursor> cursors = new ArrayList<>();
+        PriorityQueue<ShardCursor> queue = new PriorityQueue<>(
+                Comparator.comparing((ShardCursor cursor) -> cursor.name, ShardRouter.NAME_ORDER));
+        try {
+            for (String shard : shardRouter.shards()) {
+                ShardCursor cursor = new ShardCursor(shardRouter.dataSource(shard).getConnection());
+                cursors.add(cursor);
+                if (cursor.open(limit)) {
+                    queue.add(cursor);
+                }
+            }
+            String last = null;
+            int count = 0;
+            while (!queue.isEmpty() && count < limit) {
+                ShardCursor cursor = queue.poll();
+                // Во время перераспределения файл может на мгновение оказаться в двух шардах.
+                if (!cursor.name.equals(last)) {
+                    handler.handle(cursor.name, cursor.size);
+                    last = cursor.name;
+                    count++;
+                }
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("Список файлов шардов", null, e);
+        } finally {
+            cursors.forEach(ShardCursor::close);
+        }
+    }
+
+    /**
+     * Курсор списка файлов одного шарда и его текущая строка.
+     */
+    private static final class ShardCursor {
+        private final Connection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private String name;
+        private long size;
+
+        private ShardCursor(Connection connection) {
+            this.connection = connection;
+        }
+
+        private boolean open(int limit) throws SQLException {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            statement = connection.prepareStatement("SELECT name, size FROM files ORDER BY name LIMIT ?");
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setInt(1, limit);
+            resultSet = statement.executeQuery();
+            return next();
+        }
+
+        private boolean next() throws SQLException {
+            if (!resultSet.next()) {
+                return false;
+            }
+            name = resultSet.getString(1);
+            size = resultSet.getLong(2);
+            return true;
+        }
+
+        private void close() {
+            try (connection) {
+                connection.rollback();
+            } catch (SQLException e) {
+                // Соединение возвращается в пул, который сам проверит его состояние.
+            }
+        }
+    }
+
+    /**
+     * Обработчик строки списка файлов.
+     */
+    @FunctionalInterface
+    public interface FileRowHandler {
+        void handle(String name, long size) throws IOException;
+    }
+}
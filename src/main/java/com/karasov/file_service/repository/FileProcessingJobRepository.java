@@ -0,0 +1,59 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FileProcessingJob;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.model.ProcessingStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface FileProcessingJobRepository extends JpaRepository<FileProcessingJob, Long> {
+    @Modifying
+    @Query(value = "INSERT INTO file_processing_jobs (file_name, stage, status) " +
+            "SELECT :file_name, stage, 'PENDING' FROM unnest(CAST(:stages AS VARCHAR[])) AS stage",
+            nativeQuery = true)
+    void enqueue(@Param("file_name") String fileName,
+                 @Param("stages") String[] stages);
+
+    @Query(value = "UPDATE file_processing_jobs SET status = 'RUNNING', attempts = attempts + 1, updated_at = now() " +
+            "WHERE id IN (SELECT id FROM file_processing_jobs " +
+            "WHERE stage = :stage AND status = 'PENDING' AND available_at <= now() " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING *",
+            nativeQuery = true)
+    List<FileProcessingJob> claim(@Param("stage") String stage,
+                                  @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE file_processing_jobs SET status = 'PENDING', updated_at = now() " +
+            "WHERE status = 'RUNNING' AND updated_at < :deadline",
+            nativeQuery = true)
+    int releaseExpired(@Param("deadline") Instant deadline);
+
+    @Modifying
+    @Query(value = "UPDATE file_processing_jobs SET file_name = :new_name WHERE file_name = :old_name",
+            nativeQuery = true)
+    void updateFileName(@Param("old_name") String oldFileName,
+                        @Param("new_name") String newFileName);
+
+    @Modifying
+    @Query(value = "UPDATE file_processing_jobs SET file_name = :new_path || substr(file_name, length(:old_path) + 1) " +
+            "WHERE file_name ~>=~ (:old_path || '/') AND file_name ~<~ (:old_path || '0')",
+            nativeQuery = true)
+    void updateFolderName(@Param("old_path") String oldPath,
+                          @Param("new_path") String newPath);
+
+    @Modifying
+    @Query(value = "INSERT INTO file_processing_jobs (file_name, stage, status) " +
+            "SELECT :target_name, stage, 'PENDING' FROM file_processing_jobs " +
+            "WHERE file_name = :source_name AND status <> 'FAILED'",
+            nativeQuery = true)
+    void copyPending(@Param("source_name") String sourceFileName,
+                     @Param("target_name") String targetFileName);
+
+    long countByStageAndStatus(ProcessingStage stage, ProcessingStatus status);
+}
@@ -1,11 +1,17 @@
 package com.karasov.file_service.repository;
 
+import com.karasov.file_service.model.ColdSegmentUsage;
 import com.karasov.file_service.model.FileEntity;
+import com.karasov.file_service.model.FileInfo;
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.model.FileVersion;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,8 +30,178 @@ public interface FileRepository extends JpaRepository<FileEntity, String> {
     Optional<FileEntity> getFileEntityByName(@Param("name") String name);
 
     @Modifying
-    @Query(value = "UPDATE files SET name = :new_name WHERE name = :old_name",
+    @Query(value = "UPDATE files SET name = :new_name, segment_key = NULL WHERE name = :old_name",
             nativeQuery = true)
     void updateByName(@Param("old_name") String oldFileName,
                       @Param("new_name") String newFileName);
+
+    @Query(value = "SELECT name, size, mime_type FROM files WHERE name LIKE :pattern AND name > :after " +
+            "ORDER BY name LIMIT :limit",
+            nativeQuery = true)
+    List<FileInfo> searchByNamePattern(@Param("pattern") String pattern,
+                                       @Param("after") String after,
+                                       @Param("limit") int limit);
+
+    @Query(value = "SELECT name, size, mime_type FROM files WHERE folder = :folder AND name > :after " +
+            "ORDER BY name LIMIT :limit",
+            nativeQuery = true)
+    List<FileInfo> findInfosByFolder(@Param("folder") String folder,
+                                     @Param("after") String after,
+                                     @Param("limit") int limit);
+
+    @Query(value = "SELECT revision, created_at AS createdAt FROM files WHERE name = :name",
+            nativeQuery = true)
+    Optional<FileVersion> findVersionByName(@Param("name") String fileName);
+
+    @Modifying
+    @Query(value = "UPDATE files SET mime_type = :mime_type " +
+            "WHERE name = :name AND revision = :revision AND created_at = :created_at",
+            nativeQuery = true)
+    int updateMimeType(@Param("name") String fileName,
+                       @Param("revision") int revision,
+                       @Param("created_at") Instant createdAt,
+                       @Param("mime_type") String mimeType);
+
+    @Modifying
+    @Query(value = "UPDATE files SET checksum = :checksum WHERE name = :name",
+            nativeQuery = true)
+    void updateChecksum(@Param("name") String fileName,
+                        @Param("checksum") String checksum);
+
+    @Modifying
+    @Query(value = "UPDATE files SET checksum = :checksum " +
+            "WHERE name = :name AND revision = :revision AND created_at = :created_at",
+            nativeQuery = true)
+    int updateChecksum(@Param("name") String fileName,
+                       @Param("revision") int revision,
+                       @Param("created_at") Instant createdAt,
+                       @Param("checksum") String checksum);
+
+    @Query(value = "SELECT name FROM files WHERE checksum = :checksum AND size = :size LIMIT 1",
+            nativeQuery = true)
+    Optional<String> findNameByChecksum(@Param("checksum") String checksum,
+                                        @Param("size") long size);
+
+    @Query(value = "SELECT name, size, mime_type FROM files WHERE name IN (:names) ORDER BY name",
+            nativeQuery = true)
+    List<FileInfo> findInfosByNames(@Param("names") Collection<String> names);
+
+    @Modifying
+    @Query(value = "INSERT INTO files (name, size, mime_type, checksum, " +
+            "tier, cold_segment, cold_offset, cold_length) " +
+            "SELECT :target_name, size, mime_type, checksum, " +
+            "tier, cold_segment, cold_offset, cold_length FROM files WHERE name = :source_name " +
+            "ON CONFLICT (name) DO NOTHING",
+            nativeQuery = true)
+    int copyByName(@Param("source_name") String sourceFileName,
+                   @Param("target_name") String targetFileName);
+
+    @Query(value = "SELECT revision FROM files WHERE name = :name",
+            nativeQuery = true)
+    Optional<Integer> findRevisionByName(@Param("name") String name);
+
+    @Query(value = "SELECT revision FROM files WHERE name = :name FOR UPDATE",
+            nativeQuery = true)
+    Optional<Integer> lockRevisionByName(@Param("name") String name);
+
+    @Modifying
+    @Query(value = "UPDATE files SET size = :size, revision = revision + 1, " +
+            "mime_type = NULL, checksum = NULL, tier = 'HOT', cold_segment = NULL, cold_offset = NULL, " +
+            "cold_length = NULL, segment_key = NULL, access_count = 0, last_accessed_at = now(), modified_at = now() WHERE name = :name",
+            nativeQuery = true)
+    void resetContentMetadata(@Param("name") String name,
+                              @Param("size") long size);
+
+    @Query(value = "SELECT name, size, tier, cold_segment AS coldSegment, cold_offset AS coldOffset, " +
+            "cold_length AS coldLength, COALESCE(segment_key, name) AS segmentKey FROM files WHERE name = :name",
+            nativeQuery = true)
+    Optional<FileLocation> findLocationByName(@Param("name") String name);
+
+    @Query(value = "SELECT name, size, tier, cold_segment AS coldSegment, cold_offset AS coldOffset, " +
+            "cold_length AS coldLength, COALESCE(segment_key, name) AS segmentKey FROM files WHERE name = :name FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    Optional<FileLocation> lockLocationByName(@Param("name") String name);
+
+    @Modifying
+    @Query(value = "UPDATE files SET last_accessed_at = now(), access_count = access_count + :count " +
+            "WHERE name = :name AND (tier = 'COLD' OR last_accessed_at < :threshold)",
+            nativeQuery = true)
+    void recordAccess(@Param("name") String name,
+                      @Param("count") int count,
+                      @Param("threshold") Instant threshold);
+
+    @Query(value = "SELECT name, size, tier, cold_segment AS coldSegment, cold_offset AS coldOffset, " +
+            "cold_length AS coldLength, COALESCE(segment_key, name) AS segmentKey FROM files WHERE tier = 'HOT' AND last_accessed_at < :deadline " +
+            "ORDER BY last_accessed_at LIMIT :limit",
+            nativeQuery = true)
+    List<FileLocation> findDemotionCandidates(@Param("deadline") Instant deadline,
+                                              @Param("limit") int limit);
+
+    @Query(value = "SELECT name, size, tier, cold_segment AS coldSegment, cold_offset AS coldOffset, " +
+            "cold_length AS coldLength, COALESCE(segment_key, name) AS segmentKey FROM files WHERE tier = 'COLD' AND access_count >= :min_reads " +
+            "ORDER BY access_count DESC LIMIT :limit",
+            nativeQuery = true)
+    List<FileLocation> findPromotionCandidates(@Param("min_reads") int minReads,
+                                               @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE files SET tier = 'COLD', cold_segment = :segment, " +
+            "cold_offset = :offset, cold_length = :length, access_count = 0 WHERE name = :name",
+            nativeQuery = true)
+    void markCold(@Param("name") String name,
+                  @Param("segment") int segment,
+                  @Param("offset") long offset,
+                  @Param("length") long length);
+
+    @Query(value = "SELECT cold_segment AS segment, sum(cold_length) AS liveBytes FROM " +
+            "(SELECT DISTINCT cold_segment, cold_offset, cold_length FROM files WHERE tier = 'COLD') l " +
+            "GROUP BY cold_segment",
+            nativeQuery = true)
+    List<ColdSegmentUsage> findColdSegmentUsage();
+
+    @Query(value = "SELECT DISTINCT ON (cold_offset) name, size, tier, cold_segment AS coldSegment, " +
+            "cold_offset AS coldOffset, cold_length AS coldLength, COALESCE(segment_key, name) AS segmentKey " +
+            "FROM files WHERE tier = 'COLD' AND cold_segment = :segment AND cold_offset > :after " +
+            "ORDER BY cold_offset LIMIT :limit",
+            nativeQuery = true)
+    List<FileLocation> findColdLocationsInSegment(@Param("segment") int segment,
+                                                  @Param("after") long after,
+                                                  @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE files SET cold_segment = :new_segment, cold_offset = :new_offset, cold_length = :new_length " +
+            "WHERE tier = 'COLD' AND cold_segment = :segment AND cold_offset = :offset",
+            nativeQuery = true)
+    int relocateCold(@Param("segment") int segment,
+                     @Param("offset") long offset,
+                     @Param("new_segment") int newSegment,
+                     @Param("new_offset") long newOffset,
+                     @Param("new_length") long newLength);
+
+    @Modifying
+    @Query(value = "INSERT INTO files (name, size, tier, segment_key) VALUES (:name, :size, 'SEGMENT', :segment_key) " +
+            "ON CONFLICT (name) DO NOTHING",
+            nativeQuery = true)
+    int insertSegmentMetadata(@Param("name") String name,
+                              @Param("size") long size,
+                              @Param("segment_key") String segmentKey);
+
+    @Modifying
+    @Query(value = "UPDATE files SET segment_key = :segment_key WHERE name = :name",
+            nativeQuery = true)
+    void updateSegmentKey(@Param("name") String name,
+                          @Param("segment_key") String segmentKey);
+
+    @Query(value = "SELECT COALESCE(segment_key, name) FROM files WHERE tier = 'SEGMENT' " +
+            "AND (segment_key IN (:keys) OR (segment_key IS NULL AND name IN (:keys)))",
+            nativeQuery = true)
+    List<String> findSegmentKeys(@Param("keys") Collection<String> keys);
+
+    @Modifying
+    @Query(value = "UPDATE files SET name = :new_path || substr(name, length(:old_path) + 1), " +
+            "segment_key = CASE WHEN tier = 'SEGMENT' THEN COALESCE(segment_key, name) END " +
+            "WHERE folder = :old_path OR (folder ~>=~ (:old_path || '/') AND folder ~<~ (:old_path || '0'))",
+            nativeQuery = true)
+    int moveFolder(@Param("old_path") String oldPath,
+                   @Param("new_path") String newPath);
 }
@@ -0,0 +1,35 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FileRevision;
+import com.karasov.file_service.model.FileRevisionInfo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface FileRevisionRepository extends JpaRepository<FileRevision, Long> {
+    @Query(value = "SELECT revision, size, archived_at AS archivedAt FROM file_revisions " +
+            "WHERE file_name = :name ORDER BY revision DESC",
+            nativeQuery = true)
+    List<FileRevisionInfo> findInfosByFileName(@Param("name") String fileName);
+
+    @Query(value = "SELECT * FROM file_revisions WHERE file_name = :name AND revision >= :revision " +
+            "ORDER BY revision DESC",
+            nativeQuery = true)
+    List<FileRevision> findChain(@Param("name") String fileName,
+                                 @Param("revision") int revision);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_revisions WHERE file_name = :name AND revision < :revision",
+            nativeQuery = true)
+    int deleteOlderThan(@Param("name") String fileName,
+                        @Param("revision") int revision);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_revisions WHERE archived_at < :deadline",
+            nativeQuery = true)
+    int deleteArchivedBefore(@Param("deadline") Instant deadline);
+}
@@ -0,0 +1,91 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FileStat;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Чтение метаданных набора файлов по именам.
+ * <p>
+ * Метаданные всех имён набора читаются одним запросом {@code WHERE name = ANY(?)} по первичному ключу;
+ * столбец с содержимым в запрос не входит. Если файлы распределены по шардам, имена группируются
+ * по шардам и каждый шард получает один запрос. Во время перераспределения имена, не найденные в новом шарде,
+ * ищутся в прежнем.
+ * </p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileStatRepository {
+
+    private static final String QUERY =
+            "SELECT name, size, checksum, created_at, modified_at FROM files WHERE name = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+
+    /**
+     * Находит метаданные файлов с заданными именами.
+     *
+     * @param names имена файлов
+     * @return метаданные найденных файлов по именам; отсутствующих файлов в результате нет
+     */
+    public Map<String, FileStat> findByNames(Collection<String> names) {
+        Map<String, FileStat> found = new HashMap<>();
+        if (names.isEmpty()) {
+            return found;
+        }
+        if (!shardRouter.isEnabled()) {
+            query(jdbcTemplate, names, found);
+            return found;
+        }
+        Map<String, List<String>> byShard = new LinkedHashMap<>();
+        names.forEach(name -> byShard.computeIfAbsent(shardRouter.shardFor(name), shard -> new ArrayList<>()).add(name));
+        byShard.forEach((shard, shardNames) -> query(shardRouter.jdbcTemplate(shard), shardNames, found));
+        if (shardRouter.isResharding()) {
+            Map<String, List<String>> byPreviousShard = new LinkedHashMap<>();
+            for (String name : names) {
+                Optional<String> previous = found.containsKey(name) ? Optional.empty() : shardRouter.previousShardFor(name);
+                previous.ifPresent(shard -> byPreviousShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(name));
+            }
+            byPreviousShard.forEach((shard, shardNames) -> query(shardRouter.jdbcTemplate(shard), shardNames, found));
+        }
+        return found;
+    }
+
+    private static void query(JdbcTemplate jdbcTemplate, Collection<String> names, Map<String, FileStat> found) {
+        jdbcTemplate.query(
+                connection -> {
+                    var statement = connection.prepareStatement(QUERY);
+                    statement.setArray(1, connection.createArrayOf("text", names.toArray()));
+                    return statement;
+                },
+                rs -> {
+                    FileStat stat = mapRow(rs);
+                    found.put(stat.name(), stat);
+                }
+        );
+    }
+
+    private static FileStat mapRow(ResultSet rs) throws SQLException {
+        return new FileStat(
+                rs.getString(1),
+                rs.getLong(2),
+                rs.getString(3),
+                rs.getObject(4, OffsetDateTime.class).toInstant(),
+                rs.getObject(5, OffsetDateTime.class).toInstant()
+        );
+    }
+}
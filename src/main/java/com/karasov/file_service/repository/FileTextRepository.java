@@ -0,0 +1,34 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FileText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface FileTextRepository extends JpaRepository<FileText, String> {
+    @Modifying
+    @Query(value = "INSERT INTO file_texts (file_name, content) " +
+            "SELECT name, :content FROM files WHERE name = :name AND revision = :revision AND created_at = :created_at " +
+            "ON CONFLICT (file_name) DO UPDATE SET content = EXCLUDED.content",
+            nativeQuery = true)
+    int upsert(@Param("name") String fileName,
+               @Param("revision") int revision,
+               @Param("created_at") Instant createdAt,
+               @Param("content") String content);
+
+    @Modifying
+    @Query(value = "INSERT INTO file_texts (file_name, content) " +
+            "SELECT :target_name, content FROM file_texts WHERE file_name = :source_name " +
+            "ON CONFLICT (file_name) DO NOTHING",
+            nativeQuery = true)
+    void copy(@Param("source_name") String sourceFileName,
+              @Param("target_name") String targetFileName);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_texts WHERE file_name = :name",
+            nativeQuery = true)
+    void deleteByFileName(@Param("name") String fileName);
+}
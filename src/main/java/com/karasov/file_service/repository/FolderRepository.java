@@ -0,0 +1,147 @@
+package com.karasov.file_service.repository;
+
+import com.karasov.file_service.model.FolderInfo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Папки файлов.
+ * <p>
+ * Папка файла - часть имени до последней косой черты - хранится в столбце {@code files.folder}, который заполняет
+ * триггер базы данных; тот же триггер создаёт в таблице {@code folders} недостающие папки на пути к файлу.
+ * Файлы одной папки читаются одним диапазоном индекса {@code (folder, name)}, вложенные папки - диапазоном
+ * индекса {@code (parent, path)}. Папки остаются после удаления всех файлов в них.
+ * </p>
+ * <p>
+ * Суммарный размер и количество файлов папки вместе с вложенными папками поддерживаются инкрементально:
+ * триггеры уровня команды записывают изменения, сгруппированные по папкам, в таблицу {@code folder_size_deltas},
+ * а {@link #foldDeltas(int)} переносит их в {@code folders}. Поэтому загрузки в разные папки не обновляют
+ * одну и ту же строку корня, а чтение показателей складывает значение папки с ещё не перенесёнными изменениями.
+ * </p>
+ * <p>
+ * Поддерево папки выбирается условием {@code path ~>=~ 'a/' AND path ~<~ 'a0'} (символ {@code 0} следует
+ * за косой чертой), которое использует индексы {@code text_pattern_ops} при любом правиле сортировки базы данных.
+ * </p>
+ */
+@Repository
+@RequiredArgsConstructor
+public class FolderRepository {
+
+    private static final String SUBTREE = "(path = ? OR (path ~>=~ (? || '/') AND path ~<~ (? || '0')))";
+    private static final String FOLDER_COLUMNS =
+            "f.path, f.size + COALESCE(d.size, 0), f.file_count + COALESCE(d.count, 0) FROM folders f LEFT JOIN LATERAL (SELECT sum(size_delta) AS size, sum(count_delta) AS count " +
+            "FROM folder_size_deltas WHERE path = f.path) d ON true";
+    private static final RowMapper<FolderInfo> FOLDER_MAPPER =
+            (rs, rowNum) -> new FolderInfo(rs.getString(1), rs.getLong(2), rs.getLong(3));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Находит папку по пути.
+     *
+     * @param path путь папки; у корня - пустая строка
+     * @return папка с суммарными показателями или пустой Optional, если папки нет
+     */
+    public Optional<FolderInfo> findByPath(String path) {
+        return jdbcTemplate.query("SELECT " + FOLDER_COLUMNS + " WHERE f.path = ?", FOLDER_MAPPER, path)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Находит папки, непосредственно вложенные в заданную, в порядке путей.
+     *
+     * @param path путь папки
+     * @return вложенные папки с суммарными показателями
+     */
+    public List<FolderInfo> findChildren(String path) {
+        return jdbcTemplate.query("SELECT " + FOLDER_COLUMNS + " WHERE f.parent = ? ORDER BY f.path",
+                FOLDER_MAPPER, path);
+    }
+
+    /**
+     * Проверяет, существует ли папка.
+     *
+     * @param path путь папки
+     * @return true, если папка существует
+     */
+    public boolean exists(String path) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM folders WHERE path = ?", Integer.class, path).isEmpty();
+    }
+
+    /**
+     * Блокирует до конца транзакции папку и все вложенные в неё папки. Пока блокировка удерживается,
+     * новые файлы в этих папках ждут её снятия: внешний ключ {@code files.folder} блокирует строку папки.
+     *
+     * @param path путь папки
+     * @return пути заблокированных папок; пустой список, если папки нет
+     */
+    public List<String> lockSubtree(String path) {
+        return jdbcTemplate.queryForList("SELECT path FROM folders WHERE " + SUBTREE + " ORDER BY path FOR UPDATE",
+                String.class, path, path, path);
+    }
+
+    /**
+     * Создаёт пустые копии папки и всех вложенных в неё папок под новым путём, а также недостающие папки
+     * на пути к новой папке. Показатели копий заполняются изменениями, которые записывают триггеры при переносе
+     * файлов.
+     *
+     * @param path    путь папки
+     * @param newPath новый путь папки
+     */
+    public void copySubtree(String path, String newPath) {
+        jdbcTemplate.update("INSERT INTO folders (path, parent) " +
+                "SELECT a, CASE WHEN a = '' THEN NULL ELSE file_folder(a) END FROM folder_ancestors(?) a " +
+                "ON CONFLICT (path) DO NOTHING", newPath);
+        jdbcTemplate.update("INSERT INTO folders (path, parent) " +
+                "SELECT ? || substr(path, length(?) + 1), file_folder(? || substr(path, length(?) + 1)) " +
+                "FROM folders WHERE path ~>=~ (? || '/') AND path ~<~ (? || '0') " +
+                "ON CONFLICT (path) DO NOTHING", newPath, path, newPath, path, path, path);
+    }
+
+    /**
+     * Удаляет папку и все вложенные в неё папки вместе с их неперенесёнными изменениями показателей.
+     * В папках не должно остаться файлов.
+     * <p>
+     * Изменения, которые в этот момент переносит {@link #foldDeltas(int)}, пропускаются: перенос ждёт блокировки
+     * строк папок, взятой {@link #lockSubtree(String)}, и после удаления строк не находит их.
+     * </p>
+     *
+     * @param path путь папки
+     */
+    public void deleteSubtree(String path) {
+        jdbcTemplate.update("DELETE FROM folder_size_deltas WHERE id IN (SELECT id FROM folder_size_deltas " +
+                "WHERE " + SUBTREE + " FOR UPDATE SKIP LOCKED)", path, path, path);
+        jdbcTemplate.update("DELETE FROM folders WHERE " + SUBTREE, path, path, path);
+    }
+
+    /**
+     * Переносит накопленные изменения показателей в строки папок. Строки папок обновляются в порядке путей,
+     * поэтому одновременные переносы не блокируют друг друга взаимно. Вызывается внутри транзакции.
+     *
+     * @param limit максимальное количество переносимых изменений
+     * @return количество перенесённых изменений
+     */
+    public int foldDeltas(int limit) {
+        int[] consumed = new int[1];
+        List<Object[]> totals = jdbcTemplate.query(
+                "WITH consumed AS (DELETE FROM folder_size_deltas WHERE id IN " +
+                        "(SELECT id FROM folder_size_deltas ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING path, size_delta, count_delta) " +
+                        "SELECT path, sum(size_delta), sum(count_delta), count(*) FROM consumed " +
+                        "GROUP BY path ORDER BY path",
+                (rs, rowNum) -> {
+                    consumed[0] += rs.getInt(4);
+                    return new Object[]{rs.getLong(2), rs.getLong(3), rs.getString(1)};
+                },
+                limit);
+        jdbcTemplate.batchUpdate("UPDATE folders SET size = size + ?, file_count = file_count + ? WHERE path = ?",
+                totals);
+        return consumed[0];
+    }
+}
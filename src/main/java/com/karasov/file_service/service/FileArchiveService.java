@@ -0,0 +1,20 @@
+package com.karasov.file_service.service;
+
+import com.karasov.file_service.dto.ArchiveUploadResultDto;
+import com.karasov.file_service.model.ArchiveFormat;
+import com.karasov.file_service.model.FileInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+
+public interface FileArchiveService {
+    Optional<List<FileInfo>> resolveEntries(List<String> fileNames, String prefix);
+
+    void writeZip(List<FileInfo> entries, OutputStream outputStream) throws IOException;
+
+    ArchiveUploadResultDto extractArchive(InputStream inputStream, ArchiveFormat format, String prefix)
+            throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.karasov.file_service.service;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+public interface FileContentService {
+    Optional<byte[]> readContent(String fileName);
+
+    Optional<InputStream> openContent(String fileName);
+
+    Optional<InputStream> openForDownload(String fileName);
+
+    boolean demote(String fileName);
+
+    boolean promote(String fileName);
+}
@@ -0,0 +1,10 @@
+package com.karasov.file_service.service;
+
+import com.karasov.file_service.model.FileChangeType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface FileEventService {
+    void publish(FileChangeType type, String fileName, String newFileName);
+
+    SseEmitter subscribe(String lastEventId);
+}
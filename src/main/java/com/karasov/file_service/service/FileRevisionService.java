@@ -0,0 +1,15 @@
+package com.karasov.file_service.service;
+
+import com.karasov.file_service.dto.FileRevisionDto;
+import org.springframework.core.io.InputStreamResource;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface FileRevisionService {
+    void archive(String fileName, int revision, byte[] previous, byte[] current);
+
+    Optional<List<FileRevisionDto>> getRevisions(String fileName);
+
+    Optional<InputStreamResource> getRevision(String fileName, int revision);
+}
@@ -1,18 +1,48 @@
 package com.karasov.file_service.service;
 
 import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.UploadPrecheckStatus;
 import org.springframework.core.io.InputStreamResource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Optional;
 
 public interface FileService {
     boolean saveFile(String fileName, byte[] bytes, long size);
 
+    boolean saveFile(String fileName, InputStream content, long size);
+
+    boolean saveFile(String fileName, InputStream content, long size, String sha256);
+
+    UploadPrecheckStatus precheckUpload(String fileName, long size, String sha256);
+
+    int overwriteFile(String fileName, byte[] bytes, long size);
+
+    int overwriteFile(String fileName, byte[] bytes, long size, String sha256);
+
     List<FileResponseDto> getFileList(int limit);
 
+    void writeFileList(int limit, ListingFormat format, OutputStream outputStream) throws IOException;
+
+    void writeFileStats(List<String> fileNames, OutputStream outputStream) throws IOException;
+
     boolean deleteFile(String fileName);
 
     boolean updateFileName(String oldFileName, String newFileName);
 
+    boolean copyFile(String sourceFileName, String targetFileName);
+
     InputStreamResource getFile(String fileName);
+
+    List<FileResponseDto> searchFiles(String query, SearchMode mode, String after, int limit);
+
+    Optional<FolderListingResponseDto> listFolder(String path, String after, int limit);
+
+    boolean moveFolder(String path, String newPath);
 }
@@ -0,0 +1,278 @@
+package com.karasov.file_service.service.accesslog;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал доступа: по строке JSON на запрос в файле {@code file.accesslog.path}.
+ * <p>
+ * Потоки запросов не пишут в файл и не берут блокировок. Событие записывается в заранее созданный объект
+ * кольцевого буфера из {@code file.accesslog.buffer-size} элементов: поток занимает номер ячейки атомарным
+ * сравнением с обменом, заполняет её поля и публикует номер. Отдельный поток читает опубликованные ячейки
+ * по порядку, форматирует их в буфер записи и сбрасывает его в файл, когда новых событий нет, после чего засыпает;
+ * поток запроса будит его, только если он спит. Если буфер заполнен, событие отбрасывается и учитывается
+ * в метрике {@code file.accesslog.dropped}, а запрос не ждёт записи.
+ * </p>
+ * <p>
+ * В журнал попадает доля {@code file.accesslog.sample-rate} запросов; запросы, завершившиеся ошибкой сервера,
+ * записываются всегда.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AccessLog {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.accesslog.enabled}")
+    private boolean enabled;  // Записывать журнал доступа.
+    @Value("${file.accesslog.path}")
+    private Path path;  // Файл журнала доступа.
+    @Value("${file.accesslog.buffer-size}")
+    private int bufferSize;  // Количество событий в кольцевом буфере; округляется вверх до степени двойки.
+    @Value("${file.accesslog.sample-rate}")
+    private double sampleRate;  // Доля запросов, записываемых в журнал (от 0 до 1).
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private Event[] ring;
+    private int mask;
+    private Writer output;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean idle;  // Поток записи нашёл буфер пустым и засыпает до следующего события.
+    private Counter written;
+    private Counter dropped;
+
+    /**
+     * Создаёт кольцевой буфер, открывает файл журнала и запускает поток записи.
+     *
+     * @throws IOException если не удалось открыть файл журнала
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+            ring[i].published = i - capacity;
+        }
+        mask = capacity - 1;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        output = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 1 << 16);
+
+        written = Counter.builder("file.accesslog.written")
+                .description("Количество событий, записанных в журнал доступа")
+                .register(meterRegistry);
+        dropped = Counter.builder("file.accesslog.dropped")
+                .description("Количество событий журнала доступа, отброшенных из-за заполненного буфера")
+                .register(meterRegistry);
+        Gauge.builder("file.accesslog.backlog", this, log -> log.claimed.get() - log.consumed.get())
+                .description("Количество событий в буфере журнала доступа, ещё не записанных в файл")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        writer = null;
+        output.close();
+    }
+
+    /**
+     * Проверяет, записывается ли журнал доступа.
+     *
+     * @return true, если журнал включён и открыт
+     */
+    public boolean isOpen() {
+        return writer != null;
+    }
+
+    /**
+     * Передаёт событие запроса в журнал доступа, не дожидаясь записи.
+     *
+     * @param start          время получения запроса в миллисекундах от начала эпохи
+     * @param method         HTTP-метод
+     * @param uri            путь запроса
+     * @param status         статус ответа
+     * @param durationMicros время обработки запроса в микросекундах
+     * @param user           имя пользователя или null
+     * @param remoteAddress  адрес клиента
+     * @return true, если событие принято в буфер, false, если оно не попало в выборку или буфер заполнен
+     */
+    public boolean record(long start, String method, String uri, int status, long durationMicros,
+                          String user, String remoteAddress) {
+        if (!running || !sampled(status)) {
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= ring.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Event event = ring[(int) sequence & mask];
+        event.start = start;
+        event.method = method;
+        event.uri = uri;
+        event.status = status;
+        event.durationMicros = durationMicros;
+        event.user = user;
+        event.remoteAddress = remoteAddress;
+        event.published = sequence;
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean sampled(int status) {
+        return sampleRate >= 1 || status >= 500 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private void writeLoop() {
+        StringBuilder line = new StringBuilder(256);
+        long next = 0;
+        boolean unflushed = false;
+        while (true) {
+            Event event = ring[(int) next & mask];
+            if (event.published == next) {
+                format(event, line);
+                event.method = null;
+                event.uri = null;
+                event.user = null;
+                event.remoteAddress = null;
+                consumed.lazySet(++next);
+                write(line);
+                unflushed = true;
+                continue;
+            }
+            if (unflushed) {
+                flush();
+                unflushed = false;
+            }
+            if (!running && claimed.get() == next) {
+                return;
+            }
+            idle = true;
+            // Событие, опубликованное до установки флага, видно при повторной проверке, а опубликовавший его
+            // после установки поток запроса увидит флаг и разбудит поток записи.
+            if (running && ring[(int) next & mask].published != next) {
+                LockSupport.park(this);
+            }
+            idle = false;
+        }
+    }
+
+    private void write(StringBuilder line) {
+        try {
+            output.append(line);
+            written.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            log.warn("Не удалось записать событие в журнал доступа: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        try {
+            output.flush();
+        } catch (IOException e) {
+            log.warn("Не удалось сбросить журнал доступа на диск: {}", e.getMessage());
+        }
+    }
+
+    private static void format(Event event, StringBuilder line) {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(event.start))
+                .append("\",\"method\":");
+        appendString(line, event.method);
+        line.append(",\"uri\":");
+        appendString(line, event.uri);
+        line.append(",\"status\":").append(event.status)
+                .append(",\"duration_us\":").append(event.durationMicros)
+                .append(",\"user\":");
+        appendString(line, event.user);
+        line.append(",\"remote\":");
+        appendString(line, event.remoteAddress);
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Ячейка кольцевого буфера. Поля заполняет занявший ячейку поток запроса, после чего публикует её номер
+     * в {@link #published}; запись в volatile-поле делает поля видимыми потоку записи.
+     */
+    private static final class Event {
+        private long start;
+        private String method;
+        private String uri;
+        private int status;
+        private long durationMicros;
+        private String user;
+        private String remoteAddress;
+        private volatile long published;
+    }
+}
@@ -0,0 +1,100 @@
+package com.karasov.file_service.service.bulk;
+
+import java.util.List;
+
+/**
+ * Таблицы, переносимые при выгрузке и загрузке хранилища, в порядке загрузки.
+ * <p>
+ * Строки каждой таблицы выгружаются командой {@code COPY ... TO STDOUT (FORMAT BINARY)} и загружаются командой
+ * {@code COPY ... FROM STDIN (FORMAT BINARY)}. Двоичный формат не переводит содержимое в текст, но требует
+ * одинаковых типов столбцов, поэтому списки столбцов записываются в манифест архива и сверяются при загрузке.
+ * Загружаются столбцы из манифеста: столбцы, добавленные в таблицу после выгрузки архива, получают значения
+ * по умолчанию, поэтому архивы прежних версий схемы остаются загружаемыми.
+ * </p>
+ * <p>
+ * Уровень хранения и статистика обращений не переносятся: после загрузки все файлы находятся на горячем уровне.
+ * Из очереди обработки переносятся невыполненные задания; выполняющиеся задания загружаются как ожидающие.
+ * </p>
+ */
+public enum BulkTable {
+    FILES("files", "name",
+            "name, size, mime_type, checksum, revision, created_at, modified_at", null,
+            "name, size, mime_type, checksum, revision, created_at, modified_at"),
+    FILE_CONTENTS("file_contents", "name",
+            "name, bytes", null,
+            "name, bytes"),
+    FILE_TEXTS("file_texts", "file_name",
+            "file_name, content", null,
+            "file_name, content"),
+    FILE_REVISIONS("file_revisions", "file_name",
+            "file_name, revision, size, delta, content, archived_at", null,
+            "file_name, revision, size, delta, content, archived_at"),
+    FILE_PROCESSING_JOBS("file_processing_jobs", "file_name",
+            "file_name, stage, CAST('PENDING' AS VARCHAR)", "status <> 'FAILED'",
+            "file_name, stage, status");
+
+    private final String tableName;
+    private final String keyColumn;
+    private final String exportColumns;
+    private final String exportFilter;
+    private final String importColumns;
+
+    BulkTable(String tableName, String keyColumn, String exportColumns, String exportFilter, String importColumns) {
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.exportColumns = exportColumns;
+        this.exportFilter = exportFilter;
+        this.importColumns = importColumns;
+    }
+
+    /**
+     * Команда выгрузки строк таблицы, ключ которых удовлетворяет условию диапазона.
+     *
+     * @param range диапазон имён
+     * @return команда COPY
+     */
+    public String exportCommand(KeyRange range) {
+        String condition = range.condition(keyColumn);
+        if (exportFilter != null) {
+            condition = exportFilter + " AND " + condition;
+        }
+        return "COPY (SELECT " + exportColumns + " FROM " + tableName + " WHERE " + condition + ") " +
+                "TO STDOUT (FORMAT BINARY)";
+    }
+
+    /**
+     * Команда загрузки строк таблицы, выгруженных с указанными столбцами.
+     *
+     * @param archiveColumns столбцы из манифеста архива в порядке выгрузки
+     * @return команда COPY
+     * @throws IllegalStateException если в архиве есть столбцы, которых нет в текущей схеме
+     */
+    public String importCommand(List<String> archiveColumns) {
+        List<String> unknown = archiveColumns.stream()
+                .filter(column -> !columns().contains(column))
+                .toList();
+        if (archiveColumns.isEmpty() || !unknown.isEmpty()) {
+            throw new IllegalStateException("Столбцы таблицы " + tableName + " архива не совпадают с текущей схемой: "
+                    + archiveColumns);
+        }
+        return "COPY " + tableName + " (" + String.join(", ", archiveColumns) + ") FROM STDIN (FORMAT BINARY)";
+    }
+
+    /**
+     * Имя файла архива с выгруженными строками таблицы.
+     *
+     * @return имя файла
+     */
+    public String fileName() {
+        return tableName + ".copy";
+    }
+
+    /**
+     * Столбцы, загружаемые в таблицу; записываются в манифест для проверки совместимости архива.
+     *
+     * @return список столбцов
+     */
+    public List<String> columns() {
+        return List.of(importColumns.split(", "));
+    }
+}
@@ -0,0 +1,61 @@
+package com.karasov.file_service.service.bulk;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Запуск приложения в режиме выгрузки или загрузки хранилища.
+ * <p>
+ * Режим включается свойством {@code file.bulk.command} ({@code export} или {@code import}); каталог архива
+ * задаётся свойством {@code file.bulk.archive}. Профиль {@code bulk} отключает веб-сервер и фоновые задачи:
+ * </p>
+ * <pre>
+ * java -jar file_service.jar --spring.profiles.active=bulk --file.bulk.command=export --file.bulk.archive=/backup/files
+ * </pre>
+ * <p>
+ * После выполнения команды приложение завершается с кодом 0 или 1 при ошибке.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkTransferRunner implements ApplicationRunner {
+
+    private final BulkTransferService bulkTransferService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${file.bulk.command}")
+    private String command;  // Команда: export, import или пусто для обычного запуска.
+    @Value("${file.bulk.archive}")
+    private String archive;  // Каталог архива.
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (command.isEmpty()) {
+            return;
+        }
+        int status = 0;
+        try {
+            Path directory = Path.of(archive);
+            switch (command) {
+                case "export" -> bulkTransferService.exportArchive(directory);
+                case "import" -> bulkTransferService.importArchive(directory);
+                default -> throw new IllegalArgumentException("Неизвестная команда: " + command);
+            }
+            log.info("Команда {} выполнена: {}", command, directory.toAbsolutePath());
+        } catch (Exception e) {
+            log.error("Команда {} не выполнена", command, e);
+            status = 1;
+        }
+        int exitCode = status;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
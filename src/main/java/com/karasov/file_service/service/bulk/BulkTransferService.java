@@ -0,0 +1,423 @@
+package com.karasov.file_service.service.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.file_service.service.FileContentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выгрузка всего хранилища файлов в переносимый архив и загрузка из него командой {@code COPY} PostgreSQL.
+ * <p>
+ * Архив - каталог с манифестом {@code manifest.json} и подкаталогами {@code range-NNNN}, по одному на диапазон
+ * имён файлов. Границы {@code file.bulk.ranges} диапазонов выбираются по распределению имён при первой выгрузке
+ * и сохраняются в манифесте. Диапазоны обрабатываются параллельно {@code file.bulk.workers} потоками,
+ * у каждого потока своё соединение с базой данных; данные передаются потоком, и объём памяти не зависит
+ * от размера хранилища.
+ * </p>
+ * <p>
+ * Все потоки выгрузки читают один снимок базы данных ({@code pg_export_snapshot}), поэтому архив согласован.
+ * Подкаталог диапазона появляется атомарным переименованием после записи всех его файлов; повторная выгрузка
+ * в тот же каталог пропускает готовые диапазоны (они выгружены из снимка прежнего запуска). Содержимое холодного
+ * уровня и сегментного хранилища записывается в {@code file_contents-local.copy} в том же двоичном формате.
+ * </p>
+ * <p>
+ * Каждый диапазон загружается одной транзакцией. Повторная загрузка пропускает диапазоны, в которых уже есть
+ * столько файлов, сколько выгружено, и останавливается, если в диапазоне есть другие файлы. Строки загружаются
+ * со столбцами из манифеста, поэтому архив, выгруженный до добавления столбцов в схему, загружается
+ * со значениями новых столбцов по умолчанию.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkTransferService {
+
+    static final int FORMAT_VERSION = 1;
+    private static final String MANIFEST = "manifest.json";
+    private static final String SUMMARY = "range.json";
+    private static final String LOCAL_CONTENTS = "file_contents-local.copy";
+
+    private final DataSource dataSource;
+    private final FileContentService fileContentService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${file.bulk.workers}")
+    private int workers;  // Количество параллельно обрабатываемых диапазонов.
+    @Value("${file.bulk.ranges}")
+    private int ranges;  // Количество диапазонов имён, на которые делится хранилище при выгрузке.
+    @Value("${file.bulk.buffer-size}")
+    private int bufferSize;  // Размер буфера чтения и записи файлов архива в байтах.
+    @Value("${file.bulk.progress-interval}")
+    private long progressInterval;  // Интервал вывода прогресса в журнал в миллисекундах.
+
+    /**
+     * Выгружает хранилище в архив, продолжая прерванную выгрузку в тот же каталог.
+     *
+     * @param archive каталог архива
+     * @throws Exception если выгрузка не удалась; готовые диапазоны остаются в архиве
+     */
+    public void exportArchive(Path archive) throws Exception {
+        Files.createDirectories(archive);
+        try (Connection coordinator = dataSource.getConnection()) {
+            coordinator.setAutoCommit(false);
+            coordinator.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            if (!"on".equals(queryString(coordinator, "SHOW standard_conforming_strings"))) {
+                throw new IllegalStateException("Для выгрузки нужен параметр standard_conforming_strings = on");
+            }
+            String snapshot = queryString(coordinator, "SELECT pg_export_snapshot()");
+            Manifest manifest = Files.exists(archive.resolve(MANIFEST))
+                    ? readManifest(archive)
+                    : writeManifest(archive, createManifest(coordinator));
+
+            List<KeyRange> pending = manifest.keyRanges().stream()
+                    .filter(range -> !Files.isDirectory(rangeDirectory(archive, range)))
+                    .toList();
+            try (Progress progress = new Progress("Выгрузка", manifest.keyRanges().size(), pending.size())) {
+                runParallel(pending, range -> exportRange(archive, range, snapshot, progress));
+            }
+            coordinator.commit();
+        }
+    }
+
+    /**
+     * Загружает архив в базу данных, пропуская уже загруженные диапазоны.
+     *
+     * @param archive каталог архива
+     * @throws Exception если загрузка не удалась; загруженные диапазоны остаются в базе данных
+     */
+    public void importArchive(Path archive) throws Exception {
+        Manifest manifest = readManifest(archive);
+        Map<BulkTable, String> commands = new EnumMap<>(BulkTable.class);
+        for (BulkTable table : BulkTable.values()) {
+            List<String> columns = manifest.columns().get(table.fileName());
+            if (columns == null) {
+                throw new IllegalStateException("В манифесте архива нет столбцов таблицы " + table.fileName());
+            }
+            commands.put(table, table.importCommand(columns));
+        }
+        for (KeyRange range : manifest.keyRanges()) {
+            if (!Files.isDirectory(rangeDirectory(archive, range))) {
+                throw new IllegalStateException("Архив выгружен не полностью: нет диапазона " + range.index());
+            }
+        }
+        List<KeyRange> all = manifest.keyRanges();
+        try (Progress progress = new Progress("Загрузка", all.size(), all.size())) {
+            runParallel(all, range -> importRange(archive, range, commands, progress));
+        }
+    }
+
+    private void exportRange(Path archive, KeyRange range, String snapshot, Progress progress) throws Exception {
+        Path target = rangeDirectory(archive, range);
+        Path temporary = archive.resolve(target.getFileName() + ".part");
+        FileSystemUtils.deleteRecursively(temporary);
+        Files.createDirectories(temporary);
+
+        long files = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+            }
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            for (BulkTable table : BulkTable.values()) {
+                try (OutputStream out = openForWrite(temporary.resolve(table.fileName()), progress)) {
+                    long rows = copyManager.copyOut(table.exportCommand(range), out);
+                    if (table == BulkTable.FILES) {
+                        files = rows;
+                    }
+                }
+            }
+            exportLocalContents(connection, range, temporary.resolve(LOCAL_CONTENTS), progress);
+            connection.commit();
+        }
+        objectMapper.writeValue(temporary.resolve(SUMMARY).toFile(), new RangeSummary(range.index(), files));
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        progress.rangeDone(files);
+    }
+
+    /**
+     * Записывает содержимое файлов, хранящееся вне базы данных, в формате COPY таблицы {@code file_contents}.
+     */
+    private void exportLocalContents(Connection connection, KeyRange range, Path file, Progress progress)
+            throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name, size FROM files WHERE tier <> 'HOT' AND " + range.condition("name") + " ORDER BY name");
+             CopyBinaryWriter writer = new CopyBinaryWriter(openForWrite(file, progress))) {
+            statement.setFetchSize(1000);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    try (InputStream content = fileContentService.openContent(name)
+                            .orElseThrow(() -> new IOException("Содержимое файла не найдено: " + name))) {
+                        writer.writeRow(name, content, rs.getLong(2));
+                    }
+                }
+            }
+        }
+    }
+
+    private void importRange(Path archive, KeyRange range, Map<BulkTable, String> commands, Progress progress)
+            throws Exception {
+        Path directory = rangeDirectory(archive, range);
+        RangeSummary summary = objectMapper.readValue(directory.resolve(SUMMARY).toFile(), RangeSummary.class);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            long present;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(
+                         "SELECT count(*) FROM files WHERE " + range.condition("name"))) {
+                rs.next();
+                present = rs.getLong(1);
+            }
+            if (present > 0 && present == summary.files()) {
+                log.info("Диапазон {} уже загружен, пропускается", range.index());
+                connection.rollback();
+                progress.rangeDone(0);
+                return;
+            }
+            if (present > 0) {
+                throw new IllegalStateException("В диапазоне " + range.index() + " уже есть " + present
+                        + " файлов, в архиве " + summary.files());
+            }
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            for (BulkTable table : BulkTable.values()) {
+                try (InputStream in = openForRead(directory.resolve(table.fileName()), progress)) {
+                    copyManager.copyIn(commands.get(table), in);
+                }
+                if (table == BulkTable.FILE_CONTENTS) {
+                    try (InputStream in = openForRead(directory.resolve(LOCAL_CONTENTS), progress)) {
+                        copyManager.copyIn(commands.get(table), in);
+                    }
+                }
+            }
+            connection.commit();
+        }
+        progress.rangeDone(summary.files());
+    }
+
+    private Manifest createManifest(Connection connection) throws SQLException {
+        Double[] fractions = new Double[Math.max(ranges, 1) - 1];
+        for (int i = 0; i < fractions.length; i++) {
+            fractions[i] = (i + 1) / (double) ranges;
+        }
+        List<String> boundaries = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT percentile_disc(?) WITHIN GROUP (ORDER BY name) FROM files")) {
+            statement.setArray(1, connection.createArrayOf("float8", fractions));
+            try (ResultSet rs = statement.executeQuery()) {
+                Array array = rs.next() ? rs.getArray(1) : null;
+                if (array != null) {
+                    Arrays.stream((Object[]) array.getArray())
+                            .filter(Objects::nonNull)
+                            .map(String.class::cast)
+                            .distinct()
+                            .forEach(boundaries::add);
+                }
+            }
+        }
+        return new Manifest(FORMAT_VERSION, Instant.now(), boundaries, currentColumns());
+    }
+
+    private Manifest writeManifest(Path archive, Manifest manifest) throws IOException {
+        Path temporary = archive.resolve(MANIFEST + ".part");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temporary.toFile(), manifest);
+        Files.move(temporary, archive.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+        return manifest;
+    }
+
+    private Manifest readManifest(Path archive) throws IOException {
+        Manifest manifest = objectMapper.readValue(archive.resolve(MANIFEST).toFile(), Manifest.class);
+        if (manifest.version() != FORMAT_VERSION) {
+            throw new IllegalStateException("Неподдерживаемая версия архива: " + manifest.version());
+        }
+        return manifest;
+    }
+
+    private static Map<String, List<String>> currentColumns() {
+        Map<String, List<String>> columns = new LinkedHashMap<>();
+        for (BulkTable table : BulkTable.values()) {
+            columns.put(table.fileName(), table.columns());
+        }
+        return columns;
+    }
+
+    private static Path rangeDirectory(Path archive, KeyRange range) {
+        return archive.resolve(String.format("range-%04d", range.index()));
+    }
+
+    private static String queryString(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private OutputStream openForWrite(Path file, Progress progress) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), bufferSize);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                progress.bytes.addAndGet(len);
+            }
+        };
+    }
+
+    private InputStream openForRead(Path file, Progress progress) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), bufferSize);
+        return new FilterInputStream(in) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, len);
+                if (read > 0) {
+                    progress.bytes.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Обрабатывает диапазоны в пуле потоков; при первой ошибке остальные диапазоны отменяются.
+     */
+    private void runParallel(List<KeyRange> keyRanges, RangeTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(workers, 1));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (KeyRange range : keyRanges) {
+                futures.add(executor.submit(() -> {
+                    task.run(range);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeTask {
+        void run(KeyRange range) throws Exception;
+    }
+
+    /**
+     * Манифест архива.
+     *
+     * @param version    версия формата архива
+     * @param createdAt  время создания архива
+     * @param boundaries границы диапазонов имён в порядке возрастания
+     * @param columns    столбцы таблиц по именам файлов диапазона
+     */
+    record Manifest(int version, Instant createdAt, List<String> boundaries, Map<String, List<String>> columns) {
+
+        List<KeyRange> keyRanges() {
+            List<KeyRange> keyRanges = new ArrayList<>();
+            for (int i = 0; i <= boundaries.size(); i++) {
+                keyRanges.add(new KeyRange(i,
+                        i == 0 ? null : boundaries.get(i - 1),
+                        i == boundaries.size() ? null : boundaries.get(i)));
+            }
+            return keyRanges;
+        }
+    }
+
+    /**
+     * Итог выгрузки диапазона; используется при загрузке для проверки и пропуска загруженных диапазонов.
+     *
+     * @param index номер диапазона
+     * @param files количество файлов в диапазоне
+     */
+    record RangeSummary(int index, long files) {
+    }
+
+    /**
+     * Прогресс выгрузки или загрузки, периодически выводимый в журнал.
+     */
+    private final class Progress implements AutoCloseable {
+        private final String operation;
+        private final int total;
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final long start = System.nanoTime();
+        private final ScheduledExecutorService reporter;
+
+        private Progress(String operation, int total, int pending) {
+            this.operation = operation;
+            this.total = total;
+            this.done.set(total - pending);
+            this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "bulk-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleWithFixedDelay(this::report, progressInterval, progressInterval, TimeUnit.MILLISECONDS);
+        }
+
+        private void rangeDone(long rangeFiles) {
+            done.incrementAndGet();
+            files.addAndGet(rangeFiles);
+        }
+
+        private void report() {
+            double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-3);
+            double megabytes = bytes.get() / 1048576.0;
+            log.info(String.format("%s: диапазонов %d/%d, файлов %d, %.1f МБ, %.1f МБ/с, %.0f с",
+                    operation, done.get(), total, files.get(), megabytes, megabytes / seconds, seconds));
+        }
+
+        @Override
+        public void close() {
+            reporter.shutdownNow();
+            report();
+        }
+    }
+}
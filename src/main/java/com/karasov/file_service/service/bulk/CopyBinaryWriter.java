@@ -0,0 +1,78 @@
+package com.karasov.file_service.service.bulk;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись строк {@code (name, bytes)} в двоичном формате команды {@code COPY} PostgreSQL.
+ * <p>
+ * Используется для содержимого файлов, которое хранится вне базы данных (холодный уровень и сегментное
+ * хранилище): такой файл загружается в {@code file_contents} той же командой {@code COPY}, что и выгрузка
+ * из базы данных. Содержимое передаётся потоком, в памяти находится только буфер.
+ * </p>
+ */
+public class CopyBinaryWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int TRANSFER_BUFFER = 64 * 1024;
+
+    private final DataOutputStream out;
+
+    /**
+     * Создаёт запись и пишет заголовок формата.
+     *
+     * @param out поток, в который записываются строки; закрывается вместе с записью
+     * @throws IOException если не удалось записать заголовок
+     */
+    public CopyBinaryWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.write(SIGNATURE);
+        this.out.writeInt(0);  // Флаги: без OID.
+        this.out.writeInt(0);  // Длина расширения заголовка.
+    }
+
+    /**
+     * Записывает строку с именем и содержимым файла.
+     *
+     * @param name    имя файла
+     * @param content поток с содержимым, из которого читается ровно {@code size} байт
+     * @param size    размер содержимого
+     * @throws IOException если поток закончился раньше или не удалось записать строку
+     */
+    public void writeRow(String name, InputStream content, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Файл слишком велик для формата COPY: " + name);
+        }
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(2);
+        out.writeInt(encodedName.length);
+        out.write(encodedName);
+        out.writeInt((int) size);
+        byte[] buffer = new byte[(int) Math.min(TRANSFER_BUFFER, Math.max(size, 1))];
+        long remaining = size;
+        while (remaining > 0) {
+            int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("Содержимое файла короче заявленного размера: " + name);
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Записывает признак конца данных и закрывает поток.
+     *
+     * @throws IOException если не удалось записать признак конца данных
+     */
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            out.writeShort(-1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.karasov.file_service.service.bulk;
+
+/**
+ * Диапазон имён файлов {@code [from, to)}; отсутствующая граница означает начало или конец списка.
+ *
+ * @param index номер диапазона
+ * @param from  нижняя граница включительно или null
+ * @param to    верхняя граница не включительно или null
+ */
+public record KeyRange(int index, String from, String to) {
+
+    /**
+     * Условие SQL, выбирающее строки диапазона по столбцу с именем файла.
+     * Границы подставляются литералами, потому что команда COPY не принимает параметров.
+     *
+     * @param column столбец с именем файла
+     * @return условие SQL
+     */
+    public String condition(String column) {
+        if (from == null && to == null) {
+            return "TRUE";
+        }
+        if (from == null) {
+            return column + " < " + literal(to);
+        }
+        if (to == null) {
+            return column + " >= " + literal(from);
+        }
+        return column + " >= " + literal(from) + " AND " + column + " < " + literal(to);
+    }
+
+    private static String literal(String value) {
+        // Экранирование рассчитано на standard_conforming_strings = on; это проверяется перед выгрузкой.
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,45 @@
+package com.karasov.file_service.service.folder;
+
+import com.karasov.file_service.repository.FolderRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Фоновый перенос изменений показателей папок в строки папок (см. {@link FolderRepository}).
+ * <p>
+ * Изменения переносятся пачками по {@code file.folder.fold-batch-size}, каждая пачка - в отдельной транзакции,
+ * пока в шарде не останется изменений. Показатели папок верны и до переноса: чтение складывает их
+ * с неперенесёнными изменениями, а перенос лишь не даёт этим изменениям накапливаться.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FolderTotalsJob {
+
+    private final FolderRepository folderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.folder.fold-batch-size}")
+    private int batchSize;  // Максимальное количество изменений, переносимых одной транзакцией.
+
+    @Scheduled(fixedDelayString = "${file.folder.fold-interval}")
+    public void run() {
+        shardRouter.forEachShard(shard -> {
+            try {
+                Integer folded;
+                do {
+                    folded = transactionTemplate.execute(status -> folderRepository.foldDeltas(batchSize));
+                } while (folded != null && folded >= batchSize && !Thread.currentThread().isInterrupted());
+            } catch (RuntimeException e) {
+                log.warn("Ошибка переноса показателей папок в шарде {}: {}", shard, e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,462 @@
+package com.karasov.file_service.service.impl;
+
+import com.karasov.file_service.dto.ArchiveEntryResultDto;
+import com.karasov.file_service.dto.ArchiveUploadResultDto;
+import com.karasov.file_service.model.ArchiveEntryStatus;
+import com.karasov.file_service.model.ArchiveFormat;
+import com.karasov.file_service.model.FileInfo;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileArchiveService;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.FileService;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Сервис потоковой выдачи набора файлов одним ZIP-архивом и распаковки загруженных архивов.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileArchiveServiceImpl implements FileArchiveService {
+
+    /**
+     * Типы содержимого, которые уже сжаты и повторно не сжимаются.
+     */
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/x-7z-compressed", "application/vnd.rar", "application/x-rar-compressed",
+            "application/zstd", "application/java-archive", "application/pdf",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation"
+    );
+
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+
+    private final FileRepository fileRepository;
+    private final FileContentService fileContentService;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.archive.max-entries}")
+    private int maxEntries;  // Максимальное количество файлов в одном архиве.
+    @Value("${file.archive.upload.max-entries}")
+    private int uploadMaxEntries;  // Максимальное количество записей в загружаемом архиве.
+    @Value("${file.archive.upload.max-entry-size}")
+    private long uploadMaxEntrySize;  // Максимальный размер одной распакованной записи.
+    @Value("${file.archive.upload.max-expanded-size}")
+    private long uploadMaxExpandedSize;  // Максимальный суммарный размер распакованных записей.
+    @Value("${file.archive.upload.batch-size}")
+    private int uploadBatchSize;  // Количество записей, фиксируемых одной транзакцией.
+
+    /**
+     * Определяет состав архива.
+     * Если файлы распределены по шардам, файлы ищутся во всех шардах и упорядочиваются по имени.
+     *
+     * @param fileNames список имён файлов (может быть пустым)
+     * @param prefix    префикс имён файлов (может быть пустым)
+     * @return метаданные файлов архива в порядке имён, либо пустое значение, если какой-либо из перечисленных
+     * файлов не найден или количество файлов превышает допустимое
+     */
+    @Override
+    public Optional<List<FileInfo>> resolveEntries(List<String> fileNames, String prefix) {
+        List<FileInfo> entries = new ArrayList<>();
+        if (!fileNames.isEmpty()) {
+            Set<String> uniqueNames = new LinkedHashSet<>(fileNames);
+            if (uniqueNames.size() > maxEntries) {
+                return Optional.empty();
+            }
+            Map<String, FileInfo> found = new LinkedHashMap<>();
+            shardRouter.forEachShard(shard -> fileRepository.findInfosByNames(uniqueNames)
+                    .forEach(info -> found.putIfAbsent(info.getName(), info)));
+            if (found.size() != uniqueNames.size()) {
+                return Optional.empty();
+            }
+            entries.addAll(sortedByName(found.values()));
+        }
+        if (prefix != null && !prefix.isEmpty()) {
+            String pattern = SearchMode.PREFIX.toLikePattern(prefix);
+            List<FileInfo> matched = new ArrayList<>();
+            for (String shard : shardRouter.shards()) {
+                int limit = maxEntries - entries.size();
+                if (!shardRouter.onShard(shard, () -> searchByPrefix(pattern, limit, matched))) {
+                    return Optional.empty();
+                }
+            }
+            entries.addAll(sortedByName(matched));
+        }
+        Map<String, FileInfo> byName = new LinkedHashMap<>();
+        entries.forEach(entry -> byName.putIfAbsent(entry.getName(), entry));
+        return Optional.of(List.copyOf(byName.values()));
+    }
+
+    /**
+     * Добавляет к списку файлы шарда текущего потока, имена которых соответствуют шаблону.
+     *
+     * @return false, если всего найдено больше {@code limit} файлов
+     */
+    private boolean searchByPrefix(String pattern, int limit, List<FileInfo> matched) {
+        String after = "";
+        List<FileInfo> page;
+        do {
+            page = fileRepository.searchByNamePattern(pattern, after, limit + 1);
+            matched.addAll(page);
+            if (matched.size() > limit) {
+                return false;
+            }
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getName();
+        } while (page.size() == limit + 1);
+        return true;
+    }
+
+    private List<FileInfo> sortedByName(Collection<FileInfo> infos) {
+        List<FileInfo> sorted = new ArrayList<>(infos);
+        if (shardRouter.isEnabled()) {
+            sorted.sort(Comparator.comparing(FileInfo::getName, ShardRouter.NAME_ORDER));
+        }
+        return sorted;
+    }
+
+    /**
+     * Записывает ZIP-архив в выходной поток.
+     * <p>
+     * Файлы читаются из базы данных последовательно, фрагментами размером {@code file.archive.chunk-size},
+     * и сразу записываются в архив. Размер и контрольная сумма записи передаются в дескрипторе данных
+     * после её содержимого, поэтому ни архив, ни отдельная запись не накапливаются в памяти.
+     * Уже сжатое содержимое записывается без сжатия.
+     * </p>
+     *
+     * @param entries      метаданные файлов архива
+     * @param outputStream поток, в который записывается архив
+     * @throws IOException если файл был удалён во время записи архива или произошла ошибка ввода-вывода
+     */
+    @Override
+    public void writeZip(List<FileInfo> entries, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        for (FileInfo entry : entries) {
+            zip.setLevel(isCompressed(entry) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(toEntryName(entry.getName())));
+            String shard = shardRouter.readShard(entry.getName());
+            try (InputStream content = shardRouter.onShard(shard, () -> fileContentService.openContent(entry.getName()))
+                    .orElseThrow(() -> new IOException("Файл удалён во время записи архива: " + entry.getName()))) {
+                content.transferTo(zip);
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Распаковывает архив из потока и сохраняет его записи как отдельные файлы.
+     * <p>
+     * Записи читаются по одной и передаются в базу данных потоком через {@link FileService#saveFile(String,
+     * InputStream, long)}, поэтому ни архив, ни запись не загружаются в память целиком. Записи ZIP, размер которых
+     * не указан в локальном заголовке, предварительно копируются во временный файл. Записи фиксируются пачками
+     * по {@code file.archive.upload.batch-size}; ошибка внутри пачки откатывает её целиком и прекращает распаковку.
+     * Если файлы распределены по шардам, каждая запись фиксируется отдельно: транзакция работает с одним шардом.
+     * Количество записей, размер записи и суммарный размер распакованных данных ограничены, причём учитываются
+     * фактически прочитанные байты, а не размеры, заявленные в архиве. Данные пропускаемых записей (отклонённых,
+     * уже существующих, каталогов) тоже распаковываются при переходе к следующей записи, поэтому они дочитываются
+     * через то же ограничение и учитываются в суммарном размере; запись длиннее заявленного размера прекращает
+     * распаковку.
+     * </p>
+     *
+     * @param inputStream поток с содержимым архива
+     * @param format      формат архива
+     * @param prefix      префикс, добавляемый к именам записей
+     * @return результат распаковки каждой записи
+     * @throws IOException если поток не является архивом указанного формата
+     */
+    @Override
+    public ArchiveUploadResultDto extractArchive(InputStream inputStream, ArchiveFormat format, String prefix)
+            throws IOException {
+        List<ArchiveEntryResultDto> results = new ArrayList<>();
+        ExtractionState state = new ExtractionState();
+        try (ArchiveInputStream<? extends ArchiveEntry> archive = openArchive(inputStream, format)) {
+            while (!state.finished) {
+                int batchStart = results.size();
+                try {
+                    transactionTemplate.executeWithoutResult(status -> extractBatch(archive, prefix, results, state));
+                } catch (RuntimeException e) {
+                    log.warn("Ошибка распаковки архива, пачка записей отменена: {}", e.getMessage());
+                    for (int i = batchStart; i < results.size(); i++) {
+                        ArchiveEntryResultDto result = results.get(i);
+                        if (result.status() == ArchiveEntryStatus.CREATED) {
+                            results.set(i, new ArchiveEntryResultDto(result.filename(), result.size(),
+                                    ArchiveEntryStatus.FAILED));
+                        }
+                    }
+                    if (state.current != null) {
+                        results.add(new ArchiveEntryResultDto(state.current, 0, ArchiveEntryStatus.FAILED));
+                    }
+                    state.finished = true;
+                }
+            }
+        }
+
+        int created = 0;
+        int skipped = 0;
+        int failed = 0;
+        for (ArchiveEntryResultDto result : results) {
+            switch (result.status()) {
+                case CREATED -> created++;
+                case ALREADY_EXISTS, REJECTED -> skipped++;
+                case FAILED -> failed++;
+            }
+        }
+        return new ArchiveUploadResultDto(created, skipped, failed, results);
+    }
+
+    private void extractBatch(ArchiveInputStream<? extends ArchiveEntry> archive,
+                              String prefix,
+                              List<ArchiveEntryResultDto> results,
+                              ExtractionState state) {
+        int processed = 0;
+        int batchSize = shardRouter.isEnabled() ? 1 : uploadBatchSize;
+        try {
+            while (processed < batchSize) {
+                ArchiveEntry entry = archive.getNextEntry();
+                if (entry == null) {
+                    state.finished = true;
+                    return;
+                }
+                if (entry.isDirectory()) {
+                    if (++state.entries > uploadMaxEntries || !skipEntry(archive, state)) {
+                        state.finished = true;
+                        results.add(new ArchiveEntryResultDto(entry.getName(), 0, ArchiveEntryStatus.FAILED));
+                        return;
+                    }
+                    continue;
+                }
+                processed++;
+                state.current = entry.getName();
+                results.add(extractEntry(archive, entry, prefix, state));
+                state.current = null;
+                if (state.finished) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ArchiveEntryResultDto extractEntry(ArchiveInputStream<? extends ArchiveEntry> archive,
+                                               ArchiveEntry entry,
+                                               String prefix,
+                                               ExtractionState state) throws IOException {
+        String fileName = toFileName(prefix, entry.getName());
+        String reportedName = fileName != null ? fileName : entry.getName();
+        long declaredSize = entry.getSize();
+        long remaining = uploadMaxExpandedSize - state.expandedSize;
+
+        if (++state.entries > uploadMaxEntries) {
+            state.finished = true;
+            return new ArchiveEntryResultDto(reportedName, Math.max(declaredSize, 0), ArchiveEntryStatus.FAILED);
+        }
+        if (declaredSize > remaining) {
+            state.finished = true;
+            return new ArchiveEntryResultDto(reportedName, declaredSize, ArchiveEntryStatus.FAILED);
+        }
+        if (fileName == null || declaredSize > uploadMaxEntrySize) {
+            return skipEntry(archive, state)
+                    ? new ArchiveEntryResultDto(reportedName, Math.max(declaredSize, 0), ArchiveEntryStatus.REJECTED)
+                    : new ArchiveEntryResultDto(reportedName, Math.max(declaredSize, 0), ArchiveEntryStatus.FAILED);
+        }
+        if (shardRouter.onShard(shardRouter.shardFor(fileName), () -> fileRepository.existsById(fileName))) {
+            return skipEntry(archive, state)
+                    ? new ArchiveEntryResultDto(fileName, Math.max(declaredSize, 0), ArchiveEntryStatus.ALREADY_EXISTS)
+                    : new ArchiveEntryResultDto(fileName, Math.max(declaredSize, 0), ArchiveEntryStatus.FAILED);
+        }
+
+        if (declaredSize >= 0) {
+            // Заявленный размер может быть ложным: поток не отдаст больше, чем позволяют ограничения.
+            LimitedInputStream content = new LimitedInputStream(archive, declaredSize);
+            boolean saved = fileService.saveFile(fileName, content, declaredSize);
+            // Данные сверх заявленного размера приводят к ArchiveLimitException и отмене пачки.
+            content.transferTo(OutputStream.nullOutputStream());
+            state.expandedSize += declaredSize;
+            return new ArchiveEntryResultDto(fileName, declaredSize,
+                    saved ? ArchiveEntryStatus.CREATED : ArchiveEntryStatus.ALREADY_EXISTS);
+        }
+
+        Path spool = Files.createTempFile("archive-entry-", ".tmp");
+        try {
+            long limit = Math.min(uploadMaxEntrySize, remaining);
+            long size;
+            try {
+                size = Files.copy(new LimitedInputStream(archive, limit), spool, StandardCopyOption.REPLACE_EXISTING);
+            } catch (ArchiveLimitException e) {
+                state.expandedSize += limit;
+                if (limit < remaining && skipEntry(archive, state)) {
+                    return new ArchiveEntryResultDto(fileName, limit, ArchiveEntryStatus.REJECTED);
+                }
+                state.finished = true;
+                return new ArchiveEntryResultDto(fileName, limit, ArchiveEntryStatus.FAILED);
+            }
+            boolean saved;
+            try (InputStream content = Files.newInputStream(spool)) {
+                saved = fileService.saveFile(fileName, content, size);
+            }
+            state.expandedSize += size;
+            return new ArchiveEntryResultDto(fileName, size,
+                    saved ? ArchiveEntryStatus.CREATED : ArchiveEntryStatus.ALREADY_EXISTS);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * Дочитывает данные пропускаемой записи, учитывая их в суммарном размере распакованных данных.
+     *
+     * @return false, если суммарный размер превышен; распаковка архива при этом прекращается
+     */
+    private boolean skipEntry(InputStream archive, ExtractionState state) throws IOException {
+        long remaining = uploadMaxExpandedSize - state.expandedSize;
+        try {
+            state.expandedSize += new LimitedInputStream(archive, remaining).transferTo(OutputStream.nullOutputStream());
+            return true;
+        } catch (ArchiveLimitException e) {
+            state.expandedSize = uploadMaxExpandedSize;
+            state.finished = true;
+            return false;
+        }
+    }
+
+    private static ArchiveInputStream<? extends ArchiveEntry> openArchive(InputStream inputStream,
+                                                                          ArchiveFormat format) throws IOException {
+        return switch (format) {
+            case ZIP -> new ZipArchiveInputStream(inputStream, StandardCharsets.UTF_8.name(), true, true);
+            case TAR -> new TarArchiveInputStream(inputStream);
+            case TGZ -> new TarArchiveInputStream(new GZIPInputStream(inputStream));
+        };
+    }
+
+    private static String toFileName(String prefix, String entryName) {
+        String name = entryName.replace('\\', '/');
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.substring(name.startsWith("/") ? 1 : 2);
+        }
+        if (name.isEmpty() || List.of(name.split("/")).contains("..")) {
+            return null;
+        }
+        String fileName = prefix + name;
+        return fileName.length() > MAX_FILE_NAME_LENGTH ? null : fileName;
+    }
+
+    private static boolean isCompressed(FileInfo entry) {
+        String mimeType = entry.getMimeType() != null
+                ? entry.getMimeType()
+                : MediaTypeFactory.getMediaType(entry.getName()).map(MediaType::toString).orElse("");
+        return mimeType.startsWith("image/") && !mimeType.equals("image/svg+xml") && !mimeType.equals("image/bmp")
+                || mimeType.startsWith("video/")
+                || mimeType.startsWith("audio/") && !mimeType.equals("audio/wav")
+                || COMPRESSED_TYPES.contains(mimeType);
+    }
+
+    private static String toEntryName(String fileName) {
+        // Абсолютные пути в архиве распаковщики могут записать за пределы целевого каталога.
+        String name = fileName.replace('\\', '/');
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name.isEmpty() ? "_" : name;
+    }
+
+    /**
+     * Состояние распаковки архива между пачками.
+     */
+    private static final class ExtractionState {
+        private int entries;
+        private long expandedSize;
+        private boolean finished;
+        private String current;
+    }
+
+    /**
+     * Превышено ограничение на размер распакованных данных.
+     */
+    private static final class ArchiveLimitException extends IOException {
+        private ArchiveLimitException(long limit) {
+            super("Превышен допустимый размер распакованных данных: " + limit);
+        }
+    }
+
+    /**
+     * Поток, отдающий не больше заданного количества байт и не закрывающий исходный поток.
+     * Попытка прочитать больше приводит к {@link ArchiveLimitException}.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (count >= limit) {
+                // Запись закончилась ровно на границе либо продолжается за ней.
+                if (in.read() == -1) {
+                    return -1;
+                }
+                throw new ArchiveLimitException(limit);
+            }
+            int read = in.read(b, off, (int) Math.min(len, limit - count));
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // Поток архива закрывается вызывающим кодом после обработки всех записей.
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.karasov.file_service.service.impl;
+
+import com.karasov.file_service.model.FileContent;
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.model.StorageTier;
+import com.karasov.file_service.repository.FileContentRepository;
+import com.karasov.file_service.repository.FileContentStreamRepository;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.shard.ShardRouter;
+import com.karasov.file_service.service.storage.ColdLocation;
+import com.karasov.file_service.service.storage.ColdSegmentStore;
+import com.karasov.file_service.service.storage.FileAccessRecorder;
+import com.karasov.file_service.service.storage.SegmentStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Сервис доступа к содержимому файлов независимо от уровня хранения.
+ * <p>
+ * Содержимое горячего уровня читается из таблицы {@code file_contents}, холодного - из сжатых сегментных файлов
+ * {@link ColdSegmentStore}, небольших файлов - из сегментного хранилища {@link SegmentStore}. Вызывающий код
+ * получает одинаковое содержимое во всех случаях. Локальные хранилища читаются через отображение файлов в память.
+ * Здесь же выполняется перенос содержимого между уровнями; обращения к файлам учитывает {@link FileAccessRecorder}.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class FileContentServiceImpl implements FileContentService {
+
+    private final FileRepository fileRepository;
+    private final FileContentRepository fileContentRepository;
+    private final FileContentStreamRepository fileContentStreamRepository;
+    private final ColdSegmentStore coldSegmentStore;
+    private final SegmentStore segmentStore;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.content.chunk-size}")
+    private int chunkSize;  // Размер фрагмента, которым содержимое горячего уровня читается потоком.
+
+    /**
+     * Читает содержимое файла целиком.
+     *
+     * @param fileName имя файла
+     * @return содержимое файла или пустой Optional, если файл не найден
+     */
+    @Override
+    public Optional<byte[]> readContent(String fileName) {
+        Optional<FileLocation> location = fileRepository.findLocationByName(fileName);
+        if (location.isEmpty()) {
+            return Optional.empty();
+        }
+        if (location.get().getTier() == StorageTier.HOT) {
+            return fileContentRepository.findById(fileName).map(FileContent::getBytes);
+        }
+        if (location.get().getTier() == StorageTier.SEGMENT) {
+            return Optional.of(readSegment(location.get().getSegmentKey()));
+        }
+        try (InputStream content = coldSegmentStore.open(toColdLocation(location.get()))) {
+            return Optional.of(content.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Открывает поток с содержимым файла, не загружая файл в память целиком.
+     * Содержимое горячего уровня читается из базы данных фрагментами по {@code file.content.chunk-size}.
+     *
+     * @param fileName имя файла
+     * @return поток с содержимым файла или пустой Optional, если файл не найден
+     */
+    @Override
+    public Optional<InputStream> openContent(String fileName) {
+        Optional<FileLocation> location = fileRepository.findLocationByName(fileName);
+        if (location.isEmpty()) {
+            return Optional.empty();
+        }
+        if (location.get().getTier() == StorageTier.HOT) {
+            return Optional.of(new ChunkedContentInputStream(fileName));
+        }
+        try {
+            if (location.get().getTier() == StorageTier.SEGMENT) {
+                String key = location.get().getSegmentKey();
+                return Optional.of(segmentStore.open(key)
+                        .orElseThrow(() -> new IOException("Файл не найден в сегментном хранилище: " + key)));
+            }
+            return Optional.of(coldSegmentStore.open(toColdLocation(location.get())));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Открывает поток с содержимым файла для отдачи клиенту.
+     * <p>
+     * Содержимое локальных хранилищ отдаётся из отображённых в память сегментов без копирования файла в память
+     * приложения. Содержимое горячего уровня читается из базы данных целиком, как и прежде: запрос завершается
+     * до начала отдачи, и скачивание не зависит от соединения с базой данных.
+     * </p>
+     *
+     * @param fileName имя файла
+     * @return поток с содержимым файла или пустой Optional, если файл не найден
+     */
+    @Override
+    public Optional<InputStream> openForDownload(String fileName) {
+        Optional<FileLocation> location = fileRepository.findLocationByName(fileName);
+        if (location.isPresent() && location.get().getTier() != StorageTier.HOT) {
+            return openContent(fileName);
+        }
+        return readContent(fileName).map(ByteArrayInputStream::new);
+    }
+
+    /**
+     * Переносит содержимое горячего файла в холодное хранилище.
+     * Строка файла блокируется на время переноса; файл, заблокированный другой транзакцией, пропускается.
+     * Содержимое дописывается в сегмент до обновления строки, поэтому при откате транзакции оно остаётся
+     * в сегменте неиспользуемым и освобождается уплотнением холодного хранилища ({@code ColdSegmentCompactionJob}).
+     *
+     * @param fileName имя файла
+     * @return true, если содержимое перенесено
+     */
+    @Override
+    public boolean demote(String fileName) {
+        Optional<FileLocation> location = fileRepository.lockLocationByName(fileName);
+        if (location.isEmpty() || location.get().getTier() != StorageTier.HOT) {
+            return false;
+        }
+        ColdLocation cold;
+        try (InputStream content = new ChunkedContentInputStream(fileName)) {
+            cold = coldSegmentStore.append(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fileRepository.markCold(fileName, cold.segment(), cold.offset(), cold.length());
+        fileContentRepository.deleteByFileName(fileName);
+        return true;
+    }
+
+    /**
+     * Возвращает содержимое холодного файла на горячий уровень.
+     * Строка файла блокируется на время переноса; файл, заблокированный другой транзакцией, пропускается.
+     *
+     * @param fileName имя файла
+     * @return true, если содержимое перенесено
+     */
+    @Override
+    public boolean promote(String fileName) {
+        Optional<FileLocation> location = fileRepository.lockLocationByName(fileName);
+        if (location.isEmpty() || location.get().getTier() != StorageTier.COLD) {
+            return false;
+        }
+        try (InputStream content = coldSegmentStore.open(toColdLocation(location.get()))) {
+            return fileContentStreamRepository.restore(fileName, content, location.get().getSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] readSegment(String key) {
+        try {
+            return segmentStore.read(key)
+                    .orElseThrow(() -> new IOException("Файл не найден в сегментном хранилище: " + key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ColdLocation toColdLocation(FileLocation location) {
+        return new ColdLocation(location.getColdSegment(), location.getColdOffset(), location.getColdLength());
+    }
+
+    /**
+     * Поток, читающий содержимое горячего файла из базы данных фрагментами.
+     * Поток может читаться после завершения вызова, открывшего его, поэтому шард файла запоминается при открытии.
+     */
+    private final class ChunkedContentInputStream extends InputStream {
+        private final String fileName;
+        private final String shard;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private long offset;
+        private boolean finished;
+
+        private ChunkedContentInputStream(String fileName) {
+            this.fileName = fileName;
+            this.shard = shardRouter.currentShard();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int read = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, off, read);
+            position += read;
+            return read;
+        }
+
+        private boolean fill() throws IOException {
+            if (position < chunk.length) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            chunk = shardRouter.onShard(shard, () -> fileContentStreamRepository.readChunk(fileName, offset, chunkSize))
+                    .orElseThrow(() -> new IOException("Файл удалён во время чтения: " + fileName));
+            position = 0;
+            offset += chunk.length;
+            finished = chunk.length < chunkSize;
+            return chunk.length > 0;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.karasov.file_service.service.impl;
+
+import com.karasov.file_service.dto.FileChangeEventDto;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.repository.FileEventRepository;
+import com.karasov.file_service.service.FileEventService;
+import com.karasov.file_service.service.listing.FileListingIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Лента изменений файлов, передаваемая клиентам через Server-Sent Events.
+ * <p>
+ * События записываются в журнал {@link FileEventRepository} в базе данных, который получает номера событий
+ * для всех узлов приложения; номер служит идентификатором события ({@code id} в потоке SSE). Каждый узел
+ * читает новые события журнала раз в {@code file.events.poll-interval} и сразу после записи собственных
+ * событий, поэтому подписчик любого узла получает изменения, сделанные на всех узлах, в одном порядке.
+ * Журнал хранит последние {@code file.events.history-size} событий, и клиент, переподключившийся с заголовком
+ * {@code Last-Event-ID} к любому узлу, получает пропущенные события. Если они уже удалены из журнала,
+ * клиент получает событие {@code reset} и должен заново запросить список файлов. Прочитанные события
+ * применяются и к индексу списка файлов узла ({@link FileListingIndex}).
+ * </p>
+ * <p>
+ * События публикуются после фиксации транзакции, изменившей файлы, и записываются в журнал отдельным потоком
+ * пачками; событие, не записанное до аварийной остановки узла, теряется. Пока база данных недоступна,
+ * запись повторяется.
+ * </p>
+ * <p>
+ * Публикация не ждёт подписчиков: событие помещается в ограниченный буфер каждого подписчика, а отправку
+ * выполняет небольшой пул потоков, по одной задаче на подписчика с непустым буфером. Подписчик, буфер которого
+ * переполнен, отключается; при переподключении он продолжит с последнего полученного события.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileEventServiceImpl implements FileEventService {
+
+    private static final Object RESET = new Object();
+    private static final Object HEARTBEAT = new Object();
+
+    private final FileEventRepository fileEventRepository;
+    private final FileListingIndex fileListingIndex;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.events.history-size}")
+    private int historySize;  // Количество последних событий, хранимых в журнале для возобновления подписки.
+    @Value("${file.events.subscriber-buffer}")
+    private int subscriberBuffer;  // Максимальное количество неотправленных событий одного подписчика.
+    @Value("${file.events.timeout}")
+    private long timeout;  // Время жизни подписки в миллисекундах, после которого клиент переподключается.
+    @Value("${file.events.senders}")
+    private int senders;  // Количество потоков, отправляющих события подписчикам.
+    @Value("${file.events.poll-interval}")
+    private long pollInterval;  // Интервал чтения событий других узлов из журнала в миллисекундах.
+    @Value("${file.events.batch-size}")
+    private int batchSize;  // Максимальное количество событий, записываемых в журнал или читаемых из него за раз.
+
+    private final BlockingQueue<FileChangeEventDto> unsaved = new LinkedBlockingQueue<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private long delivered;  // Номер последнего события журнала, переданного подписчикам узла.
+    private ExecutorService executor;
+    private Thread poller;
+    private Counter disconnected;
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "file-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("file.events.subscribers", subscribers, Set::size)
+                .description("Количество подписчиков ленты изменений")
+                .register(meterRegistry);
+        disconnected = Counter.builder("file.events.slow.subscribers")
+                .description("Количество подписчиков, отключённых из-за переполнения буфера")
+                .register(meterRegistry);
+        delivered = fileEventRepository.findLastId();
+        poller = new Thread(this::pollLoop, "file-events-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        poller.interrupt();
+        poller.join();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        executor.shutdownNow();
+    }
+
+    /**
+     * Публикует событие изменения файла: ставит его в очередь записи в журнал.
+     *
+     * @param type        тип изменения
+     * @param fileName    имя файла
+     * @param newFileName новое имя файла при переименовании, иначе null
+     */
+    @Override
+    public void publish(FileChangeType type, String fileName, String newFileName) {
+        unsaved.add(new FileChangeEventDto(0, type, fileName, newFileName, Instant.now()));
+    }
+
+    /**
+     * Подписывает клиента на ленту изменений.
+     *
+     * @param lastEventId идентификатор последнего полученного клиентом события или null для новой подписки
+     * @return поток событий
+     */
+    @Override
+    public synchronized SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        if (lastEventId != null && !lastEventId.isEmpty()) {
+            resume(subscriber, lastEventId);
+        }
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Отправляет подписчикам комментарий, чтобы соединения не закрывались посредниками
+     * и отключившиеся клиенты обнаруживались без ожидания следующего события.
+     */
+    @Scheduled(fixedDelayString = "${file.events.heartbeat-interval}")
+    public void heartbeat() {
+        subscribers.forEach(subscriber -> subscriber.offer(HEARTBEAT));
+    }
+
+    /**
+     * Удаляет из журнала события, не входящие в последние {@code file.events.history-size}.
+     */
+    @Scheduled(fixedDelayString = "${file.events.cleanup-interval}")
+    public void cleanup() {
+        try {
+            long last = fileEventRepository.findLastId();
+            if (last > historySize) {
+                fileEventRepository.deleteUpTo(last - historySize);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось очистить журнал изменений файлов: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Записывает опубликованные события в журнал и передаёт подписчикам новые события журнала,
+     * в том числе записанные другими узлами.
+     */
+    private void pollLoop() {
+        List<FileChangeEventDto> batch = new ArrayList<>();
+        while (true) {
+            try {
+                if (batch.isEmpty()) {
+                    FileChangeEventDto event = unsaved.poll(pollInterval, TimeUnit.MILLISECONDS);
+                    if (event != null) {
+                        batch.add(event);
+                        unsaved.drainTo(batch, batchSize - 1);
+                    }
+                }
+                fileEventRepository.insertAll(batch);
+                batch.clear();
+                deliver();
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.warn("Ошибка обработки журнала изменений файлов: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        unsaved.drainTo(batch);
+        try {
+            fileEventRepository.insertAll(batch);
+        } catch (RuntimeException e) {
+            log.warn("При остановке не записано в журнал событий изменения файлов: {}", batch.size());
+        }
+    }
+
+    private synchronized void deliver() {
+        List<FileChangeEventDto> events;
+        do {
+            events = fileEventRepository.findAfter(delivered, Long.MAX_VALUE, batchSize);
+            for (FileChangeEventDto event : events) {
+                subscribers.forEach(subscriber -> subscriber.offer(event));
+                delivered = event.sequence();
+            }
+            fileListingIndex.applyEvents(events);
+        } while (events.size() == batchSize);
+    }
+
+    /**
+     * Передаёт подписчику события, пропущенные после события с заданным идентификатором,
+     * либо событие {@code reset}, если их нельзя восстановить.
+     */
+    private void resume(Subscriber subscriber, String lastEventId) {
+        long last;
+        try {
+            last = Long.parseLong(lastEventId);
+        } catch (NumberFormatException e) {
+            subscriber.offer(RESET);
+            return;
+        }
+        if (last >= delivered) {
+            if (last > fileEventRepository.findLastId()) {
+                subscriber.offer(RESET);
+            } else {
+                // Событие получено от узла, прочитавшего журнал раньше этого: повторно оно не отправляется.
+                subscriber.after = last;
+            }
+            return;
+        }
+        List<FileChangeEventDto> missed = fileEventRepository.findAfter(last, delivered, subscriberBuffer + 1);
+        if (last < fileEventRepository.findFirstId() - 1 || missed.size() > subscriberBuffer) {
+            subscriber.offer(RESET);
+        } else {
+            missed.forEach(subscriber::offer);
+        }
+    }
+
+    /**
+     * Подписчик с ограниченным буфером неотправленных событий.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(subscriberBuffer + 1);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private long after;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(Object event) {
+            if (overflowed || event instanceof FileChangeEventDto change && change.sequence() <= after) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                overflowed = true;
+                subscribers.remove(this);
+                disconnected.increment();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Object event;
+                while (!overflowed && (event = queue.poll()) != null) {
+                    send(event);
+                }
+                if (overflowed) {
+                    emitter.complete();
+                    return;
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Клиент отключился: подписка завершится и будет удалена обработчиком ошибки.
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void send(Object event) throws IOException {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else if (event == RESET) {
+                emitter.send(SseEmitter.event().name("reset").data(""));
+            } else {
+                FileChangeEventDto change = (FileChangeEventDto) event;
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(change.sequence()))
+                        .name("change")
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.karasov.file_service.service.impl;
+
+import com.karasov.file_service.dto.FileRevisionDto;
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.model.FileRevision;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.repository.FileRevisionRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.FileRevisionService;
+import com.karasov.file_service.service.revision.BinaryDelta;
+import com.karasov.file_service.service.shard.ShardRouter;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Сервис истории версий файлов.
+ * <p>
+ * Текущая версия всегда хранится целиком в таблице файлов, поэтому скачивание файла не зависит от истории.
+ * Предыдущие версии хранятся обратными дельтами: каждая версия восстанавливается из следующей, более новой.
+ * При перезаписи файла вычисляется одна дельта - от новой версии к заменяемой, уже сохранённые дельты
+ * не пересчитываются. Старая версия восстанавливается применением дельт от текущей версии назад,
+ * длина цепочки ограничена политикой хранения.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class FileRevisionServiceImpl implements FileRevisionService {
+
+    private final FileRepository fileRepository;
+    private final FileRevisionRepository fileRevisionRepository;
+    private final FileContentService fileContentService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.versions.max-revisions}")
+    private int maxRevisions;  // Количество хранимых предыдущих версий файла; 0 - история не ведётся.
+    @Value("${file.versions.max-age}")
+    private long maxAge;  // Время хранения предыдущей версии после её замены в миллисекундах; 0 - без ограничения.
+    @Value("${file.versions.max-delta-size}")
+    private int maxDeltaSize;  // Максимальный размер версии, для которой вычисляется дельта; большие хранятся целиком.
+
+    /**
+     * Сохраняет заменяемую версию файла в историю и применяет ограничение количества версий.
+     * <p>
+     * Если дельта не меньше самой версии (например, содержимое изменено полностью) или версия больше
+     * допустимого для вычисления дельты размера, версия хранится целиком.
+     * </p>
+     *
+     * @param fileName имя файла
+     * @param revision номер заменяемой версии
+     * @param previous содержимое заменяемой версии
+     * @param current  содержимое новой версии
+     */
+    @Override
+    public void archive(String fileName, int revision, byte[] previous, byte[] current) {
+        if (maxRevisions <= 0) {
+            return;
+        }
+
+        byte[] content = previous;
+        boolean delta = false;
+        if (previous.length <= maxDeltaSize && current.length <= maxDeltaSize) {
+            byte[] encoded = BinaryDelta.encode(current, previous);
+            if (encoded.length < previous.length) {
+                content = encoded;
+                delta = true;
+            }
+        }
+
+        fileRevisionRepository.save(new FileRevision(null, fileName, revision, previous.length, delta, content,
+                Instant.now()));
+        fileRevisionRepository.deleteOlderThan(fileName, revision - maxRevisions + 1);
+    }
+
+    /**
+     * Возвращает список версий файла, начиная с текущей.
+     *
+     * @param fileName имя файла
+     * @return список версий или пустой Optional, если файл не найден
+     */
+    @Override
+    public Optional<List<FileRevisionDto>> getRevisions(String fileName) {
+        Optional<FileLocation> file = fileRepository.findLocationByName(fileName);
+        Optional<Integer> current = fileRepository.findRevisionByName(fileName);
+        if (file.isEmpty() || current.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<FileRevisionDto> revisions = new ArrayList<>();
+        revisions.add(new FileRevisionDto(current.get(), file.get().getSize(), true, null));
+        fileRevisionRepository.findInfosByFileName(fileName).forEach(info -> revisions.add(
+                new FileRevisionDto(info.getRevision(), info.getSize(), false, info.getArchivedAt())));
+        return Optional.of(revisions);
+    }
+
+    /**
+     * Восстанавливает содержимое версии файла.
+     *
+     * @param fileName имя файла
+     * @param revision номер версии
+     * @return содержимое версии или пустой Optional, если файл или версия не найдены
+     */
+    @Override
+    public Optional<InputStreamResource> getRevision(String fileName, int revision) {
+        Optional<Integer> current = fileRepository.findRevisionByName(fileName);
+        if (current.isEmpty() || revision < 1 || revision > current.get()) {
+            return Optional.empty();
+        }
+        Optional<byte[]> content = fileContentService.readContent(fileName);
+        if (content.isEmpty()) {
+            return Optional.empty();
+        }
+
+        byte[] bytes = content.get();
+        if (revision < current.get()) {
+            List<FileRevision> chain = fileRevisionRepository.findChain(fileName, revision);
+            if (chain.size() != current.get() - revision) {
+                return Optional.empty();
+            }
+            for (FileRevision step : chain) {
+                bytes = step.isDelta() ? BinaryDelta.apply(bytes, step.getContent()) : step.getContent();
+            }
+        }
+        return Optional.of(new InputStreamResource(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Удаляет версии, хранящиеся дольше установленного срока.
+     * Версии файла заменяются по порядку, поэтому удаляются только самые старые звенья цепочек дельт.
+     * Версии удаляются в каждом шарде отдельной транзакцией.
+     */
+    @Scheduled(fixedDelayString = "${file.versions.cleanup-interval}")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void purgeExpired() {
+        if (maxAge <= 0) {
+            return;
+        }
+        Instant deadline = Instant.now().minusMillis(maxAge);
+        shardRouter.forEachShard(shard -> {
+            Integer deleted = transactionTemplate.execute(
+                    status -> fileRevisionRepository.deleteArchivedBefore(deadline));
+            if (deleted != null && deleted > 0) {
+                log.info("Удалено устаревших версий файлов: {}", deleted);
+            }
+        });
+    }
+}
@@ -1,34 +1,127 @@
 package com.karasov.file_service.service.impl;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.dto.FolderResponseDto;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
 import com.karasov.file_service.mapper.FileEntityMapper;
-import com.karasov.file_service.model.FileEntity;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.model.FileStat;
+import com.karasov.file_service.model.FolderInfo;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.StorageTier;
+import com.karasov.file_service.model.UploadPrecheckStatus;
+import com.karasov.file_service.repository.FileContentRepository;
+import com.karasov.file_service.repository.FileContentStreamRepository;
+import com.karasov.file_service.repository.FileListingRepository;
 import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.repository.FileStatRepository;
+import com.karasov.file_service.repository.FileTextRepository;
+import com.karasov.file_service.repository.FolderRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.FileEventService;
+import com.karasov.file_service.service.FileRevisionService;
 import com.karasov.file_service.service.FileService;
-import jakarta.transaction.Transactional;
+import com.karasov.file_service.service.listing.FileListingIndex;
+import com.karasov.file_service.service.processing.FileProcessingQueue;
+import com.karasov.file_service.service.shard.ShardRouter;
+import com.karasov.file_service.service.shard.ShardTransfer;
+import com.karasov.file_service.service.spool.UploadSpool;
+import com.karasov.file_service.service.storage.FileAccessRecorder;
+import com.karasov.file_service.service.storage.SegmentLocation;
+import com.karasov.file_service.service.storage.SegmentStore;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.UUID;
 
+import static com.karasov.file_service.mapper.FileEntityMapper.mapToFileContent;
 import static com.karasov.file_service.mapper.FileEntityMapper.mapToFileEntity;
 
 /**
  * Сервисный слой с логикой работы с файлами
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class FileServiceImpl implements FileService {
 
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+    private static final JsonFactory CBOR_FACTORY = CBORFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+    private static final JsonFactory SMILE_FACTORY = SmileFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+
     private final FileRepository fileRepository;
+    private final FileContentRepository fileContentRepository;
+    private final FileContentStreamRepository fileContentStreamRepository;
+    private final FileListingRepository fileListingRepository;
+    private final FileStatRepository fileStatRepository;
+    private final FolderRepository folderRepository;
+    private final FileContentService fileContentService;
+    private final FileTextRepository fileTextRepository;
+    private final FileProcessingQueue fileProcessingQueue;
+    private final FileRevisionService fileRevisionService;
+    private final SegmentStore segmentStore;
+    private final FileEventService fileEventService;
+    private final FileListingIndex fileListingIndex;
+    private final ShardRouter shardRouter;
+    private final ShardTransfer shardTransfer;
+    private final UploadSpool uploadSpool;
+    private final FileAccessRecorder fileAccessRecorder;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${file.search.max-limit}")
+    private int searchMaxLimit;  // Максимальный размер страницы результатов поиска.
+    @Value("${file.stat.batch-size}")
+    private int statBatchSize;  // Количество имён в одном запросе метаданных файлов.
+    @Value("${file.folder.max-limit}")
+    private int folderMaxLimit;  // Максимальное количество файлов на странице содержимого папки.
 
     /**
      * Сохраняет файл в базу данных.
+     * <p>
+     * Вместе с файлом в той же транзакции ставятся задания фоновой обработки (MIME-тип, контрольная сумма,
+     * извлечение текста), поэтому время ответа на загрузку не зависит от стоимости обработки.
+     * Содержимое файлов не больше {@code file.segment.max-file-size} сохраняется в сегментное хранилище,
+     * в базе данных остаются только метаданные.
+     * </p>
      *
      * @param fileName имя файла
      * @param bytes    содержимое файла в виде массива байтов
@@ -37,13 +130,165 @@ public class FileServiceImpl implements FileService {
      */
     @Override
     public boolean saveFile(String fileName, byte[] bytes, long size) {
+        if (segmentStore.accepts(size)) {
+            return saveToSegmentStore(fileName, bytes);
+        }
         if (fileRepository.getFileEntityByName(fileName).isPresent()) {
             return false;
         }
-        fileRepository.save(mapToFileEntity(fileName, bytes, size));
+        fileRepository.save(mapToFileEntity(fileName, size));
+        fileContentRepository.save(mapToFileContent(fileName, bytes));
+        fileProcessingQueue.enqueue(fileName);
+        afterCompletion(() -> fileListingIndex.put(fileName, size), null);
+        publishOnCommit(FileChangeType.CREATED, fileName, null);
+        return true;
+    }
+
+    /**
+     * Сохраняет файл в базу данных, передавая содержимое потоком без загрузки в память.
+     *
+     * @param fileName имя файла
+     * @param content  поток с содержимым файла
+     * @param size     размер файла; из потока будет прочитано ровно столько байт, более короткий поток
+     *                 приводит к исключению
+     * @return true, если файл успешно сохранен, false, если файл с таким именем уже существует
+     */
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size) {
+        if (segmentStore.accepts(size)) {
+            try {
+                byte[] bytes = content.readNBytes((int) size);
+                if (bytes.length < size) {
+                    throw new EOFException("Поток закончился раньше заявленного размера файла " + fileName + ": "
+                            + bytes.length + " из " + size + " байт");
+                }
+                return saveToSegmentStore(fileName, bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (!fileContentStreamRepository.insert(fileName, content, size)) {
+            return false;
+        }
+        fileProcessingQueue.enqueue(fileName);
+        afterCompletion(() -> fileListingIndex.put(fileName, size), null);
+        publishOnCommit(FileChangeType.CREATED, fileName, null);
         return true;
     }
 
+    /**
+     * Сохраняет файл, передавая содержимое потоком, и проверяет его контрольную сумму.
+     * <p>
+     * Контрольная сумма вычисляется по фактически прочитанным байтам. Если она не совпадает с заявленной,
+     * транзакция отменяется, поэтому файл с содержимым, не соответствующим заявленной сумме, не сохраняется.
+     * Совпавшая сумма сохраняется сразу, и файл становится доступен для {@link #precheckUpload} без ожидания
+     * фоновой обработки.
+     * </p>
+     *
+     * @param fileName имя файла
+     * @param content  поток с содержимым файла
+     * @param size     размер файла; из потока будет прочитано ровно столько байт
+     * @param sha256   заявленная контрольная сумма SHA-256 содержимого в шестнадцатеричном виде
+     * @return true, если файл успешно сохранен, false, если файл с таким именем уже существует
+     * @throws InvalidInputDataException если контрольная сумма содержимого не совпадает с заявленной
+     */
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size, String sha256) {
+        MessageDigest digest = sha256Digest();
+        if (!saveFile(fileName, new DigestInputStream(content, digest), size)) {
+            return false;
+        }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(sha256)) {
+            throw new InvalidInputDataException();
+        }
+        fileRepository.updateChecksum(fileName, actual);
+        return true;
+    }
+
+    /**
+     * Создаёт файл из уже хранящегося содержимого с той же контрольной суммой и размером.
+     * <p>
+     * Клиент сообщает имя, размер и контрольную сумму SHA-256 до передачи тела. Если такое содержимое уже есть,
+     * файл создаётся копированием внутри базы данных (см. {@link #copyFile}), и тело передавать не нужно.
+     * Поиск идёт только по контрольным суммам, вычисленным сервером по фактическому содержимому,
+     * поэтому заявленная клиентом сумма не может связать имя с чужим содержимым.
+     * </p>
+     *
+     * @param fileName имя создаваемого файла
+     * @param size     размер содержимого
+     * @param sha256   контрольная сумма SHA-256 содержимого в шестнадцатеричном виде
+     * @return результат проверки
+     */
+    @Override
+    public UploadPrecheckStatus precheckUpload(String fileName, long size, String sha256) {
+        if (fileRepository.existsById(fileName)) {
+            return UploadPrecheckStatus.FILE_EXISTS;
+        }
+        Optional<String> source = fileRepository.findNameByChecksum(sha256.toLowerCase(Locale.ROOT), size);
+        if (source.isPresent() && copyFile(source.get(), fileName)) {
+            return UploadPrecheckStatus.CREATED;
+        }
+        return UploadPrecheckStatus.UPLOAD_REQUIRED;
+    }
+
+    /**
+     * Сохраняет файл, заменяя существующий файл с тем же именем.
+     * <p>
+     * Заменяемое содержимое сохраняется в историю версий. Строка файла блокируется на время замены,
+     * поэтому параллельные перезаписи одного файла выполняются по очереди и не теряют версии.
+     * Результаты фоновой обработки прежнего содержимого сбрасываются, обработка запускается заново.
+     * Новое содержимое сохраняется в базу данных независимо от размера.
+     * </p>
+     *
+     * @param fileName имя файла
+     * @param bytes    новое содержимое файла
+     * @param size     размер файла
+     * @return номер сохранённой версии файла
+     */
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size) {
+        Optional<Integer> revision = fileRepository.lockRevisionByName(fileName);
+        if (revision.isEmpty()) {
+            fileRepository.save(mapToFileEntity(fileName, size));
+            fileContentRepository.save(mapToFileContent(fileName, bytes));
+            fileProcessingQueue.enqueue(fileName);
+            afterCompletion(() -> fileListingIndex.put(fileName, size), null);
+            publishOnCommit(FileChangeType.CREATED, fileName, null);
+            return 1;
+        }
+
+        byte[] previous = fileContentService.readContent(fileName).orElseThrow();
+        fileRevisionService.archive(fileName, revision.get(), previous, bytes);
+        releaseSegmentOnCommit(fileName);
+        fileRepository.resetContentMetadata(fileName, size);
+        fileContentRepository.upsert(fileName, bytes);
+        fileTextRepository.deleteByFileName(fileName);
+        fileProcessingQueue.enqueue(fileName);
+        afterCompletion(() -> fileListingIndex.put(fileName, size), null);
+        publishOnCommit(FileChangeType.UPDATED, fileName, null);
+        return revision.get() + 1;
+    }
+
+    /**
+     * Сохраняет файл, заменяя существующий файл с тем же именем, если контрольная сумма содержимого
+     * совпадает с заявленной.
+     *
+     * @param fileName имя файла
+     * @param bytes    новое содержимое файла
+     * @param size     размер файла
+     * @param sha256   заявленная контрольная сумма SHA-256 содержимого в шестнадцатеричном виде
+     * @return номер сохранённой версии файла
+     * @throws InvalidInputDataException если контрольная сумма содержимого не совпадает с заявленной
+     */
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size, String sha256) {
+        if (!HexFormat.of().formatHex(sha256Digest().digest(bytes)).equalsIgnoreCase(sha256)) {
+            throw new InvalidInputDataException();
+        }
+        return overwriteFile(fileName, bytes, size);
+    }
+
     /**
      * Получает список файлов, ограниченный заданным количеством.
      *
@@ -51,11 +296,84 @@ public class FileServiceImpl implements FileService {
      * @return список объектов FileResponseDto, содержащий данные о файлах
      */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<FileResponseDto> getFileList(int limit) {
-        return fileRepository.findAllFiles().stream()
-                .limit(limit)
-                .map(FileEntityMapper::mapFileEntityToFileResponseDto)
-                .toList();
+        List<FileResponseDto> files = new ArrayList<>();
+        try {
+            forEachFile(limit, (name, size) -> files.add(new FileResponseDto(name, size)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return files;
+    }
+
+    /**
+     * Записывает список файлов в поток, не собирая его в памяти.
+     * <p>
+     * Метаданные берутся из индекса списка файлов в памяти, а если он недоступен - читаются курсором базы данных
+     * порциями по 1000 строк, и сразу сериализуются потоковым генератором Jackson в выбранном формате,
+     * поэтому объём памяти не зависит от размера списка.
+     * Структура ответа одинакова для всех форматов: массив объектов с полями {@code filename} и {@code size}.
+     * Транзакция открывается только на время чтения курсором базы данных: список из индекса не занимает
+     * соединение с базой данных, пока клиент получает ответ.
+     * </p>
+     *
+     * @param limit        максимальное количество файлов в списке
+     * @param format       формат ответа
+     * @param outputStream поток, в который записывается список; не закрывается
+     * @throws IOException если не удалось записать список
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void writeFileList(int limit, ListingFormat format, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = listingFactory(format).createGenerator(outputStream)) {
+            generator.writeStartArray();
+            forEachFile(limit, (name, size) -> {
+                generator.writeStartObject();
+                generator.writeStringField("filename", name);
+                generator.writeNumberField("size", size);
+                generator.writeEndObject();
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Записывает в поток метаданные файлов с заданными именами, не читая их содержимое.
+     * <p>
+     * Имена обрабатываются порциями по {@code file.stat.batch-size}: метаданные каждой порции читаются одним
+     * запросом к базе данных (см. {@link FileStatRepository}) и сразу записываются в поток, поэтому клиент
+     * получает начало ответа до того, как прочитаны метаданные всех имён. Ответ - массив JSON с элементом
+     * для каждого имени в порядке запроса: {@code filename}, {@code exists} и для существующих файлов
+     * {@code size}, {@code sha256}, {@code created} и {@code modified}. Файл, загрузка которого ещё не перенесена
+     * из спула в базу данных, существует, но контрольной суммы и времени создания у него пока нет.
+     * </p>
+     *
+     * @param fileNames    имена файлов
+     * @param outputStream поток, в который записываются метаданные; не закрывается
+     * @throws IOException если не удалось записать метаданные
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void writeFileStats(List<String> fileNames, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            for (int from = 0; from < fileNames.size(); from += statBatchSize) {
+                List<String> batch = fileNames.subList(from, Math.min(from + statBatchSize, fileNames.size()));
+                Map<String, FileStat> found = fileStatRepository.findByNames(new HashSet<>(batch));
+                for (String name : batch) {
+                    FileStat stat = found.get(name);
+                    if (stat == null) {
+                        stat = uploadSpool.find(name)
+                                .map(entry -> new FileStat(name, entry.length(), null, null, null))
+                                .orElse(null);
+                    }
+                    writeFileStat(generator, name, stat);
+                }
+                generator.flush();
+            }
+            generator.writeEndArray();
+        }
     }
 
     /**
@@ -67,7 +385,10 @@ public class FileServiceImpl implements FileService {
     @Override
     public boolean deleteFile(String fileName) {
         if (fileRepository.getFileEntityByName(fileName).isPresent()) {
+            releaseSegmentOnCommit(fileName);
             fileRepository.deleteByName(fileName);
+            afterCompletion(() -> fileListingIndex.remove(fileName), null);
+            publishOnCommit(FileChangeType.DELETED, fileName, null);
             return true;
         }
         return false;
@@ -75,6 +396,7 @@ public class FileServiceImpl implements FileService {
 
     /**
      * Обновляет имя файла.
+     * Если новое имя принадлежит другому шарду, файл переносится в него (см. {@link ShardTransfer}).
      *
      * @param oldFileName старое имя файла
      * @param newFileName новое имя файла
@@ -83,30 +405,448 @@ public class FileServiceImpl implements FileService {
     @Override
     public boolean updateFileName(String oldFileName, String newFileName) {
         if (fileRepository.getFileEntityByName(oldFileName).isPresent()) {
-            fileRepository.updateByName(oldFileName, newFileName);
+            if (isOnOtherShard(newFileName)) {
+                if (!transferToShard(oldFileName, newFileName, true)) {
+                    return false;
+                }
+            } else {
+                Optional<String> segmentKey = findSegmentKey(oldFileName);
+                fileRepository.updateByName(oldFileName, newFileName);
+                segmentKey.ifPresent(key -> {
+                    storeSegmentCopy(key, newFileName);
+                    deleteSegmentOnCommit(key);
+                });
+                fileProcessingQueue.rename(oldFileName, newFileName);
+            }
+            afterCompletion(() -> fileListingIndex.rename(oldFileName, newFileName), null);
+            publishOnCommit(FileChangeType.RENAMED, oldFileName, newFileName);
             return true;
         }
         return false;
     }
 
+    /**
+     * Копирует файл под новым именем.
+     * <p>
+     * Копирование выполняется одним запросом {@code INSERT ... SELECT} внутри базы данных: содержимое
+     * не передаётся в приложение и не загружается в память. Вместе с содержимым копируются результаты
+     * фоновой обработки. Содержимое файла из сегментного хранилища записывается в хранилище под новым именем.
+     * Копия, имя которой принадлежит другому шарду, записывается в него (см. {@link ShardTransfer}).
+     * </p>
+     *
+     * @param sourceFileName имя исходного файла
+     * @param targetFileName имя копии
+     * @return true, если файл скопирован, false, если исходный файл не найден или файл с новым именем уже существует
+     */
+    @Override
+    public boolean copyFile(String sourceFileName, String targetFileName) {
+        if (isOnOtherShard(targetFileName)) {
+            if (!transferToShard(sourceFileName, targetFileName, false)) {
+                return false;
+            }
+        } else {
+            if (fileRepository.copyByName(sourceFileName, targetFileName) == 0) {
+                return false;
+            }
+            fileContentRepository.copy(sourceFileName, targetFileName);
+            copySegment(sourceFileName, targetFileName);
+            fileTextRepository.copy(sourceFileName, targetFileName);
+            fileProcessingQueue.copy(sourceFileName, targetFileName);
+        }
+        afterCompletion(() -> fileListingIndex.copy(sourceFileName, targetFileName), null);
+        publishOnCommit(FileChangeType.CREATED, targetFileName, null);
+        return true;
+    }
+
     /**
      * Получает файл по имени.
+     * Содержимое возвращается одинаково для файлов всех уровней хранения; файлы из локальных хранилищ
+     * отдаются из отображённых в память сегментов. Файл, загрузка которого ещё не перенесена из спула
+     * в базу данных, читается из спула. Обращение к файлу только запоминается в {@link FileAccessRecorder}
+     * и записывается в базу данных позже, поэтому скачивание не выполняет записей.
      *
      * @param fileName имя файла для загрузки
      * @return InputStreamResource, представляющий файл для скачивания
      * @throws RuntimeException если файл не найден или произошла ошибка при загрузке
      */
     @Override
+    @Transactional(readOnly = true)
     public InputStreamResource getFile(String fileName) {
-        Optional<FileEntity> optionalFile = fileRepository.getFileEntityByName(fileName);
-        if (optionalFile.isPresent()) {
-            FileEntity file = optionalFile.get();
-            try (ByteArrayInputStream fileStream = new ByteArrayInputStream(file.getBytes())) {
-                return new InputStreamResource(fileStream);
-            } catch (IOException e) {
-                System.err.println("Ошибка записи файла: " + e.getMessage());
-            }
+        Optional<byte[]> spooled = readSpooled(fileName);
+        if (spooled.isPresent()) {
+            return new InputStreamResource(new ByteArrayInputStream(spooled.get()));
+        }
+        Optional<InputStream> content = fileContentService.openForDownload(fileName);
+        if (content.isPresent()) {
+            fileAccessRecorder.record(fileName);
+            return new InputStreamResource(content.get());
         }
         throw new RuntimeException("Не удалось загрузить файл");
     }
+
+    /**
+     * Ищет файлы по фрагменту имени.
+     * <p>
+     * Результаты упорядочены по имени и разбиты на страницы по ключу: следующая страница
+     * запрашивается с параметром {@code after}, равным имени последнего файла предыдущей страницы.
+     * Запрос читает только метаданные и использует триграммный индекс по имени файла.
+     * К результатам добавляются подходящие файлы, загрузки которых ещё не перенесены из спула.
+     * </p>
+     *
+     * @param query строка поиска
+     * @param mode  режим сопоставления имени со строкой поиска
+     * @param after имя, после которого начинается страница (пустая строка - с начала)
+     * @param limit максимальное количество файлов на странице
+     * @return список объектов FileResponseDto, содержащий данные о найденных файлах
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<FileResponseDto> searchFiles(String query, SearchMode mode, String after, int limit) {
+        String from = after == null ? "" : after;
+        int pageSize = Math.min(Math.max(limit, 0), searchMaxLimit);
+        List<FileResponseDto> found = fileRepository.searchByNamePattern(mode.toLikePattern(query), from, pageSize)
+                .stream()
+                .map(FileEntityMapper::mapFileInfoToFileResponseDto)
+                .toList();
+        NavigableMap<String, Long> spooled = uploadSpool.snapshot().tailMap(from, false);
+        spooled.keySet().removeIf(name -> !mode.matches(query, name));
+        if (spooled.isEmpty()) {
+            return found;
+        }
+        found.forEach(file -> spooled.put(file.filename(), file.size()));
+        return spooled.entrySet().stream()
+                .limit(pageSize)
+                .map(entry -> new FileResponseDto(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * Получает содержимое папки.
+     * <p>
+     * Папкой файла считается часть имени до последней косой черты. Ответ содержит суммарный размер
+     * и количество файлов папки вместе с вложенными папками, все непосредственно вложенные папки с их показателями
+     * и страницу файлов папки. Файлы упорядочены по имени и разбиты на страницы по ключу, как в
+     * {@link #searchFiles(String, SearchMode, String, int)}; каждый список читается одним диапазоном индекса
+     * (см. {@link FolderRepository}), поэтому время ответа не зависит от количества файлов в других папках.
+     * К странице добавляются файлы папки, загрузки которых ещё не перенесены из спула; в показателях папки
+     * они учитываются после переноса.
+     * </p>
+     *
+     * @param path  путь папки; у корня - пустая строка
+     * @param after имя файла, после которого начинается страница (пустая строка - с начала)
+     * @param limit максимальное количество файлов на странице
+     * @return содержимое папки или пустой Optional, если папки нет
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<FolderListingResponseDto> listFolder(String path, String after, int limit) {
+        Optional<FolderInfo> folder = folderRepository.findByPath(path);
+        if (folder.isEmpty()) {
+            return Optional.empty();
+        }
+        String from = after == null ? "" : after;
+        int pageSize = Math.min(Math.max(limit, 0), folderMaxLimit);
+        List<FolderResponseDto> folders = folderRepository.findChildren(path).stream()
+                .map(child -> new FolderResponseDto(child.path(), child.size(), child.fileCount()))
+                .toList();
+        List<FileResponseDto> files = fileRepository.findInfosByFolder(path, from, pageSize).stream()
+                .map(FileEntityMapper::mapFileInfoToFileResponseDto)
+                .toList();
+        NavigableMap<String, Long> spooled = uploadSpool.snapshot().tailMap(from, false);
+        spooled.keySet().removeIf(name -> !folderOf(name).equals(path));
+        if (!spooled.isEmpty()) {
+            files.forEach(file -> spooled.put(file.filename(), file.size()));
+            files = spooled.entrySet().stream()
+                    .limit(pageSize)
+                    .map(entry -> new FileResponseDto(entry.getKey(), entry.getValue()))
+                    .toList();
+        }
+        return Optional.of(new FolderListingResponseDto(path, folder.get().size(), folder.get().fileCount(),
+                folders, files));
+    }
+
+    /**
+     * Переименовывает или перемещает папку вместе со всеми вложенными файлами и папками.
+     * <p>
+     * Имена файлов меняются одним запросом {@code UPDATE} по диапазону индекса папок: содержимое файлов
+     * не переписывается - строки содержимого, извлечённого текста и истории версий получают новое имя
+     * каскадом внешнего ключа, а записи сегментного хранилища остаются под прежними ключами. Показатели папок
+     * переносятся изменениями, которые записывают триггеры, а не пересчётом. Пока папка переименовывается,
+     * её строки заблокированы, и новые файлы в ней ждут окончания переименования.
+     * </p>
+     *
+     * @param path    путь папки
+     * @param newPath новый путь папки
+     * @return true, если папка переименована, false, если папки нет, папка с новым путём уже существует
+     * или новый путь находится внутри переименовываемой папки
+     */
+    @Override
+    public boolean moveFolder(String path, String newPath) {
+        if (newPath.startsWith(path + "/") || folderRepository.lockSubtree(path).isEmpty()
+                || folderRepository.exists(newPath)) {
+            return false;
+        }
+        folderRepository.copySubtree(path, newPath);
+        int moved = fileRepository.moveFolder(path, newPath);
+        fileProcessingQueue.renameFolder(path, newPath);
+        folderRepository.deleteSubtree(path);
+        log.info("Папка {} переименована в {}, файлов: {}", path, newPath, moved);
+        afterCompletion(() -> fileListingIndex.renameFolder(path, newPath), null);
+        publishOnCommit(FileChangeType.FOLDER_RENAMED, path, newPath);
+        return true;
+    }
+
+    /**
+     * Передаёт обработчику файлы из индекса списка файлов, а если индекс недоступен - из базы данных
+     * в транзакции только для чтения. Файлы, загрузки которых ещё не перенесены из спула, вставляются в список
+     * по порядку имён.
+     */
+    private void forEachFile(int limit, FileListingRepository.FileRowHandler handler) throws IOException {
+        NavigableMap<String, Long> spooled = uploadSpool.snapshot();
+        SpoolMergingHandler merging = spooled.isEmpty() ? null : new SpoolMergingHandler(spooled, limit, handler);
+        FileListingRepository.FileRowHandler target = merging == null ? handler : merging;
+        if (!fileListingIndex.forEachFile(Math.max(limit, 0), target)) {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            try {
+                readOnly.executeWithoutResult(status -> {
+                    try {
+                        fileListingRepository.forEachFile(Math.max(limit, 0), target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        if (merging != null) {
+            merging.finish();
+        }
+    }
+
+    private Optional<byte[]> readSpooled(String fileName) {
+        try {
+            return uploadSpool.read(fileName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean saveToSegmentStore(String fileName, byte[] bytes) {
+        String key = newSegmentKey(fileName);
+        if (fileRepository.insertSegmentMetadata(fileName, bytes.length, key.equals(fileName) ? null : key) == 0) {
+            return false;
+        }
+        putSegment(key, bytes);
+        fileProcessingQueue.enqueue(fileName);
+        afterCompletion(() -> fileListingIndex.put(fileName, bytes.length), null);
+        publishOnCommit(FileChangeType.CREATED, fileName, null);
+        return true;
+    }
+
+    /**
+     * Выбирает ключ, под которым новое содержимое файла записывается в сегментное хранилище: имя файла,
+     * если запись с таким ключом не принадлежит файлу, перемещённому вместе с папкой, иначе уникальный ключ.
+     */
+    private String newSegmentKey(String fileName) {
+        return segmentStore.locate(fileName).isEmpty() ? fileName : fileName + "#" + UUID.randomUUID();
+    }
+
+    /**
+     * Записывает содержимое в сегментное хранилище. Если транзакция будет отменена, запись удаляется.
+     */
+    private void putSegment(String key, byte[] bytes) {
+        try {
+            SegmentLocation location = segmentStore.put(key, bytes);
+            afterCompletion(null, () -> deleteSegment(key, location));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Переносит или копирует файл в шард, которому принадлежит новое имя.
+     * <p>
+     * Строки файла переносятся собственными транзакциями шардов до фиксации текущей (см. {@link ShardTransfer}),
+     * поэтому уровень хранения читается заранее: после переноса строки исходного файла в текущем шарде уже нет.
+     * </p>
+     *
+     * @return true, если файл перенесён, false, если исходный файл не найден или файл с новым именем уже существует
+     */
+    private boolean transferToShard(String sourceFileName, String targetFileName, boolean move) {
+        Optional<String> segmentKey = findSegmentKey(sourceFileName);
+        String fromShard = shardRouter.currentShard();
+        String toShard = shardRouter.shardFor(targetFileName);
+        boolean transferred = move
+                ? shardTransfer.move(sourceFileName, targetFileName, fromShard, toShard)
+                : shardTransfer.copy(sourceFileName, targetFileName, fromShard, toShard);
+        if (transferred && segmentKey.isPresent()) {
+            putSegmentCopy(segmentKey.get(), targetFileName);
+            if (move) {
+                deleteSegmentOnCommit(segmentKey.get());
+            }
+        }
+        return transferred;
+    }
+
+    private boolean isOnOtherShard(String fileName) {
+        return !shardRouter.shardFor(fileName).equals(shardRouter.currentShard());
+    }
+
+    private void copySegment(String sourceFileName, String targetFileName) {
+        findSegmentKey(sourceFileName).ifPresent(key -> storeSegmentCopy(key, targetFileName));
+    }
+
+    /**
+     * Записывает копию содержимого из сегментного хранилища для файла, строка которого уже есть в базе данных,
+     * и сохраняет ключ записи, если он не совпадает с именем файла.
+     */
+    private void storeSegmentCopy(String sourceKey, String targetFileName) {
+        String key = newSegmentKey(targetFileName);
+        putSegmentCopy(sourceKey, key);
+        if (!key.equals(targetFileName)) {
+            fileRepository.updateSegmentKey(targetFileName, key);
+        }
+    }
+
+    private void putSegmentCopy(String sourceKey, String targetKey) {
+        try {
+            byte[] bytes = segmentStore.read(sourceKey)
+                    .orElseThrow(() -> new IOException("Файл не найден в сегментном хранилище: " + sourceKey));
+            putSegment(targetKey, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Удаляет запись файла из сегментного хранилища после фиксации транзакции.
+     */
+    private void releaseSegmentOnCommit(String fileName) {
+        findSegmentKey(fileName).ifPresent(this::deleteSegmentOnCommit);
+    }
+
+    private void deleteSegmentOnCommit(String key) {
+        SegmentLocation location = segmentStore.locate(key).orElse(null);
+        afterCompletion(() -> deleteSegment(key, location), null);
+    }
+
+    /**
+     * Возвращает ключ записи файла в сегментном хранилище, если содержимое файла хранится в нём.
+     */
+    private Optional<String> findSegmentKey(String fileName) {
+        return fileRepository.findLocationByName(fileName)
+                .filter(location -> location.getTier() == StorageTier.SEGMENT)
+                .map(FileLocation::getSegmentKey);
+    }
+
+    private void deleteSegment(String key, SegmentLocation location) {
+        try {
+            segmentStore.delete(key, location);
+        } catch (IOException e) {
+            // Запись останется в индексе и будет удалена очисткой сегментного хранилища.
+            log.warn("Не удалось удалить запись {} из сегментного хранилища: {}", key, e.getMessage());
+        }
+    }
+
+    private static void writeFileStat(JsonGenerator generator, String name, FileStat stat) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("filename", name);
+        generator.writeBooleanField("exists", stat != null);
+        if (stat != null) {
+            generator.writeNumberField("size", stat.size());
+            generator.writeStringField("sha256", stat.checksum());
+            generator.writeStringField("created", stat.createdAt() == null ? null : stat.createdAt().toString());
+            generator.writeStringField("modified", stat.modifiedAt() == null ? null : stat.modifiedAt().toString());
+        }
+        generator.writeEndObject();
+    }
+
+    private static String folderOf(String fileName) {
+        int slash = fileName.lastIndexOf('/');
+        return slash < 0 ? "" : fileName.substring(0, slash);
+    }
+
+    private static JsonFactory listingFactory(ListingFormat format) {
+        return switch (format) {
+            case JSON -> JSON_FACTORY;
+            case CBOR -> CBOR_FACTORY;
+            case SMILE -> SMILE_FACTORY;
+        };
+    }
+
+    /**
+     * Публикует событие в ленту изменений после фиксации транзакции, чтобы подписчики
+     * не узнавали об изменениях, которые будут отменены.
+     */
+    private void publishOnCommit(FileChangeType type, String fileName, String newFileName) {
+        afterCompletion(() -> fileEventService.publish(type, fileName, newFileName), null);
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Обработчик строк списка файлов, вставляющий между ними файлы из спула по порядку имён.
+     * Файл, уже перенесённый в базу данных, но ещё не отмеченный в спуле, выдаётся один раз.
+     */
+    private static final class SpoolMergingHandler implements FileListingRepository.FileRowHandler {
+        private final Iterator<Map.Entry<String, Long>> spooled;
+        private final int limit;
+        private final FileListingRepository.FileRowHandler handler;
+        private Map.Entry<String, Long> next;
+        private int count;
+
+        private SpoolMergingHandler(NavigableMap<String, Long> spooled,
+                                    int limit,
+                                    FileListingRepository.FileRowHandler handler) {
+            this.spooled = spooled.entrySet().iterator();
+            this.limit = limit;
+            this.handler = handler;
+            this.next = this.spooled.next();
+        }
+
+        @Override
+        public void handle(String name, long size) throws IOException {
+            while (next != null && ShardRouter.NAME_ORDER.compare(next.getKey(), name) <= 0) {
+                if (!next.getKey().equals(name)) {
+                    emit(next.getKey(), next.getValue());
+                }
+                next = spooled.hasNext() ? spooled.next() : null;
+            }
+            emit(name, size);
+        }
+
+        private void finish() throws IOException {
+            while (next != null) {
+                emit(next.getKey(), next.getValue());
+                next = spooled.hasNext() ? spooled.next() : null;
+            }
+        }
+
+        private void emit(String name, long size) throws IOException {
+            if (count < limit) {
+                count++;
+                handler.handle(name, size);
+            }
+        }
+    }
+
+    private static void afterCompletion(Runnable onCommit, Runnable onRollback) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                Runnable action = status == STATUS_COMMITTED ? onCommit : onRollback;
+                if (action != null) {
+                    action.run();
+                }
+            }
+        });
+    }
 }
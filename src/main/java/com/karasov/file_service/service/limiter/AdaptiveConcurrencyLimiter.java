@@ -0,0 +1,130 @@
+package com.karasov.file_service.service.limiter;
+
+import com.karasov.file_service.model.RequestPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Адаптивное ограничение количества одновременно выполняемых запросов (AIMD).
+ * <p>
+ * Лимит подбирается по задержке запросов к метаданным: если запрос выполнился быстрее
+ * {@code file.limiter.latency-threshold} при загрузке не меньше половины лимита, лимит увеличивается
+ * на {@code 1 / limit} (примерно на единицу за каждые {@code limit} запросов); если запрос выполнялся дольше
+ * порога или завершился ошибкой сервера, лимит умножается на {@code file.limiter.backoff-ratio}. Чтобы одно
+ * замедление базы данных не обрушило лимит до минимума, лимит уменьшается не чаще одного раза за «поколение»
+ * запросов: запросы, начатые до предыдущего уменьшения, его не уменьшают.
+ * </p>
+ * <p>
+ * Задержка передачи содержимого зависит от размера файла и скорости клиента, поэтому запросы
+ * {@link RequestPriority#BULK} влияют на лимит только ошибками. Им доступна только доля лимита
+ * {@code file.limiter.bulk-share}, остальное зарезервировано для запросов к метаданным.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class AdaptiveConcurrencyLimiter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.limiter.initial-limit}")
+    private int initialLimit;  // Начальный лимит одновременно выполняемых запросов.
+    @Value("${file.limiter.min-limit}")
+    private int minLimit;  // Минимальный лимит.
+    @Value("${file.limiter.max-limit}")
+    private int maxLimit;  // Максимальный лимит.
+    @Value("${file.limiter.latency-threshold}")
+    private long latencyThreshold;  // Задержка запроса к метаданным в миллисекундах, после которой лимит снижается.
+    @Value("${file.limiter.backoff-ratio}")
+    private double backoffRatio;  // Множитель лимита при замедлении или ошибке.
+    @Value("${file.limiter.bulk-share}")
+    private double bulkShare;  // Доля лимита, доступная передаче содержимого.
+
+    private final Map<RequestPriority, Counter> rejections = new EnumMap<>(RequestPriority.class);
+    private double limit;
+    private int inFlight;
+    private long lastDecrease;
+
+    @PostConstruct
+    void init() {
+        limit = initialLimit;
+        lastDecrease = System.nanoTime();
+        Gauge.builder("file.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Текущий лимит одновременно выполняемых запросов")
+                .register(meterRegistry);
+        Gauge.builder("file.limiter.in-flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Количество выполняемых запросов")
+                .register(meterRegistry);
+        for (RequestPriority priority : RequestPriority.values()) {
+            rejections.put(priority, Counter.builder("file.limiter.rejections")
+                    .description("Количество запросов, отклонённых из-за превышения лимита")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Занимает место для запроса, если лимит не исчерпан.
+     *
+     * @param priority приоритет запроса
+     * @return время начала запроса в наносекундах для {@link #release}, либо пустое значение, если запрос отклонён
+     */
+    public synchronized OptionalLong tryAcquire(RequestPriority priority) {
+        double allowed = priority == RequestPriority.BULK ? Math.max(1, limit * bulkShare) : limit;
+        if (inFlight >= allowed) {
+            rejections.get(priority).increment();
+            return OptionalLong.empty();
+        }
+        inFlight++;
+        return OptionalLong.of(System.nanoTime());
+    }
+
+    /**
+     * Освобождает место запроса и корректирует лимит по результату запроса.
+     *
+     * @param priority приоритет запроса
+     * @param start    время начала запроса, полученное от {@link #tryAcquire}
+     * @param failed   запрос завершился ошибкой сервера
+     */
+    public synchronized void release(RequestPriority priority, long start, boolean failed) {
+        int used = inFlight--;
+        long now = System.nanoTime();
+        boolean slow = priority == RequestPriority.METADATA
+                && now - start > TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+        if (failed || slow) {
+            if (start - lastDecrease >= 0) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecrease = now;
+            }
+        } else if (used * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Возвращает текущий лимит.
+     *
+     * @return лимит одновременно выполняемых запросов
+     */
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    /**
+     * Возвращает количество выполняемых запросов.
+     *
+     * @return количество запросов
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
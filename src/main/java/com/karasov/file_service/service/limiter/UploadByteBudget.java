@@ -0,0 +1,189 @@
+package com.karasov.file_service.service.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бюджет байтов одновременно принимаемых загрузок.
+ * <p>
+ * Загрузка резервирует объявленный размер тела запроса до чтения первого байта и освобождает его по завершении
+ * запроса. Суммарный резерв не превышает {@code file.upload.budget.max-bytes}, резерв одного пользователя -
+ * {@code file.upload.budget.max-bytes-per-user}, поэтому несколько больших загрузок не могут исчерпать память
+ * и временный диск узла, а один клиент не может занять весь бюджет.
+ * </p>
+ * <p>
+ * Загрузки, для которых бюджета пока нет, ждут в очереди не дольше {@code file.upload.budget.queue-timeout}.
+ * Очередь обслуживается по порядку поступления: загрузка в голове очереди, не помещающаяся в общий бюджет,
+ * задерживает следующие, чтобы большие загрузки не голодали. Загрузка, упирающаяся только в бюджет своего
+ * пользователя, пропускает вперёд загрузки других пользователей.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class UploadByteBudget {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.upload.budget.max-bytes}")
+    private long maxBytes;  // Максимальный суммарный размер одновременно принимаемых загрузок.
+    @Value("${file.upload.budget.max-bytes-per-user}")
+    private long maxBytesPerUser;  // Максимальный суммарный размер одновременных загрузок одного пользователя.
+    @Value("${file.upload.budget.queue-timeout}")
+    private long queueTimeout;  // Максимальное время ожидания бюджета в миллисекундах.
+    @Value("${file.upload.budget.max-waiting}")
+    private int maxWaiting;  // Максимальное количество загрузок в очереди.
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final Map<String, Long> reservedByUser = new HashMap<>();
+    private long reserved;
+    private Counter rejectedTooLarge;
+    private Counter rejectedBusy;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("file.upload.budget.reserved", this, UploadByteBudget::getReserved)
+                .description("Суммарный размер принимаемых загрузок в байтах")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.upload.budget.waiting", this, UploadByteBudget::getWaiting)
+                .description("Количество загрузок, ожидающих бюджета")
+                .register(meterRegistry);
+        rejectedTooLarge = Counter.builder("file.upload.budget.rejections")
+                .description("Количество отклонённых загрузок")
+                .tag("reason", "too_large")
+                .register(meterRegistry);
+        rejectedBusy = Counter.builder("file.upload.budget.rejections")
+                .description("Количество отклонённых загрузок")
+                .tag("reason", "busy")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Проверяет, что загрузка такого размера может когда-либо получить бюджет.
+     *
+     * @param bytes размер загрузки
+     * @return true, если размер не превышает ни общий бюджет, ни бюджет пользователя
+     */
+    public boolean accepts(long bytes) {
+        if (bytes > maxBytes || bytes > maxBytesPerUser) {
+            rejectedTooLarge.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Резервирует бюджет для загрузки, ожидая его не дольше {@code file.upload.budget.queue-timeout}.
+     *
+     * @param user  пользователь, выполняющий загрузку
+     * @param bytes размер загрузки
+     * @return true, если бюджет зарезервирован, false, если его не удалось получить за время ожидания
+     * или очередь переполнена
+     * @throws InterruptedException если ожидание прервано
+     */
+    public synchronized boolean reserve(String user, long bytes) throws InterruptedException {
+        if (waiters.size() >= maxWaiting) {
+            rejectedBusy.increment();
+            return false;
+        }
+        Waiter waiter = new Waiter(user, bytes);
+        waiters.addLast(waiter);
+        grant();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        try {
+            while (!waiter.granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejectedBusy.increment();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        } finally {
+            if (!waiter.granted) {
+                waiters.remove(waiter);
+                grant();
+            }
+        }
+    }
+
+    /**
+     * Освобождает бюджет завершённой загрузки.
+     *
+     * @param user  пользователь, выполнявший загрузку
+     * @param bytes размер загрузки
+     */
+    public synchronized void release(String user, long bytes) {
+        reserved -= bytes;
+        reservedByUser.computeIfPresent(user, (name, used) -> used == bytes ? null : used - bytes);
+        grant();
+    }
+
+    /**
+     * Возвращает суммарный размер принимаемых загрузок.
+     *
+     * @return размер в байтах
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Возвращает количество загрузок в очереди.
+     *
+     * @return количество загрузок
+     */
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    private void grant() {
+        boolean granted = false;
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (reserved + waiter.bytes > maxBytes) {
+                break;
+            }
+            long used = reservedByUser.getOrDefault(waiter.user, 0L);
+            if (used + waiter.bytes > maxBytesPerUser) {
+                continue;
+            }
+            reserved += waiter.bytes;
+            reservedByUser.put(waiter.user, used + waiter.bytes);
+            waiter.granted = true;
+            granted = true;
+            iterator.remove();
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Загрузка, ожидающая бюджета.
+     */
+    private static final class Waiter {
+        private final String user;
+        private final long bytes;
+        private boolean granted;
+
+        private Waiter(String user, long bytes) {
+            this.user = user;
+            this.bytes = bytes;
+        }
+    }
+}
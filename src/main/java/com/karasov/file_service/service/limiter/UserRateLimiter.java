@@ -0,0 +1,248 @@
+package com.karasov.file_service.service.limiter;
+
+import com.karasov.file_service.model.EndpointClass;
+import com.karasov.file_service.model.RequestPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты запросов каждого пользователя (маркерная корзина в форме GCRA).
+ * <p>
+ * Для каждого пользователя и класса эндпоинтов ({@link EndpointClass}) хранится одно число — теоретическое время
+ * прибытия (TAT): момент, к которому корзина снова станет полной. Запрос стоимостью {@code cost} сдвигает TAT на
+ * {@code cost / rate} и допускается, если TAT уходит в будущее не дальше, чем на {@code burst / rate}.
+ * TAT меняется через compare-and-set, поэтому проверка не берёт блокировок, а пользователи не мешают друг другу.
+ * </p>
+ * <p>
+ * У каждого класса собственная корзина, поэтому, например, частый поиск не расходует лимит списка файлов.
+ * Лимит класса задаётся свойствами {@code file.ratelimit.<класс>.requests-per-second} и
+ * {@code file.ratelimit.<класс>.burst} для классов метаданных и {@code file.ratelimit.<класс>.bytes-per-second}
+ * и {@code file.ratelimit.<класс>.burst} для классов передачи содержимого (класс - имя {@link EndpointClass}
+ * в нижнем регистре); по умолчанию используются общие лимиты {@code file.ratelimit.metadata.*}
+ * и {@code file.ratelimit.transfer.*}.
+ * </p>
+ * <p>
+ * Запросы к метаданным стоят один запрос, передача содержимого — количество байт. Загрузка оплачивается
+ * заранее по {@code Content-Length}, а если она отклонена, стоимость возвращается ({@link #refund}); скачивание
+ * оплачивается после записи ответа ({@link #charge}), поэтому скачивание может увести корзину в долг,
+ * и следующий запрос пользователя ждёт, пока долг не будет погашен.
+ * Запрос дороже всей корзины допускается, если корзина полна.
+ * </p>
+ * <p>
+ * Полная корзина ничем не отличается от отсутствующей, поэтому {@link #sweep} удаляет корзины, пополнившиеся
+ * до конца: память занимают только пользователи, активные в последние {@code burst / rate} секунд.
+ * Удаляемая корзина сначала помечается через тот же compare-and-set, и запрос, успевший получить
+ * её из таблицы, создаёт новую вместо того, чтобы списать стоимость с удалённой.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class UserRateLimiter {
+
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    @Value("${file.ratelimit.enabled}")
+    private boolean enabled;  // Ограничивать частоту запросов пользователей.
+    @Value("${file.ratelimit.metadata.requests-per-second}")
+    private double metadataRate;  // Запросов к метаданным в секунду на пользователя по умолчанию.
+    @Value("${file.ratelimit.metadata.burst}")
+    private long metadataBurst;  // Запросов к метаданным, которые можно выполнить подряд после простоя, по умолчанию.
+    @Value("${file.ratelimit.transfer.bytes-per-second}")
+    private double transferRate;  // Байт загрузки и скачивания в секунду на пользователя по умолчанию.
+    @Value("${file.ratelimit.transfer.burst}")
+    private long transferBurst;  // Байт, которые можно передать подряд после простоя, по умолчанию.
+
+    private final Map<EndpointClass, Limit> limits = new EnumMap<>(EndpointClass.class);
+
+    @PostConstruct
+    void init() {
+        for (EndpointClass endpoint : EndpointClass.values()) {
+            String prefix = "file.ratelimit." + endpoint.name().toLowerCase() + ".";
+            boolean metadata = endpoint.getPriority() == RequestPriority.METADATA;
+            double rate = environment.getProperty(prefix + (metadata ? "requests-per-second" : "bytes-per-second"),
+                    Double.class, metadata ? metadataRate : transferRate);
+            long burst = environment.getProperty(prefix + "burst", Long.class, metadata ? metadataBurst : transferBurst);
+            limits.put(endpoint, new Limit(endpoint, rate, burst));
+        }
+        Gauge.builder("file.ratelimit.buckets", this, UserRateLimiter::getBucketCount)
+                .description("Количество корзин активных пользователей")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Списывает стоимость запроса, если корзина пользователя позволяет его выполнить.
+     *
+     * @param user     имя пользователя
+     * @param endpoint класс эндпоинта
+     * @param cost     стоимость запроса: 1 для метаданных, байты для передачи содержимого
+     * @return решение и состояние корзины для заголовков ответа
+     */
+    public Decision tryAcquire(String user, EndpointClass endpoint, long cost) {
+        if (!enabled) {
+            return Decision.UNLIMITED;
+        }
+        return limits.get(endpoint).acquire(user, cost, false);
+    }
+
+    /**
+     * Безусловно списывает стоимость уже выполненного запроса, например, переданные при скачивании байты.
+     *
+     * @param user     имя пользователя
+     * @param endpoint класс эндпоинта
+     * @param cost     стоимость запроса
+     */
+    public void charge(String user, EndpointClass endpoint, long cost) {
+        if (enabled && cost > 0) {
+            limits.get(endpoint).acquire(user, cost, true);
+        }
+    }
+
+    /**
+     * Возвращает стоимость, списанную заранее за запрос, который был отклонён. Корзина пополняется
+     * не больше чем до полной.
+     *
+     * @param user     имя пользователя
+     * @param endpoint класс эндпоинта
+     * @param cost     возвращаемая стоимость
+     */
+    public void refund(String user, EndpointClass endpoint, long cost) {
+        if (enabled && cost > 0) {
+            limits.get(endpoint).refund(user, cost);
+        }
+    }
+
+    /**
+     * Удаляет полные корзины, чтобы память не росла с числом когда-либо активных пользователей.
+     */
+    @Scheduled(fixedDelayString = "${file.ratelimit.sweep-interval}")
+    public void sweep() {
+        if (enabled) {
+            long now = System.nanoTime();
+            limits.values().forEach(limit -> limit.sweep(now));
+        }
+    }
+
+    private double getBucketCount() {
+        return limits.values().stream().mapToInt(limit -> limit.buckets.size()).sum();
+    }
+
+    /**
+     * Результат проверки корзины.
+     *
+     * @param allowed    запрос допущен
+     * @param limit      размер корзины: запросы или байты
+     * @param remaining  остаток корзины после запроса
+     * @param reset      секунд до полного пополнения корзины
+     * @param retryAfter секунд до момента, когда отклонённый запрос будет допущен
+     */
+    public record Decision(boolean allowed, long limit, long remaining, long reset, long retryAfter) {
+
+        static final Decision UNLIMITED = new Decision(true, -1, -1, 0, 0);
+
+        /**
+         * @return true, если ограничение частоты выключено и заголовки не нужны
+         */
+        public boolean unlimited() {
+            return limit < 0;
+        }
+    }
+
+    /**
+     * Лимит одного класса запросов и корзины пользователей.
+     */
+    private final class Limit {
+        private final double nanosPerUnit;
+        private final long burst;
+        private final long tolerance;
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final Counter rejections;
+
+        private Limit(EndpointClass endpoint, double rate, long burst) {
+            this.nanosPerUnit = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.burst = burst;
+            this.tolerance = nanos(burst);
+            this.rejections = Counter.builder("file.ratelimit.rejections")
+                    .description("Количество запросов, отклонённых из-за превышения частоты")
+                    .tag("endpoint", endpoint.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+
+        private Decision acquire(String user, long cost, boolean force) {
+            while (true) {
+                long now = System.nanoTime();
+                AtomicLong bucket = buckets.computeIfAbsent(user, key -> new AtomicLong(now));
+                long tat = bucket.get();
+                if (tat == RETIRED) {
+                    buckets.remove(user, bucket);
+                    continue;
+                }
+                long base = tat - now > 0 ? tat : now;
+                long admission = base + nanos(Math.min(cost, burst)) - now;
+                if (!force && admission > tolerance) {
+                    rejections.increment();
+                    return new Decision(false, burst, remaining(base - now), seconds(base - now),
+                            seconds(admission - tolerance));
+                }
+                long next = base + nanos(cost);
+                if (bucket.compareAndSet(tat, next)) {
+                    return new Decision(true, burst, remaining(next - now), seconds(next - now), 0);
+                }
+            }
+        }
+
+        private void refund(String user, long cost) {
+            AtomicLong bucket = buckets.get(user);
+            if (bucket == null) {
+                return;
+            }
+            while (true) {
+                long now = System.nanoTime();
+                long tat = bucket.get();
+                if (tat == RETIRED || tat - now <= 0) {
+                    return;
+                }
+                long refunded = tat - nanos(cost);
+                if (bucket.compareAndSet(tat, refunded - now > 0 ? refunded : now)) {
+                    return;
+                }
+            }
+        }
+
+        private void sweep(long now) {
+            buckets.forEach((user, bucket) -> {
+                long tat = bucket.get();
+                if (tat - now <= 0 && bucket.compareAndSet(tat, RETIRED)) {
+                    buckets.remove(user, bucket);
+                }
+            });
+        }
+
+        private long nanos(long units) {
+            return (long) (units * nanosPerUnit);
+        }
+
+        private long remaining(long debt) {
+            return Math.max(0, (long) ((tolerance - debt) / nanosPerUnit));
+        }
+
+        private long seconds(long nanos) {
+            return nanos <= 0 ? 0 : (nanos - 1) / TimeUnit.SECONDS.toNanos(1) + 1;
+        }
+    }
+}
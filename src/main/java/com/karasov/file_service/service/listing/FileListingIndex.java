@@ -0,0 +1,312 @@
+package com.karasov.file_service.service.listing;
+
+import com.karasov.file_service.dto.FileChangeEventDto;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.model.FileStat;
+import com.karasov.file_service.repository.FileListingRepository;
+import com.karasov.file_service.repository.FileStatRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Индекс списка файлов в памяти: имена файлов, упорядоченные по {@link ShardRouter#NAME_ORDER} (как {@code ORDER BY name}
+ * в базе данных), и их размеры.
+ * <p>
+ * Индекс загружается из базы данных при первом запросе списка и затем поддерживается изменениями, которые
+ * {@code FileServiceImpl} передаёт после фиксации транзакций. Изменения, сделанные другими узлами приложения,
+ * приходят из общего журнала изменений ({@code FileEventServiceImpl}) не позже чем через
+ * {@code file.events.poll-interval}: события журнала не содержат размеров, поэтому для файлов из пачки событий
+ * текущие размеры читаются из базы данных одним запросом, а переименование папки, не перечисляющее её файлы,
+ * приводит к построению индекса заново. Раз в {@code file.listing.index.verify-interval} индекс строится заново
+ * и сверяется с текущим; расхождения (например, из-за изменений, обработчики которых выполнились не в порядке
+ * фиксации) исправляются и учитываются в метрике {@code file.listing.index.repairs}.
+ * </p>
+ * <p>
+ * Изменения, пришедшие во время чтения базы данных, запоминаются и применяются к прочитанному снимку, поэтому
+ * снимок не теряет изменений, зафиксированных после начала чтения. Изменения идемпотентны, и повторное
+ * применение уже попавшего в снимок изменения ничего не портит.
+ * </p>
+ * <p>
+ * Объём памяти ограничен: если файлов больше {@code file.listing.index.max-entries}, индекс отключается
+ * и список читается из базы данных, пока очередная сверка не покажет, что файлы снова помещаются в индекс.
+ * Одна запись занимает около 150 байт вместе с именем файла средней длины.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileListingIndex {
+
+    private final FileListingRepository fileListingRepository;
+    private final FileStatRepository fileStatRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.listing.index.enabled}")
+    private boolean enabled;  // Отдавать список файлов из индекса в памяти.
+    @Value("${file.listing.index.max-entries}")
+    private int maxEntries;  // Максимальное количество файлов в индексе.
+
+    private volatile NavigableMap<String, Long> entries;
+    private volatile boolean requested;
+    private List<Consumer<NavigableMap<String, Long>>> pending;
+    private TransactionTemplate loadTransaction;
+    private Counter repairs;
+
+    @PostConstruct
+    void init() {
+        // Индекс может загружаться в потоке запроса списка: чтение не должно считаться записью этого запроса.
+        loadTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        loadTransaction.setReadOnly(true);
+        Gauge.builder("file.listing.index.entries", this, index -> {
+                    NavigableMap<String, Long> current = index.entries;
+                    return current == null ? 0 : current.size();
+                })
+                .description("Количество файлов в индексе списка файлов")
+                .register(meterRegistry);
+        repairs = Counter.builder("file.listing.index.repairs")
+                .description("Количество записей индекса, исправленных при сверке с базой данных")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Передаёт обработчику имена и размеры файлов в порядке имён.
+     * При первом вызове загружает индекс; пока индекс загружается другим запросом или отключён, возвращает false.
+     *
+     * @param limit   максимальное количество файлов
+     * @param handler обработчик строки
+     * @return true, если список выдан из индекса, false, если его нужно читать из базы данных
+     * @throws IOException если обработчик не смог обработать строку
+     */
+    public boolean forEachFile(int limit, FileListingRepository.FileRowHandler handler) throws IOException {
+        if (!enabled) {
+            return false;
+        }
+        if (!requested) {
+            requested = true;
+            rebuild();
+        }
+        NavigableMap<String, Long> current = entries;
+        if (current == null) {
+            return false;
+        }
+        int count = 0;
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            if (count++ >= limit) {
+                break;
+            }
+            handler.handle(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Добавляет файл в индекс или обновляет его размер.
+     *
+     * @param fileName имя файла
+     * @param size     размер файла
+     */
+    public void put(String fileName, long size) {
+        apply(map -> map.put(fileName, size));
+    }
+
+    /**
+     * Удаляет файл из индекса.
+     *
+     * @param fileName имя файла
+     */
+    public void remove(String fileName) {
+        apply(map -> map.remove(fileName));
+    }
+
+    /**
+     * Переименовывает файл в индексе.
+     *
+     * @param oldFileName старое имя файла
+     * @param newFileName новое имя файла
+     */
+    public void rename(String oldFileName, String newFileName) {
+        apply(map -> {
+            Long size = map.remove(oldFileName);
+            if (size != null) {
+                map.put(newFileName, size);
+            }
+        });
+    }
+
+    /**
+     * Переименовывает в индексе файлы папки и вложенных в неё папок.
+     *
+     * @param oldPath старый путь папки
+     * @param newPath новый путь папки
+     */
+    public void renameFolder(String oldPath, String newPath) {
+        apply(map -> {
+            NavigableMap<String, Long> folder = map.subMap(oldPath + "/", true, oldPath + "0", false);
+            List<Map.Entry<String, Long>> moved = new ArrayList<>(folder.entrySet());
+            folder.clear();
+            moved.forEach(entry -> map.put(newPath + entry.getKey().substring(oldPath.length()), entry.getValue()));
+        });
+    }
+
+    /**
+     * Добавляет в индекс копию файла с размером исходного файла.
+     * Если исходного файла нет в индексе, копия появится в нём при следующей сверке.
+     *
+     * @param sourceFileName имя исходного файла
+     * @param targetFileName имя копии
+     */
+    public void copy(String sourceFileName, String targetFileName) {
+        apply(map -> {
+            Long size = map.get(sourceFileName);
+            if (size != null) {
+                map.put(targetFileName, size);
+            }
+        });
+    }
+
+    /**
+     * Применяет к индексу события журнала изменений, в том числе сделанные другими узлами.
+     * Файлы из событий получают размер, который они имеют в базе данных сейчас, а отсутствующие в ней удаляются,
+     * поэтому повторное или запоздавшее событие не возвращает индекс к прежнему состоянию.
+     *
+     * @param events события в порядке журнала
+     */
+    public void applyEvents(List<FileChangeEventDto> events) {
+        if (!enabled || !requested || events.isEmpty()) {
+            return;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        boolean folderRenamed = false;
+        for (FileChangeEventDto event : events) {
+            if (event.type() == FileChangeType.FOLDER_RENAMED) {
+                folderRenamed = true;
+            } else {
+                names.add(event.filename());
+                if (event.newFilename() != null) {
+                    names.add(event.newFilename());
+                }
+            }
+        }
+        if (folderRenamed) {
+            rebuild();
+            return;
+        }
+        Map<String, FileStat> found;
+        try {
+            found = fileStatRepository.findByNames(names);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось применить к индексу списка файлов {} событий: {}", events.size(), e.getMessage());
+            return;
+        }
+        apply(map -> names.forEach(name -> {
+            FileStat stat = found.get(name);
+            if (stat != null) {
+                map.put(name, stat.size());
+            } else {
+                map.remove(name);
+            }
+        }));
+    }
+
+    /**
+     * Строит индекс заново по базе данных и исправляет расхождения.
+     * Выполняется, только если список файлов уже запрашивался.
+     */
+    @Scheduled(fixedDelayString = "${file.listing.index.verify-interval}")
+    public void verify() {
+        if (enabled && requested) {
+            rebuild();
+        }
+    }
+
+    private synchronized void apply(Consumer<NavigableMap<String, Long>> change) {
+        if (pending != null) {
+            pending.add(change);
+        }
+        NavigableMap<String, Long> current = entries;
+        if (current != null) {
+            change.accept(current);
+            if (current.size() > maxEntries) {
+                log.warn("Количество файлов превысило {}, индекс списка файлов отключён до следующей сверки",
+                        maxEntries);
+                entries = null;
+            }
+        }
+    }
+
+    private void rebuild() {
+        synchronized (this) {
+            if (pending != null) {
+                return;
+            }
+            pending = new ArrayList<>();
+        }
+        NavigableMap<String, Long> snapshot = new ConcurrentSkipListMap<>(ShardRouter.NAME_ORDER);
+        boolean fits;
+        try {
+            fits = Boolean.TRUE.equals(loadTransaction.execute(status -> load(snapshot)));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            log.warn("Не удалось построить индекс списка файлов: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (fits) {
+                pending.forEach(change -> change.accept(snapshot));
+                fits = snapshot.size() <= maxEntries;
+            }
+            NavigableMap<String, Long> current = entries;
+            if (current != null && fits) {
+                long differences = countDifferences(current, snapshot);
+                if (differences > 0) {
+                    log.warn("Индекс списка файлов расходился с базой данных в {} записях", differences);
+                    repairs.increment(differences);
+                }
+            }
+            entries = fits ? snapshot : null;
+            pending = null;
+        }
+    }
+
+    private boolean load(NavigableMap<String, Long> snapshot) {
+        try {
+            fileListingRepository.forEachFile(maxEntries + 1, snapshot::put);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return snapshot.size() <= maxEntries;
+    }
+
+    private static long countDifferences(NavigableMap<String, Long> current, NavigableMap<String, Long> snapshot) {
+        long differences = current.keySet().stream().filter(name -> !snapshot.containsKey(name)).count();
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+}
@@ -0,0 +1,42 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.repository.FileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Вычисляет контрольную сумму SHA-256 содержимого файла.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChecksumProcessor implements FileProcessor {
+
+    private final FileRepository fileRepository;
+
+    @Override
+    public ProcessingStage getStage() {
+        return ProcessingStage.CHECKSUM;
+    }
+
+    @Override
+    public Optional<String> analyze(String fileName, byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Optional.of(HexFormat.of().formatHex(digest.digest(bytes)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    @Override
+    public void store(String fileName, FileVersion version, String result) {
+        fileRepository.updateChecksum(fileName, version.getRevision(), version.getCreatedAt(), result);
+    }
+}
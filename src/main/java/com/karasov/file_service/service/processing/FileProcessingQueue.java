@@ -0,0 +1,66 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.repository.FileProcessingJobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Очередь заданий фоновой обработки файлов.
+ * <p>
+ * Задания записываются в таблицу {@code file_processing_jobs} в той же транзакции, что и сам файл,
+ * поэтому исполнители видят их только после фиксации загрузки, а при откате загрузки задания исчезают вместе с ней.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class FileProcessingQueue {
+
+    private static final String[] ALL_STAGES = Arrays.stream(ProcessingStage.values())
+            .map(Enum::name)
+            .toArray(String[]::new);
+
+    private final FileProcessingJobRepository jobRepository;
+
+    /**
+     * Ставит в очередь все этапы обработки для файла.
+     *
+     * @param fileName имя файла
+     */
+    public void enqueue(String fileName) {
+        jobRepository.enqueue(fileName, ALL_STAGES);
+    }
+
+    /**
+     * Переносит ожидающие задания на новое имя файла.
+     *
+     * @param oldFileName старое имя файла
+     * @param newFileName новое имя файла
+     */
+    public void rename(String oldFileName, String newFileName) {
+        jobRepository.updateFileName(oldFileName, newFileName);
+    }
+
+    /**
+     * Переносит ожидающие задания файлов папки и вложенных в неё папок на новый путь папки.
+     *
+     * @param oldPath старый путь папки
+     * @param newPath новый путь папки
+     */
+    public void renameFolder(String oldPath, String newPath) {
+        jobRepository.updateFolderName(oldPath, newPath);
+    }
+
+    /**
+     * Ставит в очередь для копии файла этапы, которые ещё не выполнены для исходного файла.
+     * Результаты уже выполненных этапов копируются вместе с файлом.
+     *
+     * @param sourceFileName имя исходного файла
+     * @param targetFileName имя копии
+     */
+    public void copy(String sourceFileName, String targetFileName) {
+        jobRepository.copyPending(sourceFileName, targetFileName);
+    }
+}
@@ -0,0 +1,229 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileProcessingJob;
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.model.ProcessingStatus;
+import com.karasov.file_service.repository.FileProcessingJobRepository;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Исполнитель фоновой обработки загруженных файлов.
+ * <p>
+ * Периодически забирает ожидающие задания из таблицы {@code file_processing_jobs} и выполняет их в пуле потоков,
+ * отдельном для каждого этапа. Каждый этап забирает не больше заданий, чем у него свободных потоков, поэтому
+ * очередь в памяти не растёт, а необработанные задания остаются в базе данных. Задания, взятые в работу узлом,
+ * который затем упал, возвращаются в очередь по истечении срока аренды.
+ * Если файлы распределены по шардам, задания забираются из очереди каждого шарда, а задание обрабатывается
+ * в том шарде, из которого взято.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.processing.enabled", havingValue = "true", matchIfMissing = true)
+public class FileProcessingWorker {
+
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofHours(1);
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final FileProcessingJobRepository jobRepository;
+    private final FileRepository fileRepository;
+    private final FileContentService fileContentService;
+    private final List<FileProcessor> processors;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.processing.max-attempts}")
+    private int maxAttempts;  // Количество попыток выполнения задания.
+    @Value("${file.processing.retry-backoff}")
+    private long retryBackoff;  // Начальная задержка повторной попытки в миллисекундах.
+    @Value("${file.processing.lease-timeout}")
+    private long leaseTimeout;  // Время, после которого задание без результата возвращается в очередь.
+
+    private final Map<ProcessingStage, StageWorker> stages = new EnumMap<>(ProcessingStage.class);
+
+    @PostConstruct
+    public void init() {
+        for (FileProcessor processor : processors) {
+            ProcessingStage stage = processor.getStage();
+            String key = stage.name().toLowerCase(Locale.ROOT).replace('_', '-');
+            int concurrency = environment.getProperty("file.processing.concurrency." + key, Integer.class, 1);
+            stages.put(stage, new StageWorker(processor, concurrency, meterRegistry));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (StageWorker stage : stages.values()) {
+            stage.executor.shutdown();
+        }
+        for (StageWorker stage : stages.values()) {
+            stage.executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Забирает ожидающие задания в пределах свободных потоков каждого этапа и обновляет глубину очереди.
+     */
+    @Scheduled(fixedDelayString = "${file.processing.poll-interval}")
+    public void poll() {
+        stages.forEach((stage, worker) -> {
+            long queueDepth = 0;
+            for (String shard : shardRouter.shards()) {
+                queueDepth += shardRouter.onShard(shard,
+                        () -> jobRepository.countByStageAndStatus(stage, ProcessingStatus.PENDING));
+                shardRouter.runOnShard(shard, () -> claim(stage, worker, shard));
+            }
+            worker.queueDepth.set(queueDepth);
+        });
+    }
+
+    /**
+     * Возвращает в очередь задания, аренда которых истекла.
+     */
+    @Scheduled(fixedDelayString = "${file.processing.lease-timeout}")
+    public void releaseExpiredLeases() {
+        Instant deadline = Instant.now().minusMillis(leaseTimeout);
+        shardRouter.forEachShard(shard -> {
+            Integer released = transactionTemplate.execute(status -> jobRepository.releaseExpired(deadline));
+            if (released != null && released > 0) {
+                log.warn("Возвращено в очередь заданий обработки с истекшей арендой: {}", released);
+            }
+        });
+    }
+
+    private void claim(ProcessingStage stage, StageWorker worker, String shard) {
+        int free = worker.concurrency - worker.inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+        List<FileProcessingJob> jobs = transactionTemplate.execute(status -> jobRepository.claim(stage.name(), free));
+        if (jobs == null) {
+            return;
+        }
+        for (FileProcessingJob job : jobs) {
+            worker.inFlight.incrementAndGet();
+            worker.executor.execute(() -> shardRouter.runOnShard(shard, () -> process(worker, job)));
+        }
+    }
+
+    private void process(StageWorker worker, FileProcessingJob job) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            // Версия читается до содержимого: если файл перезапишут после чтения версии, результат не сохранится.
+            Optional<FileVersion> version = fileRepository.findVersionByName(job.getFileName());
+            Optional<byte[]> content = version.flatMap(ignored -> fileContentService.readContent(job.getFileName()));
+            Optional<String> result = content.flatMap(bytes -> worker.processor.analyze(job.getFileName(), bytes));
+            transactionTemplate.executeWithoutResult(status -> {
+                result.ifPresent(value -> worker.processor.store(job.getFileName(), version.get(), value));
+                jobRepository.deleteById(job.getId());
+            });
+            worker.completed.increment();
+        } catch (Exception e) {
+            log.warn("Ошибка обработки файла {} на этапе {}: {}", job.getFileName(), job.getStage(), e.getMessage());
+            reschedule(worker, job, e);
+        } finally {
+            sample.stop(worker.duration);
+            worker.inFlight.decrementAndGet();
+        }
+    }
+
+    private void reschedule(StageWorker worker, FileProcessingJob job, Exception error) {
+        String message = String.valueOf(error.getMessage());
+        job.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        job.setUpdatedAt(Instant.now());
+        if (job.getAttempts() >= maxAttempts) {
+            job.setStatus(ProcessingStatus.FAILED);
+            worker.failed.increment();
+        } else {
+            long delay = retryBackoff << Math.min(job.getAttempts() - 1, 20);
+            job.setStatus(ProcessingStatus.PENDING);
+            job.setAvailableAt(Instant.now().plusMillis(Math.min(delay, MAX_RETRY_BACKOFF.toMillis())));
+            worker.retried.increment();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobRepository.save(job));
+        } catch (Exception e) {
+            // Задание останется в состоянии RUNNING и вернётся в очередь по истечении аренды.
+            log.error("Не удалось сохранить состояние задания обработки {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Пул потоков и метрики одного этапа обработки.
+     */
+    private static final class StageWorker {
+        private final FileProcessor processor;
+        private final int concurrency;
+        private final ExecutorService executor;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong queueDepth = new AtomicLong();
+        private final Counter completed;
+        private final Counter retried;
+        private final Counter failed;
+        private final Timer duration;
+
+        private StageWorker(FileProcessor processor, int concurrency, MeterRegistry registry) {
+            String stage = processor.getStage().name().toLowerCase(Locale.ROOT);
+            this.processor = processor;
+            this.concurrency = concurrency;
+            this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "file-processing-" + stage);
+                thread.setDaemon(true);
+                return thread;
+            });
+            Gauge.builder("file.processing.queue.depth", queueDepth, AtomicLong::get)
+                    .tag("stage", stage)
+                    .description("Количество ожидающих заданий обработки")
+                    .register(registry);
+            Gauge.builder("file.processing.in.flight", inFlight, AtomicInteger::get)
+                    .tag("stage", stage)
+                    .description("Количество выполняемых заданий обработки")
+                    .register(registry);
+            this.completed = Counter.builder("file.processing.jobs")
+                    .tag("stage", stage).tag("outcome", "completed")
+                    .register(registry);
+            this.retried = Counter.builder("file.processing.jobs")
+                    .tag("stage", stage).tag("outcome", "retried")
+                    .register(registry);
+            this.failed = Counter.builder("file.processing.jobs")
+                    .tag("stage", stage).tag("outcome", "failed")
+                    .register(registry);
+            this.duration = Timer.builder("file.processing.duration")
+                    .tag("stage", stage)
+                    .register(registry);
+        }
+    }
+}
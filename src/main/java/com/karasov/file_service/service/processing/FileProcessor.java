@@ -0,0 +1,37 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+
+import java.util.Optional;
+
+/**
+ * Обработчик одного этапа фоновой обработки файла.
+ * <p>
+ * Вычисление результата выполняется вне транзакции, сохранение - внутри короткой транзакции,
+ * чтобы долгая обработка не удерживала соединение с базой данных. Поэтому файл может быть перезаписан
+ * между чтением содержимого и сохранением результата: результат сохраняется только для той версии файла,
+ * которая была прочитана, а для новой версии его вычислит задание, поставленное при перезаписи.
+ * </p>
+ */
+public interface FileProcessor {
+    ProcessingStage getStage();
+
+    /**
+     * Вычисляет результат обработки.
+     *
+     * @param fileName имя файла
+     * @param bytes    содержимое файла
+     * @return результат обработки или пустое значение, если сохранять нечего
+     */
+    Optional<String> analyze(String fileName, byte[] bytes);
+
+    /**
+     * Сохраняет результат обработки в метаданные файла, если файл не изменился с момента чтения содержимого.
+     *
+     * @param fileName имя файла
+     * @param version  версия файла, прочитанная до его содержимого
+     * @param result   результат, полученный из {@link #analyze(String, byte[])}
+     */
+    void store(String fileName, FileVersion version, String result);
+}
@@ -0,0 +1,60 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.repository.FileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.util.Optional;
+
+/**
+ * Определяет MIME-тип файла по сигнатуре содержимого, а при её отсутствии - по расширению имени.
+ */
+@Component
+@RequiredArgsConstructor
+public class MimeTypeProcessor implements FileProcessor {
+
+    private final FileRepository fileRepository;
+
+    @Override
+    public ProcessingStage getStage() {
+        return ProcessingStage.MIME_TYPE;
+    }
+
+    @Override
+    public Optional<String> analyze(String fileName, byte[] bytes) {
+        return Optional.of(detect(fileName, bytes));
+    }
+
+    @Override
+    public void store(String fileName, FileVersion version, String result) {
+        fileRepository.updateMimeType(fileName, version.getRevision(), version.getCreatedAt(), result);
+    }
+
+    /**
+     * Определяет MIME-тип содержимого.
+     *
+     * @param fileName имя файла
+     * @param bytes    содержимое файла
+     * @return MIME-тип; {@code application/octet-stream}, если тип определить не удалось
+     */
+    static String detect(String fileName, byte[] bytes) {
+        try {
+            String contentType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(bytes));
+            if (contentType != null) {
+                return contentType;
+            }
+        } catch (IOException ignored) {
+            // Поток в памяти не бросает исключений, остаётся определение по имени.
+        }
+        return MediaTypeFactory.getMediaType(fileName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.repository.FileTextRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Извлекает текст из текстовых файлов для последующей индексации.
+ * Двоичное содержимое пропускается.
+ */
+@Component
+@RequiredArgsConstructor
+public class TextExtractionProcessor implements FileProcessor {
+
+    private static final Set<String> TEXT_APPLICATION_TYPES = Set.of(
+            "application/json", "application/xml", "application/javascript", "application/x-yaml", "application/yaml"
+    );
+
+    private final FileTextRepository fileTextRepository;
+
+    @Value("${file.processing.text.max-chars}")
+    private int maxChars;  // Максимальная длина извлекаемого текста.
+
+    @Override
+    public ProcessingStage getStage() {
+        return ProcessingStage.TEXT_EXTRACTION;
+    }
+
+    @Override
+    public Optional<String> analyze(String fileName, byte[] bytes) {
+        String mimeType = MimeTypeProcessor.detect(fileName, bytes);
+        if (!mimeType.startsWith("text/") && !TEXT_APPLICATION_TYPES.contains(mimeType)) {
+            return Optional.empty();
+        }
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            // В UTF-8 символ занимает не более 4 байт, остальное содержимое можно не декодировать.
+            int length = (int) Math.min(bytes.length, 4L * maxChars);
+            CharBuffer text = decoder.decode(ByteBuffer.wrap(bytes, 0, length));
+            String content = text.length() > maxChars ? text.subSequence(0, maxChars).toString() : text.toString();
+            // PostgreSQL не хранит символ NUL в полях TEXT.
+            return Optional.of(content.replace("\u0000", ""));
+        } catch (CharacterCodingException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void store(String fileName, FileVersion version, String result) {
+        fileTextRepository.upsert(fileName, version.getRevision(), version.getCreatedAt(), result);
+    }
+}
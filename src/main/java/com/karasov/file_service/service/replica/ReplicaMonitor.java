@@ -0,0 +1,188 @@
+package com.karasov.file_service.service.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отслеживание задержки реплик и выбор реплики для чтения.
+ * <p>
+ * Раз в {@code file.replica.check-interval} запрашивает текущий LSN основной базы данных и LSN, воспроизведённый
+ * каждой репликой. Реплика, отстающая больше чем на {@code file.replica.max-lag-bytes} байт журнала
+ * или недоступная, не выбирается, пока не догонит основную базу. Из подходящих реплик, воспроизведших
+ * требуемый запросом LSN, выбирается следующая по кругу; если таких нет, запрос читает с основной базы.
+ * </p>
+ * <p>
+ * Воспроизведённый LSN со временем только растёт, поэтому значение последней проверки занижено,
+ * и решение о том, что реплика видит запись клиента, всегда безопасно.
+ * </p>
+ */
+@Slf4j
+public class ReplicaMonitor implements AutoCloseable {
+
+    private static final String PRIMARY_LSN = "select pg_current_wal_lsn()::text";
+    private static final String REPLAY_LSN = "select (case when pg_is_in_recovery() then pg_last_wal_replay_lsn()"
+            + " else pg_current_wal_lsn() end)::text";
+
+    private final DataSource primary;
+    private final ReplicationWatermark watermark;
+    private final long maxLagBytes;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+    private volatile long primaryLsn;
+
+    /**
+     * @param primary       основная база данных
+     * @param replicas      реплики по именам
+     * @param watermark     LSN собственных записей пользователей
+     * @param maxLagBytes   допустимое отставание реплики в байтах журнала
+     * @param meterRegistry реестр метрик
+     */
+    public ReplicaMonitor(DataSource primary,
+                          Map<String, DataSource> replicas,
+                          ReplicationWatermark watermark,
+                          long maxLagBytes,
+                          MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.watermark = watermark;
+        this.maxLagBytes = maxLagBytes;
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            this.replicas.add(replica);
+            Gauge.builder("file.replica.lag", replica, r -> r.replayedLsn < 0 ? Double.NaN : primaryLsn - r.replayedLsn)
+                    .description("Отставание реплики от основной базы данных в байтах журнала")
+                    .baseUnit("bytes")
+                    .tag("replica", name)
+                    .register(meterRegistry);
+        });
+        this.fallbacks = Counter.builder("file.replica.fallbacks")
+                .description("Количество читающих транзакций, выполненных на основной базе из-за отставания реплик")
+                .register(meterRegistry);
+        Gauge.builder("file.replica.watermarks", watermark, ReplicationWatermark::size)
+                .description("Количество пользователей, чьи записи ещё не воспроизвели все реплики")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Обновляет LSN основной базы и реплик и забывает записи пользователей, которые воспроизвели все реплики.
+     */
+    @Scheduled(fixedDelayString = "${file.replica.check-interval}")
+    public void poll() {
+        try {
+            primaryLsn = currentLsn(primary, PRIMARY_LSN);
+        } catch (SQLException e) {
+            log.warn("Не удалось получить LSN основной базы данных: {}", e.getMessage());
+            return;
+        }
+        long replayedByAll = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            try {
+                replica.replayedLsn = Math.max(replica.replayedLsn, currentLsn(replica.dataSource, REPLAY_LSN));
+                boolean healthy = primaryLsn - replica.replayedLsn <= maxLagBytes;
+                if (healthy != replica.healthy) {
+                    log.info("Реплика {} {}: отставание {} байт", replica.name,
+                            healthy ? "доступна для чтения" : "отстаёт", primaryLsn - replica.replayedLsn);
+                }
+                replica.healthy = healthy;
+            } catch (SQLException e) {
+                if (replica.healthy) {
+                    log.warn("Реплика {} недоступна: {}", replica.name, e.getMessage());
+                }
+                replica.healthy = false;
+            }
+            replayedByAll = Math.min(replayedByAll, replica.replayedLsn);
+        }
+        if (replayedByAll > 0) {
+            watermark.expire(replayedByAll);
+        }
+    }
+
+    /**
+     * Выбирает реплику, которая воспроизвела журнал не меньше, чем до заданного LSN.
+     *
+     * @param requiredLsn требуемый LSN
+     * @return имя реплики или пустое значение, если читать нужно с основной базы
+     */
+    public Optional<String> select(long requiredLsn) {
+        int size = replicas.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy && replica.replayedLsn >= requiredLsn) {
+                return Optional.of(replica.name);
+            }
+        }
+        fallbacks.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Возвращает текущий LSN основной базы данных.
+     *
+     * @return LSN
+     * @throws SQLException если запрос не удался
+     */
+    public long primaryLsn() throws SQLException {
+        return currentLsn(primary, PRIMARY_LSN);
+    }
+
+    /**
+     * @return реплики по именам для маршрутизации соединений
+     */
+    public Map<Object, Object> targetDataSources() {
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        replicas.forEach(replica -> targets.put(replica.name, replica.dataSource));
+        return targets;
+    }
+
+    /**
+     * Закрывает пулы соединений реплик.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static long currentLsn(DataSource dataSource, String query) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            resultSet.next();
+            return ReplicationWatermark.parseLsn(resultSet.getString(1));
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long replayedLsn = -1;
+        private volatile boolean healthy;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.karasov.file_service.service.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+
+/**
+ * Источник данных, направляющий читающие транзакции запросов клиентов на реплики, а остальные — на основную базу.
+ * <p>
+ * Решение принимается при получении соединения, поэтому источник нужно оборачивать в
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: тогда соединение берётся
+ * при первом запросе транзакции, когда признак {@code readOnly} уже установлен. Фоновые задачи всегда работают
+ * с основной базой. После фиксации пишущей транзакции запроса текущий LSN основной базы передаётся
+ * в {@link ReplicationWatermark}, чтобы следующие чтения этого пользователя видели запись.
+ * </p>
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Ключ основной базы данных.
+     */
+    public static final String PRIMARY = "primary";
+
+    private final ReplicaMonitor monitor;
+    private final ReplicationWatermark watermark;
+
+    public ReplicaRoutingDataSource(ReplicaMonitor monitor, ReplicationWatermark watermark) {
+        this.monitor = monitor;
+        this.watermark = watermark;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!watermark.isActive()) {
+            return PRIMARY;
+        }
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return monitor.select(watermark.requiredLsn()).orElse(PRIMARY);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        watermark.recordWrite(monitor.primaryLsn());
+                    } catch (SQLException e) {
+                        log.warn("Не удалось получить LSN записи: {}", e.getMessage());
+                    }
+                }
+            });
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,154 @@
+package com.karasov.file_service.service.replica;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Позиции журнала (LSN) собственных изменений пользователей для чтения своих записей с реплик.
+ * <p>
+ * На время запроса в поток записывается контекст: пользователь, LSN из заголовка запроса и обработчик нового
+ * LSN записи. Запрос может читать с реплики, только если реплика воспроизвела журнал не меньше, чем до
+ * {@link #requiredLsn()} — наибольшего из LSN заголовка и LSN последней записи пользователя на этом экземпляре.
+ * Заголовок нужен клиентам, которые обращаются к разным экземплярам приложения.
+ * </p>
+ * <p>
+ * LSN последней записи хранится, только пока его не воспроизвели все реплики ({@link #expire}),
+ * поэтому объём памяти определяется количеством пользователей, писавших в пределах задержки репликации.
+ * </p>
+ */
+public class ReplicationWatermark {
+
+    private final ThreadLocal<Context> context = new ThreadLocal<>();
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    /**
+     * Устанавливает контекст запроса в текущем потоке.
+     *
+     * @param user        имя пользователя или null для анонимного запроса
+     * @param requestLsn  LSN из заголовка запроса или 0
+     * @param onWrite     обработчик LSN зафиксированной записи
+     */
+    public void begin(String user, long requestLsn, LongConsumer onWrite) {
+        context.set(new Context(user, requestLsn, onWrite));
+    }
+
+    /**
+     * Снимает контекст запроса с текущего потока.
+     */
+    public void end() {
+        context.remove();
+    }
+
+    /**
+     * @return true, если текущий поток выполняет запрос клиента
+     */
+    public boolean isActive() {
+        return context.get() != null;
+    }
+
+    /**
+     * @return LSN, который должна воспроизвести реплика, чтобы запрос увидел свои записи
+     */
+    public long requiredLsn() {
+        Context current = context.get();
+        if (current == null) {
+            return 0;
+        }
+        Long lastWrite = current.user() == null ? null : lastWrites.get(current.user());
+        return lastWrite == null ? current.requestLsn() : Math.max(current.requestLsn(), lastWrite);
+    }
+
+    /**
+     * Запоминает LSN зафиксированной записи текущего запроса.
+     *
+     * @param lsn LSN основной базы данных после фиксации
+     */
+    public void recordWrite(long lsn) {
+        Context current = context.get();
+        if (current == null) {
+            return;
+        }
+        if (current.user() != null) {
+            lastWrites.merge(current.user(), lsn, Math::max);
+        }
+        current.onWrite().accept(lsn);
+    }
+
+    /**
+     * Забывает записи, которые уже воспроизвели все реплики.
+     *
+     * @param replayedLsn наименьший LSN, воспроизведённый репликами
+     */
+    public void expire(long replayedLsn) {
+        lastWrites.values().removeIf(lsn -> lsn <= replayedLsn);
+    }
+
+    /**
+     * @return количество пользователей с запомненной записью
+     */
+    public int size() {
+        return lastWrites.size();
+    }
+
+    /**
+     * Переносит контекст текущего потока в задачу, выполняемую другим потоком (асинхронная запись ответа).
+     *
+     * @param task задача
+     * @return задача, выполняемая с контекстом текущего потока
+     */
+    public Runnable propagate(Runnable task) {
+        Context captured = context.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Context previous = context.get();
+            context.set(captured);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    context.remove();
+                } else {
+                    context.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Разбирает текстовое представление {@code pg_lsn} ({@code 16/B374D848}).
+     *
+     * @param text текстовое представление
+     * @return LSN или 0, если строка пуста или не является LSN
+     */
+    public static long parseLsn(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int slash = text.indexOf('/');
+        if (slash <= 0 || slash == text.length() - 1) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(text.substring(0, slash).trim(), 16) << 32
+                    | Long.parseLong(text.substring(slash + 1).trim(), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Форматирует LSN так же, как PostgreSQL.
+     *
+     * @param lsn LSN
+     * @return текстовое представление {@code pg_lsn}
+     */
+    public static String formatLsn(long lsn) {
+        return Long.toHexString(lsn >>> 32).toUpperCase() + "/" + Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+    }
+
+    private record Context(String user, long requestLsn, LongConsumer onWrite) {
+    }
+}
@@ -0,0 +1,200 @@
+package com.karasov.file_service.service.revision;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Двоичная дельта между двумя версиями содержимого.
+ * <p>
+ * Дельта описывает целевое содержимое как последовательность команд над исходным: скопировать участок
+ * исходного содержимого ({@code COPY}) или вставить новые байты ({@code ADD}). Совпадающие участки
+ * ищутся по хешам блоков исходного содержимого с помощью скользящего хеша по целевому, поэтому вставки
+ * и удаления в середине файла не мешают находить совпадения после них.
+ * </p>
+ * <p>
+ * Формат: длина целевого содержимого, затем команды. {@code ADD}: байт 0, длина, байты.
+ * {@code COPY}: байт 1, смещение в исходном содержимом, длина. Числа записываются как varint.
+ * </p>
+ */
+public final class BinaryDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int HASH_BASE = 257;
+    private static final int OP_ADD = 0;
+    private static final int OP_COPY = 1;
+
+    private BinaryDelta() {
+    }
+
+    /**
+     * Строит дельту, восстанавливающую {@code target} из {@code source}.
+     *
+     * @param source исходное содержимое
+     * @param target целевое содержимое
+     * @return закодированная дельта
+     */
+    public static byte[] encode(byte[] source, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+
+        int literalStart = 0;
+        if (source.length >= BLOCK_SIZE && target.length >= BLOCK_SIZE) {
+            int[] index = buildIndex(source);
+            int shift = Integer.numberOfLeadingZeros(index.length - 1);
+            int highPower = power(HASH_BASE, BLOCK_SIZE - 1);
+
+            int position = 0;
+            int hash = hash(target, 0);
+            while (true) {
+                int candidate = index[bucket(hash, shift)];
+                if (candidate >= 0 && Arrays.equals(source, candidate, candidate + BLOCK_SIZE,
+                        target, position, position + BLOCK_SIZE)) {
+                    int sourceStart = candidate;
+                    int targetStart = position;
+                    while (sourceStart > 0 && targetStart > literalStart
+                            && source[sourceStart - 1] == target[targetStart - 1]) {
+                        sourceStart--;
+                        targetStart--;
+                    }
+                    int length = position + BLOCK_SIZE - targetStart;
+                    while (sourceStart + length < source.length && targetStart + length < target.length
+                            && source[sourceStart + length] == target[targetStart + length]) {
+                        length++;
+                    }
+
+                    writeAdd(out, target, literalStart, targetStart);
+                    out.write(OP_COPY);
+                    writeVarint(out, sourceStart);
+                    writeVarint(out, length);
+
+                    position = targetStart + length;
+                    literalStart = position;
+                    if (position + BLOCK_SIZE > target.length) {
+                        break;
+                    }
+                    hash = hash(target, position);
+                } else {
+                    if (position + BLOCK_SIZE >= target.length) {
+                        break;
+                    }
+                    hash = (hash - (target[position] & 0xFF) * highPower) * HASH_BASE
+                            + (target[position + BLOCK_SIZE] & 0xFF);
+                    position++;
+                }
+            }
+        }
+        writeAdd(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Применяет дельту к исходному содержимому.
+     *
+     * @param source исходное содержимое
+     * @param delta  дельта, построенная {@link #encode(byte[], byte[])}
+     * @return восстановленное целевое содержимое
+     * @throws IllegalArgumentException если дельта повреждена или построена для другого исходного содержимого
+     */
+    public static byte[] apply(byte[] source, byte[] delta) {
+        int[] cursor = {0};
+        int targetLength = readVarint(delta, cursor);
+        byte[] target = new byte[targetLength];
+        int written = 0;
+
+        while (cursor[0] < delta.length) {
+            int op = delta[cursor[0]++];
+            if (op == OP_ADD) {
+                int length = readVarint(delta, cursor);
+                checkRange(cursor[0], length, delta.length);
+                checkRange(written, length, targetLength);
+                System.arraycopy(delta, cursor[0], target, written, length);
+                cursor[0] += length;
+                written += length;
+            } else if (op == OP_COPY) {
+                int offset = readVarint(delta, cursor);
+                int length = readVarint(delta, cursor);
+                checkRange(offset, length, source.length);
+                checkRange(written, length, targetLength);
+                System.arraycopy(source, offset, target, written, length);
+                written += length;
+            } else {
+                throw new IllegalArgumentException("Неизвестная команда дельты: " + op);
+            }
+        }
+        if (written != targetLength) {
+            throw new IllegalArgumentException("Дельта восстанавливает " + written + " байт вместо " + targetLength);
+        }
+        return target;
+    }
+
+    private static int[] buildIndex(byte[] source) {
+        int blocks = source.length / BLOCK_SIZE;
+        int[] index = new int[Integer.highestOneBit(Math.max(blocks, 1) * 2 - 1) << 1];
+        Arrays.fill(index, -1);
+        int shift = Integer.numberOfLeadingZeros(index.length - 1);
+        for (int offset = (blocks - 1) * BLOCK_SIZE; offset >= 0; offset -= BLOCK_SIZE) {
+            index[bucket(hash(source, offset), shift)] = offset;
+        }
+        return index;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * HASH_BASE + (data[offset + i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static int bucket(int hash, int shift) {
+        return (hash * 0x9E3779B1) >>> shift;
+    }
+
+    private static int power(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static void writeAdd(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        if (to > from) {
+            out.write(OP_ADD);
+            writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (cursor[0] >= data.length) {
+                throw new IllegalArgumentException("Дельта обрывается внутри числа");
+            }
+            byte b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Некорректное число в дельте");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Некорректное число в дельте");
+    }
+
+    private static void checkRange(int offset, int length, int limit) {
+        if (offset < 0 || length < 0 || offset > limit - length) {
+            throw new IllegalArgumentException("Дельта выходит за границы содержимого");
+        }
+    }
+}
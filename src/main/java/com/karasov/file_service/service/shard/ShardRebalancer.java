@@ -0,0 +1,116 @@
+package com.karasov.file_service.service.shard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Перераспределение файлов по шардам после их добавления, выполняемое без остановки приложения.
+ * <p>
+ * Новые шарды добавляются в конец {@code file.shard.urls}, а прежнее количество шардов указывается
+ * в {@code file.shard.previous-count}. Каждый запуск просматривает в каждом прежнем шарде очередную порцию
+ * из {@code file.shard.rebalance.batch-size} имён по возрастанию и переносит в новые шарды файлы, которые им
+ * теперь принадлежат; пауза между порциями задаётся {@code file.shard.rebalance.interval}, поэтому нагрузка
+ * на базы данных ограничена. Пока файл не перенесён, он читается из прежнего шарда, а перед изменением
+ * переносится запросом (см. {@link ShardTransfer#writeShard}). Перенесённые файлы учитываются в метрике
+ * {@code file.shard.rebalance.moved}.
+ * </p>
+ * <p>
+ * Если какой-либо файл перенести не удалось, просмотр начинается заново. После полного прохода без ошибок
+ * прежние шарды перестают проверяться при чтении, и {@code file.shard.previous-count} можно вернуть в 0.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.shard.enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    private final ShardRouter shardRouter;
+    private final ShardTransfer shardTransfer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.shard.rebalance.batch-size}")
+    private int batchSize;  // Количество имён файлов, просматриваемых в каждом шарде за один запуск.
+
+    private final Map<String, String> positions = new HashMap<>();
+    private final Set<String> scanned = new HashSet<>();
+    private boolean failed;
+    private Counter moved;
+
+    @PostConstruct
+    public void init() {
+        moved = Counter.builder("file.shard.rebalance.moved")
+                .description("Количество файлов, перенесённых в новые шарды")
+                .register(meterRegistry);
+        if (shardRouter.isResharding()) {
+            log.info("Перераспределение файлов из шардов {} по шардам {}",
+                    shardRouter.previousShards(), shardRouter.shards());
+        }
+    }
+
+    /**
+     * Переносит очередную порцию файлов каждого прежнего шарда.
+     */
+    @Scheduled(fixedDelayString = "${file.shard.rebalance.interval}")
+    public void run() {
+        if (!shardRouter.isResharding()) {
+            return;
+        }
+        for (String shard : shardRouter.previousShards()) {
+            if (!scanned.contains(shard)) {
+                rebalance(shard);
+            }
+        }
+        if (scanned.size() < shardRouter.previousShards().size()) {
+            return;
+        }
+        if (failed) {
+            log.warn("Не все файлы перенесены в новые шарды, перераспределение начинается заново");
+            positions.clear();
+            scanned.clear();
+            failed = false;
+            return;
+        }
+        shardRouter.finishResharding();
+        log.info("Перераспределение файлов по шардам завершено, перенесено файлов: {}; " +
+                "file.shard.previous-count можно установить в 0", (long) moved.count());
+    }
+
+    private void rebalance(String shard) {
+        List<String> names = shardRouter.jdbcTemplate(shard).queryForList(
+                "SELECT name FROM files WHERE name > ? ORDER BY name LIMIT ?",
+                String.class, positions.getOrDefault(shard, ""), batchSize);
+        for (String name : names) {
+            String owner = shardRouter.shardFor(name);
+            if (owner.equals(shard)) {
+                continue;
+            }
+            try {
+                if (shardTransfer.move(name, name, shard, owner)) {
+                    moved.increment();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось перенести файл {} из шарда {} в шард {}: {}", name, shard, owner, e.getMessage());
+                failed = true;
+            }
+        }
+        if (names.size() < batchSize) {
+            scanned.add(shard);
+        } else {
+            positions.put(shard, names.get(names.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.karasov.file_service.service.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хеширования имён файлов по шардам.
+ * <p>
+ * Каждый шард занимает на кольце {@code virtualNodes} точек; имя файла принадлежит шарду первой точки
+ * по часовой стрелке от хеша имени. При добавлении шарда к нему переходит примерно {@code 1 / (N + 1)} имён,
+ * и только от существующих шардов к новому, поэтому перераспределение затрагивает минимум файлов.
+ * Хеш не зависит от JVM и порядка запуска: одно и то же имя всегда попадает в один шард.
+ * </p>
+ */
+public class ShardRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+    private final List<String> shards;
+
+    /**
+     * @param shards       имена шардов
+     * @param virtualNodes количество точек каждого шарда на кольце
+     */
+    public ShardRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Кольцо должно содержать хотя бы один шард");
+        }
+        this.shards = List.copyOf(shards);
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    /**
+     * @param key имя файла
+     * @return шард, которому принадлежит имя
+     */
+    public String shardFor(String key) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    /**
+     * @return имена шардов кольца
+     */
+    public List<String> shards() {
+        return shards;
+    }
+
+    /**
+     * 64-битный FNV-1a по байтам UTF-8 с перемешиванием из MurmurHash3, чтобы близкие имена
+     * распределялись по кольцу равномерно.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
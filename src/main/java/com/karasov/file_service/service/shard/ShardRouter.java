@@ -0,0 +1,313 @@
+package com.karasov.file_service.service.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Выбор шарда базы данных для имени файла и текущего потока.
+ * <p>
+ * Шард файла определяется кольцом согласованного хеширования {@link ShardRing} по имени файла. Код, работающий
+ * с файлом, выполняется внутри {@link #onShard}: шард запоминается в потоке, и {@link ShardRoutingDataSource}
+ * выдаёт транзакции соединение этого шарда. Транзакция не может переходить между шардами: попытка обратиться
+ * из неё к другому шарду завершается {@link IllegalStateException}, а не незаметной записью не в ту базу.
+ * Вне {@link #onShard} используется шард {@value #DEFAULT_SHARD}, в котором хранятся, например, пользователи.
+ * </p>
+ * <p>
+ * Во время перераспределения после добавления шардов ({@code file.shard.previous-count} больше нуля) роутер
+ * помнит и прежнее кольцо: файл, ещё не перенесённый {@link ShardRebalancer}, читается из прежнего шарда.
+ * Без шардирования роутер содержит единственный шард и ничего не переключает.
+ * </p>
+ */
+public class ShardRouter implements AutoCloseable {
+
+    /**
+     * Шард по умолчанию: база данных из свойств {@code spring.datasource.*}.
+     */
+    public static final String DEFAULT_SHARD = "shard-0";
+
+    /**
+     * Порядок имён файлов, совпадающий с порядком {@code ORDER BY name} в базе данных (столбцы имён используют
+     * правило сортировки {@code C}): по кодовым точкам Unicode. По нему объединяются упорядоченные результаты
+     * разных шардов, индекса списка файлов и спула.
+     */
+    public static final Comparator<String> NAME_ORDER = ShardRouter::compareNames;
+
+    private final boolean enabled;
+    private final Map<String, DataSource> dataSources;
+    private final Map<String, JdbcTemplate> jdbcTemplates = new LinkedHashMap<>();
+    private final ShardRing ring;
+    private final List<String> previousShards;
+    private volatile ShardRing previousRing;
+    private final ThreadLocal<String> current = new ThreadLocal<>();
+
+    /**
+     * @param dataSources  пулы соединений шардов в порядке номеров; первый - шард по умолчанию
+     * @param previousCount количество шардов до их добавления; 0 - перераспределение не выполняется
+     * @param virtualNodes количество точек каждого шарда на кольце
+     */
+    public ShardRouter(Map<String, DataSource> dataSources, int previousCount, int virtualNodes) {
+        this(true, dataSources, previousCount, virtualNodes);
+    }
+
+    private ShardRouter(boolean enabled, Map<String, DataSource> dataSources, int previousCount, int virtualNodes) {
+        if (previousCount > dataSources.size()) {
+            throw new IllegalArgumentException("Прежнее количество шардов больше текущего: " + previousCount);
+        }
+        this.enabled = enabled;
+        this.dataSources = new LinkedHashMap<>(dataSources);
+        this.dataSources.forEach((shard, dataSource) -> jdbcTemplates.put(shard, new JdbcTemplate(dataSource)));
+        List<String> shards = enabled ? new ArrayList<>(dataSources.keySet()) : List.of(DEFAULT_SHARD);
+        this.ring = new ShardRing(shards, virtualNodes);
+        this.previousShards = List.copyOf(shards.subList(0, previousCount));
+        this.previousRing = previousCount > 0 && previousCount < shards.size()
+                ? new ShardRing(previousShards, virtualNodes)
+                : null;
+    }
+
+    /**
+     * Создаёт роутер без шардирования: все обращения выполняются в единственной базе данных приложения.
+     *
+     * @return роутер с одним шардом
+     */
+    public static ShardRouter single() {
+        return new ShardRouter(false, Map.of(), 0, 1);
+    }
+
+    /**
+     * @return true, если данные распределены по шардам
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return имена шардов в порядке номеров
+     */
+    public List<String> shards() {
+        return ring.shards();
+    }
+
+    /**
+     * @param fileName имя файла
+     * @return шард, которому принадлежит файл
+     */
+    public String shardFor(String fileName) {
+        return enabled ? ring.shardFor(fileName) : DEFAULT_SHARD;
+    }
+
+    /**
+     * Возвращает прежний шард файла, если во время перераспределения файл ещё может находиться в нём.
+     *
+     * @param fileName имя файла
+     * @return прежний шард, отличный от текущего, или пустое значение
+     */
+    public Optional<String> previousShardFor(String fileName) {
+        ShardRing previous = previousRing;
+        if (previous == null) {
+            return Optional.empty();
+        }
+        String shard = previous.shardFor(fileName);
+        return shard.equals(shardFor(fileName)) ? Optional.empty() : Optional.of(shard);
+    }
+
+    /**
+     * Определяет шард для чтения файла: во время перераспределения файл, ещё не перенесённый
+     * в новый шард, читается из прежнего.
+     *
+     * @param fileName имя файла
+     * @return шард, в котором находится файл, либо шард, которому файл принадлежит, если файла нет
+     */
+    public String readShard(String fileName) {
+        String owner = shardFor(fileName);
+        Optional<String> previous = previousShardFor(fileName);
+        if (previous.isEmpty() || exists(owner, fileName) || !exists(previous.get(), fileName)) {
+            return owner;
+        }
+        return previous.get();
+    }
+
+    /**
+     * @return true, если файлы переносятся из прежних шардов в новые
+     */
+    public boolean isResharding() {
+        return previousRing != null;
+    }
+
+    /**
+     * @return шарды, из которых переносятся файлы при перераспределении
+     */
+    public List<String> previousShards() {
+        return previousShards;
+    }
+
+    /**
+     * Завершает перераспределение: после переноса всех файлов прежние шарды больше не проверяются при чтении.
+     */
+    public void finishResharding() {
+        previousRing = null;
+    }
+
+    /**
+     * @return шард текущего потока
+     */
+    public String currentShard() {
+        String shard = current.get();
+        return shard != null ? shard : DEFAULT_SHARD;
+    }
+
+    /**
+     * Выполняет действие с шардом, выбранным для текущего потока.
+     *
+     * @param shard  шард
+     * @param action действие
+     * @return результат действия
+     * @throws IllegalStateException если текущая транзакция уже работает с другим шардом
+     */
+    public <T> T onShard(String shard, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        Object bound = TransactionSynchronizationManager.getResource(this);
+        if (bound != null && !bound.equals(shard)) {
+            throw new IllegalStateException(
+                    "Транзакция работает с шардом " + bound + " и не может обратиться к шарду " + shard);
+        }
+        String previous = current.get();
+        current.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие с шардом, выбранным для текущего потока.
+     *
+     * @param shard  шард
+     * @param action действие
+     */
+    public void runOnShard(String shard, Runnable action) {
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Выполняет действие по очереди с каждым шардом.
+     *
+     * @param action действие, получающее имя шарда
+     */
+    public void forEachShard(Consumer<String> action) {
+        for (String shard : shards()) {
+            runOnShard(shard, () -> action.accept(shard));
+        }
+    }
+
+    /**
+     * @param shard шард
+     * @return пул соединений шарда
+     */
+    public DataSource dataSource(String shard) {
+        DataSource dataSource = dataSources.get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Неизвестный шард: " + shard);
+        }
+        return dataSource;
+    }
+
+    /**
+     * @param shard шард
+     * @return шаблон запросов к шарду вне транзакций приложения
+     */
+    public JdbcTemplate jdbcTemplate(String shard) {
+        JdbcTemplate jdbcTemplate = jdbcTemplates.get(shard);
+        if (jdbcTemplate == null) {
+            throw new IllegalArgumentException("Неизвестный шард: " + shard);
+        }
+        return jdbcTemplate;
+    }
+
+    /**
+     * @return пулы соединений всех шардов
+     */
+    public Map<String, DataSource> dataSources() {
+        return dataSources;
+    }
+
+    /**
+     * Закрепляет шард за текущей транзакцией при получении ею соединения.
+     * При приостановке транзакции (например, для {@code REQUIRES_NEW}) закрепление снимается и восстанавливается.
+     *
+     * @param shard шард соединения
+     */
+    void bindToTransaction(String shard) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ShardRouter.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(ShardRouter.this, shard);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ShardRouter.this);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        for (DataSource dataSource : dataSources.values()) {
+            if (dataSource instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        }
+    }
+
+    private boolean exists(String shard, String fileName) {
+        return Boolean.TRUE.equals(jdbcTemplate(shard).queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM files WHERE name = ?)", Boolean.class, fileName));
+    }
+
+    private static int compareNames(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            int a = left.codePointAt(i);
+            int b = right.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+}
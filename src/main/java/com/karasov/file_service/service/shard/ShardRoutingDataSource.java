@@ -0,0 +1,27 @@
+package com.karasov.file_service.service.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Источник данных, выдающий соединение шарда, выбранного для текущего потока в {@link ShardRouter}.
+ * <p>
+ * Решение принимается при получении соединения, поэтому источник нужно оборачивать в
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: тогда транзакция, начатая до выбора
+ * шарда, получает соединение при первом запросе. Полученный шард закрепляется за транзакцией.
+ * </p>
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ShardRouter router;
+
+    public ShardRoutingDataSource(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = router.currentShard();
+        router.bindToTransaction(shard);
+        return shard;
+    }
+}
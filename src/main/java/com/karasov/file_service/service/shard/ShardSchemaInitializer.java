@@ -0,0 +1,53 @@
+package com.karasov.file_service.service.shard;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * Подготовка баз данных шардов при запуске приложения.
+ * <p>
+ * Шард по умолчанию обновляет автоконфигурация Liquibase Spring Boot, к остальным шардам применяется тот же
+ * журнал изменений. Объединение упорядоченных по имени результатов шардов требует, чтобы {@code ORDER BY name}
+ * во всех базах совпадал с {@link ShardRouter#NAME_ORDER}; это обеспечивает журнал изменений, задающий столбцам
+ * имён правило сортировки {@code C} независимо от правила сортировки базы данных.
+ * </p>
+ */
+public class ShardSchemaInitializer implements InitializingBean {
+
+    private final ShardRouter shardRouter;
+    private final ResourceLoader resourceLoader;
+    private final String changeLog;
+    private final String defaultSchema;
+
+    /**
+     * @param shardRouter    роутер шардов
+     * @param resourceLoader загрузчик журнала изменений
+     * @param changeLog      журнал изменений Liquibase
+     * @param defaultSchema  схема базы данных
+     */
+    public ShardSchemaInitializer(ShardRouter shardRouter,
+                                  ResourceLoader resourceLoader,
+                                  String changeLog,
+                                  String defaultSchema) {
+        this.shardRouter = shardRouter;
+        this.resourceLoader = resourceLoader;
+        this.changeLog = changeLog;
+        this.defaultSchema = defaultSchema;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        for (String shard : shardRouter.shards()) {
+            if (shard.equals(ShardRouter.DEFAULT_SHARD)) {
+                continue;
+            }
+            SpringLiquibase liquibase = new SpringLiquibase();
+            liquibase.setDataSource(shardRouter.dataSource(shard));
+            liquibase.setChangeLog(changeLog);
+            liquibase.setDefaultSchema(defaultSchema);
+            liquibase.setResourceLoader(resourceLoader);
+            liquibase.afterPropertiesSet();
+        }
+    }
+}
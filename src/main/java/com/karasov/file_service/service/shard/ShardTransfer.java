@@ -0,0 +1,291 @@
+package com.karasov.file_service.service.shard;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Перенос и копирование файла между шардами.
+ * <p>
+ * Строки файла и связанных таблиц читаются из исходного шарда и записываются в целевой отдельными соединениями
+ * пулов шардов, содержимое передаётся фрагментами по {@code file.content.chunk-size} без загрузки в память.
+ * Строка исходного файла блокируется на время переноса. Сначала фиксируется запись в целевой шард, затем
+ * удаление из исходного; если удаление не выполнилось, повторный перенос того же имени (например, при следующем
+ * проходе {@link ShardRebalancer}) только удаляет оставшуюся строку. Две базы данных не образуют одну транзакцию,
+ * поэтому прерванное переименование между шардами может оставить файл под обоими именами.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShardTransfer {
+
+    private static final String COPIED_FILE_COLUMNS =
+            "name, size, mime_type, checksum, tier, cold_segment, cold_offset, cold_length";
+
+    private final ShardRouter shardRouter;
+
+    @Value("${file.content.chunk-size}")
+    private int chunkSize;  // Размер фрагмента, которым содержимое файла передаётся между шардами.
+
+    /**
+     * Определяет шард для изменения файла. Во время перераспределения файл, ещё оставшийся в прежнем шарде,
+     * сначала переносится в новый, чтобы изменение не разошлось с переносом.
+     *
+     * @param fileName имя файла
+     * @return шард, которому принадлежит файл
+     */
+    public String writeShard(String fileName) {
+        String owner = shardRouter.shardFor(fileName);
+        shardRouter.previousShardFor(fileName).ifPresent(previous -> move(fileName, fileName, previous, owner));
+        return owner;
+    }
+
+    /**
+     * Переносит файл в другой шард, возможно, под новым именем.
+     * Вместе с файлом переносятся содержимое, результаты и задания фоновой обработки и история версий.
+     *
+     * @param fileName    имя файла
+     * @param newFileName имя файла в целевом шарде
+     * @param fromShard   исходный шард
+     * @param toShard     целевой шард
+     * @return true, если файл перенесён, false, если файл не найден или файл с новым именем уже существует
+     */
+    public boolean move(String fileName, String newFileName, String fromShard, String toShard) {
+        return transfer(fileName, newFileName, fromShard, toShard, true);
+    }
+
+    /**
+     * Копирует файл в другой шард под новым именем так же, как копирование внутри одной базы данных:
+     * копируются содержимое и результаты фоновой обработки, невыполненные этапы обработки ставятся в очередь.
+     *
+     * @param sourceFileName имя исходного файла
+     * @param targetFileName имя копии
+     * @param fromShard      шард исходного файла
+     * @param toShard        шард копии
+     * @return true, если файл скопирован, false, если исходный файл не найден или копия уже существует
+     */
+    public boolean copy(String sourceFileName, String targetFileName, String fromShard, String toShard) {
+        return transfer(sourceFileName, targetFileName, fromShard, toShard, false);
+    }
+
+    private boolean transfer(String sourceName, String targetName, String fromShard, String toShard, boolean move) {
+        try (Connection source = shardRouter.dataSource(fromShard).getConnection();
+             Connection target = shardRouter.dataSource(toShard).getConnection()) {
+            source.setAutoCommit(false);
+            target.setAutoCommit(false);
+            try {
+                boolean transferred = transfer(source, target, sourceName, targetName, move);
+                if (!transferred) {
+                    target.rollback();
+                    source.rollback();
+                }
+                return transferred;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(target);
+                rollbackQuietly(source);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("Перенос файла " + sourceName + " в шард " + toShard, null, e);
+        }
+    }
+
+    private boolean transfer(Connection source, Connection target, String sourceName, String targetName,
+                             boolean move) throws SQLException {
+        if (!lock(source, sourceName, move)) {
+            return false;
+        }
+        String fileQuery = "SELECT " + (move ? "*" : COPIED_FILE_COLUMNS) + " FROM files WHERE name = ?";
+        if (copyRows(source, target, fileQuery, "files", "name", sourceName, targetName,
+                " ON CONFLICT (name) DO NOTHING") == 0) {
+            if (!move || !sourceName.equals(targetName)) {
+                return false;
+            }
+            // Файл уже записан в целевой шард прерванным переносом: осталось удалить его из исходного.
+            target.rollback();
+        } else {
+            copyContent(source, target, sourceName, targetName);
+            copyRows(source, target, "SELECT * FROM file_texts WHERE file_name = ?",
+                    "file_texts", "file_name", sourceName, targetName, "");
+            if (move) {
+                copyRows(source, target, "SELECT * FROM file_revisions WHERE file_name = ?",
+                        "file_revisions", "file_name", sourceName, targetName, "");
+                copyRows(source, target, "SELECT * FROM file_processing_jobs WHERE file_name = ?",
+                        "file_processing_jobs", "file_name", sourceName, targetName, "");
+            } else {
+                copyRows(source, target, "SELECT file_name, stage, 'PENDING' AS status FROM file_processing_jobs " +
+                                "WHERE file_name = ? AND status <> 'FAILED'",
+                        "file_processing_jobs", "file_name", sourceName, targetName, "");
+            }
+            target.commit();
+        }
+        if (move) {
+            delete(source, "DELETE FROM file_processing_jobs WHERE file_name = ?", sourceName);
+            delete(source, "DELETE FROM files WHERE name = ?", sourceName);
+        }
+        source.commit();
+        return true;
+    }
+
+    private static boolean lock(Connection source, String fileName, boolean move) throws SQLException {
+        try (PreparedStatement statement = source.prepareStatement(
+                "SELECT 1 FROM files WHERE name = ? " + (move ? "FOR UPDATE" : "FOR SHARE"))) {
+            statement.setString(1, fileName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Копирует строки запроса к исходному шарду в таблицу целевого шарда, заменяя значение ключевого столбца
+     * новым именем файла. Столбец {@code id} не копируется: идентификаторы выдаются последовательностью
+     * целевого шарда.
+     *
+     * @return количество вставленных строк
+     */
+    private static int copyRows(Connection source, Connection target, String query, String table, String keyColumn,
+                                String sourceName, String targetName, String suffix) throws SQLException {
+        int inserted = 0;
+        try (PreparedStatement select = source.prepareStatement(query)) {
+            select.setString(1, sourceName);
+            try (ResultSet rs = select.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                List<String> columns = new ArrayList<>();
+                List<Integer> indexes = new ArrayList<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    if (!"id".equals(metaData.getColumnName(i))) {
+                        columns.add(metaData.getColumnName(i));
+                        indexes.add(i);
+                    }
+                }
+                String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" +
+                        String.join(", ", Collections.nCopies(columns.size(), "?")) + ")" + suffix;
+                try (PreparedStatement statement = target.prepareStatement(insert)) {
+                    while (rs.next()) {
+                        for (int i = 0; i < columns.size(); i++) {
+                            statement.setObject(i + 1, columns.get(i).equals(keyColumn)
+                                    ? targetName
+                                    : rs.getObject(indexes.get(i)));
+                        }
+                        inserted += statement.executeUpdate();
+                    }
+                }
+            }
+        }
+        return inserted;
+    }
+
+    private void copyContent(Connection source, Connection target, String sourceName, String targetName)
+            throws SQLException {
+        long length;
+        try (PreparedStatement statement = source.prepareStatement(
+                "SELECT length(bytes) FROM file_contents WHERE name = ?")) {
+            statement.setString(1, sourceName);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                length = rs.getLong(1);
+            }
+        }
+        try (PreparedStatement insert = target.prepareStatement(
+                "INSERT INTO file_contents (name, bytes) VALUES (?, ?)")) {
+            insert.setString(1, targetName);
+            insert.setBinaryStream(2, new ChunkedContentInputStream(source, sourceName), length);
+            insert.executeUpdate();
+        }
+    }
+
+    private static void delete(Connection connection, String sql, String fileName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, fileName);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.warn("Не удалось отменить транзакцию переноса файла: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Поток, читающий содержимое файла из исходного шарда фрагментами.
+     */
+    private final class ChunkedContentInputStream extends InputStream {
+        private final Connection connection;
+        private final String fileName;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private long offset;
+        private boolean finished;
+
+        private ChunkedContentInputStream(Connection connection, String fileName) {
+            this.connection = connection;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int read = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, off, read);
+            position += read;
+            return read;
+        }
+
+        private boolean fill() throws IOException {
+            if (position < chunk.length) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT substring(bytes FROM CAST(? AS INTEGER) FOR ?) FROM file_contents WHERE name = ?")) {
+                statement.setLong(1, offset + 1);
+                statement.setInt(2, chunkSize);
+                statement.setString(3, fileName);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new IOException("Файл удалён во время переноса: " + fileName);
+                    }
+                    chunk = rs.getBytes(1);
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+            position = 0;
+            offset += chunk.length;
+            finished = chunk.length < chunkSize;
+            return chunk.length > 0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.karasov.file_service.service.shard;
+
+import com.karasov.file_service.dto.FileRevisionDto;
+import com.karasov.file_service.service.FileRevisionService;
+import org.springframework.core.io.InputStreamResource;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Сервис истории версий файлов, распределённых по шардам: история читается из шарда, в котором находится файл.
+ * Версии сохраняются в транзакции перезаписи файла, уже выполняющейся в шарде файла.
+ */
+public class ShardedFileRevisionService implements FileRevisionService {
+
+    private final FileRevisionService delegate;
+    private final ShardRouter shardRouter;
+
+    /**
+     * @param delegate    сервис истории версий одной базы данных
+     * @param shardRouter роутер шардов
+     */
+    public ShardedFileRevisionService(FileRevisionService delegate, ShardRouter shardRouter) {
+        this.delegate = delegate;
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public void archive(String fileName, int revision, byte[] previous, byte[] current) {
+        delegate.archive(fileName, revision, previous, current);
+    }
+
+    @Override
+    public Optional<List<FileRevisionDto>> getRevisions(String fileName) {
+        return shardRouter.onShard(shardRouter.readShard(fileName), () -> delegate.getRevisions(fileName));
+    }
+
+    @Override
+    public Optional<InputStreamResource> getRevision(String fileName, int revision) {
+        return shardRouter.onShard(shardRouter.readShard(fileName), () -> delegate.getRevision(fileName, revision));
+    }
+}
@@ -0,0 +1,232 @@
+package com.karasov.file_service.service.shard;
+
+import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.dto.FolderResponseDto;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.UploadPrecheckStatus;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileService;
+import org.springframework.core.io.InputStreamResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Сервис файлов, распределённых по шардам.
+ * <p>
+ * Операция с одним файлом выполняется в шарде, которому принадлежит имя файла, целиком внутри
+ * {@link FileService}, поэтому её транзакция работает с одной базой данных. Переименование и копирование
+ * в имя из другого шарда выполняет сам {@link FileService} через {@link ShardTransfer}. Поиск запрашивает
+ * страницу у каждого шарда и объединяет результаты по имени; список файлов объединяется из шардов
+ * в {@link com.karasov.file_service.repository.FileListingRepository}. Содержимое папки запрашивается у каждого
+ * шарда и объединяется так же, как результаты поиска, а показатели папок шардов складываются.
+ * </p>
+ * <p>
+ * Переименование папки не поддерживается: файлы папки распределены по шардам по хешу полного имени, и новые имена
+ * принадлежат другим шардам, поэтому переименование не сводится к изменению метаданных в одной базе данных.
+ * </p>
+ */
+public class ShardedFileService implements FileService {
+
+    private final FileService delegate;
+    private final FileRepository fileRepository;
+    private final ShardRouter shardRouter;
+    private final ShardTransfer shardTransfer;
+    private final int searchMaxLimit;
+    private final int folderMaxLimit;
+
+    /**
+     * @param delegate       сервис файлов одной базы данных
+     * @param fileRepository репозиторий файлов
+     * @param shardRouter    роутер шардов
+     * @param shardTransfer  перенос файлов между шардами
+     * @param searchMaxLimit максимальный размер страницы результатов поиска
+     * @param folderMaxLimit максимальное количество файлов на странице содержимого папки
+     */
+    public ShardedFileService(FileService delegate,
+                              FileRepository fileRepository,
+                              ShardRouter shardRouter,
+                              ShardTransfer shardTransfer,
+                              int searchMaxLimit,
+                              int folderMaxLimit) {
+        this.delegate = delegate;
+        this.fileRepository = fileRepository;
+        this.shardRouter = shardRouter;
+        this.shardTransfer = shardTransfer;
+        this.searchMaxLimit = searchMaxLimit;
+        this.folderMaxLimit = folderMaxLimit;
+    }
+
+    @Override
+    public boolean saveFile(String fileName, byte[] bytes, long size) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName), () -> delegate.saveFile(fileName, bytes, size));
+    }
+
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName), () -> delegate.saveFile(fileName, content, size));
+    }
+
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size, String sha256) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName),
+                () -> delegate.saveFile(fileName, content, size, sha256));
+    }
+
+    /**
+     * Проверяет наличие файла в его шарде, а содержимое с той же контрольной суммой ищет во всех шардах.
+     */
+    @Override
+    public UploadPrecheckStatus precheckUpload(String fileName, long size, String sha256) {
+        String shard = shardTransfer.writeShard(fileName);
+        if (shardRouter.onShard(shard, () -> fileRepository.existsById(fileName))) {
+            return UploadPrecheckStatus.FILE_EXISTS;
+        }
+        String checksum = sha256.toLowerCase(Locale.ROOT);
+        for (String candidate : shardRouter.shards()) {
+            Optional<String> source = shardRouter.onShard(candidate,
+                    () -> fileRepository.findNameByChecksum(checksum, size));
+            if (source.isPresent() && copyFile(source.get(), fileName)) {
+                return UploadPrecheckStatus.CREATED;
+            }
+        }
+        return UploadPrecheckStatus.UPLOAD_REQUIRED;
+    }
+
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName),
+                () -> delegate.overwriteFile(fileName, bytes, size));
+    }
+
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size, String sha256) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName),
+                () -> delegate.overwriteFile(fileName, bytes, size, sha256));
+    }
+
+    @Override
+    public List<FileResponseDto> getFileList(int limit) {
+        return delegate.getFileList(limit);
+    }
+
+    @Override
+    public void writeFileList(int limit, ListingFormat format, OutputStream outputStream) throws IOException {
+        delegate.writeFileList(limit, format, outputStream);
+    }
+
+    @Override
+    public void writeFileStats(List<String> fileNames, OutputStream outputStream) throws IOException {
+        delegate.writeFileStats(fileNames, outputStream);
+    }
+
+    @Override
+    public boolean deleteFile(String fileName) {
+        return shardRouter.onShard(shardTransfer.writeShard(fileName), () -> delegate.deleteFile(fileName));
+    }
+
+    @Override
+    public boolean updateFileName(String oldFileName, String newFileName) {
+        shardTransfer.writeShard(newFileName);
+        return shardRouter.onShard(shardTransfer.writeShard(oldFileName),
+                () -> delegate.updateFileName(oldFileName, newFileName));
+    }
+
+    @Override
+    public boolean copyFile(String sourceFileName, String targetFileName) {
+        shardTransfer.writeShard(targetFileName);
+        return shardRouter.onShard(shardRouter.readShard(sourceFileName),
+                () -> delegate.copyFile(sourceFileName, targetFileName));
+    }
+
+    @Override
+    public InputStreamResource getFile(String fileName) {
+        return shardRouter.onShard(shardRouter.readShard(fileName), () -> delegate.getFile(fileName));
+    }
+
+    /**
+     * Запрашивает страницу результатов у каждого шарда и объединяет их по имени. Каждый шард возвращает
+     * не больше запрошенного количества имён после {@code after}, поэтому первые {@code limit} имён
+     * объединения совпадают с первыми {@code limit} именами всех файлов.
+     */
+    @Override
+    public List<FileResponseDto> searchFiles(String query, SearchMode mode, String after, int limit) {
+        List<FileResponseDto> merged = new ArrayList<>();
+        for (String shard : shardRouter.shards()) {
+            merged.addAll(shardRouter.onShard(shard, () -> delegate.searchFiles(query, mode, after, limit)));
+        }
+        return mergePage(merged, Math.min(Math.max(limit, 0), searchMaxLimit));
+    }
+
+    /**
+     * Папка существует, если она есть хотя бы в одном шарде; показатели папки и вложенных папок складываются
+     * по шардам, а страницы файлов объединяются по имени.
+     */
+    @Override
+    public Optional<FolderListingResponseDto> listFolder(String path, String after, int limit) {
+        long size = 0;
+        long fileCount = 0;
+        boolean found = false;
+        Map<String, long[]> folders = new TreeMap<>(ShardRouter.NAME_ORDER);
+        List<FileResponseDto> files = new ArrayList<>();
+        for (String shard : shardRouter.shards()) {
+            Optional<FolderListingResponseDto> listing = shardRouter.onShard(shard,
+                    () -> delegate.listFolder(path, after, limit));
+            if (listing.isEmpty()) {
+                continue;
+            }
+            found = true;
+            size += listing.get().size();
+            fileCount += listing.get().fileCount();
+            for (FolderResponseDto folder : listing.get().folders()) {
+                long[] totals = folders.computeIfAbsent(folder.path(), key -> new long[2]);
+                totals[0] += folder.size();
+                totals[1] += folder.fileCount();
+            }
+            files.addAll(listing.get().files());
+        }
+        if (!found) {
+            return Optional.empty();
+        }
+        List<FolderResponseDto> mergedFolders = folders.entrySet().stream()
+                .map(entry -> new FolderResponseDto(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .toList();
+        return Optional.of(new FolderListingResponseDto(path, size, fileCount, mergedFolders,
+                mergePage(files, Math.min(Math.max(limit, 0), folderMaxLimit))));
+    }
+
+    /**
+     * Переименование папки при распределении файлов по шардам не поддерживается.
+     *
+     * @return всегда false
+     */
+    @Override
+    public boolean moveFolder(String path, String newPath) {
+        return false;
+    }
+
+    private static List<FileResponseDto> mergePage(List<FileResponseDto> merged, int pageSize) {
+        merged.sort(Comparator.comparing(FileResponseDto::filename, ShardRouter.NAME_ORDER));
+        List<FileResponseDto> page = new ArrayList<>();
+        for (FileResponseDto file : merged) {
+            if (page.size() >= pageSize) {
+                break;
+            }
+            // Во время перераспределения файл может на мгновение оказаться в двух шардах.
+            if (page.isEmpty() || !page.get(page.size() - 1).filename().equals(file.filename())) {
+                page.add(file);
+            }
+        }
+        return page;
+    }
+}
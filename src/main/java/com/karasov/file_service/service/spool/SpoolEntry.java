@@ -0,0 +1,14 @@
+package com.karasov.file_service.service.spool;
+
+/**
+ * Загруженный файл, ожидающий записи из спула в базу данных.
+ *
+ * @param name     имя файла
+ * @param sequence порядковый номер записи в спуле; записи переносятся в базу данных в порядке номеров
+ * @param file     номер файла спула
+ * @param offset   смещение содержимого в файле спула
+ * @param length   длина содержимого
+ * @param checksum контрольная сумма CRC32 имени и содержимого
+ */
+public record SpoolEntry(String name, long sequence, int file, long offset, int length, int checksum) {
+}
@@ -0,0 +1,148 @@
+package com.karasov.file_service.service.spool;
+
+import com.karasov.file_service.service.impl.FileServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Перенос загрузок из спула ({@link UploadSpool}) в базу данных.
+ * <p>
+ * Загрузки переносятся в порядке записи в спул пакетами по {@code file.spool.batch-size} в одной транзакции,
+ * после фиксации которой в спул записываются отметки о переносе. Если пакет не удалось сохранить, загрузки
+ * сохраняются по одной, и ошибка одной загрузки не задерживает остальные; загрузка с ошибкой остаётся в спуле
+ * до следующего запуска. При сбое между фиксацией транзакции и записью отметок загрузка после перезапуска
+ * переносится повторно и пропускается, так как файл уже есть в базе данных.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpoolFlusher {
+
+    private final UploadSpool uploadSpool;
+    private final FileServiceImpl fileService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.spool.batch-size}")
+    private int batchSize;  // Количество загрузок, переносимых в базу данных одной транзакцией.
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Counter flushed;
+    private Counter conflicts;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("file.spool.entries", uploadSpool, UploadSpool::size)
+                .description("Количество загрузок, ожидающих переноса из спула в базу данных")
+                .register(meterRegistry);
+        Gauge.builder("file.spool.bytes", uploadSpool, UploadSpool::pendingBytes)
+                .description("Объём загрузок, ожидающих переноса из спула в базу данных")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        flushed = Counter.builder("file.spool.flushed")
+                .description("Количество загрузок, перенесённых из спула в базу данных")
+                .register(meterRegistry);
+        conflicts = Counter.builder("file.spool.conflicts")
+                .description("Количество загрузок спула, пропущенных, так как файл уже есть в базе данных")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Переносит в базу данных все загрузки из спула.
+     */
+    @Scheduled(fixedDelayString = "${file.spool.flush-interval}")
+    public void run() {
+        if (!uploadSpool.isOpen()) {
+            return;
+        }
+        while (true) {
+            lock.lock();
+            try {
+                List<SpoolEntry> batch = uploadSpool.pending(batchSize);
+                if (batch.isEmpty() || flush(batch) < batch.size()) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Переносит в базу данных загрузку файла, если она ещё в спуле.
+     * Вызывается перед изменением файла, чтобы изменение применялось к файлу в базе данных.
+     *
+     * @param fileName имя файла
+     * @throws IllegalStateException если загрузку не удалось перенести
+     */
+    public void flush(String fileName) {
+        if (uploadSpool.find(fileName).isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            Optional<SpoolEntry> entry = uploadSpool.find(fileName);
+            if (entry.isPresent() && flush(List.of(entry.get())) == 0) {
+                throw new IllegalStateException("Не удалось перенести файл " + fileName + " из спула в базу данных");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сохраняет загрузки в базу данных и отмечает их перенесёнными.
+     *
+     * @return количество перенесённых загрузок
+     */
+    private int flush(List<SpoolEntry> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(this::save));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                log.error("Не удалось перенести файл {} из спула в базу данных: {}",
+                        batch.get(0).name(), e.getMessage());
+                return 0;
+            }
+            log.warn("Не удалось перенести пакет загрузок из спула, загрузки переносятся по одной: {}", e.getMessage());
+            return batch.stream().mapToInt(entry -> flush(List.of(entry))).sum();
+        }
+        try {
+            uploadSpool.complete(batch);
+        } catch (IOException e) {
+            log.error("Не удалось отметить загрузки перенесёнными в базу данных: {}", e.getMessage());
+            return 0;
+        }
+        flushed.increment(batch.size());
+        return batch.size();
+    }
+
+    private void save(SpoolEntry entry) {
+        byte[] bytes;
+        try {
+            bytes = uploadSpool.read(entry)
+                    .orElseThrow(() -> new IOException("Файл не найден в спуле: " + entry.name()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!fileService.saveFile(entry.name(), bytes, bytes.length)) {
+            conflicts.increment();
+            log.warn("Файл {} уже есть в базе данных, загрузка из спула пропущена", entry.name());
+        }
+    }
+}
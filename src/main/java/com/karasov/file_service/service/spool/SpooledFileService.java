@@ -0,0 +1,251 @@
+package com.karasov.file_service.service.spool;
+
+import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.UploadPrecheckStatus;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Сервис файлов, подтверждающий загрузку новых файлов после записи в локальный спул ({@link UploadSpool}),
+ * а не в базу данных.
+ * <p>
+ * Через спул сохраняются файлы не больше {@code file.spool.max-file-size}, пока объём ожидающих переноса
+ * загрузок не достиг {@code file.spool.max-bytes}; остальные загрузки, а также загрузки внутри транзакции
+ * вызывающего кода (например, распаковка архива), сохраняются в базу данных сразу, так как запись в спул
+ * не отменяется вместе с транзакцией. Любое другое изменение файла сначала переносит его загрузку из спула
+ * в базу данных ({@link SpoolFlusher#flush(String)}). Файлы из спула видны при чтении, в списке файлов
+ * и в поиске сразу после подтверждения загрузки: их читает {@link com.karasov.file_service.service.impl.FileServiceImpl}.
+ * </p>
+ */
+@Slf4j
+public class SpooledFileService implements FileService {
+
+    private final FileService delegate;
+    private final FileRepository fileRepository;
+    private final UploadSpool uploadSpool;
+    private final SpoolFlusher spoolFlusher;
+
+    /**
+     * @param delegate       сервис файлов, сохраняющий файлы в базу данных
+     * @param fileRepository репозиторий файлов
+     * @param uploadSpool    спул загрузок
+     * @param spoolFlusher   перенос загрузок из спула в базу данных
+     */
+    public SpooledFileService(FileService delegate,
+                              FileRepository fileRepository,
+                              UploadSpool uploadSpool,
+                              SpoolFlusher spoolFlusher) {
+        this.delegate = delegate;
+        this.fileRepository = fileRepository;
+        this.uploadSpool = uploadSpool;
+        this.spoolFlusher = spoolFlusher;
+    }
+
+    @Override
+    public boolean saveFile(String fileName, byte[] bytes, long size) {
+        return withReservation(fileName, () -> spoolable(size)
+                ? spool(fileName, bytes)
+                : delegate.saveFile(fileName, bytes, size));
+    }
+
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size) {
+        return withReservation(fileName, () -> spoolable(size)
+                ? spool(fileName, readContent(content, size))
+                : delegate.saveFile(fileName, content, size));
+    }
+
+    /**
+     * Контрольная сумма загрузки из спула проверяется до подтверждения загрузки, а сохраняется в базу данных
+     * фоновой обработкой после переноса файла.
+     */
+    @Override
+    public boolean saveFile(String fileName, InputStream content, long size, String sha256) {
+        return withReservation(fileName, () -> {
+            if (!spoolable(size)) {
+                return delegate.saveFile(fileName, content, size, sha256);
+            }
+            byte[] bytes = readContent(content, size);
+            if (!HexFormat.of().formatHex(sha256Digest().digest(bytes)).equalsIgnoreCase(sha256)) {
+                throw new InvalidInputDataException();
+            }
+            return spool(fileName, bytes);
+        });
+    }
+
+    @Override
+    public UploadPrecheckStatus precheckUpload(String fileName, long size, String sha256) {
+        if (uploadSpool.contains(fileName)) {
+            return UploadPrecheckStatus.FILE_EXISTS;
+        }
+        return delegate.precheckUpload(fileName, size, sha256);
+    }
+
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size) {
+        spoolFlusher.flush(fileName);
+        return delegate.overwriteFile(fileName, bytes, size);
+    }
+
+    @Override
+    public int overwriteFile(String fileName, byte[] bytes, long size, String sha256) {
+        spoolFlusher.flush(fileName);
+        return delegate.overwriteFile(fileName, bytes, size, sha256);
+    }
+
+    @Override
+    public List<FileResponseDto> getFileList(int limit) {
+        return delegate.getFileList(limit);
+    }
+
+    @Override
+    public void writeFileList(int limit, ListingFormat format, OutputStream outputStream) throws IOException {
+        delegate.writeFileList(limit, format, outputStream);
+    }
+
+    @Override
+    public void writeFileStats(List<String> fileNames, OutputStream outputStream) throws IOException {
+        delegate.writeFileStats(fileNames, outputStream);
+    }
+
+    @Override
+    public boolean deleteFile(String fileName) {
+        spoolFlusher.flush(fileName);
+        return delegate.deleteFile(fileName);
+    }
+
+    @Override
+    public boolean updateFileName(String oldFileName, String newFileName) {
+        spoolFlusher.flush(oldFileName);
+        spoolFlusher.flush(newFileName);
+        return delegate.updateFileName(oldFileName, newFileName);
+    }
+
+    @Override
+    public boolean copyFile(String sourceFileName, String targetFileName) {
+        spoolFlusher.flush(sourceFileName);
+        spoolFlusher.flush(targetFileName);
+        return delegate.copyFile(sourceFileName, targetFileName);
+    }
+
+    @Override
+    public InputStreamResource getFile(String fileName) {
+        return delegate.getFile(fileName);
+    }
+
+    @Override
+    public List<FileResponseDto> searchFiles(String query, SearchMode mode, String after, int limit) {
+        return delegate.searchFiles(query, mode, after, limit);
+    }
+
+    @Override
+    public Optional<FolderListingResponseDto> listFolder(String path, String after, int limit) {
+        return delegate.listFolder(path, after, limit);
+    }
+
+    /**
+     * Перед переименованием папки переносит в базу данных загрузки всех файлов из спула, находящихся в ней.
+     */
+    @Override
+    public boolean moveFolder(String path, String newPath) {
+        uploadSpool.snapshot().subMap(path + "/", path + "0").keySet().forEach(spoolFlusher::flush);
+        return delegate.moveFolder(path, newPath);
+    }
+
+    private boolean spoolable(long size) {
+        return uploadSpool.accepts(size) && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * Сохраняет файл, зарезервировав его имя в спуле.
+     * <p>
+     * Без резерва загрузка через спул и одновременное сохранение файла с тем же именем напрямую в базу данных
+     * были бы подтверждены обе, а загрузка из спула отброшена при переносе. Если файл сохраняется внутри
+     * транзакции вызывающего кода, резерв снимается после её завершения: до фиксации вставленная строка
+     * не видна проверке {@code existsById} других загрузок.
+     * </p>
+     *
+     * @return результат сохранения, либо false, если файл уже есть в спуле или сохраняется другой загрузкой
+     */
+    private boolean withReservation(String fileName, BooleanSupplier save) {
+        if (!uploadSpool.reserve(fileName)) {
+            return false;
+        }
+        boolean releaseNow = true;
+        try {
+            boolean saved = save.getAsBoolean();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        uploadSpool.release(fileName);
+                    }
+                });
+                releaseNow = false;
+            }
+            return saved;
+        } finally {
+            if (releaseNow) {
+                uploadSpool.release(fileName);
+            }
+        }
+    }
+
+    /**
+     * Записывает загрузку в спул. Если спул недоступен, файл сохраняется в базу данных сразу.
+     */
+    private boolean spool(String fileName, byte[] bytes) {
+        if (fileRepository.existsById(fileName)) {
+            return false;
+        }
+        try {
+            uploadSpool.appendReserved(fileName, bytes);
+            return true;
+        } catch (IOException e) {
+            log.warn("Не удалось записать файл {} в спул, файл сохраняется в базу данных: {}",
+                    fileName, e.getMessage());
+            return delegate.saveFile(fileName, bytes, bytes.length);
+        }
+    }
+
+    private static byte[] readContent(InputStream content, long size) {
+        try {
+            byte[] bytes = content.readNBytes((int) size);
+            if (bytes.length < size) {
+                throw new EOFException("Поток закончился раньше заявленного размера файла: " + bytes.length
+                        + " из " + size + " байт");
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.karasov.file_service.service.spool;
+
+import com.karasov.file_service.service.shard.ShardRouter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Локальный спул загрузок: журнал с дозаписью, в который файлы записываются до сохранения в базу данных.
+ * <p>
+ * Загрузка подтверждается, как только её запись сброшена на диск; в базу данных файлы переносит
+ * {@link SpoolFlusher}, после чего в журнал дописывается отметка о переносе. Все записи выполняет один поток:
+ * он забирает из очереди все накопившиеся запросы, записывает их и выполняет один {@code fsync} на всю группу.
+ * Когда журнал дорастает до {@code file.spool.file-size}, запись продолжается в новый файл; файлы, все загрузки
+ * из которых перенесены, удаляются по порядку, начиная с самого старого, поэтому отметка о переносе никогда
+ * не удаляется раньше самой загрузки.
+ * </p>
+ * <p>
+ * При запуске журналы читаются по порядку до первой повреждённой (недописанной при сбое) записи,
+ * и все подтверждённые, но не перенесённые загрузки снова ожидают переноса. Запись продолжается в новый файл,
+ * чтобы не дописывать журнал после повреждённой записи.
+ * </p>
+ * <p>
+ * Имя файла находится в спуле не больше одного раза: повторная загрузка файла с тем же именем отклоняется,
+ * пока прежняя не перенесена в базу данных. Имя резервируется ({@link #reserve(String)}) на время сохранения
+ * файла любым способом, в том числе напрямую в базу данных, поэтому две одновременные загрузки одного имени
+ * не могут быть подтверждены обе.
+ * </p>
+ */
+@Slf4j
+@Component
+public class UploadSpool {
+
+    private static final Pattern FILE_NAME = Pattern.compile("spool-(\\d{6})\\.log");
+    private static final int RECORD_MAGIC = 0x53504F4C;
+    private static final byte PUT = 1;
+    private static final byte DONE = 2;
+    private static final int HEADER_SIZE = 4 + 1 + 2 + 4 + 4;
+    private static final PendingWrite STOP = new PendingWrite(DONE, "", new byte[0], null, null);
+
+    @Value("${file.spool.enabled}")
+    private boolean enabled;  // Подтверждать загрузки после записи в локальный спул.
+    @Value("${file.spool.directory}")
+    private Path directory;  // Каталог файлов спула.
+    @Value("${file.spool.file-size}")
+    private long fileSize;  // Размер файла спула, после которого запись продолжается в новый файл.
+    @Value("${file.spool.max-file-size}")
+    private int maxFileSize;  // Максимальный размер файла, загрузка которого подтверждается через спул.
+    @Value("${file.spool.max-bytes}")
+    private long maxBytes;  // Максимальный объём содержимого, ожидающего переноса в базу данных.
+
+    private final NavigableMap<String, SpoolEntry> entries = new ConcurrentSkipListMap<>(ShardRouter.NAME_ORDER);
+    private final NavigableMap<Long, SpoolEntry> order = new ConcurrentSkipListMap<>();
+    private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final ConcurrentSkipListMap<Integer, SpoolFile> files = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock filesLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private SpoolFile active;
+    private long sequence;
+    private Thread writer;
+
+    /**
+     * Открывает журналы, восстанавливает загрузки, ожидающие переноса, и запускает поток записи.
+     *
+     * @throws IOException если не удалось прочитать журналы
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Integer> ids;
+        try (Stream<Path> paths = Files.list(directory)) {
+            ids = paths.map(path -> FILE_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+        for (int id : ids) {
+            SpoolFile file = new SpoolFile(id, FileChannel.open(filePath(id),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+            files.put(id, file);
+            replay(file);
+        }
+        active = createFile(ids.isEmpty() ? 1 : ids.get(ids.size() - 1) + 1);
+        deleteFlushedFiles();
+        log.info("Спул загрузок открыт: файлов, ожидающих записи в базу данных, {}", entries.size());
+
+        writer = new Thread(this::writeLoop, "spool-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        queue.put(STOP);
+        writer.join();
+        writer = null;
+        for (SpoolFile file : files.values()) {
+            file.channel.close();
+        }
+    }
+
+    /**
+     * Проверяет, открыт ли спул.
+     *
+     * @return true, если спул включён и открыт
+     */
+    public boolean isOpen() {
+        return writer != null;
+    }
+
+    /**
+     * Проверяет, может ли загрузка файла указанного размера быть подтверждена через спул.
+     *
+     * @param size размер файла
+     * @return true, если спул открыт, файл не больше {@code file.spool.max-file-size} и объём ожидающих переноса
+     * загрузок вместе с ним не превысит {@code file.spool.max-bytes}
+     */
+    public boolean accepts(long size) {
+        return writer != null && size <= maxFileSize && pendingBytes.get() + size <= maxBytes;
+    }
+
+    /**
+     * Проверяет, находится ли файл в спуле или записывается в него.
+     *
+     * @param name имя файла
+     * @return true, если файл ожидает переноса в базу данных или его загрузка ещё записывается
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name) || reserved.contains(name);
+    }
+
+    /**
+     * Резервирует имя файла на время его сохранения.
+     *
+     * @param name имя файла
+     * @return true, если имя зарезервировано, false, если файл уже есть в спуле или его имя зарезервировано
+     * другой загрузкой
+     */
+    public boolean reserve(String name) {
+        if (!reserved.add(name)) {
+            return false;
+        }
+        if (entries.containsKey(name)) {
+            reserved.remove(name);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Снимает резерв имени файла.
+     *
+     * @param name имя файла
+     */
+    public void release(String name) {
+        reserved.remove(name);
+    }
+
+    /**
+     * Записывает загруженный файл в спул и ждёт, пока запись не будет сброшена на диск.
+     *
+     * @param name имя файла
+     * @param data содержимое файла
+     * @return true, если файл записан, false, если файл с таким именем уже есть в спуле
+     * @throws IOException если запись не удалась
+     */
+    public boolean append(String name, byte[] data) throws IOException {
+        if (!reserve(name)) {
+            return false;
+        }
+        try {
+            appendReserved(name, data);
+            return true;
+        } finally {
+            release(name);
+        }
+    }
+
+    /**
+     * Записывает в спул файл, имя которого зарезервировано вызывающим кодом, и ждёт, пока запись не будет
+     * сброшена на диск.
+     *
+     * @param name имя файла
+     * @param data содержимое файла
+     * @throws IOException если запись не удалась
+     */
+    public void appendReserved(String name, byte[] data) throws IOException {
+        submit(new PendingWrite(PUT, name, data, null, new CompletableFuture<>()));
+    }
+
+    /**
+     * Возвращает загрузку файла, ожидающую переноса в базу данных.
+     *
+     * @param name имя файла
+     * @return загрузка или пустой Optional, если файла нет в спуле
+     */
+    public Optional<SpoolEntry> find(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    /**
+     * Читает содержимое файла из спула.
+     *
+     * @param name имя файла
+     * @return содержимое файла или пустой Optional, если файла нет в спуле
+     * @throws IOException если запись повреждена
+     */
+    public Optional<byte[]> read(String name) throws IOException {
+        SpoolEntry entry = entries.get(name);
+        return entry == null ? Optional.empty() : read(entry);
+    }
+
+    /**
+     * Читает содержимое загрузки.
+     *
+     * @param entry загрузка
+     * @return содержимое файла или пустой Optional, если загрузка уже перенесена и её журнал удалён
+     * @throws IOException если запись повреждена
+     */
+    public Optional<byte[]> read(SpoolEntry entry) throws IOException {
+        filesLock.readLock().lock();
+        try {
+            SpoolFile file = files.get(entry.file());
+            if (file == null) {
+                return Optional.empty();
+            }
+            ByteBuffer data = ByteBuffer.allocate(entry.length());
+            readFully(file.channel, data, entry.offset());
+            CRC32 crc = new CRC32();
+            crc.update(entry.name().getBytes(StandardCharsets.UTF_8));
+            crc.update(data.array());
+            if ((int) crc.getValue() != entry.checksum()) {
+                throw new IOException("Не совпадает контрольная сумма файла " + entry.name() + " в спуле " + file.id);
+            }
+            return Optional.of(data.array());
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает самые старые загрузки, ожидающие переноса в базу данных.
+     *
+     * @param limit максимальное количество загрузок
+     * @return загрузки в порядке записи в спул
+     */
+    public List<SpoolEntry> pending(int limit) {
+        return order.values().stream().limit(limit).toList();
+    }
+
+    /**
+     * Возвращает имена и размеры файлов, ожидающих переноса в базу данных.
+     *
+     * @return снимок файлов спула, упорядоченных по имени в порядке {@link ShardRouter#NAME_ORDER}
+     */
+    public NavigableMap<String, Long> snapshot() {
+        NavigableMap<String, Long> snapshot = new TreeMap<>(ShardRouter.NAME_ORDER);
+        entries.forEach((name, entry) -> snapshot.put(name, (long) entry.length()));
+        return snapshot;
+    }
+
+    /**
+     * Количество файлов, ожидающих переноса в базу данных.
+     *
+     * @return количество файлов
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Объём содержимого, ожидающего переноса в базу данных.
+     *
+     * @return объём в байтах
+     */
+    public long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Отмечает загрузки перенесёнными в базу данных и ждёт, пока отметки не будут сброшены на диск.
+     *
+     * @param completed перенесённые загрузки
+     * @throws IOException если запись не удалась
+     */
+    public void complete(List<SpoolEntry> completed) throws IOException {
+        List<PendingWrite> writes = new ArrayList<>();
+        for (SpoolEntry entry : completed) {
+            writes.add(new PendingWrite(DONE, entry.name(), new byte[0], entry, new CompletableFuture<>()));
+        }
+        if (writer == null) {
+            throw new IOException("Спул загрузок отключён");
+        }
+        queue.addAll(writes);
+        for (PendingWrite write : writes) {
+            await(write);
+        }
+    }
+
+    private void submit(PendingWrite write) throws IOException {
+        if (writer == null) {
+            throw new IOException("Спул загрузок отключён");
+        }
+        queue.add(write);
+        await(write);
+    }
+
+    private static void await(PendingWrite write) throws IOException {
+        try {
+            write.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание записи прервано", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            boolean stop = batch.remove(STOP);
+
+            Map<PendingWrite, SpoolEntry> written = new HashMap<>();
+            try {
+                Set<SpoolFile> touched = new HashSet<>();
+                for (PendingWrite write : batch) {
+                    written.put(write, append(write));
+                    touched.add(active);
+                }
+                for (SpoolFile file : touched) {
+                    file.channel.force(false);
+                }
+                for (PendingWrite write : batch) {
+                    if (write.type() == PUT) {
+                        add(written.get(write));
+                    } else {
+                        remove(write.entry());
+                    }
+                }
+                deleteFlushedFiles();
+                batch.forEach(write -> write.result().complete(written.get(write)));
+            } catch (IOException | RuntimeException e) {
+                log.error("Ошибка записи в спул загрузок: {}", e.getMessage());
+                batch.forEach(write -> write.result().completeExceptionally(e));
+            }
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private SpoolEntry append(PendingWrite write) throws IOException {
+        if (active.position >= fileSize) {
+            active = createFile(active.id + 1);
+        }
+        byte[] name = write.name().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(write.data());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + name.length + write.data().length)
+                .putInt(RECORD_MAGIC)
+                .put(write.type())
+                .putShort((short) name.length)
+                .putInt(write.data().length)
+                .putInt((int) crc.getValue())
+                .put(name)
+                .put(write.data())
+                .flip();
+        long offset = active.position;
+        writeFully(active.channel, buffer, offset);
+        active.position += buffer.limit();
+        return new SpoolEntry(write.name(), sequence++, active.id, offset + HEADER_SIZE + name.length,
+                write.data().length, (int) crc.getValue());
+    }
+
+    private void replay(SpoolFile file) throws IOException {
+        long size = file.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(file.channel, header, position);
+            header.flip();
+            if (header.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            byte type = header.get();
+            int nameLength = header.getShort() & 0xFFFF;
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_SIZE + nameLength + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(nameLength + length);
+            readFully(file.channel, body, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            String name = new String(body.array(), 0, nameLength, StandardCharsets.UTF_8);
+            if (type == PUT) {
+                add(new SpoolEntry(name, sequence++, file.id, position + HEADER_SIZE + nameLength, length, checksum));
+            } else {
+                SpoolEntry entry = entries.get(name);
+                if (entry != null) {
+                    remove(entry);
+                }
+            }
+            position += HEADER_SIZE + nameLength + length;
+        }
+        file.position = position;
+    }
+
+    private void add(SpoolEntry entry) {
+        SpoolEntry previous = entries.put(entry.name(), entry);
+        if (previous != null) {
+            forget(previous);
+        }
+        order.put(entry.sequence(), entry);
+        files.get(entry.file()).live++;
+        pendingBytes.addAndGet(entry.length());
+    }
+
+    private void remove(SpoolEntry entry) {
+        if (entries.remove(entry.name(), entry)) {
+            forget(entry);
+        }
+    }
+
+    private void forget(SpoolEntry entry) {
+        order.remove(entry.sequence());
+        files.get(entry.file()).live--;
+        pendingBytes.addAndGet(-entry.length());
+    }
+
+    /**
+     * Удаляет самые старые файлы спула, все загрузки из которых перенесены в базу данных.
+     */
+    private void deleteFlushedFiles() throws IOException {
+        for (SpoolFile file : List.copyOf(files.values())) {
+            if (file == active || file.live > 0) {
+                return;
+            }
+            filesLock.writeLock().lock();
+            try {
+                files.remove(file.id);
+                file.channel.close();
+                Files.deleteIfExists(filePath(file.id));
+            } finally {
+                filesLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private SpoolFile createFile(int id) throws IOException {
+        SpoolFile file = new SpoolFile(id, FileChannel.open(filePath(id),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        // Новый файл должен пережить сбой вместе с записями, которые в нём подтверждены.
+        try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+            parent.force(true);
+        }
+        files.put(id, file);
+        return file;
+    }
+
+    private Path filePath(int id) {
+        return directory.resolve(String.format("spool-%06d.log", id));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Файл спула обрывается раньше ожидаемого");
+            }
+            position += read;
+        }
+    }
+
+    private record PendingWrite(byte type, String name, byte[] data, SpoolEntry entry,
+                                CompletableFuture<SpoolEntry> result) {
+    }
+
+    /**
+     * Файл спула и состояние записи в него.
+     */
+    private static final class SpoolFile {
+        private final int id;
+        private final FileChannel channel;
+        private long position;
+        private int live;
+
+        private SpoolFile(int id, FileChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+}
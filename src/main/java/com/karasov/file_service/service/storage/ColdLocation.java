@@ -0,0 +1,11 @@
+package com.karasov.file_service.service.storage;
+
+/**
+ * Положение сжатого содержимого файла в холодном хранилище.
+ *
+ * @param segment номер сегментного файла
+ * @param offset  смещение сжатого содержимого в сегменте
+ * @param length  длина сжатого содержимого
+ */
+public record ColdLocation(int segment, long offset, long length) {
+}
@@ -0,0 +1,112 @@
+package com.karasov.file_service.service.storage;
+
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Фоновое освобождение места в холодном хранилище.
+ * <p>
+ * Занятое место сегмента считается по положениям, на которые ссылаются холодные файлы всех шардов. Из закрытых
+ * сегментов, в которых доля неиспользуемого места не меньше {@code file.tiering.cold.compaction-threshold},
+ * живое содержимое копируется в текущий сегмент, а положение в базе данных меняется условным запросом
+ * по прежнему положению: если файл за это время удалён, перезаписан или возвращён на горячий уровень,
+ * копия просто остаётся неиспользуемой.
+ * </p>
+ * <p>
+ * Сегмент удаляется, только если на него не ссылался ни один файл при двух запусках подряд. Так не затрагиваются
+ * сегменты, содержимое которых дописано транзакцией, ещё не зафиксированной при первом запуске, а потоки,
+ * прочитавшие прежнее положение до переноса, успевают открыть сегмент.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.tiering.enabled", havingValue = "true")
+public class ColdSegmentCompactionJob {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final ColdSegmentStore coldSegmentStore;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.tiering.cold.compaction-threshold}")
+    private double compactionThreshold;  // Доля неиспользуемого места, начиная с которой сегмент уплотняется.
+
+    private Set<Integer> unused = new HashSet<>();
+
+    @Scheduled(fixedDelayString = "${file.tiering.cold.compaction-interval}")
+    public void run() {
+        try {
+            Map<Integer, Long> sizes = coldSegmentStore.sealedSegments();
+            Map<Integer, Long> live = new HashMap<>();
+            shardRouter.forEachShard(shard -> fileRepository.findColdSegmentUsage()
+                    .forEach(usage -> live.merge(usage.getSegment(), usage.getLiveBytes(), Long::sum)));
+
+            Set<Integer> nowUnused = new HashSet<>();
+            int deleted = 0;
+            int compacted = 0;
+            for (Map.Entry<Integer, Long> entry : sizes.entrySet()) {
+                int segment = entry.getKey();
+                long liveBytes = live.getOrDefault(segment, 0L);
+                if (liveBytes == 0) {
+                    if (!unused.contains(segment)) {
+                        nowUnused.add(segment);
+                    } else if (coldSegmentStore.delete(segment)) {
+                        deleted++;
+                    }
+                } else if (entry.getValue() > 0
+                        && 1.0 - (double) liveBytes / entry.getValue() >= compactionThreshold) {
+                    shardRouter.forEachShard(shard -> relocate(segment));
+                    compacted++;
+                }
+            }
+            unused = nowUnused;
+            if (deleted > 0 || compacted > 0) {
+                log.info("Холодное хранилище: уплотнено сегментов {}, удалено сегментов {}", compacted, deleted);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка уплотнения холодного хранилища: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Переносит в текущий сегмент содержимое сегмента, на которое ссылаются файлы шарда текущего потока.
+     */
+    private void relocate(int segment) {
+        long after = -1;
+        List<FileLocation> batch;
+        do {
+            batch = fileRepository.findColdLocationsInSegment(segment, after, BATCH_SIZE);
+            for (FileLocation location : batch) {
+                ColdLocation source = new ColdLocation(segment, location.getColdOffset(), location.getColdLength());
+                ColdLocation copy;
+                try {
+                    copy = coldSegmentStore.copy(source);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                transactionTemplate.executeWithoutResult(status -> fileRepository.relocateCold(
+                        segment, source.offset(), copy.segment(), copy.offset(), copy.length()));
+                after = source.offset();
+            }
+        } while (batch.size() == BATCH_SIZE && !Thread.currentThread().isInterrupted());
+    }
+}
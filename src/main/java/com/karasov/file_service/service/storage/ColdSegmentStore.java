@@ -0,0 +1,257 @@
+package com.karasov.file_service.service.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Холодное хранилище содержимого файлов.
+ * <p>
+ * Содержимое сжимается и дописывается в конец текущего сегментного файла в отдельном каталоге
+ * (например, на более дешёвом томе). Когда сегмент превышает заданный размер, начинается следующий.
+ * Положение содержимого ({@link ColdLocation}) хранится в базе данных, поэтому сегменты не содержат
+ * собственного индекса. Запись завершается {@code fsync} до того, как положение будет зафиксировано в базе данных;
+ * содержимое, дописанное до сбоя или отката транзакции, а также содержимое удалённых и перезаписанных файлов
+ * остаётся в сегменте неиспользуемым, пока {@link ColdSegmentCompactionJob} не перенесёт живое содержимое
+ * сегмента ({@link #copy(ColdLocation)}) и не удалит его ({@link #delete(int)}).
+ * </p>
+ * <p>
+ * Хранилище локально для узла: содержимое холодных файлов есть только в каталоге {@code file.tiering.cold.directory}
+ * и не попадает в резервную копию базы данных. Поэтому перенос на холодный уровень выключен по умолчанию
+ * и включается только при одном экземпляре сервиса или при каталоге на общем для всех экземпляров хранилище.
+ * </p>
+ * <p>
+ * Сжатое содержимое читается через отображение сегментов в память ({@link MappedRegionCache}). Сегменты только
+ * дописываются, поэтому отображение, которое короче запрошенного содержимого, создаётся заново.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ColdSegmentStore {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{6})\\.dat");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MappedRegionCache mappedRegionCache;
+
+    @Value("${file.tiering.cold.directory}")
+    private Path directory;  // Каталог сегментных файлов холодного хранилища.
+    @Value("${file.tiering.cold.segment-size}")
+    private long segmentSize;  // Размер, после превышения которого начинается новый сегмент.
+
+    private int currentSegment = -1;
+
+    /**
+     * Сжимает содержимое и дописывает его в текущий сегмент.
+     *
+     * @param content поток с содержимым; читается до конца, но не закрывается
+     * @return положение сжатого содержимого
+     * @throws IOException если не удалось записать сегмент
+     */
+    public synchronized ColdLocation append(InputStream content) throws IOException {
+        return write(out -> {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                DeflaterOutputStream deflating = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                content.transferTo(deflating);
+                deflating.finish();
+            } finally {
+                deflater.end();
+            }
+        });
+    }
+
+    /**
+     * Дописывает в текущий сегмент копию сжатого содержимого без повторного сжатия.
+     *
+     * @param location положение сжатого содержимого в закрытом сегменте
+     * @return положение копии
+     * @throws IOException если не удалось прочитать исходный сегмент или записать текущий
+     */
+    public synchronized ColdLocation copy(ColdLocation location) throws IOException {
+        try (InputStream compressed = openCompressed(location)) {
+            return write(compressed::transferTo);
+        }
+    }
+
+    /**
+     * Возвращает размеры закрытых сегментов - всех, кроме текущего, в который дописывается содержимое.
+     *
+     * @return размеры закрытых сегментов по номерам
+     * @throws IOException если не удалось прочитать каталог
+     */
+    public synchronized Map<Integer, Long> sealedSegments() throws IOException {
+        openDirectory();
+        Map<Integer, Long> sizes = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) != currentSegment) {
+                    sizes.put(Integer.parseInt(matcher.group(1)), Files.size(path));
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Удаляет закрытый сегмент. Отображение сегмента освобождается после закрытия читающих его потоков,
+     * а уже открытые потоки дочитывают удалённый файл.
+     *
+     * @param segment номер сегмента
+     * @return true, если сегмент удалён; false, если он текущий или его нет
+     * @throws IOException если не удалось удалить файл
+     */
+    public synchronized boolean delete(int segment) throws IOException {
+        if (segment == currentSegment) {
+            return false;
+        }
+        mappedRegionCache.invalidate(segmentPath(segment));
+        return Files.deleteIfExists(segmentPath(segment));
+    }
+
+    private ColdLocation write(SegmentWriter writer) throws IOException {
+        openDirectory();
+        if (Files.exists(segmentPath(currentSegment)) && Files.size(segmentPath(currentSegment)) >= segmentSize) {
+            currentSegment++;
+        }
+
+        try (FileChannel channel = FileChannel.open(segmentPath(currentSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long offset = channel.size();
+            writer.write(Channels.newOutputStream(channel));
+            channel.force(false);
+            return new ColdLocation(currentSegment, offset, channel.size() - offset);
+        }
+    }
+
+    private void openDirectory() throws IOException {
+        if (currentSegment < 0) {
+            Files.createDirectories(directory);
+            currentSegment = findLastSegment();
+        }
+    }
+
+    /**
+     * Открывает поток с распакованным содержимым.
+     *
+     * @param location положение сжатого содержимого
+     * @return поток с содержимым; закрывает сегментный файл или участок его отображения при закрытии
+     * @throws IOException если сегмент не найден или короче указанного положения
+     */
+    public InputStream open(ColdLocation location) throws IOException {
+        return inflate(openCompressed(location));
+    }
+
+    private InputStream openCompressed(ColdLocation location) throws IOException {
+        Path path = segmentPath(location.segment());
+        Optional<MappedRegion> region = mappedRegionCache.acquire(path, location.offset(), location.length());
+        if (region.isPresent()) {
+            return region.get().inputStream(0);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (location.offset() < 0 || location.length() < 0
+                || location.offset() > channel.size() - location.length()) {
+            channel.close();
+            throw new IOException("Содержимое выходит за границы сегмента " + location.segment());
+        }
+        return new SliceInputStream(channel, location.offset(), location.length());
+    }
+
+    private static InputStream inflate(InputStream compressed) {
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(compressed, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private int findLastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .mapToInt(matcher -> Integer.parseInt(matcher.group(1)))
+                    .max()
+                    .orElse(1);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(Paths.get(String.format("segment-%06d.dat", segment)));
+    }
+
+    /**
+     * Запись содержимого в поток сегмента.
+     */
+    @FunctionalInterface
+    private interface SegmentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Поток, читающий участок файла позиционным чтением канала.
+     */
+    private static final class SliceInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        private SliceInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(length, end - position);
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, toRead), position);
+            if (read < 0) {
+                throw new IOException("Сегмент обрывается раньше ожидаемого");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.karasov.file_service.service.storage;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Учёт обращений к файлам для переноса между уровнями хранения.
+ * <p>
+ * Скачивание только запоминает обращение в памяти, а раз в {@code file.tiering.access-flush-interval} накопленные
+ * обращения записываются в базу данных фоновым потоком: обращения к одному файлу складываются, и каждый шард
+ * обновляется одной короткой транзакцией. Так скачивание не держит второе соединение с базой данных, может
+ * целиком читать с реплики, а запись времени обращения не заставляет следующие чтения пользователя идти
+ * в основную базу данных: фоновый поток не относится ни к одному запросу и не сдвигает отметку репликации.
+ * </p>
+ * <p>
+ * Для горячих файлов время обращения обновляется не чаще, чем раз в {@code file.tiering.access-granularity},
+ * для холодных считается каждое обращение: по их количеству файл возвращается на горячий уровень. Обращения
+ * учитываются, только если включён перенос между уровнями ({@code file.tiering.enabled}). Если в памяти уже
+ * {@code file.tiering.access-buffer-size} файлов, обращения к другим файлам до следующей записи не учитываются;
+ * обращения, которые не удалось записать, тоже теряются - учёт обращений приблизителен по своей природе.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileAccessRecorder {
+
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.tiering.enabled}")
+    private boolean enabled;  // Учитывать обращения к файлам.
+    @Value("${file.tiering.access-granularity}")
+    private long accessGranularity;  // Точность учёта времени обращения к горячим файлам в миллисекундах.
+    @Value("${file.tiering.access-buffer-size}")
+    private int bufferSize;  // Максимальное количество файлов с незаписанными обращениями.
+
+    private final Map<Access, Integer> accesses = new ConcurrentHashMap<>();
+
+    /**
+     * Запоминает обращение к файлу в шарде текущего потока.
+     *
+     * @param fileName имя файла
+     */
+    public void record(String fileName) {
+        if (!enabled) {
+            return;
+        }
+        Access access = new Access(shardRouter.currentShard(), fileName);
+        if (accesses.size() < bufferSize || accesses.containsKey(access)) {
+            accesses.merge(access, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Записывает накопленные обращения в базу данных.
+     */
+    @Scheduled(fixedDelayString = "${file.tiering.access-flush-interval}")
+    public void flush() {
+        if (accesses.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Integer>> byShard = new HashMap<>();
+        for (Access access : accesses.keySet()) {
+            Integer count = accesses.remove(access);
+            if (count != null) {
+                byShard.computeIfAbsent(access.shard(), shard -> new HashMap<>()).put(access.fileName(), count);
+            }
+        }
+        Instant threshold = Instant.now().minusMillis(accessGranularity);
+        byShard.forEach((shard, counts) -> {
+            try {
+                shardRouter.runOnShard(shard, () -> transactionTemplate.executeWithoutResult(status ->
+                        counts.forEach((fileName, count) -> fileRepository.recordAccess(fileName, count, threshold))));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось записать обращения к {} файлам шарда {}: {}", counts.size(), shard, e.getMessage());
+            }
+        });
+    }
+
+    private record Access(String shard, String fileName) {
+    }
+}
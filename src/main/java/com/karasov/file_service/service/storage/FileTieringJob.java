@@ -0,0 +1,114 @@
+package com.karasov.file_service.service.storage;
+
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Фоновый перенос содержимого файлов между уровнями хранения.
+ * <p>
+ * Файлы, к которым не обращались дольше {@code file.tiering.cold-after}, переносятся в холодное хранилище;
+ * в основной базе данных остаются только метаданные. Холодные файлы, к которым обратились не меньше
+ * {@code file.tiering.promote-after-reads} раз, возвращаются на горячий уровень. Перенос выполняется пачками:
+ * за один запуск переносится не больше {@code file.tiering.batch-size} файлов каждого направления из каждого шарда
+ * и не больше {@code file.tiering.max-bytes-per-run} байт всего, между файлами выдерживается пауза {@code file.tiering.pause},
+ * а каждый файл переносится в отдельной короткой транзакции. Так перенос не конкурирует с запросами
+ * пользователей за базу данных и диск.
+ * </p>
+ * <p>
+ * Холодное хранилище локально для узла (см. {@link ColdSegmentStore}), поэтому перенос выключен по умолчанию.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.tiering.enabled", havingValue = "true")
+public class FileTieringJob {
+
+    private final FileRepository fileRepository;
+    private final FileContentService fileContentService;
+    private final MeterRegistry meterRegistry;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.tiering.cold-after}")
+    private long coldAfter;  // Время без обращений, после которого файл переносится в холодное хранилище.
+    @Value("${file.tiering.promote-after-reads}")
+    private int promoteAfterReads;  // Количество обращений, после которого холодный файл возвращается.
+    @Value("${file.tiering.batch-size}")
+    private int batchSize;  // Максимальное количество файлов одного направления за запуск.
+    @Value("${file.tiering.max-bytes-per-run}")
+    private long maxBytesPerRun;  // Максимальный объём переносимого содержимого за запуск.
+    @Value("${file.tiering.pause}")
+    private long pause;  // Пауза между переносами файлов в миллисекундах.
+
+    private Counter demoted;
+    private Counter promoted;
+    private Counter movedBytes;
+
+    @PostConstruct
+    public void init() {
+        demoted = Counter.builder("file.tiering.moves").tag("direction", "demote").register(meterRegistry);
+        promoted = Counter.builder("file.tiering.moves").tag("direction", "promote").register(meterRegistry);
+        movedBytes = Counter.builder("file.tiering.bytes").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Выполняет один запуск переноса: сначала возвращает востребованные холодные файлы, затем переносит
+     * невостребованные горячие в пределах оставшегося объёма.
+     */
+    @Scheduled(fixedDelayString = "${file.tiering.interval}")
+    public void run() {
+        long budget = maxBytesPerRun;
+        for (String shard : shardRouter.shards()) {
+            long remaining = budget;
+            budget = shardRouter.onShard(shard, () -> run(remaining));
+        }
+    }
+
+    /**
+     * Переносит файлы шарда текущего потока в пределах оставшегося объёма.
+     */
+    private long run(long budget) {
+        budget = move(fileRepository.findPromotionCandidates(promoteAfterReads, batchSize),
+                fileContentService::promote, promoted, budget);
+        return move(fileRepository.findDemotionCandidates(Instant.now().minusMillis(coldAfter), batchSize),
+                fileContentService::demote, demoted, budget);
+    }
+
+    private long move(List<FileLocation> candidates, Predicate<String> mover, Counter counter, long budget) {
+        for (FileLocation candidate : candidates) {
+            if (budget <= 0 || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                if (mover.test(candidate.getName())) {
+                    counter.increment();
+                    movedBytes.increment(candidate.getSize());
+                    budget -= candidate.getSize();
+                }
+            } catch (Exception e) {
+                log.warn("Ошибка переноса файла {} между уровнями хранения: {}", candidate.getName(), e.getMessage());
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return budget;
+    }
+}
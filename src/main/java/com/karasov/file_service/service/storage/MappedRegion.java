@@ -0,0 +1,157 @@
+package com.karasov.file_service.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Участок файла, отображённого в память, выданный {@link MappedRegionCache}.
+ * <p>
+ * Пока участок не закрыт, отображение не освобождается. Все обращения проверяют границы участка;
+ * ошибка обращения к странице усечённого файла преобразуется в {@link IOException}.
+ * Участок предназначен для использования одним потоком.
+ * </p>
+ */
+public final class MappedRegion implements AutoCloseable {
+
+    private final MappedRegionCache cache;
+    private final Path path;
+    private final MappedRegionCache.Mapping mapping;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    MappedRegion(MappedRegionCache cache, Path path, MappedRegionCache.Mapping mapping, ByteBuffer buffer) {
+        this.cache = cache;
+        this.path = path;
+        this.mapping = mapping;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Возвращает длину участка.
+     *
+     * @return длина в байтах
+     */
+    public int length() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Читает число из участка.
+     *
+     * @param position смещение от начала участка
+     * @return число в порядке байтов big-endian
+     * @throws IOException если участок закрыт, смещение выходит за его границы или файл усечён
+     */
+    public int getInt(int position) throws IOException {
+        check(position, Integer.BYTES);
+        try {
+            return buffer.getInt(position);
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * Копирует байты участка в массив.
+     *
+     * @param position смещение от начала участка
+     * @param target   массив, в который копируются байты
+     * @param offset   смещение в массиве
+     * @param length   количество байтов
+     * @throws IOException если участок закрыт, байты выходят за его границы или файл усечён
+     */
+    public void read(int position, byte[] target, int offset, int length) throws IOException {
+        check(position, length);
+        try {
+            buffer.get(position, target, offset, length);
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * Открывает поток, читающий участок начиная с указанного смещения. Закрытие потока закрывает участок.
+     *
+     * @param from смещение от начала участка
+     * @return поток с содержимым участка
+     */
+    public InputStream inputStream(int from) {
+        return new RegionInputStream(from);
+    }
+
+    /**
+     * Закрывает участок. Повторное закрытие ничего не делает.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cache.release(mapping);
+        }
+    }
+
+    private void check(int position, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Участок файла " + path + " закрыт");
+        }
+        if (position < 0 || length < 0 || position > buffer.capacity() - length) {
+            throw new IOException("Чтение выходит за границы участка файла " + path);
+        }
+    }
+
+    private IOException truncated(InternalError e) {
+        cache.invalidate(path);
+        return new IOException("Файл " + path + " усечён во время чтения", e);
+    }
+
+    /**
+     * Поток, читающий участок без промежуточных буферов: байты копируются из отображения
+     * прямо в массив вызывающего кода.
+     */
+    private final class RegionInputStream extends InputStream {
+        private int position;
+
+        private RegionInputStream(int from) {
+            this.position = from;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= buffer.capacity()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.capacity() - position);
+            MappedRegion.this.read(position, target, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.capacity() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return Math.max(0, buffer.capacity() - position);
+        }
+
+        @Override
+        public void close() {
+            MappedRegion.this.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.karasov.file_service.service.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Кэш файлов, отображённых в память.
+ * <p>
+ * Файл отображается целиком (в пределах размера на момент отображения) при первом обращении и остаётся
+ * отображённым, пока суммарный размер отображений не превысит {@code file.mmap.max-mapped-bytes}; тогда
+ * вытесняются давно не использованные файлы. Участки выдаются как {@link MappedRegion} со счётчиком ссылок:
+ * вытесненное или сброшенное ({@link #invalidate(Path)}) отображение освобождается только после закрытия
+ * всех выданных участков, поэтому чтение никогда не обращается к освобождённой памяти.
+ * </p>
+ * <p>
+ * Обращение к странице за концом усечённого файла приводит к {@code SIGBUS}, поэтому основная защита - инварианты:
+ * файл отображается только в пределах своего размера, каждый участок проверяется на попадание в границы
+ * отображения, а хранилища, использующие кэш, никогда не уменьшают свои файлы (удаляемый файл удаляется целиком,
+ * что безопасно для существующих отображений). Если файл всё же усечён извне, JVM превращает {@code SIGBUS}
+ * в {@link InternalError}; {@link MappedRegion} преобразует его в {@link IOException} и сбрасывает отображение,
+ * но в скомпилированном коде ошибка может быть выброшена с задержкой, уже за пределами метода чтения.
+ * </p>
+ */
+@Slf4j
+@Component
+public class MappedRegionCache {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Явное освобождение отображений недоступно, они будут освобождаться сборщиком мусора");
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    @Value("${file.mmap.enabled}")
+    private boolean enabled;  // Читать содержимое локальных хранилищ через отображение файлов в память.
+    @Value("${file.mmap.max-mapped-bytes}")
+    private long maxMappedBytes;  // Максимальный суммарный размер отображений в кэше.
+
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+
+    /**
+     * Возвращает участок файла, отображённого в память.
+     * Если файл ещё не отображён или отображение короче требуемого (файл дописан), файл отображается заново.
+     *
+     * @param path   путь к файлу
+     * @param offset смещение участка от начала файла
+     * @param length длина участка
+     * @return участок файла; пустой Optional, если отображение отключено или файл слишком велик для отображения
+     * @throws IOException если участок выходит за границы файла или файл не удалось отобразить
+     */
+    public synchronized Optional<MappedRegion> acquire(Path path, long offset, long length) throws IOException {
+        if (!enabled || length > Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+        if (offset < 0 || length < 0) {
+            throw new IOException("Некорректный участок файла " + path);
+        }
+        Mapping mapping = mappings.get(path);
+        if (mapping == null || offset > mapping.buffer.capacity() - length) {
+            if (mapping != null) {
+                retire(path);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (offset > size - length) {
+                    throw new IOException("Участок выходит за границы файла " + path);
+                }
+                if (size > Integer.MAX_VALUE) {
+                    return Optional.empty();
+                }
+                mapping = new Mapping(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            mappings.put(path, mapping);
+            mappedBytes += mapping.buffer.capacity();
+            evict(path);
+        }
+        mapping.references++;
+        return Optional.of(new MappedRegion(this, path, mapping,
+                mapping.buffer.slice((int) offset, (int) length).asReadOnlyBuffer()));
+    }
+
+    /**
+     * Сбрасывает отображение файла: следующее обращение отобразит файл заново.
+     * Вызывается перед удалением файла и после обнаружения его усечения.
+     *
+     * @param path путь к файлу
+     */
+    public synchronized void invalidate(Path path) {
+        retire(path);
+    }
+
+    /**
+     * Возвращает суммарный размер отображений в кэше.
+     *
+     * @return размер в байтах
+     */
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    synchronized void release(Mapping mapping) {
+        mapping.references--;
+        if (mapping.retired && mapping.references == 0) {
+            unmap(mapping);
+        }
+    }
+
+    private void evict(Path keep) {
+        Iterator<Map.Entry<Path, Mapping>> iterator = mappings.entrySet().iterator();
+        while (mappedBytes > maxMappedBytes && iterator.hasNext()) {
+            Map.Entry<Path, Mapping> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            retire(entry.getValue());
+        }
+    }
+
+    private void retire(Path path) {
+        Mapping mapping = mappings.remove(path);
+        if (mapping != null) {
+            retire(mapping);
+        }
+    }
+
+    private void retire(Mapping mapping) {
+        mappedBytes -= mapping.buffer.capacity();
+        mapping.retired = true;
+        if (mapping.references == 0) {
+            unmap(mapping);
+        }
+    }
+
+    private static void unmap(Mapping mapping) {
+        if (INVOKE_CLEANER == null || mapping.unmapped) {
+            return;
+        }
+        mapping.unmapped = true;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, mapping.buffer);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Не удалось освободить отображение: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Отображение файла и количество выданных участков.
+     */
+    static final class Mapping {
+        private final MappedByteBuffer buffer;
+        private int references;
+        private boolean retired;
+        private boolean unmapped;
+
+        private Mapping(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
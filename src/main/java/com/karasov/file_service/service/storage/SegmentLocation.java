@@ -0,0 +1,11 @@
+package com.karasov.file_service.service.storage;
+
+/**
+ * Положение записи файла в сегментном хранилище.
+ *
+ * @param segment номер сегмента
+ * @param offset  смещение начала записи в сегменте
+ * @param length  длина содержимого файла
+ */
+public record SegmentLocation(int segment, long offset, int length) {
+}
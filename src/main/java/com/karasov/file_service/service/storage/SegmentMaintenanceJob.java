@@ -0,0 +1,87 @@
+package com.karasov.file_service.service.storage;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Фоновое обслуживание сегментного хранилища.
+ * <p>
+ * Сначала удаляет из хранилища записи, ключей которых нет в таблице {@code files} ни одного шарда (остаются
+ * после сбоя между фиксацией транзакции и записью отметки об удалении). Запись считается лишней, только если она оставалась
+ * неизменной и отсутствовала в базе данных при двух запусках подряд, поэтому файлы, транзакция сохранения которых
+ * ещё не зафиксирована, не затрагиваются. Затем уплотняет сегменты, в которых доля неиспользуемого места
+ * не меньше {@code file.segment.compaction-threshold}.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SegmentMaintenanceJob {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final SegmentStore segmentStore;
+    private final FileRepository fileRepository;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.segment.compaction-threshold}")
+    private double compactionThreshold;  // Доля неиспользуемого места, начиная с которой сегмент уплотняется.
+
+    private Map<String, SegmentLocation> suspects = new HashMap<>();
+
+    @Scheduled(fixedDelayString = "${file.segment.compaction-interval}")
+    public void run() {
+        if (!segmentStore.isOpen()) {
+            return;
+        }
+        try {
+            removeStale();
+            int removed = segmentStore.compact(compactionThreshold);
+            if (removed > 0) {
+                log.info("Уплотнено сегментов: {}", removed);
+            }
+        } catch (IOException e) {
+            log.error("Ошибка обслуживания сегментного хранилища: {}", e.getMessage());
+        }
+    }
+
+    private void removeStale() throws IOException {
+        List<String> names = new ArrayList<>(segmentStore.names());
+        Map<String, SegmentLocation> stale = new HashMap<>();
+        for (int from = 0; from < names.size(); from += BATCH_SIZE) {
+            List<String> batch = names.subList(from, Math.min(from + BATCH_SIZE, names.size()));
+            Set<String> live = new HashSet<>();
+            shardRouter.forEachShard(shard -> live.addAll(fileRepository.findSegmentKeys(batch)));
+            for (String name : batch) {
+                if (!live.contains(name)) {
+                    segmentStore.locate(name).ifPresent(location -> stale.put(name, location));
+                }
+            }
+        }
+
+        int removed = 0;
+        for (Map.Entry<String, SegmentLocation> entry : stale.entrySet()) {
+            if (entry.getValue().equals(suspects.get(entry.getKey()))) {
+                segmentStore.delete(entry.getKey(), entry.getValue());
+                removed++;
+            }
+        }
+        suspects = stale;
+        if (removed > 0) {
+            log.info("Удалено записей файлов, отсутствующих в базе данных: {}", removed);
+        }
+    }
+}
@@ -0,0 +1,682 @@
+package com.karasov.file_service.service.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище небольших файлов в сегментах с дозаписью.
+ * <p>
+ * Содержимое дописывается записями в конец активного сегмента - файла заранее выделенного размера. Положение
+ * каждой записи хранится в индексе в памяти (имя - сегмент, смещение, длина). Заполненный сегмент закрывается
+ * оглавлением, в котором перечислены все его записи, поэтому при запуске индекс восстанавливается чтением
+ * оглавлений, а не всего содержимого; только активный сегмент просматривается запись за записью до первой
+ * повреждённой (недописанной при сбое) записи.
+ * </p>
+ * <p>
+ * Все записи выполняет один поток. Он забирает из очереди все накопившиеся запросы, записывает их и выполняет
+ * один {@code fsync} на всю группу, после чего обновляет индекс и сообщает вызывающим потокам о завершении.
+ * Удаление записывает в сегмент отметку об удалении; место удалённых и перезаписанных записей освобождается
+ * уплотнением ({@link #compact(double)}), которое переносит живые записи в активный сегмент и удаляет старый.
+ * </p>
+ * <p>
+ * Содержимое читается ({@link #open(String)}) через отображение сегментов в память ({@link MappedRegionCache}).
+ * Сегменты выделяются заранее и никогда не усекаются, поэтому отображение активного сегмента видит новые записи
+ * без повторного отображения, а отображение сегмента, удалённого уплотнением, освобождается после закрытия
+ * последнего читающего его потока.
+ * </p>
+ * <p>
+ * Хранилище локально для узла: содержимое файлов уровня {@code SEGMENT} есть только в каталоге
+ * {@code file.segment.directory} и не попадает в резервную копию базы данных. Поэтому хранилище выключено
+ * по умолчанию и включается только при одном экземпляре сервиса или при каталоге на общем для всех экземпляров
+ * хранилище; резервное копирование должно включать этот каталог.
+ * Наличие файла и уровень его хранения определяет таблица {@code files},
+ * поэтому запись индекса, оставшаяся после сбоя между фиксацией транзакции и записью отметки об удалении,
+ * не видна пользователям и удаляется при очистке ({@link #delete(String, SegmentLocation)} для имён, отсутствующих в базе данных).
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SegmentStore {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("needle-(\\d{6})\\.dat");
+    private static final int RECORD_MAGIC = 0x4E444C45;
+    private static final int FOOTER_MAGIC = 0x464F4F54;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 4 + 1 + 2 + 4 + 4;
+    private static final int TRAILER_SIZE = 8 + 4 + 4;
+    private static final int FOOTER_ENTRY_SIZE = 1 + 2 + 8 + 4;
+    private static final PendingWrite STOP = new PendingWrite(DELETE, "", new byte[0], null, null);
+
+    private final MappedRegionCache mappedRegionCache;
+
+    @Value("${file.segment.enabled}")
+    private boolean enabled;  // Сохранять небольшие файлы в сегментное хранилище вместо базы данных (только один узел или общий каталог).
+    @Value("${file.segment.directory}")
+    private Path directory;  // Каталог сегментных файлов.
+    @Value("${file.segment.size}")
+    private long segmentSize;  // Размер сегмента, выделяемого заранее.
+    @Value("${file.segment.max-file-size}")
+    private int maxFileSize;  // Максимальный размер файла, сохраняемого в сегментное хранилище.
+
+    private final Map<String, SegmentLocation> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private Segment active;
+    private Thread writer;
+
+    /**
+     * Открывает сегменты, восстанавливает индекс и запускает поток записи.
+     *
+     * @throws IOException если не удалось прочитать сегменты
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+        for (int id : ids) {
+            Segment segment = new Segment(id, FileChannel.open(segmentPath(id),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(id, segment);
+            if (!readFooter(segment)) {
+                scan(segment);
+            }
+        }
+        Map.Entry<Integer, Segment> last = segments.lastEntry();
+        active = last != null && !last.getValue().sealed ? last.getValue()
+                : createSegment(last == null ? 1 : last.getKey() + 1);
+        log.info("Сегментное хранилище открыто: сегментов {}, файлов {}", segments.size(), index.size());
+
+        writer = new Thread(this::writeLoop, "segment-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        queue.put(STOP);
+        writer.join();
+        for (Segment segment : segments.values()) {
+            mappedRegionCache.invalidate(segmentPath(segment.id));
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Проверяет, открыто ли хранилище.
+     *
+     * @return true, если хранилище включено и открыто
+     */
+    public boolean isOpen() {
+        return writer != null;
+    }
+
+    /**
+     * Проверяет, может ли файл указанного размера храниться в сегментном хранилище.
+     *
+     * @param size размер файла
+     * @return true, если хранилище включено и файл не больше {@code file.segment.max-file-size}
+     */
+    public boolean accepts(long size) {
+        return enabled && size <= maxFileSize;
+    }
+
+    /**
+     * Записывает содержимое файла и ждёт, пока запись не будет сброшена на диск.
+     *
+     * @param name имя файла
+     * @param data содержимое файла
+     * @return положение записи
+     * @throws IOException если запись не удалась
+     */
+    public SegmentLocation put(String name, byte[] data) throws IOException {
+        return submit(new PendingWrite(PUT, name, data, null, new CompletableFuture<>()));
+    }
+
+    /**
+     * Записывает отметку об удалении файла и удаляет его из индекса.
+     *
+     * @param name     имя файла
+     * @param expected положение записи, которую требуется удалить; если индекс уже указывает на другую запись
+     *                 (файл с тем же именем сохранён заново), удаление не выполняется. {@code null} - удалить
+     *                 любую запись
+     * @throws IOException если запись не удалась
+     */
+    public void delete(String name, SegmentLocation expected) throws IOException {
+        if (index.containsKey(name)) {
+            submit(new PendingWrite(DELETE, name, new byte[0], expected, new CompletableFuture<>()));
+        }
+    }
+
+    /**
+     * Возвращает положение записи файла.
+     *
+     * @param name имя файла
+     * @return положение записи или пустой Optional, если файла нет в индексе
+     */
+    public Optional<SegmentLocation> locate(String name) {
+        return Optional.ofNullable(index.get(name));
+    }
+
+    /**
+     * Читает содержимое файла.
+     *
+     * @param name имя файла
+     * @return содержимое файла или пустой Optional, если файла нет в индексе
+     * @throws IOException если запись повреждена или выходит за границы сегмента
+     */
+    public Optional<byte[]> read(String name) throws IOException {
+        segmentsLock.readLock().lock();
+        try {
+            SegmentLocation location = index.get(name);
+            if (location == null) {
+                return Optional.empty();
+            }
+            Segment segment = segments.get(location.segment());
+            if (segment == null) {
+                throw new IOException("Сегмент " + location.segment() + " не найден");
+            }
+            return Optional.of(readRecord(segment, location, name));
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Открывает поток с содержимым файла, читающий его из отображённого в память сегмента.
+     * <p>
+     * Байты копируются из страничного кэша прямо в буфер вызывающего кода, без системных вызовов и промежуточного
+     * массива с содержимым. Заголовок записи проверяется сразу, контрольная сумма - по мере чтения: если содержимое
+     * повреждено, поток выбрасывает {@link IOException} по достижении конца записи. Если отображение отключено,
+     * содержимое читается и проверяется целиком.
+     * </p>
+     *
+     * @param name имя файла
+     * @return поток с содержимым файла или пустой Optional, если файла нет в индексе
+     * @throws IOException если запись повреждена или выходит за границы сегмента
+     */
+    public Optional<InputStream> open(String name) throws IOException {
+        segmentsLock.readLock().lock();
+        try {
+            SegmentLocation location = index.get(name);
+            if (location == null) {
+                return Optional.empty();
+            }
+            Segment segment = segments.get(location.segment());
+            if (segment == null) {
+                throw new IOException("Сегмент " + location.segment() + " не найден");
+            }
+            Optional<MappedRegion> mapped = mappedRegionCache.acquire(segmentPath(segment.id), location.offset(),
+                    recordSize(name, location.length()));
+            if (mapped.isEmpty()) {
+                return Optional.of(new ByteArrayInputStream(readRecord(segment, location, name)));
+            }
+            MappedRegion region = mapped.get();
+            try {
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                byte[] head = new byte[HEADER_SIZE + nameBytes.length];
+                region.read(0, head, 0, head.length);
+                int checksum = checkHeader(ByteBuffer.wrap(head), segment, name, nameBytes.length, location.length());
+                if (!Arrays.equals(head, HEADER_SIZE, head.length, nameBytes, 0, nameBytes.length)) {
+                    throw new IOException("Повреждена запись файла " + name + " в сегменте " + segment.id);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(nameBytes);
+                return Optional.of(new VerifiedInputStream(region.inputStream(head.length), crc, checksum,
+                        "файла " + name + " в сегменте " + segment.id));
+            } catch (IOException | RuntimeException e) {
+                region.close();
+                throw e;
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает имена всех файлов в индексе.
+     *
+     * @return снимок имён файлов
+     */
+    public Set<String> names() {
+        return Set.copyOf(index.keySet());
+    }
+
+    /**
+     * Уплотняет закрытые сегменты, в которых доля неиспользуемого места не меньше порога.
+     * Живые записи переносятся в активный сегмент, после чего старый сегмент удаляется.
+     *
+     * @param threshold доля неиспользуемого места (от 0 до 1), начиная с которой сегмент уплотняется
+     * @return количество удалённых сегментов
+     * @throws IOException если перенос записей не удался
+     */
+    public int compact(double threshold) throws IOException {
+        if (writer == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (Segment segment : List.copyOf(segments.values())) {
+            if (!segment.sealed || segment == active) {
+                continue;
+            }
+            Map<String, SegmentLocation> live = new ConcurrentHashMap<>();
+            index.forEach((name, location) -> {
+                if (location.segment() == segment.id) {
+                    live.put(name, location);
+                }
+            });
+            long liveBytes = live.entrySet().stream()
+                    .mapToLong(entry -> recordSize(entry.getKey(), entry.getValue().length()))
+                    .sum();
+            if (segment.dataEnd > 0 && 1.0 - (double) liveBytes / segment.dataEnd < threshold) {
+                continue;
+            }
+
+            for (Map.Entry<String, SegmentLocation> entry : live.entrySet()) {
+                byte[] data = readRecord(segment, entry.getValue(), entry.getKey());
+                submit(new PendingWrite(PUT, entry.getKey(), data, entry.getValue(), new CompletableFuture<>()));
+            }
+
+            segmentsLock.writeLock().lock();
+            try {
+                if (index.values().stream().anyMatch(location -> location.segment() == segment.id)) {
+                    continue;
+                }
+                segments.remove(segment.id);
+                mappedRegionCache.invalidate(segmentPath(segment.id));
+                segment.channel.close();
+                Files.deleteIfExists(segmentPath(segment.id));
+                removed++;
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+            log.info("Сегмент {} уплотнён: перенесено файлов {}", segment.id, live.size());
+        }
+        return removed;
+    }
+
+    private SegmentLocation submit(PendingWrite write) throws IOException {
+        if (writer == null) {
+            throw new IOException("Сегментное хранилище отключено");
+        }
+        queue.add(write);
+        try {
+            return write.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание записи прервано", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            boolean stop = batch.remove(STOP);
+
+            Map<String, SegmentLocation> staged = new LinkedHashMap<>();
+            Map<PendingWrite, SegmentLocation> written = new HashMap<>();
+            try {
+                Set<Segment> touched = new HashSet<>();
+                for (PendingWrite write : batch) {
+                    SegmentLocation current = staged.containsKey(write.name()) ? staged.get(write.name())
+                            : index.get(write.name());
+                    if (write.expected() != null && !write.expected().equals(current)) {
+                        continue;
+                    }
+                    SegmentLocation location = append(write);
+                    touched.add(active);
+                    staged.put(write.name(), write.type() == PUT ? location : null);
+                    written.put(write, location);
+                }
+                for (Segment segment : touched) {
+                    segment.channel.force(false);
+                }
+                staged.forEach((name, location) -> {
+                    if (location != null) {
+                        index.put(name, location);
+                    } else {
+                        index.remove(name);
+                    }
+                });
+                batch.forEach(write -> write.result().complete(written.get(write)));
+            } catch (IOException | RuntimeException e) {
+                log.error("Ошибка записи в сегментное хранилище: {}", e.getMessage());
+                batch.forEach(write -> write.result().completeExceptionally(e));
+            }
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private SegmentLocation append(PendingWrite write) throws IOException {
+        byte[] name = write.name().getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + name.length + write.data().length;
+        long footerSize = active.footerSize + FOOTER_ENTRY_SIZE + name.length;
+        if (active.position + size + footerSize + TRAILER_SIZE > segmentSize) {
+            if (active.position == 0) {
+                throw new IOException("Запись не помещается в сегмент: " + write.name());
+            }
+            seal(active);
+            active = createSegment(active.id + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(write.data());
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .putInt(RECORD_MAGIC)
+                .put(write.type())
+                .putShort((short) name.length)
+                .putInt(write.data().length)
+                .putInt((int) crc.getValue())
+                .put(name)
+                .put(write.data())
+                .flip();
+        long offset = active.position;
+        writeFully(active.channel, buffer, offset);
+        active.position += size;
+        active.footerSize += FOOTER_ENTRY_SIZE + name.length;
+        active.entries.add(new FooterEntry(write.type(), write.name(), offset, write.data().length));
+        return new SegmentLocation(active.id, offset, write.data().length);
+    }
+
+    private void seal(Segment segment) throws IOException {
+        ByteBuffer footer = ByteBuffer.allocate((int) segment.footerSize);
+        for (FooterEntry entry : segment.entries) {
+            byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+            footer.put(entry.type()).putShort((short) name.length).put(name).putLong(entry.offset()).putInt(entry.length());
+        }
+        writeFully(segment.channel, footer.flip(), segment.position);
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE)
+                .putLong(segment.position)
+                .putInt(segment.entries.size())
+                .putInt(FOOTER_MAGIC)
+                .flip();
+        writeFully(segment.channel, trailer, segmentSize - TRAILER_SIZE);
+        segment.channel.force(false);
+        segment.dataEnd = segment.position;
+        segment.sealed = true;
+        segment.entries.clear();
+    }
+
+    private boolean readFooter(Segment segment) throws IOException {
+        long size = segment.channel.size();
+        if (size < TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(segment.channel, trailer, size - TRAILER_SIZE);
+        trailer.flip();
+        long footerOffset = trailer.getLong();
+        int count = trailer.getInt();
+        if (trailer.getInt() != FOOTER_MAGIC || footerOffset < 0 || footerOffset > size - TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer footer = ByteBuffer.allocate((int) (size - TRAILER_SIZE - footerOffset));
+        readFully(segment.channel, footer, footerOffset);
+        footer.flip();
+        for (int i = 0; i < count; i++) {
+            byte type = footer.get();
+            byte[] name = new byte[footer.getShort() & 0xFFFF];
+            footer.get(name);
+            apply(type, new String(name, StandardCharsets.UTF_8),
+                    new SegmentLocation(segment.id, footer.getLong(), footer.getInt()));
+        }
+        segment.position = footerOffset;
+        segment.dataEnd = footerOffset;
+        segment.sealed = true;
+        return true;
+    }
+
+    private void scan(Segment segment) throws IOException {
+        long size = segment.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(segment.channel, header, position);
+            header.flip();
+            if (header.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            byte type = header.get();
+            int nameLength = header.getShort() & 0xFFFF;
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_SIZE + nameLength + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(nameLength + length);
+            readFully(segment.channel, body, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            String name = new String(body.array(), 0, nameLength, StandardCharsets.UTF_8);
+            SegmentLocation location = new SegmentLocation(segment.id, position, length);
+            apply(type, name, location);
+            segment.entries.add(new FooterEntry(type, name, position, length));
+            segment.footerSize += FOOTER_ENTRY_SIZE + nameLength;
+            position += HEADER_SIZE + nameLength + length;
+        }
+        segment.position = position;
+        segment.dataEnd = position;
+    }
+
+    private void apply(byte type, String name, SegmentLocation location) {
+        if (type == PUT) {
+            index.put(name, location);
+        } else {
+            index.remove(name);
+        }
+    }
+
+    private byte[] readRecord(Segment segment, SegmentLocation location, String name) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int size = recordSize(name, location.length());
+        if (location.offset() < 0 || location.offset() + size > segment.channel.size()) {
+            throw new IOException("Запись выходит за границы сегмента " + segment.id);
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        readFully(segment.channel, record, location.offset());
+        record.flip();
+        int checksum = checkHeader(record, segment, name, nameBytes.length, location.length());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, size - HEADER_SIZE);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Не совпадает контрольная сумма файла " + name + " в сегменте " + segment.id);
+        }
+        byte[] data = new byte[location.length()];
+        System.arraycopy(record.array(), HEADER_SIZE + nameBytes.length, data, 0, data.length);
+        return data;
+    }
+
+    private static int checkHeader(ByteBuffer record, Segment segment, String name, int nameLength, int length)
+            throws IOException {
+        if (record.getInt() != RECORD_MAGIC || record.get() != PUT
+                || (record.getShort() & 0xFFFF) != nameLength || record.getInt() != length) {
+            throw new IOException("Повреждена запись файла " + name + " в сегменте " + segment.id);
+        }
+        return record.getInt();
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = segmentPath(id);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+        }
+        Segment segment = new Segment(id, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("needle-%06d.dat", id));
+    }
+
+    private static int recordSize(String name, int length) {
+        return HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length + length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Сегмент обрывается раньше ожидаемого");
+            }
+            position += read;
+        }
+    }
+
+    private record FooterEntry(byte type, String name, long offset, int length) {
+    }
+
+    private record PendingWrite(byte type, String name, byte[] data, SegmentLocation expected,
+                                CompletableFuture<SegmentLocation> result) {
+    }
+
+    /**
+     * Поток, проверяющий контрольную сумму содержимого по достижении его конца.
+     */
+    private static final class VerifiedInputStream extends InputStream {
+        private final InputStream in;
+        private final CRC32 crc;
+        private final int checksum;
+        private final String description;
+        private boolean verified;
+
+        private VerifiedInputStream(InputStream in, CRC32 crc, int checksum, String description) {
+            this.in = in;
+            this.crc = crc;
+            this.checksum = checksum;
+            this.description = description;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = in.read();
+            if (read < 0) {
+                verify();
+            } else {
+                crc.update(read);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read < 0) {
+                verify();
+            } else {
+                crc.update(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void verify() throws IOException {
+            if (!verified) {
+                verified = true;
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Не совпадает контрольная сумма " + description);
+                }
+            }
+        }
+    }
+
+    /**
+     * Сегментный файл и состояние записи в него.
+     */
+    private static final class Segment {
+        private final int id;
+        private final FileChannel channel;
+        private final List<FooterEntry> entries = new ArrayList<>();
+        private long position;
+        private long dataEnd;
+        private long footerSize;
+        private boolean sealed;
+
+        private Segment(int id, FileChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+}
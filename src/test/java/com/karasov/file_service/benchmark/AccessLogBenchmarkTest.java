@@ -0,0 +1,119 @@
+package com.karasov.file_service.benchmark;
+
+import com.karasov.file_service.FileServiceApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пропускная способность и задержка запросов с журналом доступа и без него.
+ * <p>
+ * Запускается только в профиле {@code benchmark} и использует базу данных из {@code application.properties}.
+ * Приложение запускается в каждом режиме заново, нагрузка - запросы без токена, которые проходят все фильтры,
+ * но не обращаются к базе данных, поэтому разница во времени приходится на журналирование. Клиент и приложение
+ * работают в одной JVM, поэтому режимы прогоняются несколько раз подряд и выводятся результаты последнего прогона,
+ * когда код уже скомпилирован JIT.
+ * </p>
+ */
+@Tag("benchmark")
+public class AccessLogBenchmarkTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 2;
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(15);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void compareThroughputWithAccessLog() throws Exception {
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("access log off", List.of("--file.accesslog.enabled=false"));
+        modes.put("access log on", List.of("--file.accesslog.enabled=true"));
+        modes.put("access log 10%", List.of("--file.accesslog.enabled=true", "--file.accesslog.sample-rate=0.1"));
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+                run(mode.getKey(), mode.getValue(), round == ROUNDS);
+            }
+        }
+    }
+
+    private void run(String mode, List<String> modeArgs, boolean report) throws Exception {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--logging.file.name=" + directory.resolve("app.log"),
+                "--file.accesslog.path=" + directory.resolve("access.log"),
+                "--file.processing.enabled=false",
+                "--file.tiering.enabled=false",
+                "--file.segment.enabled=false",
+                "--file.limiter.enabled=false"));
+        args.addAll(modeArgs);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FileServiceApplication.class)
+                .run(args.toArray(String[]::new))) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/list?limit=1");
+            load(uri, WARMUP);
+            long[] latencies = load(uri, MEASUREMENT);
+            if (report) {
+                report(mode, latencies);
+            }
+        }
+    }
+
+    private long[] load(URI uri, Duration duration) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    latencies.add(System.nanoTime() - start);
+                    assertEquals(401, response.statusCode());
+                }
+                return latencies;
+            }));
+        }
+        List<Long> all = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            all.addAll(future.get());
+        }
+        executor.shutdown();
+        return all.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void report(String mode, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-15s %8.0f req/s  p50 %6.0f us  p99 %6.0f us  p99.9 %6.0f us%n",
+                mode,
+                latencies.length / (double) MEASUREMENT.toSeconds(),
+                latencies[latencies.length / 2] / 1e3,
+                latencies[(int) (latencies.length * 0.99)] / 1e3,
+                latencies[(int) (latencies.length * 0.999)] / 1e3);
+    }
+}
@@ -0,0 +1,140 @@
+package com.karasov.file_service.benchmark;
+
+import com.karasov.file_service.repository.FileContentStreamRepository;
+import com.karasov.file_service.service.storage.MappedRegionCache;
+import com.karasov.file_service.service.storage.SegmentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение хранения небольших файлов в базе данных и в сегментном хранилище.
+ * <p>
+ * Запускается только в профиле {@code benchmark} и использует базу данных из {@code application.properties}.
+ * </p>
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "file.segment.enabled=false",
+        "file.processing.enabled=false",
+        "file.tiering.enabled=false"
+})
+public class SmallFileStorageBenchmarkTest {
+
+    private static final int FILES = 5000;
+    private static final String PREFIX = "benchmark-small-";
+
+    @Autowired
+    private FileContentStreamRepository fileContentStreamRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MappedRegionCache mappedRegionCache;
+    @TempDir
+    private Path directory;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM files WHERE name LIKE ?", PREFIX + "%");
+    }
+
+    @Test
+    void compareWriteAndReadThroughput() throws Exception {
+        Random random = new Random(42);
+        List<byte[]> contents = new ArrayList<>();
+        long totalBytes = 0;
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = new byte[4096 + random.nextInt(60 * 1024)];
+            random.nextBytes(content);
+            contents.add(content);
+            totalBytes += content.length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = contents.get(i);
+            fileContentStreamRepository.insert(PREFIX + i, new ByteArrayInputStream(content), content.length);
+        }
+        long databaseWrite = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = contents.get(i);
+            assertArrayEquals(content, fileContentStreamRepository.readChunk(PREFIX + i, 0, content.length).orElseThrow());
+        }
+        long databaseRead = System.nanoTime() - start;
+
+        SegmentStore segmentStore = new SegmentStore(mappedRegionCache);
+        ReflectionTestUtils.setField(segmentStore, "enabled", true);
+        ReflectionTestUtils.setField(segmentStore, "directory", directory);
+        ReflectionTestUtils.setField(segmentStore, "segmentSize", 268435456L);
+        ReflectionTestUtils.setField(segmentStore, "maxFileSize", 65536);
+        segmentStore.open();
+        try {
+            start = System.nanoTime();
+            for (int i = 0; i < FILES; i++) {
+                segmentStore.put(PREFIX + i, contents.get(i));
+            }
+            long segmentWrite = System.nanoTime() - start;
+
+            for (int i = 0; i < FILES; i++) {
+                segmentStore.read(PREFIX + i);
+                drain(segmentStore.open(PREFIX + i).orElseThrow());
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < FILES; i++) {
+                assertArrayEquals(contents.get(i), segmentStore.read(PREFIX + i).orElseThrow());
+            }
+            long segmentRead = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long streamed = 0;
+            for (int i = 0; i < FILES; i++) {
+                streamed += drain(segmentStore.open(PREFIX + i).orElseThrow());
+            }
+            long segmentMappedRead = System.nanoTime() - start;
+            assertEquals(totalBytes, streamed);
+
+            report("database write", databaseWrite, totalBytes);
+            report("database read", databaseRead, totalBytes);
+            report("segment write", segmentWrite, totalBytes);
+            report("segment read", segmentRead, totalBytes);
+            report("segment mmap", segmentMappedRead, totalBytes);
+        } finally {
+            segmentStore.close();
+        }
+    }
+
+    private long drain(InputStream content) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        try (content) {
+            for (int read; (read = content.read(buffer)) >= 0; ) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private void report(String operation, long nanos, long bytes) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-15s %8.0f files/s %8.1f MiB/s%n",
+                operation, FILES / seconds, bytes / seconds / (1024 * 1024));
+    }
+}
@@ -0,0 +1,112 @@
+package com.karasov.file_service.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Время от запуска процесса до первого успешного запроса ({@code POST /login}) в разных режимах сборки.
+ * <p>
+ * Запускается только в профиле {@code benchmark} после {@code mvn package -Pfast-startup} и использует базу данных
+ * из {@code application.properties}. Учётные данные задаются свойствами {@code benchmark.login}
+ * и {@code benchmark.password}. Режимы, для которых нет собранных файлов, пропускаются.
+ * </p>
+ */
+@Tag("benchmark")
+public class StartupBenchmarkTest {
+
+    private static final Path TARGET = Path.of("target");
+    private static final Path EXTRACTED = TARGET.resolve("fast-startup");
+    private static final String JAR = "file_service-0.0.1-SNAPSHOT.jar";
+    private static final String ARCHIVE = "application.jsa";
+    private static final int RUNS = 3;
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Test
+    void compareTimeToFirstRequest() throws Exception {
+        String password = System.getProperty("benchmark.password");
+        assumeTrue(password != null, "Не задан пароль -Dbenchmark.password");
+        String login = System.getProperty("benchmark.login", "user@mail.ru");
+        assumeTrue(Files.exists(TARGET.resolve(JAR)), "Приложение не собрано");
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("jar", List.of("-jar", TARGET.resolve(JAR).toAbsolutePath().toString()));
+        if (Files.exists(EXTRACTED.resolve(ARCHIVE))) {
+            String extracted = EXTRACTED.resolve(JAR).toAbsolutePath().toString();
+            String archive = "-XX:SharedArchiveFile=" + EXTRACTED.resolve(ARCHIVE).toAbsolutePath();
+            modes.put("extracted", List.of("-jar", extracted));
+            modes.put("extracted+aot", List.of("-Dspring.aot.enabled=true", "-jar", extracted));
+            modes.put("extracted+aot+cds", List.of(archive, "-Dspring.aot.enabled=true", "-jar", extracted));
+            modes.put("extracted+aot+cds, follower", List.of(archive, "-Dspring.aot.enabled=true", "-jar", extracted,
+                    "--spring.profiles.active=follower"));
+        }
+
+        String body = "{\"login\":\"" + login + "\",\"password\":\"" + password + "\"}";
+        for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                best = Math.min(best, measure(mode.getValue(), body));
+            }
+            System.out.printf("%-30s %6d мс до первого успешного запроса (лучший из %d)%n", mode.getKey(), best, RUNS);
+        }
+    }
+
+    private long measure(List<String> arguments, String body) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(arguments);
+        command.add("--server.port=" + port);
+        command.add("--logging.file.name=");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new AssertionError("Приложение завершилось с кодом " + process.exitValue());
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (IOException e) {
+                    // Приложение ещё не начало принимать соединения.
+                }
+                Thread.sleep(10);
+            }
+            throw new AssertionError("Приложение не ответило за " + TIMEOUT);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+}
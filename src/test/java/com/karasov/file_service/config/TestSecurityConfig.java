@@ -1,9 +1,13 @@
 package com.karasov.file_service.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.karasov.file_service.filter.JwtAuthenticationFilter;
 import com.karasov.file_service.service.impl.JwtService;
+import com.karasov.file_service.service.limiter.UserRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -14,8 +18,11 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class TestSecurityConfig {
 
     @Bean
-    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
-        return new JwtAuthenticationFilter(jwtService, userDetailsService);
+    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService,
+                                                           ObjectMapper objectMapper) {
+        // Ограничение частоты выключено: лимитер создаётся без свойств.
+        return new JwtAuthenticationFilter(jwtService, userDetailsService,
+                new UserRateLimiter(new SimpleMeterRegistry(), new MockEnvironment()), objectMapper);
     }
 
     @Bean
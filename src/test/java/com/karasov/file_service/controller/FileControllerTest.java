@@ -1,8 +1,14 @@
 package com.karasov.file_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.karasov.file_service.config.TestSecurityConfig;
 import com.karasov.file_service.dto.FileNameEditDto;
 import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FileStatRequestDto;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.UploadPrecheckStatus;
 import com.karasov.file_service.service.FileService;
 import com.karasov.file_service.service.impl.JwtService;
 import org.junit.jupiter.api.DisplayName;
@@ -14,19 +20,30 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
@@ -120,7 +137,7 @@ class FileControllerTest {
         @DisplayName("Тест успешной выгрузки файла (возвращаемый статус 200)")
         @Test
         void uploadFileSuccessfully() throws Exception {
-            Mockito.when(fileService.saveFile(FILE_NAME, file.getBytes(), file.getSize())).thenReturn(true);
+            Mockito.when(fileService.saveFile(Mockito.eq(FILE_NAME), Mockito.any(InputStream.class), Mockito.eq(file.getSize()))).thenReturn(true);
 
             mockMvc.perform(multipart("/file")
                             .file(file)
@@ -130,10 +147,26 @@ class FileControllerTest {
                     .andExpect(content().string("Success upload"));
         }
 
+        @DisplayName("Тест успешной перезаписи существующего файла (возвращаемый статус 200)")
+        @Test
+        void uploadFileWithOverwriteSuccessfully() throws Exception {
+            Mockito.when(fileService.overwriteFile(FILE_NAME, file.getBytes(), file.getSize())).thenReturn(2);
+
+            mockMvc.perform(multipart("/file")
+                            .file(file)
+                            .param("filename", FILE_NAME)
+                            .param("overwrite", "true")
+                            .header("auth-token", TOKEN))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("Success upload"));
+
+            Mockito.verify(fileService, Mockito.never()).saveFile(FILE_NAME, file.getBytes(), file.getSize());
+        }
+
         @DisplayName("Тест неудачной выгрузки при отсутствии файла (возвращаемый статус 400)")
         @Test
         void uploadFileWhenInputDataIsInvalid() throws Exception {
-            Mockito.when(fileService.saveFile(FILE_NAME, file.getBytes(), file.getSize())).thenReturn(false);
+            Mockito.when(fileService.saveFile(Mockito.eq(FILE_NAME), Mockito.any(InputStream.class), Mockito.eq(file.getSize()))).thenReturn(false);
 
             mockMvc.perform(multipart("/file")
                             .file(file)
@@ -161,7 +194,7 @@ class FileControllerTest {
         @DisplayName("Тест неудачной выгрузки файла при внутренней ошибке сервиса (возвращаемый статус 500)")
         @Test
         void uploadFileWhenInternalServerErrorOccurs() throws Exception {
-              Mockito.when(fileService.saveFile(FILE_NAME, file.getBytes(), file.getSize())).thenThrow(new RuntimeException("Internal error"));
+              Mockito.when(fileService.saveFile(Mockito.eq(FILE_NAME), Mockito.any(InputStream.class), Mockito.eq(file.getSize()))).thenThrow(new RuntimeException("Internal error"));
 
             mockMvc.perform(multipart("/file")
                             .file(file)
@@ -173,6 +206,74 @@ class FileControllerTest {
         }
     }
 
+    @Nested
+    @DisplayName("Тесты предварительной проверки загрузки")
+    class PrecheckUploadTests {
+        private final static String SHA256 = "ab".repeat(32);
+
+        @DisplayName("Тест создания файла из существующего содержимого (возвращаемый статус 200)")
+        @Test
+        void precheckUploadWhenContentExists() throws Exception {
+            Mockito.when(fileService.precheckUpload(FILE_NAME, 12L, SHA256))
+                    .thenReturn(UploadPrecheckStatus.CREATED);
+
+            mockMvc.perform(post("/file/precheck")
+                            .header("auth-token", TOKEN)
+                            .param("filename", FILE_NAME)
+                            .param("size", "12")
+                            .param("sha256", SHA256))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.filename").value(FILE_NAME))
+                    .andExpect(jsonPath("$.uploadRequired").value(false));
+        }
+
+        @DisplayName("Тест запроса загрузки при отсутствии содержимого (возвращаемый статус 200)")
+        @Test
+        void precheckUploadWhenContentDoesNotExist() throws Exception {
+            Mockito.when(fileService.precheckUpload(FILE_NAME, 12L, SHA256))
+                    .thenReturn(UploadPrecheckStatus.UPLOAD_REQUIRED);
+
+            mockMvc.perform(post("/file/precheck")
+                            .header("auth-token", TOKEN)
+                            .param("filename", FILE_NAME)
+                            .param("size", "12")
+                            .param("sha256", SHA256))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.uploadRequired").value(true));
+        }
+
+        @DisplayName("Тест неудачной проверки при некорректной контрольной сумме (возвращаемый статус 400)")
+        @Test
+        void precheckUploadWhenChecksumIsInvalid() throws Exception {
+            mockMvc.perform(post("/file/precheck")
+                            .header("auth-token", TOKEN)
+                            .param("filename", FILE_NAME)
+                            .param("size", "12")
+                            .param("sha256", "not-a-checksum"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.id").value(400));
+
+            Mockito.verify(fileService, Mockito.never()).precheckUpload(any(), Mockito.anyLong(), any());
+        }
+
+        @DisplayName("Тест неудачной загрузки при несовпадении контрольной суммы (возвращаемый статус 400)")
+        @Test
+        void uploadFileWhenChecksumDoesNotMatch() throws Exception {
+            MockMultipartFile file = new MockMultipartFile("file", "example.txt", "text/plain",
+                    "file content".getBytes());
+            Mockito.when(fileService.saveFile(eq(FILE_NAME), any(InputStream.class), eq(file.getSize()), eq(SHA256)))
+                    .thenThrow(new InvalidInputDataException());
+
+            mockMvc.perform(multipart("/file")
+                            .file(file)
+                            .param("filename", FILE_NAME)
+                            .param("sha256", SHA256)
+                            .header("auth-token", TOKEN))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Error input data"));
+        }
+    }
+
     @Nested
     @DisplayName("Тесты удаления файла")
     class DeleteFileTests {
@@ -299,6 +400,75 @@ class FileControllerTest {
         }
     }
 
+    @Nested
+    @DisplayName("Тесты копирования файла")
+    class CopyFileTests {
+        String sourceFileName = "source.txt";
+        FileNameEditDto fileNameEditDto = new FileNameEditDto("copy.txt");
+
+        @DisplayName("Тест успешного копирования файла (возвращаемый статус 200)")
+        @Test
+        void copyFileSuccessTest() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.when(fileService.copyFile(sourceFileName, fileNameEditDto.filename())).thenReturn(true);
+
+            mockMvc.perform(post("/file/copy")
+                            .header("auth-token", TOKEN)
+                            .param("filename", sourceFileName)
+                            .content("{\"filename\":\"copy.txt\"}")
+                            .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("Success copied"));
+        }
+
+        @DisplayName("Тест неудачного копирования файла (возвращаемый статус 400)")
+        @Test
+        void copyFileWhenInputDataIsInvalid() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.when(fileService.copyFile(sourceFileName, fileNameEditDto.filename())).thenReturn(false);
+
+            mockMvc.perform(post("/file/copy")
+                            .header("auth-token", TOKEN)
+                            .param("filename", sourceFileName)
+                            .content("{\"filename\":\"copy.txt\"}")
+                            .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Error input data"))
+                    .andExpect(jsonPath("$.id").value(400));
+        }
+
+        @DisplayName("Тест копирования файла при отсутствии или неправильности токена (возвращаемый статус 401)")
+        @Test
+        void copyFileWhenTokenIsMissingOrInvalid() throws Exception {
+            String invalidToken = "";
+
+            mockMvc.perform(post("/file/copy")
+                            .header("auth-token", invalidToken)
+                            .param("filename", sourceFileName)
+                            .content("{\"filename\":\"copy.txt\"}")
+                            .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnauthorized())
+                    .andExpect(jsonPath("$.message").value("Unauthorized error"))
+                    .andExpect(jsonPath("$.id").value(401));
+        }
+
+        @DisplayName("Тест копирования файла с ошибкой на сервере (возвращаемый статус 500)")
+        @Test
+        void copyFileWhenServerErrorOccurs() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.when(fileService.copyFile(sourceFileName, fileNameEditDto.filename())).thenThrow(new RuntimeException("Internal error"));
+
+            mockMvc.perform(post("/file/copy")
+                            .header("auth-token", TOKEN)
+                            .param("filename", sourceFileName)
+                            .content("{\"filename\":\"copy.txt\"}")
+                            .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isInternalServerError())
+                    .andExpect(jsonPath("$.message").value("Error copy file"))
+                    .andExpect(jsonPath("$.id").value(500));
+        }
+    }
+
     @Nested
     @DisplayName("Тесты получения списка файлов")
     class GetListOfFilesTests {
@@ -314,11 +484,18 @@ class FileControllerTest {
             );
 
             Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
-            Mockito.when(fileService.getFileList(limit)).thenReturn(fileList);
+            Mockito.doAnswer(invocation -> {
+                new ObjectMapper().writeValue(invocation.getArgument(2, OutputStream.class), fileList);
+                return null;
+            }).when(fileService).writeFileList(eq(limit), eq(ListingFormat.JSON), any());
 
-            mockMvc.perform(get("/list")
+            MvcResult result = mockMvc.perform(get("/list")
                             .header("auth-token", TOKEN)
                             .param("limit", String.valueOf(limit)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
                     .andExpect(status().isOk())
                     .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                     .andExpect(jsonPath("$.length()").value(fileList.size()))
@@ -330,6 +507,24 @@ class FileControllerTest {
                     .andExpect(jsonPath("$[2].size").value(4096));
         }
 
+        @DisplayName("Тест получения списка файлов в формате CBOR (возвращаемый статус 200)")
+        @Test
+        void getListOfFilesInCborTest() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+
+            MvcResult result = mockMvc.perform(get("/list")
+                            .header("auth-token", TOKEN)
+                            .header(HttpHeaders.ACCEPT, "application/cbor, application/json;q=0.5")
+                            .param("limit", String.valueOf(limit)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_CBOR));
+            Mockito.verify(fileService).writeFileList(eq(limit), eq(ListingFormat.CBOR), any());
+        }
+
         @DisplayName("Тест ошибки при отсутствии или неправильности токена (возвращаемый статус 401)")
         @Test
         void getListOfFilesWhenTokenIsMissingOrInvalid() throws Exception {
@@ -347,16 +542,140 @@ class FileControllerTest {
         @Test
         void getListOfFilesWhenInternalServerErrorOccurs() throws Exception {
             Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
-            Mockito.when(fileService.getFileList(limit)).thenThrow(new RuntimeException("Internal error"));
+            Mockito.doThrow(new RuntimeException("Internal error"))
+                    .when(fileService).writeFileList(eq(limit), any(), any());
 
-            mockMvc.perform(get("/list")
+            MvcResult result = mockMvc.perform(get("/list")
                             .header("auth-token", TOKEN)
                             .param("limit", String.valueOf(limit)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
                     .andExpect(status().isInternalServerError())
                     .andExpect(jsonPath("$.message").value("Error getting file list"))
                     .andExpect(jsonPath("$.id").value(500));
         }
     }
+
+    @Nested
+    @DisplayName("Тесты получения метаданных файлов")
+    class StatFilesTests {
+        List<String> fileNames = List.of("file1.txt", "missing.txt");
+
+        @DisplayName("Тест успешного получения метаданных файлов (возвращаемый статус 200)")
+        @Test
+        void statFilesSuccessTest() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.doAnswer(invocation -> {
+                invocation.getArgument(1, OutputStream.class).write(("[{\"filename\":\"file1.txt\",\"exists\":true," +
+                        "\"size\":1024},{\"filename\":\"missing.txt\",\"exists\":false}]")
+                        .getBytes(StandardCharsets.UTF_8));
+                return null;
+            }).when(fileService).writeFileStats(eq(fileNames), any());
+
+            MvcResult result = mockMvc.perform(post("/file/stat")
+                            .header("auth-token", TOKEN)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(new FileStatRequestDto(fileNames))))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(jsonPath("$.length()").value(2))
+                    .andExpect(jsonPath("$[0].size").value(1024))
+                    .andExpect(jsonPath("$[1].exists").value(false));
+        }
+
+        @DisplayName("Тест запроса со слишком большим списком имён (возвращаемый статус 400)")
+        @Test
+        void statFilesWhenTooManyNames() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+
+            mockMvc.perform(post("/file/stat")
+                            .header("auth-token", TOKEN)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(new ObjectMapper().writeValueAsString(
+                                    new FileStatRequestDto(Collections.nCopies(100_001, "file.txt")))))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Error input data"))
+                    .andExpect(jsonPath("$.id").value(400));
+            Mockito.verifyNoInteractions(fileService);
+        }
+
+        @DisplayName("Тест запроса с пустым списком имён (возвращаемый статус 400)")
+        @Test
+        void statFilesWhenNamesAreEmpty() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+
+            mockMvc.perform(post("/file/stat")
+                            .header("auth-token", TOKEN)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"filenames\":[]}"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.id").value(400));
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты поиска файлов")
+    class SearchFilesTests {
+        String query = "report";
+
+        @DisplayName("Тест успешного поиска файлов (возвращаемый статус 200)")
+        @Test
+        void searchFilesSuccessTest() throws Exception {
+            List<FileResponseDto> fileList = List.of(
+                    new FileResponseDto("report-2024.txt", 1024),
+                    new FileResponseDto("report-2025.txt", 2048)
+            );
+
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.when(fileService.searchFiles(query, SearchMode.PREFIX, "", 2)).thenReturn(fileList);
+
+            mockMvc.perform(get("/search")
+                            .header("auth-token", TOKEN)
+                            .param("query", query)
+                            .param("mode", "prefix")
+                            .param("limit", "2"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(jsonPath("$.length()").value(fileList.size()))
+                    .andExpect(jsonPath("$[0].filename").value("report-2024.txt"))
+                    .andExpect(jsonPath("$[1].filename").value("report-2025.txt"));
+        }
+
+        @DisplayName("Тест поиска с неизвестным режимом (возвращаемый статус 400)")
+        @Test
+        void searchFilesWhenModeIsInvalid() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+
+            mockMvc.perform(get("/search")
+                            .header("auth-token", TOKEN)
+                            .param("query", query)
+                            .param("mode", "regex"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Error input data"))
+                    .andExpect(jsonPath("$.id").value(400));
+        }
+
+        @DisplayName("Тест поиска с ошибкой на сервере (возвращаемый статус 500)")
+        @Test
+        void searchFilesWhenServerErrorOccurs() throws Exception {
+            Mockito.when(jwtService.validateAndExtractUsername(TOKEN)).thenReturn("user");
+            Mockito.when(fileService.searchFiles(query, SearchMode.SUBSTRING, "", 100))
+                    .thenThrow(new RuntimeException("Internal error"));
+
+            mockMvc.perform(get("/search")
+                            .header("auth-token", TOKEN)
+                            .param("query", query))
+                    .andExpect(status().isInternalServerError())
+                    .andExpect(jsonPath("$.message").value("Error search files"))
+                    .andExpect(jsonPath("$.id").value(500));
+        }
+    }
 }
 
 
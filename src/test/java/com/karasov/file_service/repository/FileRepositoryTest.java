@@ -1,6 +1,7 @@
 package com.karasov.file_service.repository;
 
 import com.karasov.file_service.model.FileEntity;
+import com.karasov.file_service.model.FileVersion;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,7 +41,7 @@ public class FileRepositoryTest {
     @BeforeEach
     void setUp() {
         jdbcTemplate.execute("DELETE FROM files");
-        fileRepository.save(new FileEntity("file1", new byte[] {1, 2, 3}, 3L));
+        fileRepository.save(new FileEntity("file1", 3L));
     }
 
     @Test
@@ -67,6 +68,18 @@ public class FileRepositoryTest {
         assertTrue(updatedFile.isPresent());
     }
 
+    @Test
+    @Transactional
+    void testUpdateChecksum_WhenFileWasOverwritten() {
+        FileVersion version = fileRepository.findVersionByName("file1").orElseThrow();
+        fileRepository.resetContentMetadata("file1", 4L);
+
+        int updated = fileRepository.updateChecksum("file1", version.getRevision(), version.getCreatedAt(), "ab".repeat(32));
+
+        assertEquals(0, updated);
+        assertTrue(fileRepository.findNameByChecksum("ab".repeat(32), 4L).isEmpty());
+    }
+
     @AfterEach
     void tearDown() {
         jdbcTemplate.execute("DELETE FROM files");
@@ -0,0 +1,86 @@
+package com.karasov.file_service.service;
+
+import com.karasov.file_service.dto.ArchiveEntryResultDto;
+import com.karasov.file_service.dto.ArchiveUploadResultDto;
+import com.karasov.file_service.model.ArchiveEntryStatus;
+import com.karasov.file_service.model.ArchiveFormat;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.impl.FileArchiveServiceImpl;
+import com.karasov.file_service.service.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileArchiveServiceTest {
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private final FileService fileService = mock(FileService.class);
+    private FileArchiveServiceImpl fileArchiveService;
+
+    @BeforeEach
+    void setUp() {
+        fileArchiveService = new FileArchiveServiceImpl(fileRepository, mock(FileContentService.class), fileService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), ShardRouter.single());
+        ReflectionTestUtils.setField(fileArchiveService, "uploadMaxEntries", 10);
+        ReflectionTestUtils.setField(fileArchiveService, "uploadMaxEntrySize", 1000L);
+        ReflectionTestUtils.setField(fileArchiveService, "uploadMaxExpandedSize", 500L);
+        ReflectionTestUtils.setField(fileArchiveService, "uploadBatchSize", 100);
+    }
+
+    @Test
+    void testExtractArchive_WhenRejectedEntryExceedsExpandedSize() throws IOException {
+        byte[] zip = zip("../outside.txt", 400, "inside.txt", 400);
+
+        ArchiveUploadResultDto result = fileArchiveService.extractArchive(
+                new ByteArrayInputStream(zip), ArchiveFormat.ZIP, "");
+
+        assertEquals(List.of(ArchiveEntryStatus.REJECTED, ArchiveEntryStatus.FAILED),
+                result.entries().stream().map(ArchiveEntryResultDto::status).toList());
+        verify(fileService, never()).saveFile(anyString(), any(InputStream.class), anyLong());
+    }
+
+    @Test
+    void testExtractArchive_WhenExistingEntryExceedsExpandedSize() throws IOException {
+        when(fileRepository.existsById("existing.txt")).thenReturn(true);
+        byte[] zip = zip("existing.txt", 600, "new.txt", 10);
+
+        ArchiveUploadResultDto result = fileArchiveService.extractArchive(
+                new ByteArrayInputStream(zip), ArchiveFormat.ZIP, "");
+
+        assertEquals(List.of(ArchiveEntryStatus.FAILED),
+                result.entries().stream().map(ArchiveEntryResultDto::status).toList());
+        verify(fileService, never()).saveFile(anyString(), any(InputStream.class), anyLong());
+    }
+
+    private static byte[] zip(String firstName, int firstSize, String secondName, int secondSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(firstName));
+            zip.write(new byte[firstSize]);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(secondName));
+            zip.write(new byte[secondSize]);
+            zip.closeEntry();
+        }
+        return out.toByteArray();
+    }
+}
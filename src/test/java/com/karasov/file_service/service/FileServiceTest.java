@@ -1,39 +1,90 @@
 package com.karasov.file_service.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.karasov.file_service.dto.FileResponseDto;
+import com.karasov.file_service.dto.FolderListingResponseDto;
+import com.karasov.file_service.handler.exception.InvalidInputDataException;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.model.FileContent;
 import com.karasov.file_service.model.FileEntity;
+import com.karasov.file_service.model.FileInfo;
+import com.karasov.file_service.model.FileLocation;
+import com.karasov.file_service.model.FileStat;
+import com.karasov.file_service.model.FolderInfo;
+import com.karasov.file_service.model.ListingFormat;
+import com.karasov.file_service.model.SearchMode;
+import com.karasov.file_service.model.StorageTier;
+import com.karasov.file_service.model.UploadPrecheckStatus;
+import com.karasov.file_service.repository.FileContentRepository;
+import com.karasov.file_service.repository.FileListingRepository;
 import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.repository.FileStatRepository;
+import com.karasov.file_service.repository.FileTextRepository;
+import com.karasov.file_service.repository.FolderRepository;
+import com.karasov.file_service.service.listing.FileListingIndex;
+import com.karasov.file_service.service.processing.FileProcessingQueue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.InputStreamResource;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.mock;
 
-@SpringBootTest
+@SpringBootTest(properties = "file.segment.enabled=false")
 public class FileServiceTest {
     @MockBean
     private FileRepository fileRepository;
+    @MockBean
+    private FileContentRepository fileContentRepository;
+    @MockBean
+    private FileListingRepository fileListingRepository;
+    @MockBean
+    private FileListingIndex fileListingIndex;
+    @MockBean
+    private FileStatRepository fileStatRepository;
+    @MockBean
+    private FileTextRepository fileTextRepository;
+    @MockBean
+    private FileProcessingQueue fileProcessingQueue;
+    @MockBean
+    private FileRevisionService fileRevisionService;
+    @MockBean
+    private FileEventService fileEventService;
+    @MockBean
+    private FolderRepository folderRepository;
     @Autowired
     private FileService fileService;
 
     @BeforeEach
     void setUp() {
-        reset(fileRepository);
+        reset(fileRepository, fileContentRepository, fileListingRepository, fileListingIndex, fileStatRepository, fileTextRepository, fileProcessingQueue, fileRevisionService, fileEventService, folderRepository);
     }
 
     @Test
@@ -48,6 +99,8 @@ public class FileServiceTest {
 
         assertTrue(result);
         verify(fileRepository).save(any(FileEntity.class));
+        verify(fileContentRepository).save(any(FileContent.class));
+        verify(fileProcessingQueue).enqueue(fileName);
     }
 
     @Test
@@ -62,14 +115,51 @@ public class FileServiceTest {
 
         assertFalse(result);
         verify(fileRepository, never()).save(any(FileEntity.class));
+        verify(fileContentRepository, never()).save(any(FileContent.class));
+        verify(fileProcessingQueue, never()).enqueue(fileName);
+    }
+
+    @Test
+    void testOverwriteFile_WhenFileExists() {
+        String fileName = "file1";
+        byte[] oldBytes = new byte[] {1, 2, 3};
+        byte[] newBytes = new byte[] {1, 2, 3, 4};
+
+        when(fileRepository.lockRevisionByName(fileName)).thenReturn(Optional.of(2));
+        mockHotFile(fileName, oldBytes);
+
+        int result = fileService.overwriteFile(fileName, newBytes, newBytes.length);
+
+        assertEquals(3, result);
+        verify(fileRevisionService).archive(fileName, 2, oldBytes, newBytes);
+        verify(fileRepository).resetContentMetadata(fileName, newBytes.length);
+        verify(fileContentRepository).upsert(fileName, newBytes);
+        verify(fileTextRepository).deleteByFileName(fileName);
+        verify(fileProcessingQueue).enqueue(fileName);
+    }
+
+    @Test
+    void testOverwriteFile_WhenFileDoesNotExist() {
+        String fileName = "file1";
+        byte[] fileBytes = new byte[] {1, 2, 3};
+
+        when(fileRepository.lockRevisionByName(fileName)).thenReturn(Optional.empty());
+
+        int result = fileService.overwriteFile(fileName, fileBytes, fileBytes.length);
+
+        assertEquals(1, result);
+        verify(fileRepository).save(any(FileEntity.class));
+        verify(fileRevisionService, never()).archive(any(), anyInt(), any(), any());
+        verify(fileProcessingQueue).enqueue(fileName);
     }
 
     @Test
-    void testGetFileList() {
-        when(fileRepository.findAllFiles()).thenReturn(List.of(
-                new FileEntity("file1", new byte[] {1, 2, 3}, 3L),
-                new FileEntity("file2", new byte[] {4, 5, 6}, 3L)
-        ));
+    void testGetFileList() throws IOException {
+        doAnswer(invocation -> {
+            FileListingRepository.FileRowHandler handler = invocation.getArgument(1);
+            handler.handle("file1", 3L);
+            return null;
+        }).when(fileListingRepository).forEachFile(eq(1), any());
 
         List<FileResponseDto> fileList = fileService.getFileList(1);
 
@@ -77,6 +167,56 @@ public class FileServiceTest {
         assertEquals("file1", fileList.get(0).filename());
     }
 
+    @Test
+    void testWriteFileList() throws IOException {
+        doAnswer(invocation -> {
+            FileListingRepository.FileRowHandler handler = invocation.getArgument(1);
+            handler.handle("file1", 3L);
+            handler.handle("file2", 5L);
+            return null;
+        }).when(fileListingRepository).forEachFile(eq(2), any());
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        fileService.writeFileList(2, ListingFormat.JSON, json);
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+        fileService.writeFileList(2, ListingFormat.CBOR, cbor);
+
+        assertEquals("[{\"filename\":\"file1\",\"size\":3},{\"filename\":\"file2\",\"size\":5}]", json.toString());
+        List<FileResponseDto> decoded = new CBORMapper().readValue(cbor.toByteArray(), new TypeReference<>() {
+        });
+        assertEquals(List.of(new FileResponseDto("file1", 3), new FileResponseDto("file2", 5)), decoded);
+    }
+
+    @Test
+    void testWriteFileList_WhenIndexIsLoaded() throws IOException {
+        when(fileListingIndex.forEachFile(eq(1), any())).thenAnswer(invocation -> {
+            FileListingRepository.FileRowHandler handler = invocation.getArgument(1);
+            handler.handle("file1", 3L);
+            return true;
+        });
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        fileService.writeFileList(1, ListingFormat.JSON, json);
+
+        assertEquals("[{\"filename\":\"file1\",\"size\":3}]", json.toString());
+        verify(fileListingRepository, never()).forEachFile(anyInt(), any());
+    }
+
+    @Test
+    void testWriteFileStats() throws IOException {
+        Instant created = Instant.parse("2025-01-01T10:00:00Z");
+        Instant modified = Instant.parse("2025-01-02T10:00:00Z");
+        when(fileStatRepository.findByNames(Set.of("file1", "missing")))
+                .thenReturn(Map.of("file1", new FileStat("file1", 3L, "ab12", created, modified)));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        fileService.writeFileStats(List.of("missing", "file1"), json);
+
+        assertEquals("[{\"filename\":\"missing\",\"exists\":false}," +
+                "{\"filename\":\"file1\",\"exists\":true,\"size\":3,\"sha256\":\"ab12\"," +
+                "\"created\":\"2025-01-01T10:00:00Z\",\"modified\":\"2025-01-02T10:00:00Z\"}]", json.toString());
+    }
+
     @Test
     void testDeleteFile_WhenFileExists() {
         String fileName = "file1";
@@ -87,6 +227,8 @@ public class FileServiceTest {
 
         assertTrue(result);
         verify(fileRepository).deleteByName(fileName);
+        verify(fileEventService).publish(FileChangeType.DELETED, fileName, null);
+        verify(fileListingIndex).remove(fileName);
     }
 
     @Test
@@ -99,6 +241,7 @@ public class FileServiceTest {
 
         assertFalse(result);
         verify(fileRepository, never()).deleteByName(fileName);
+        verify(fileEventService, never()).publish(any(), any(), any());
     }
 
     @Test
@@ -112,6 +255,8 @@ public class FileServiceTest {
 
         assertTrue(result);
         verify(fileRepository).updateByName(oldFileName, newFileName);
+        verify(fileEventService).publish(FileChangeType.RENAMED, oldFileName, newFileName);
+        verify(fileListingIndex).rename(oldFileName, newFileName);
     }
 
     @Test
@@ -127,12 +272,86 @@ public class FileServiceTest {
         verify(fileRepository, never()).updateByName(oldFileName, newFileName);
     }
 
+    @Test
+    void testCopyFile_WhenSourceExists() {
+        String sourceFileName = "file1";
+        String targetFileName = "file2";
+
+        when(fileRepository.copyByName(sourceFileName, targetFileName)).thenReturn(1);
+
+        boolean result = fileService.copyFile(sourceFileName, targetFileName);
+
+        assertTrue(result);
+        verify(fileContentRepository).copy(sourceFileName, targetFileName);
+        verify(fileTextRepository).copy(sourceFileName, targetFileName);
+        verify(fileProcessingQueue).copy(sourceFileName, targetFileName);
+    }
+
+    @Test
+    void testCopyFile_WhenSourceMissingOrTargetExists() {
+        String sourceFileName = "file1";
+        String targetFileName = "file2";
+
+        when(fileRepository.copyByName(sourceFileName, targetFileName)).thenReturn(0);
+
+        boolean result = fileService.copyFile(sourceFileName, targetFileName);
+
+        assertFalse(result);
+        verify(fileTextRepository, never()).copy(sourceFileName, targetFileName);
+        verify(fileProcessingQueue, never()).copy(sourceFileName, targetFileName);
+    }
+
+    @Test
+    void testPrecheckUpload_WhenContentExists() {
+        String sha256 = "ab".repeat(32);
+
+        when(fileRepository.existsById("file2")).thenReturn(false);
+        when(fileRepository.findNameByChecksum(sha256, 3L)).thenReturn(Optional.of("file1"));
+        when(fileRepository.copyByName("file1", "file2")).thenReturn(1);
+
+        UploadPrecheckStatus result = fileService.precheckUpload("file2", 3L, sha256.toUpperCase());
+
+        assertEquals(UploadPrecheckStatus.CREATED, result);
+        verify(fileProcessingQueue).copy("file1", "file2");
+    }
+
+    @Test
+    void testPrecheckUpload_WhenContentDoesNotExist() {
+        String sha256 = "ab".repeat(32);
+
+        when(fileRepository.existsById("file2")).thenReturn(false);
+        when(fileRepository.findNameByChecksum(sha256, 3L)).thenReturn(Optional.empty());
+
+        UploadPrecheckStatus result = fileService.precheckUpload("file2", 3L, sha256);
+
+        assertEquals(UploadPrecheckStatus.UPLOAD_REQUIRED, result);
+        verify(fileRepository, never()).copyByName(any(), any());
+    }
+
+    @Test
+    void testPrecheckUpload_WhenFileExists() {
+        when(fileRepository.existsById("file2")).thenReturn(true);
+
+        UploadPrecheckStatus result = fileService.precheckUpload("file2", 3L, "ab".repeat(32));
+
+        assertEquals(UploadPrecheckStatus.FILE_EXISTS, result);
+        verify(fileRepository, never()).findNameByChecksum(any(), anyLong());
+    }
+
+    @Test
+    void testOverwriteFile_WhenChecksumDoesNotMatch() {
+        byte[] bytes = new byte[] {1, 2, 3};
+
+        assertThrows(InvalidInputDataException.class,
+                () -> fileService.overwriteFile("file1", bytes, bytes.length, "00".repeat(32)));
+        verify(fileRepository, never()).lockRevisionByName(any());
+    }
+
     @Test
     void testGetFile_WhenFileExists() {
         String fileName = "file1";
 
-        FileEntity fileEntity = new FileEntity(fileName, new byte[] {1, 2, 3}, 3L);
-        when(fileRepository.getFileEntityByName(fileName)).thenReturn(Optional.of(fileEntity));
+        mockHotFile(fileName, new byte[] {1, 2, 3});
 
         InputStreamResource fileResource = fileService.getFile(fileName);
 
@@ -143,8 +362,86 @@ public class FileServiceTest {
     void testGetFile_WhenFileDoesNotExist() {
         String fileName = "file1";
 
-        when(fileRepository.getFileEntityByName(fileName)).thenReturn(Optional.empty());
+        when(fileRepository.findLocationByName(fileName)).thenReturn(Optional.empty());
 
         assertThrows(RuntimeException.class, () -> fileService.getFile(fileName));
+        verify(fileContentRepository, never()).findById(any());
+    }
+
+    @Test
+    void testSearchFiles() {
+        FileInfo fileInfo = mock(FileInfo.class);
+        when(fileInfo.getName()).thenReturn("dir/report_1.txt");
+        when(fileInfo.getSize()).thenReturn(3L);
+        when(fileRepository.searchByNamePattern("dir/report\\_%", "", 10)).thenReturn(List.of(fileInfo));
+
+        List<FileResponseDto> fileList = fileService.searchFiles("dir/report_", SearchMode.PREFIX, "", 10);
+
+        assertEquals(1, fileList.size());
+        assertEquals("dir/report_1.txt", fileList.get(0).filename());
+    }
+
+    @Test
+    void testListFolder() {
+        FileInfo fileInfo = mock(FileInfo.class);
+        when(fileInfo.getName()).thenReturn("docs/a.txt");
+        when(fileInfo.getSize()).thenReturn(3L);
+        when(folderRepository.findByPath("docs")).thenReturn(Optional.of(new FolderInfo("docs", 10L, 2L)));
+        when(folderRepository.findChildren("docs")).thenReturn(List.of(new FolderInfo("docs/sub", 7L, 1L)));
+        when(fileRepository.findInfosByFolder("docs", "", 10)).thenReturn(List.of(fileInfo));
+
+        Optional<FolderListingResponseDto> listing = fileService.listFolder("docs", "", 10);
+
+        assertTrue(listing.isPresent());
+        assertEquals(10L, listing.get().size());
+        assertEquals(2L, listing.get().fileCount());
+        assertEquals("docs/sub", listing.get().folders().get(0).path());
+        assertEquals("docs/a.txt", listing.get().files().get(0).filename());
+    }
+
+    @Test
+    void testListFolder_WhenFolderDoesNotExist() {
+        when(folderRepository.findByPath("docs")).thenReturn(Optional.empty());
+
+        assertTrue(fileService.listFolder("docs", "", 10).isEmpty());
+        verify(fileRepository, never()).findInfosByFolder(any(), any(), anyInt());
+    }
+
+    @Test
+    void testMoveFolder() {
+        when(folderRepository.lockSubtree("docs")).thenReturn(List.of("docs", "docs/sub"));
+        when(folderRepository.exists("archive/docs")).thenReturn(false);
+
+        assertTrue(fileService.moveFolder("docs", "archive/docs"));
+
+        InOrder order = inOrder(folderRepository, fileRepository, fileProcessingQueue);
+        order.verify(folderRepository).copySubtree("docs", "archive/docs");
+        order.verify(fileRepository).moveFolder("docs", "archive/docs");
+        order.verify(fileProcessingQueue).renameFolder("docs", "archive/docs");
+        order.verify(folderRepository).deleteSubtree("docs");
+        verify(fileEventService).publish(FileChangeType.FOLDER_RENAMED, "docs", "archive/docs");
+    }
+
+    @Test
+    void testMoveFolder_IntoItself() {
+        assertFalse(fileService.moveFolder("docs", "docs/inner"));
+        verify(folderRepository, never()).lockSubtree(any());
+        verify(fileRepository, never()).moveFolder(any(), any());
+    }
+
+    @Test
+    void testMoveFolder_WhenTargetExists() {
+        when(folderRepository.lockSubtree("docs")).thenReturn(List.of("docs"));
+        when(folderRepository.exists("archive")).thenReturn(true);
+
+        assertFalse(fileService.moveFolder("docs", "archive"));
+        verify(folderRepository, never()).copySubtree(any(), any());
+    }
+
+    private void mockHotFile(String fileName, byte[] bytes) {
+        FileLocation location = mock(FileLocation.class);
+        when(location.getTier()).thenReturn(StorageTier.HOT);
+        when(fileRepository.findLocationByName(fileName)).thenReturn(Optional.of(location));
+        when(fileContentRepository.findById(fileName)).thenReturn(Optional.of(new FileContent(fileName, bytes)));
     }
 }
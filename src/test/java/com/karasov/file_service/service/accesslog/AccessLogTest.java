@@ -0,0 +1,125 @@
+package com.karasov.file_service.service.accesslog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccessLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testRecord_WritesJsonLine() throws Exception {
+        AccessLog accessLog = open(16, 1.0);
+
+        assertTrue(accessLog.record(1_700_000_000_000L, "GET", "/file\"\n", 200, 1500, "user@mail.ru", "127.0.0.1"));
+        accessLog.record(1_700_000_000_001L, "POST", "/login", 400, 20, null, "127.0.0.1");
+        accessLog.close();
+
+        List<String> lines = Files.readAllLines(directory.resolve("access.log"));
+        assertEquals(2, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals("2023-11-14T22:13:20Z", first.get("time").asText());
+        assertEquals("GET", first.get("method").asText());
+        assertEquals("/file\"\n", first.get("uri").asText());
+        assertEquals(200, first.get("status").asInt());
+        assertEquals(1500, first.get("duration_us").asLong());
+        assertEquals("user@mail.ru", first.get("user").asText());
+        assertTrue(objectMapper.readTree(lines.get(1)).get("user").isNull());
+    }
+
+    @Test
+    void testRecord_SamplesOnlySuccessfulRequests() throws Exception {
+        AccessLog accessLog = open(16, 0.0);
+
+        assertFalse(accessLog.record(0, "GET", "/list", 200, 1, null, "127.0.0.1"));
+        assertTrue(accessLog.record(0, "GET", "/list", 500, 1, null, "127.0.0.1"));
+        accessLog.close();
+
+        assertEquals(1, Files.readAllLines(directory.resolve("access.log")).size());
+    }
+
+    @Test
+    void testRecord_WakesIdleWriter() throws Exception {
+        AccessLog accessLog = open(16, 1.0);
+        Path file = directory.resolve("access.log");
+
+        for (int i = 1; i <= 3; i++) {
+            Thread.sleep(50);
+            accessLog.record(i, "GET", "/list", 200, 1, null, "127.0.0.1");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (Files.readAllLines(file).size() < i && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(i, Files.readAllLines(file).size());
+        }
+        accessLog.close();
+    }
+
+    @Test
+    void testRecord_FromManyThreadsWithSmallBuffer() throws Exception {
+        AccessLog accessLog = open(4, 1.0);
+        int threads = 8;
+        int perThread = 20_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String uri = "/file/" + t;
+            futures.add(executor.submit(() -> {
+                int accepted = 0;
+                for (int i = 0; i < perThread; i++) {
+                    if (accessLog.record(i, "GET", uri, 200, i, null, "127.0.0.1")) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+        int accepted = 0;
+        for (Future<Integer> future : futures) {
+            accepted += future.get();
+        }
+        executor.shutdown();
+        accessLog.close();
+
+        double written = meterRegistry.counter("file.accesslog.written").count();
+        double dropped = meterRegistry.counter("file.accesslog.dropped").count();
+        List<String> lines = Files.readAllLines(directory.resolve("access.log"));
+        assertEquals(threads * perThread, written + dropped);
+        assertEquals(accepted, (int) written);
+        assertEquals(accepted, lines.size());
+        for (String line : lines) {
+            assertTrue(objectMapper.readTree(line).get("uri").asText().startsWith("/file/"));
+        }
+    }
+
+    private AccessLog open(int bufferSize, double sampleRate) throws Exception {
+        AccessLog accessLog = new AccessLog(meterRegistry);
+        ReflectionTestUtils.setField(accessLog, "enabled", true);
+        ReflectionTestUtils.setField(accessLog, "path", directory.resolve("access.log"));
+        ReflectionTestUtils.setField(accessLog, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(accessLog, "sampleRate", sampleRate);
+        accessLog.open();
+        return accessLog;
+    }
+}
@@ -0,0 +1,31 @@
+package com.karasov.file_service.service.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkTableTest {
+
+    @Test
+    void testImportCommand_WithCurrentColumns() {
+        assertEquals("COPY files (name, size, mime_type, checksum, revision, created_at, modified_at) "
+                        + "FROM STDIN (FORMAT BINARY)",
+                BulkTable.FILES.importCommand(BulkTable.FILES.columns()));
+    }
+
+    @Test
+    void testImportCommand_WithColumnsOfOlderArchive() {
+        assertEquals("COPY files (name, size, mime_type, checksum, revision) FROM STDIN (FORMAT BINARY)",
+                BulkTable.FILES.importCommand(List.of("name", "size", "mime_type", "checksum", "revision")));
+    }
+
+    @Test
+    void testImportCommand_WithUnknownColumn() {
+        assertThrows(IllegalStateException.class,
+                () -> BulkTable.FILES.importCommand(List.of("name", "size", "owner")));
+        assertThrows(IllegalStateException.class, () -> BulkTable.FILES.importCommand(List.of()));
+    }
+}
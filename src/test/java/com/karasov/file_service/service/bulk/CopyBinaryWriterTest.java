@@ -0,0 +1,45 @@
+package com.karasov.file_service.service.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CopyBinaryWriterTest {
+
+    @Test
+    void testWriteRow() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CopyBinaryWriter writer = new CopyBinaryWriter(out)) {
+            writer.writeRow("файл", new ByteArrayInputStream(new byte[] {1, 2, 3}), 3);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1), in.readNBytes(11));
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.readInt());
+        assertEquals(2, in.readShort());
+        byte[] name = "файл".getBytes(StandardCharsets.UTF_8);
+        assertEquals(name.length, in.readInt());
+        assertArrayEquals(name, in.readNBytes(name.length));
+        assertEquals(3, in.readInt());
+        assertArrayEquals(new byte[] {1, 2, 3}, in.readNBytes(3));
+        assertEquals(-1, in.readShort());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void testWriteRow_WhenContentIsShorterThanSize() throws IOException {
+        try (CopyBinaryWriter writer = new CopyBinaryWriter(new ByteArrayOutputStream())) {
+            assertThrows(IOException.class,
+                    () -> writer.writeRow("file1", new ByteArrayInputStream(new byte[] {1, 2}), 3));
+        }
+    }
+}
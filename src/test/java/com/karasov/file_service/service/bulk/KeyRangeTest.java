@@ -0,0 +1,21 @@
+package com.karasov.file_service.service.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class KeyRangeTest {
+
+    @Test
+    void testCondition() {
+        assertEquals("TRUE", new KeyRange(0, null, null).condition("name"));
+        assertEquals("name < 'm'", new KeyRange(0, null, "m").condition("name"));
+        assertEquals("name >= 'm'", new KeyRange(1, "m", null).condition("name"));
+        assertEquals("file_name >= 'a' AND file_name < 'm'", new KeyRange(1, "a", "m").condition("file_name"));
+    }
+
+    @Test
+    void testCondition_EscapesQuotes() {
+        assertEquals("name >= 'it''s' AND name < 'x\\'''", new KeyRange(1, "it's", "x\\'").condition("name"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.karasov.file_service.service.limiter;
+
+import com.karasov.file_service.model.RequestPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter(meterRegistry);
+        ReflectionTestUtils.setField(limiter, "initialLimit", 4);
+        ReflectionTestUtils.setField(limiter, "minLimit", 2);
+        ReflectionTestUtils.setField(limiter, "maxLimit", 5);
+        ReflectionTestUtils.setField(limiter, "latencyThreshold", 100L);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(limiter, "bulkShare", 0.5);
+        limiter.init();
+    }
+
+    @Test
+    void testTryAcquire_WhenLimitIsReached() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(RequestPriority.METADATA).isPresent());
+        }
+
+        assertTrue(limiter.tryAcquire(RequestPriority.METADATA).isEmpty());
+        assertEquals(1.0, meterRegistry.counter("file.limiter.rejections", "priority", "metadata").count());
+    }
+
+    @Test
+    void testTryAcquire_WhenBulkShareIsUsed() {
+        assertTrue(limiter.tryAcquire(RequestPriority.BULK).isPresent());
+        assertTrue(limiter.tryAcquire(RequestPriority.BULK).isPresent());
+
+        assertTrue(limiter.tryAcquire(RequestPriority.BULK).isEmpty());
+        assertTrue(limiter.tryAcquire(RequestPriority.METADATA).isPresent());
+        assertEquals(1.0, meterRegistry.counter("file.limiter.rejections", "priority", "bulk").count());
+    }
+
+    @Test
+    void testRelease_WhenRequestsAreFast() {
+        for (int i = 0; i < 20; i++) {
+            OptionalLong first = limiter.tryAcquire(RequestPriority.METADATA);
+            OptionalLong second = limiter.tryAcquire(RequestPriority.METADATA);
+            OptionalLong third = limiter.tryAcquire(RequestPriority.METADATA);
+            limiter.release(RequestPriority.METADATA, first.getAsLong(), false);
+            limiter.release(RequestPriority.METADATA, second.getAsLong(), false);
+            limiter.release(RequestPriority.METADATA, third.getAsLong(), false);
+        }
+
+        assertEquals(5.0, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testRelease_WhenRequestIsFastAndLoadIsLow() {
+        OptionalLong start = limiter.tryAcquire(RequestPriority.METADATA);
+
+        limiter.release(RequestPriority.METADATA, start.getAsLong(), false);
+
+        assertEquals(4.0, limiter.getLimit());
+    }
+
+    @Test
+    void testRelease_WhenRequestsAreSlow() throws InterruptedException {
+        ReflectionTestUtils.setField(limiter, "latencyThreshold", 10L);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        OptionalLong first = limiter.tryAcquire(RequestPriority.METADATA);
+        OptionalLong second = limiter.tryAcquire(RequestPriority.METADATA);
+        Thread.sleep(20);
+
+        limiter.release(RequestPriority.METADATA, first.getAsLong(), false);
+        limiter.release(RequestPriority.METADATA, second.getAsLong(), false);
+
+        assertEquals(2.0, limiter.getLimit());
+
+        OptionalLong third = limiter.tryAcquire(RequestPriority.METADATA);
+        Thread.sleep(20);
+        limiter.release(RequestPriority.METADATA, third.getAsLong(), false);
+
+        assertEquals(1.0, limiter.getLimit());
+    }
+
+    @Test
+    void testRelease_WhenBulkTransferIsSlow() {
+        long start = System.nanoTime() - TimeUnit.SECONDS.toNanos(10);
+        limiter.tryAcquire(RequestPriority.BULK);
+
+        limiter.release(RequestPriority.BULK, start, false);
+
+        assertEquals(4.0, limiter.getLimit());
+    }
+
+    @Test
+    void testRelease_WhenRequestFails() {
+        OptionalLong start = limiter.tryAcquire(RequestPriority.BULK);
+
+        limiter.release(RequestPriority.BULK, start.getAsLong(), true);
+
+        assertEquals(2.0, limiter.getLimit());
+    }
+}
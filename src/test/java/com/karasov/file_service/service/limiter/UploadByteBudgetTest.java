@@ -0,0 +1,132 @@
+package com.karasov.file_service.service.limiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UploadByteBudgetTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private UploadByteBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        budget = new UploadByteBudget(meterRegistry);
+        ReflectionTestUtils.setField(budget, "maxBytes", 100L);
+        ReflectionTestUtils.setField(budget, "maxBytesPerUser", 60L);
+        ReflectionTestUtils.setField(budget, "queueTimeout", 50L);
+        ReflectionTestUtils.setField(budget, "maxWaiting", 10);
+        budget.init();
+    }
+
+    @Test
+    void testAccepts() {
+        assertTrue(budget.accepts(60));
+        assertFalse(budget.accepts(61));
+        assertEquals(1.0, meterRegistry.counter("file.upload.budget.rejections", "reason", "too_large").count());
+    }
+
+    @Test
+    void testReserve_WhenUserBudgetIsExhausted() throws InterruptedException {
+        assertTrue(budget.reserve("first", 40));
+
+        assertFalse(budget.reserve("first", 30));
+        assertTrue(budget.reserve("second", 30));
+        assertEquals(70, budget.getReserved());
+        assertEquals(1.0, meterRegistry.counter("file.upload.budget.rejections", "reason", "busy").count());
+    }
+
+    @Test
+    void testReserve_WhenBudgetIsReleased() throws Exception {
+        ReflectionTestUtils.setField(budget, "queueTimeout", 5000L);
+        assertTrue(budget.reserve("first", 60));
+        assertTrue(budget.reserve("second", 40));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(() -> budget.reserve("third", 50));
+            while (budget.getWaiting() == 0) {
+                Thread.sleep(1);
+            }
+            budget.release("first", 60);
+
+            assertTrue(waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(90, budget.getReserved());
+            assertEquals(0, budget.getWaiting());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testReserve_WhenQueueIsFull() throws InterruptedException {
+        ReflectionTestUtils.setField(budget, "maxWaiting", 0);
+
+        assertFalse(budget.reserve("first", 10));
+    }
+
+    @Test
+    void testReserve_WhenUploadsFlood() throws Exception {
+        ReflectionTestUtils.setField(budget, "queueTimeout", 20L);
+        ReflectionTestUtils.setField(budget, "maxWaiting", 100);
+        AtomicLong inFlight = new AtomicLong();
+        AtomicLong maxInFlight = new AtomicLong();
+        ConcurrentHashMap<String, AtomicLong> inFlightByUser = new ConcurrentHashMap<>();
+        AtomicLong maxInFlightByUser = new AtomicLong();
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<?>> uploads = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String user = "user" + (i % 3);
+            uploads.add(executor.submit(() -> {
+                long bytes = ThreadLocalRandom.current().nextLong(1, 61);
+                if (!budget.reserve(user, bytes)) {
+                    rejected.incrementAndGet();
+                    return null;
+                }
+                try {
+                    admitted.incrementAndGet();
+                    maxInFlight.accumulateAndGet(inFlight.addAndGet(bytes), Math::max);
+                    AtomicLong userBytes = inFlightByUser.computeIfAbsent(user, name -> new AtomicLong());
+                    maxInFlightByUser.accumulateAndGet(userBytes.addAndGet(bytes), Math::max);
+                    Thread.sleep(1);
+                    userBytes.addAndGet(-bytes);
+                    inFlight.addAndGet(-bytes);
+                } finally {
+                    budget.release(user, bytes);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> upload : uploads) {
+            upload.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertTrue(maxInFlight.get() <= 100);
+        assertTrue(maxInFlightByUser.get() <= 60);
+        assertEquals(2000, admitted.get() + rejected.get());
+        assertTrue(admitted.get() > 0);
+        assertEquals(0, budget.getReserved());
+        assertEquals(0, budget.getWaiting());
+    }
+}
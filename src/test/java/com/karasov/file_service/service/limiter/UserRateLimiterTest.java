@@ -0,0 +1,137 @@
+package com.karasov.file_service.service.limiter;
+
+import com.karasov.file_service.model.EndpointClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserRateLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("file.ratelimit.search.requests-per-second", "1")
+                .withProperty("file.ratelimit.search.burst", "1");
+        limiter = new UserRateLimiter(meterRegistry, environment);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "metadataRate", 10.0);
+        ReflectionTestUtils.setField(limiter, "metadataBurst", 3L);
+        ReflectionTestUtils.setField(limiter, "transferRate", 1000.0);
+        ReflectionTestUtils.setField(limiter, "transferBurst", 2000L);
+        limiter.init();
+    }
+
+    @Test
+    void testTryAcquire_WhenBurstIsUsed() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("user", EndpointClass.LIST, 1).allowed());
+        }
+
+        UserRateLimiter.Decision decision = limiter.tryAcquire("user", EndpointClass.LIST, 1);
+
+        assertFalse(decision.allowed());
+        assertEquals(3, decision.limit());
+        assertEquals(0, decision.remaining());
+        assertEquals(1, decision.retryAfter());
+        assertTrue(limiter.tryAcquire("other", EndpointClass.LIST, 1).allowed());
+        assertTrue(limiter.tryAcquire("user", EndpointClass.UPLOAD, 100).allowed());
+        assertEquals(1.0, meterRegistry.counter("file.ratelimit.rejections", "endpoint", "list").count());
+    }
+
+    @Test
+    void testTryAcquire_AfterRefill() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("user", EndpointClass.LIST, 1);
+        }
+
+        Thread.sleep(150);
+
+        assertTrue(limiter.tryAcquire("user", EndpointClass.LIST, 1).allowed());
+        assertFalse(limiter.tryAcquire("user", EndpointClass.LIST, 1).allowed());
+    }
+
+    @Test
+    void testTryAcquire_WhenCostExceedsBurst() {
+        UserRateLimiter.Decision decision = limiter.tryAcquire("user", EndpointClass.UPLOAD, 5000);
+
+        assertTrue(decision.allowed());
+        assertEquals(0, decision.remaining());
+        assertEquals(5, decision.reset());
+        assertFalse(limiter.tryAcquire("user", EndpointClass.UPLOAD, 1).allowed());
+    }
+
+    @Test
+    void testCharge_WhenDownloadLeavesDebt() {
+        assertTrue(limiter.tryAcquire("user", EndpointClass.DOWNLOAD, 0).allowed());
+
+        limiter.charge("user", EndpointClass.DOWNLOAD, 3000);
+
+        UserRateLimiter.Decision decision = limiter.tryAcquire("user", EndpointClass.DOWNLOAD, 0);
+        assertFalse(decision.allowed());
+        assertEquals(1, decision.retryAfter());
+    }
+
+    @Test
+    void testSweep_RemovesFullBuckets() throws InterruptedException {
+        limiter.tryAcquire("idle", EndpointClass.LIST, 1);
+        limiter.tryAcquire("active", EndpointClass.UPLOAD, 2000);
+        assertEquals(2.0, meterRegistry.get("file.ratelimit.buckets").gauge().value());
+
+        Thread.sleep(150);
+        limiter.sweep();
+
+        assertEquals(1.0, meterRegistry.get("file.ratelimit.buckets").gauge().value());
+        assertFalse(limiter.tryAcquire("active", EndpointClass.UPLOAD, 2000).allowed());
+        assertTrue(limiter.tryAcquire("idle", EndpointClass.LIST, 3).allowed());
+    }
+
+    @Test
+    void testTryAcquire_WithEndpointLimit() {
+        assertTrue(limiter.tryAcquire("user", EndpointClass.SEARCH, 1).allowed());
+
+        UserRateLimiter.Decision decision = limiter.tryAcquire("user", EndpointClass.SEARCH, 1);
+
+        assertFalse(decision.allowed());
+        assertEquals(1, decision.limit());
+        assertTrue(limiter.tryAcquire("user", EndpointClass.LIST, 1).allowed());
+        assertTrue(limiter.tryAcquire("user", EndpointClass.MODIFY, 3).allowed());
+    }
+
+    @Test
+    void testRefund_AfterRejectedUpload() {
+        assertTrue(limiter.tryAcquire("user", EndpointClass.UPLOAD, 2000).allowed());
+        assertFalse(limiter.tryAcquire("user", EndpointClass.UPLOAD, 2000).allowed());
+
+        limiter.refund("user", EndpointClass.UPLOAD, 2000);
+
+        assertTrue(limiter.tryAcquire("user", EndpointClass.UPLOAD, 2000).allowed());
+    }
+
+    @Test
+    void testRefund_DoesNotOverfillBucket() {
+        assertTrue(limiter.tryAcquire("user", EndpointClass.UPLOAD, 1000).allowed());
+
+        limiter.refund("user", EndpointClass.UPLOAD, 5000);
+
+        assertEquals(2000, limiter.tryAcquire("user", EndpointClass.UPLOAD, 0).remaining());
+    }
+
+    @Test
+    void testTryAcquire_WhenDisabled() {
+        ReflectionTestUtils.setField(limiter, "enabled", false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("user", EndpointClass.LIST, 1).unlimited());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.karasov.file_service.service.listing;
+
+import com.karasov.file_service.dto.FileChangeEventDto;
+import com.karasov.file_service.model.FileChangeType;
+import com.karasov.file_service.model.FileStat;
+import com.karasov.file_service.repository.FileListingRepository;
+import com.karasov.file_service.repository.FileStatRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class FileListingIndexTest {
+
+    private final Map<String, Long> database = new TreeMap<>(ShardRouter.NAME_ORDER);
+    private FileListingRepository repository;
+    private SimpleMeterRegistry meterRegistry;
+    private FileListingIndex index;
+    private Runnable duringLoad;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        repository = mock(FileListingRepository.class);
+        doAnswer(invocation -> {
+            int limit = invocation.getArgument(0);
+            FileListingRepository.FileRowHandler handler = invocation.getArgument(1);
+            List<Map.Entry<String, Long>> rows = new ArrayList<>(database.entrySet());
+            if (duringLoad != null) {
+                duringLoad.run();
+            }
+            for (Map.Entry<String, Long> row : rows.subList(0, Math.min(limit, rows.size()))) {
+                handler.handle(row.getKey(), row.getValue());
+            }
+            return null;
+        }).when(repository).forEachFile(anyInt(), any());
+        FileStatRepository statRepository = mock(FileStatRepository.class);
+        doAnswer(invocation -> {
+            Map<String, FileStat> found = new TreeMap<>();
+            for (String name : invocation.<Collection<String>>getArgument(0)) {
+                if (database.containsKey(name)) {
+                    found.put(name, new FileStat(name, database.get(name), null, null, null));
+                }
+            }
+            return found;
+        }).when(statRepository).findByNames(any());
+        meterRegistry = new SimpleMeterRegistry();
+        index = new FileListingIndex(repository, statRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry);
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "maxEntries", 3);
+        index.init();
+    }
+
+    @Test
+    void testForEachFile() throws IOException {
+        database.put("b", 2L);
+        database.put("a", 1L);
+        database.put("c", 3L);
+
+        assertEquals(List.of("a=1", "b=2"), list(2));
+        assertEquals(List.of("a=1", "b=2", "c=3"), list(10));
+        verify(repository, times(1)).forEachFile(anyInt(), any());
+    }
+
+    @Test
+    void testForEachFile_AfterChanges() throws IOException {
+        database.put("a", 1L);
+        database.put("b", 2L);
+        list(10);
+
+        index.put("c", 3L);
+        index.remove("a");
+        index.rename("b", "d");
+        index.copy("c", "e");
+
+        assertEquals(List.of("c=3", "d=2", "e=3"), list(10));
+    }
+
+    @Test
+    void testForEachFile_InDatabaseNameOrder() throws IOException {
+        database.put("a", 1L);
+        database.put("\uFF61", 2L);
+        list(10);
+
+        index.put("\uD83D\uDE00", 3L);
+
+        assertEquals(List.of("a=1", "\uFF61=2", "\uD83D\uDE00=3"), list(10));
+    }
+
+    @Test
+    void testForEachFile_AfterFolderRename() throws IOException {
+        database.put("docs/a", 1L);
+        database.put("docs/sub/b", 2L);
+        database.put("docs0", 3L);
+        list(10);
+
+        index.renameFolder("docs", "archive/docs");
+
+        assertEquals(List.of("archive/docs/a=1", "archive/docs/sub/b=2", "docs0=3"), list(10));
+    }
+
+    @Test
+    void testApplyEvents() throws IOException {
+        database.put("a", 1L);
+        database.put("b", 2L);
+        list(10);
+        // Изменения другого узла: файл a удалён, b переименован в d, создан c, затем перезаписан.
+        database.remove("a");
+        database.put("d", database.remove("b"));
+        database.put("c", 5L);
+
+        index.applyEvents(List.of(
+                event(1, FileChangeType.DELETED, "a", null),
+                event(2, FileChangeType.RENAMED, "b", "d"),
+                event(3, FileChangeType.CREATED, "c", null),
+                event(4, FileChangeType.UPDATED, "c", null)));
+
+        assertEquals(List.of("c=5", "d=2"), list(10));
+    }
+
+    @Test
+    void testApplyEvents_WhenEventIsStale() throws IOException {
+        database.put("a", 1L);
+        list(10);
+        database.put("a", 3L);
+        index.put("a", 3L);
+
+        index.applyEvents(List.of(event(1, FileChangeType.DELETED, "a", null)));
+
+        assertEquals(List.of("a=3"), list(10));
+    }
+
+    @Test
+    void testApplyEvents_AfterFolderRename() throws IOException {
+        database.put("docs/a", 1L);
+        list(10);
+        database.remove("docs/a");
+        database.put("archive/docs/a", 1L);
+        database.put("archive/docs/b", 2L);
+
+        index.applyEvents(List.of(event(1, FileChangeType.FOLDER_RENAMED, "docs", "archive/docs")));
+
+        assertEquals(List.of("archive/docs/a=1", "archive/docs/b=2"), list(10));
+    }
+
+    @Test
+    void testForEachFile_WhenChangedDuringLoad() throws IOException {
+        database.put("a", 1L);
+        duringLoad = () -> {
+            database.put("b", 2L);
+            index.put("b", 2L);
+        };
+
+        assertEquals(List.of("a=1", "b=2"), list(10));
+    }
+
+    @Test
+    void testForEachFile_WhenTooManyFiles() throws IOException {
+        database.put("a", 1L);
+        database.put("b", 2L);
+        database.put("c", 3L);
+        database.put("d", 4L);
+
+        assertFalse(index.forEachFile(10, (name, size) -> {
+        }));
+
+        database.remove("d");
+        index.verify();
+
+        assertEquals(List.of("a=1", "b=2", "c=3"), list(10));
+    }
+
+    @Test
+    void testPut_WhenIndexOverflows() throws IOException {
+        database.put("a", 1L);
+        list(10);
+
+        index.put("b", 2L);
+        index.put("c", 3L);
+        index.put("d", 4L);
+
+        assertFalse(index.forEachFile(10, (name, size) -> {
+        }));
+    }
+
+    @Test
+    void testVerify() throws IOException {
+        database.put("a", 1L);
+        list(10);
+        database.put("b", 2L);
+        database.put("a", 5L);
+
+        index.verify();
+
+        assertEquals(List.of("a=5", "b=2"), list(10));
+        assertEquals(2.0, meterRegistry.counter("file.listing.index.repairs").count());
+    }
+
+    private static FileChangeEventDto event(long sequence, FileChangeType type, String fileName, String newFileName) {
+        return new FileChangeEventDto(sequence, type, fileName, newFileName, Instant.now());
+    }
+
+    private List<String> list(int limit) throws IOException {
+        List<String> files = new ArrayList<>();
+        assertTrue(index.forEachFile(limit, (name, size) -> files.add(name + "=" + size)));
+        return files;
+    }
+}
@@ -0,0 +1,92 @@
+package com.karasov.file_service.service.processing;
+
+import com.karasov.file_service.model.FileProcessingJob;
+import com.karasov.file_service.model.FileVersion;
+import com.karasov.file_service.model.ProcessingStage;
+import com.karasov.file_service.model.ProcessingStatus;
+import com.karasov.file_service.repository.FileProcessingJobRepository;
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileContentService;
+import com.karasov.file_service.service.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileProcessingWorkerTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final FileProcessingJobRepository jobRepository = mock(FileProcessingJobRepository.class);
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private final FileContentService fileContentService = mock(FileContentService.class);
+    private final FileProcessor processor = mock(FileProcessor.class);
+    private FileProcessingWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        when(processor.getStage()).thenReturn(ProcessingStage.CHECKSUM);
+        worker = new FileProcessingWorker(jobRepository, fileRepository, fileContentService, List.of(processor),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry(),
+                new MockEnvironment(), ShardRouter.single());
+        ReflectionTestUtils.setField(worker, "maxAttempts", 5);
+        worker.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        worker.shutdown();
+    }
+
+    @Test
+    void testProcess_WhenFileIsOverwrittenDuringAnalysis() {
+        FileProcessingJob job = new FileProcessingJob(1L, "file1", ProcessingStage.CHECKSUM, ProcessingStatus.RUNNING,
+                1, Instant.now(), null, Instant.now(), Instant.now());
+        when(jobRepository.claim(eq(ProcessingStage.CHECKSUM.name()), anyInt())).thenReturn(List.of(job));
+        when(fileRepository.findVersionByName("file1")).thenReturn(Optional.of(version(1)));
+        when(fileContentService.readContent("file1")).thenReturn(Optional.of(new byte[] {1, 2, 3}));
+        when(processor.analyze(eq("file1"), any())).thenAnswer(invocation -> {
+            // Перезапись файла, зафиксированная между чтением содержимого и сохранением результата.
+            when(fileRepository.findVersionByName("file1")).thenReturn(Optional.of(version(2)));
+            return Optional.of("old-checksum");
+        });
+
+        worker.poll();
+
+        verify(processor, timeout(5000)).store(eq("file1"),
+                argThat(version -> version.getRevision() == 1 && CREATED_AT.equals(version.getCreatedAt())),
+                eq("old-checksum"));
+        verify(jobRepository, timeout(5000)).deleteById(1L);
+    }
+
+    private static FileVersion version(int revision) {
+        return new FileVersion() {
+            @Override
+            public Integer getRevision() {
+                return revision;
+            }
+
+            @Override
+            public Instant getCreatedAt() {
+                return CREATED_AT;
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.karasov.file_service.service.replica;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaMonitorTest {
+
+    private final AtomicReference<String> primaryLsn = new AtomicReference<>("0/0");
+    private final AtomicReference<String> firstLsn = new AtomicReference<>("0/0");
+    private final AtomicReference<String> secondLsn = new AtomicReference<>("0/0");
+    private SimpleMeterRegistry meterRegistry;
+    private ReplicationWatermark watermark;
+    private ReplicaMonitor monitor;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("first", dataSource(firstLsn));
+        replicas.put("second", dataSource(secondLsn));
+        meterRegistry = new SimpleMeterRegistry();
+        watermark = new ReplicationWatermark();
+        monitor = new ReplicaMonitor(dataSource(primaryLsn), replicas, watermark, 100, meterRegistry);
+    }
+
+    @Test
+    void testSelect_RoundRobin() {
+        primaryLsn.set("0/50");
+        firstLsn.set("0/50");
+        secondLsn.set("0/50");
+        monitor.poll();
+
+        assertEquals(Optional.of("first"), monitor.select(0));
+        assertEquals(Optional.of("second"), monitor.select(0));
+        assertEquals(Optional.of("first"), monitor.select(0x50));
+    }
+
+    @Test
+    void testSelect_WhenReplicaLags() {
+        primaryLsn.set("0/1000");
+        firstLsn.set("0/F00");
+        secondLsn.set("0/FF0");
+        monitor.poll();
+
+        assertEquals(Optional.of("second"), monitor.select(0));
+        assertEquals(Optional.of("second"), monitor.select(0));
+        assertEquals(Optional.empty(), monitor.select(0x1000));
+        assertEquals(1.0, meterRegistry.counter("file.replica.fallbacks").count());
+        assertEquals(0x100, meterRegistry.get("file.replica.lag").tag("replica", "first").gauge().value());
+    }
+
+    @Test
+    void testSelect_WhenReplicaIsUnavailable() {
+        primaryLsn.set("0/50");
+        firstLsn.set("0/50");
+        secondLsn.set("0/50");
+        monitor.poll();
+        secondLsn.set(null);
+        monitor.poll();
+
+        assertEquals(Optional.of("first"), monitor.select(0));
+        assertEquals(Optional.of("first"), monitor.select(0));
+    }
+
+    @Test
+    void testPoll_ExpiresReplayedWrites() {
+        watermark.begin("user", 0, lsn -> {
+        });
+        watermark.recordWrite(0x60);
+        watermark.end();
+        primaryLsn.set("0/60");
+        firstLsn.set("0/60");
+        secondLsn.set("0/50");
+        monitor.poll();
+        assertEquals(1, watermark.size());
+
+        secondLsn.set("0/60");
+        monitor.poll();
+        assertEquals(0, watermark.size());
+    }
+
+    /**
+     * Источник данных, возвращающий на любой запрос текущее значение LSN; null означает недоступную базу.
+     */
+    private static DataSource dataSource(AtomicReference<String> lsn) throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> {
+            if (lsn.get() == null) {
+                throw new SQLException("connection refused");
+            }
+            Connection connection = mock(Connection.class);
+            Statement statement = mock(Statement.class);
+            ResultSet resultSet = mock(ResultSet.class);
+            when(connection.createStatement()).thenReturn(statement);
+            when(statement.executeQuery(anyString())).thenReturn(resultSet);
+            when(resultSet.next()).thenReturn(true);
+            when(resultSet.getString(1)).thenReturn(lsn.get());
+            return connection;
+        });
+        return dataSource;
+    }
+}
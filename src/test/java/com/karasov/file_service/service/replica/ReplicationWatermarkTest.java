@@ -0,0 +1,82 @@
+package com.karasov.file_service.service.replica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicationWatermarkTest {
+
+    private final ReplicationWatermark watermark = new ReplicationWatermark();
+
+    @AfterEach
+    void tearDown() {
+        watermark.end();
+    }
+
+    @Test
+    void testParseLsn() {
+        assertEquals(0x16_B374D848L, ReplicationWatermark.parseLsn("16/B374D848"));
+        assertEquals("16/B374D848", ReplicationWatermark.formatLsn(0x16_B374D848L));
+        assertEquals(0, ReplicationWatermark.parseLsn(null));
+        assertEquals(0, ReplicationWatermark.parseLsn("16/"));
+        assertEquals(0, ReplicationWatermark.parseLsn("not-a-lsn"));
+    }
+
+    @Test
+    void testRequiredLsn_AfterOwnWrite() {
+        List<Long> headers = new ArrayList<>();
+        watermark.begin("user", 10, headers::add);
+        assertEquals(10, watermark.requiredLsn());
+
+        watermark.recordWrite(42);
+        watermark.end();
+
+        assertEquals(List.of(42L), headers);
+        watermark.begin("user", 0, lsn -> {
+        });
+        assertEquals(42, watermark.requiredLsn());
+        watermark.begin("other", 0, lsn -> {
+        });
+        assertEquals(0, watermark.requiredLsn());
+    }
+
+    @Test
+    void testExpire() {
+        watermark.begin("user", 0, lsn -> {
+        });
+        watermark.recordWrite(42);
+
+        watermark.expire(41);
+        assertEquals(1, watermark.size());
+
+        watermark.expire(42);
+        assertEquals(0, watermark.size());
+        assertEquals(0, watermark.requiredLsn());
+    }
+
+    @Test
+    void testPropagate() throws InterruptedException {
+        AtomicLong required = new AtomicLong(-1);
+        watermark.begin("user", 7, lsn -> {
+        });
+        Runnable task = watermark.propagate(() -> required.set(watermark.requiredLsn()));
+        watermark.end();
+
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+
+        assertEquals(7, required.get());
+        assertFalse(watermark.isActive());
+        watermark.begin(null, 0, lsn -> {
+        });
+        assertTrue(watermark.isActive());
+    }
+}
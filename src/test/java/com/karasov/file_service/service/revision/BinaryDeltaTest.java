@@ -0,0 +1,82 @@
+package com.karasov.file_service.service.revision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryDeltaTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void testRoundTrip_WhenBytesChangedInPlace() {
+        byte[] source = randomBytes(1 << 20);
+        byte[] target = source.clone();
+        for (int i = 0; i < 10; i++) {
+            target[random.nextInt(target.length)] ^= 0x55;
+        }
+
+        byte[] delta = BinaryDelta.encode(source, target);
+
+        assertArrayEquals(target, BinaryDelta.apply(source, delta));
+        assertTrue(delta.length < 1024);
+    }
+
+    @Test
+    void testRoundTrip_WhenBytesInsertedAndRemoved() {
+        byte[] source = randomBytes(1 << 20);
+        byte[] inserted = randomBytes(100);
+        byte[] target = new byte[source.length + inserted.length - 500];
+        System.arraycopy(source, 0, target, 0, 1000);
+        System.arraycopy(inserted, 0, target, 1000, inserted.length);
+        System.arraycopy(source, 1500, target, 1000 + inserted.length, source.length - 1500);
+
+        byte[] delta = BinaryDelta.encode(source, target);
+
+        assertArrayEquals(target, BinaryDelta.apply(source, delta));
+        assertTrue(delta.length < 1024);
+    }
+
+    @Test
+    void testRoundTrip_WhenContentIsUnrelatedOrTiny() {
+        byte[] source = randomBytes(4096);
+        byte[] target = randomBytes(3000);
+
+        assertArrayEquals(target, BinaryDelta.apply(source, BinaryDelta.encode(source, target)));
+        assertArrayEquals(new byte[0], BinaryDelta.apply(source, BinaryDelta.encode(source, new byte[0])));
+        assertArrayEquals(new byte[] {1, 2, 3}, BinaryDelta.apply(new byte[0],
+                BinaryDelta.encode(new byte[0], new byte[] {1, 2, 3})));
+    }
+
+    @Test
+    void testRoundTrip_WhenContentIsRepetitive() {
+        byte[] source = new byte[100_000];
+        Arrays.fill(source, (byte) 'a');
+        byte[] target = Arrays.copyOf(source, 150_000);
+        Arrays.fill(target, 100_000, 150_000, (byte) 'a');
+        target[70_000] = 'b';
+
+        assertArrayEquals(target, BinaryDelta.apply(source, BinaryDelta.encode(source, target)));
+    }
+
+    @Test
+    void testApply_WhenDeltaDoesNotMatchSource() {
+        byte[] source = randomBytes(4096);
+        byte[] delta = BinaryDelta.encode(source, source);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryDelta.apply(new byte[16], delta));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryDelta.apply(source, Arrays.copyOf(delta, delta.length - 1)));
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,56 @@
+package com.karasov.file_service.service.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void testShardFor_DistributesKeysEvenly() {
+        ShardRing ring = new ShardRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.shardFor("file-" + i + ".txt"), 1, Integer::sum);
+        }
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count ->
+                assertTrue(Math.abs(count - KEYS / 3) < KEYS / 3 * 0.2, "Неравномерное распределение: " + counts));
+    }
+
+    @Test
+    void testShardFor_IsStable() {
+        ShardRing first = new ShardRing(List.of("shard-0", "shard-1"), 16);
+        ShardRing second = new ShardRing(List.of("shard-0", "shard-1"), 16);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.shardFor("file-" + i), second.shardFor("file-" + i));
+        }
+    }
+
+    @Test
+    void testShardFor_AddedShardTakesKeysOnlyFromExistingShards() {
+        ShardRing before = new ShardRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+        ShardRing after = new ShardRing(List.of("shard-0", "shard-1", "shard-2", "shard-3"), 128);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "file-" + i + ".txt";
+            if (!before.shardFor(key).equals(after.shardFor(key))) {
+                assertEquals("shard-3", after.shardFor(key));
+                moved++;
+            }
+        }
+
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2, "Перенесено ключей: " + moved);
+    }
+}
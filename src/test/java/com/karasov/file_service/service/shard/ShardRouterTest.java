@@ -0,0 +1,104 @@
+package com.karasov.file_service.service.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ShardRouterTest {
+
+    private final ShardRouter router = new ShardRouter(dataSources(3), 2, 64);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(router);
+    }
+
+    @Test
+    void testOnShard_RestoresPreviousShard() {
+        assertEquals(ShardRouter.DEFAULT_SHARD, router.currentShard());
+
+        String nested = router.onShard("shard-1", () -> router.onShard("shard-2", router::currentShard));
+
+        assertEquals("shard-2", nested);
+        assertEquals(ShardRouter.DEFAULT_SHARD, router.currentShard());
+    }
+
+    @Test
+    void testOnShard_WhenTransactionUsesOtherShard() {
+        TransactionSynchronizationManager.initSynchronization();
+        router.onShard("shard-1", () -> {
+            router.bindToTransaction(router.currentShard());
+            return null;
+        });
+
+        assertEquals("ok", router.onShard("shard-1", () -> "ok"));
+        assertThrows(IllegalStateException.class, () -> router.onShard("shard-2", () -> "fail"));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(0));
+        assertEquals("ok", router.onShard("shard-2", () -> "ok"));
+    }
+
+    @Test
+    void testPreviousShardFor_DuringResharding() {
+        assertTrue(router.isResharding());
+        List<String> moved = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String fileName = "file-" + i;
+            Optional<String> previous = router.previousShardFor(fileName);
+            if (previous.isPresent()) {
+                assertEquals("shard-2", router.shardFor(fileName));
+                assertFalse(previous.get().equals("shard-2"));
+                moved.add(fileName);
+            }
+        }
+        assertFalse(moved.isEmpty());
+
+        router.finishResharding();
+
+        assertFalse(router.isResharding());
+        assertEquals(Optional.empty(), router.previousShardFor(moved.get(0)));
+    }
+
+    @Test
+    void testSingle() {
+        ShardRouter single = ShardRouter.single();
+
+        assertFalse(single.isEnabled());
+        assertEquals(List.of(ShardRouter.DEFAULT_SHARD), single.shards());
+        assertEquals(ShardRouter.DEFAULT_SHARD, single.shardFor("file"));
+        assertEquals(ShardRouter.DEFAULT_SHARD, single.onShard("shard-1", single::currentShard));
+    }
+
+    @Test
+    void testNameOrder() {
+        List<String> names = new ArrayList<>(List.of("b", "Ａ", "a", "😀", "ab", "A"));
+
+        names.sort(ShardRouter.NAME_ORDER);
+
+        assertEquals(List.of("A", "a", "ab", "b", "Ａ", "😀"), names);
+    }
+
+    private static Map<String, DataSource> dataSources(int count) {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            dataSources.put("shard-" + i, mock(DataSource.class));
+        }
+        return dataSources;
+    }
+}
@@ -0,0 +1,107 @@
+package com.karasov.file_service.service.spool;
+
+import com.karasov.file_service.service.impl.FileServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SpoolFlusherTest {
+
+    @TempDir
+    private Path directory;
+    private UploadSpool spool;
+    private SpoolFlusher flusher;
+    private final FileServiceImpl fileService = mock(FileServiceImpl.class);
+    private final List<String> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        spool = UploadSpoolTest.openSpool(directory, 1 << 20);
+        flusher = new SpoolFlusher(spool, fileService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(flusher, "batchSize", 4);
+        flusher.init();
+        when(fileService.saveFile(any(), any(byte[].class), anyLong())).thenAnswer(invocation -> {
+            saved.add(invocation.getArgument(0));
+            return true;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void testRun_FlushesInSpoolOrder() throws Exception {
+        for (String name : List.of("c", "a", "d", "b", "e")) {
+            spool.append(name, new byte[10]);
+        }
+
+        flusher.run();
+
+        assertEquals(List.of("c", "a", "d", "b", "e"), saved);
+        assertEquals(0, spool.size());
+    }
+
+    /**
+     * Загрузка, сохранение которой завершилось ошибкой, остаётся в спуле и после перезапуска,
+     * а остальные загрузки её пакета переносятся.
+     */
+    @Test
+    void testRun_WhenSaveFails() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            spool.append("file-" + i, new byte[10]);
+        }
+        when(fileService.saveFile(eq("file-2"), any(byte[].class), anyLong()))
+                .thenThrow(new IllegalStateException("Соединение с базой данных потеряно"));
+
+        flusher.run();
+        spool.close();
+        spool = UploadSpoolTest.openSpool(directory, 1 << 20);
+
+        assertEquals(List.of("file-2"), spool.pending(10).stream().map(SpoolEntry::name).toList());
+        assertTrue(saved.containsAll(List.of("file-0", "file-1", "file-3")));
+    }
+
+    @Test
+    void testFlush_WhenFileIsInSpool() throws Exception {
+        spool.append("a.txt", new byte[10]);
+        spool.append("b.txt", new byte[10]);
+
+        flusher.flush("b.txt");
+
+        assertEquals(List.of("b.txt"), saved);
+        assertFalse(spool.contains("b.txt"));
+        assertTrue(spool.contains("a.txt"));
+    }
+
+    @Test
+    void testFlush_WhenSaveFails() throws Exception {
+        spool.append("a.txt", new byte[10]);
+        when(fileService.saveFile(eq("a.txt"), any(byte[].class), anyLong()))
+                .thenThrow(new IllegalStateException("Соединение с базой данных потеряно"));
+
+        assertThrows(IllegalStateException.class, () -> flusher.flush("a.txt"));
+        assertTrue(spool.contains("a.txt"));
+    }
+}
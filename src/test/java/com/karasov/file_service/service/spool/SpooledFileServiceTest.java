@@ -0,0 +1,68 @@
+package com.karasov.file_service.service.spool;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.FileService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SpooledFileServiceTest {
+
+    private static final int LARGE_FILE_SIZE = (1 << 20) + 1;
+
+    @TempDir
+    private Path directory;
+    private UploadSpool spool;
+    private final FileService delegate = mock(FileService.class);
+    private SpooledFileService spooledFileService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        spool = UploadSpoolTest.openSpool(directory, 1 << 20);
+        spooledFileService = new SpooledFileService(delegate, mock(FileRepository.class), spool,
+                mock(SpoolFlusher.class));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void testSaveFile_WhenSpooledUploadRacesDirectSave() {
+        AtomicBoolean spooled = new AtomicBoolean();
+        when(delegate.saveFile(eq("a.txt"), any(InputStream.class), anyLong())).thenAnswer(invocation -> {
+            // Загрузка небольшого файла с тем же именем приходит, пока большой файл сохраняется в базу данных.
+            spooled.set(spooledFileService.saveFile("a.txt", new byte[10], 10));
+            return true;
+        });
+
+        assertTrue(spooledFileService.saveFile("a.txt",
+                new ByteArrayInputStream(new byte[LARGE_FILE_SIZE]), LARGE_FILE_SIZE));
+        assertFalse(spooled.get());
+        assertFalse(spool.contains("a.txt"));
+    }
+
+    @Test
+    void testSaveFile_WhenFileIsInSpool() {
+        assertTrue(spooledFileService.saveFile("a.txt", new byte[10], 10));
+
+        assertFalse(spooledFileService.saveFile("a.txt",
+                new ByteArrayInputStream(new byte[LARGE_FILE_SIZE]), LARGE_FILE_SIZE));
+        assertTrue(spool.contains("a.txt"));
+    }
+}
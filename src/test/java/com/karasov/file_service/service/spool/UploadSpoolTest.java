@@ -0,0 +1,239 @@
+package com.karasov.file_service.service.spool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UploadSpoolTest {
+
+    private static final int CRASH_AFTER_ACKS = 200;
+
+    @TempDir
+    private Path directory;
+    private UploadSpool spool;
+    private final Random random = new Random(11);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        spool = openSpool(directory, 1 << 20);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void testAppendReadComplete() throws IOException {
+        byte[] content = randomBytes(1000);
+
+        assertTrue(spool.append("a.txt", content));
+        assertFalse(spool.append("a.txt", randomBytes(10)));
+
+        assertTrue(spool.contains("a.txt"));
+        assertArrayEquals(content, spool.read("a.txt").orElseThrow());
+        assertEquals(1000L, spool.snapshot().get("a.txt"));
+
+        spool.complete(spool.pending(10));
+
+        assertFalse(spool.contains("a.txt"));
+        assertEquals(Optional.empty(), spool.read("a.txt"));
+        assertEquals(0, spool.pendingBytes());
+        assertTrue(spool.append("a.txt", content));
+    }
+
+    @Test
+    void testPending_ReturnsOldestFirst() throws IOException {
+        for (String name : List.of("c", "a", "b")) {
+            spool.append(name, randomBytes(10));
+        }
+
+        assertEquals(List.of("c", "a"), spool.pending(2).stream().map(SpoolEntry::name).toList());
+    }
+
+    @Test
+    void testAccepts() throws Exception {
+        ReflectionTestUtils.setField(spool, "maxFileSize", 100);
+        ReflectionTestUtils.setField(spool, "maxBytes", 150L);
+
+        assertTrue(spool.accepts(100));
+        assertFalse(spool.accepts(101));
+        spool.append("a.txt", randomBytes(100));
+        assertFalse(spool.accepts(60));
+        assertTrue(spool.accepts(50));
+    }
+
+    @Test
+    void testReopen_ReplaysOnlyUploadsNotFlushed() throws Exception {
+        spool.close();
+        spool = openSpool(directory, 4096);
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            contents.add(randomBytes(500));
+            spool.append("file-" + i, contents.get(i));
+        }
+        spool.complete(spool.pending(30));
+        spool.close();
+
+        spool = openSpool(directory, 4096);
+
+        assertEquals(10, spool.size());
+        assertEquals("file-30", spool.pending(1).get(0).name());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i >= 30, spool.contains("file-" + i));
+        }
+        for (int i = 30; i < 40; i++) {
+            assertArrayEquals(contents.get(i), spool.read("file-" + i).orElseThrow());
+        }
+    }
+
+    @Test
+    void testReopen_DeletesFlushedFiles() throws Exception {
+        spool.close();
+        spool = openSpool(directory, 4096);
+        for (int i = 0; i < 40; i++) {
+            spool.append("file-" + i, randomBytes(500));
+        }
+        long written = spoolFiles();
+        spool.complete(spool.pending(40));
+
+        assertTrue(written > 2);
+        assertEquals(1, spoolFiles());
+        spool.close();
+        spool = openSpool(directory, 4096);
+        assertEquals(0, spool.size());
+        assertEquals(1, spoolFiles());
+    }
+
+    @Test
+    void testReopen_WhenLastRecordIsTorn() throws Exception {
+        byte[] content = randomBytes(500);
+        spool.append("complete", content);
+        spool.append("torn", randomBytes(500));
+        SpoolEntry torn = spool.find("torn").orElseThrow();
+        spool.close();
+
+        Path file = directory.resolve(String.format("spool-%06d.log", torn.file()));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(torn.offset() + 100);
+        }
+        spool = openSpool(directory, 1 << 20);
+
+        assertArrayEquals(content, spool.read("complete").orElseThrow());
+        assertFalse(spool.contains("torn"));
+        spool.append("after", content);
+        assertArrayEquals(content, spool.read("after").orElseThrow());
+    }
+
+    /**
+     * Процесс, записывающий загрузки в спул, завершается сигналом {@code SIGKILL} посреди записи;
+     * каждая загрузка, о подтверждении которой процесс успел сообщить, должна восстановиться.
+     */
+    @Test
+    void testReopen_AfterProcessIsKilled() throws Exception {
+        spool.close();
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                SpoolWriterProcess.class.getName(), directory.toString())
+                .redirectErrorStream(true)
+                .start();
+        List<Integer> acknowledged = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (acknowledged.size() < CRASH_AFTER_ACKS && (line = reader.readLine()) != null) {
+                if (line.startsWith("ACK ")) {
+                    acknowledged.add(Integer.parseInt(line.substring(4)));
+                }
+            }
+            process.destroyForcibly();
+            assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        }
+        assertEquals(CRASH_AFTER_ACKS, acknowledged.size());
+
+        spool = openSpool(directory, SpoolWriterProcess.FILE_SIZE);
+
+        for (int i : acknowledged) {
+            assertArrayEquals(SpoolWriterProcess.content(i), spool.read("file-" + i).orElseThrow());
+        }
+        int last = acknowledged.get(acknowledged.size() - 1);
+        for (int i = 0; i < last; i += 3) {
+            assertFalse(spool.contains("file-" + i));
+        }
+        for (SpoolEntry entry : spool.pending(Integer.MAX_VALUE)) {
+            int i = Integer.parseInt(entry.name().substring("file-".length()));
+            assertArrayEquals(SpoolWriterProcess.content(i), spool.read(entry).orElseThrow());
+        }
+    }
+
+    private long spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    static UploadSpool openSpool(Path directory, long fileSize) throws IOException {
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "directory", directory);
+        ReflectionTestUtils.setField(spool, "fileSize", fileSize);
+        ReflectionTestUtils.setField(spool, "maxFileSize", 1 << 20);
+        ReflectionTestUtils.setField(spool, "maxBytes", 1L << 30);
+        spool.open();
+        return spool;
+    }
+
+    /**
+     * Процесс, без остановки записывающий загрузки в спул и сообщающий о каждой подтверждённой загрузке.
+     */
+    public static final class SpoolWriterProcess {
+
+        static final long FILE_SIZE = 64 * 1024;
+
+        public static void main(String[] args) throws Exception {
+            UploadSpool spool = openSpool(Path.of(args[0]), FILE_SIZE);
+            for (int i = 0; ; i++) {
+                spool.append("file-" + i, content(i));
+                if (i % 3 == 0) {
+                    spool.complete(List.of(spool.find("file-" + i).orElseThrow()));
+                } else {
+                    System.out.println("ACK " + i);
+                    System.out.flush();
+                }
+            }
+        }
+
+        static byte[] content(int i) {
+            byte[] bytes = new byte[100 + i % 2000];
+            new Random(i).nextBytes(bytes);
+            return bytes;
+        }
+    }
+}
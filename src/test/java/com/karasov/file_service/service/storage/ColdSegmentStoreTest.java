@@ -0,0 +1,100 @@
+package com.karasov.file_service.service.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColdSegmentStoreTest {
+
+    @TempDir
+    private Path directory;
+    private ColdSegmentStore store;
+
+    @BeforeEach
+    void setUp() {
+        MappedRegionCache mappedRegionCache = new MappedRegionCache();
+        ReflectionTestUtils.setField(mappedRegionCache, "enabled", true);
+        ReflectionTestUtils.setField(mappedRegionCache, "maxMappedBytes", 1L << 20);
+        store = new ColdSegmentStore(mappedRegionCache);
+        ReflectionTestUtils.setField(store, "directory", directory);
+        ReflectionTestUtils.setField(store, "segmentSize", 1024L);
+    }
+
+    @Test
+    void testAppendAndOpen() throws IOException {
+        byte[] text = "text content ".repeat(1000).getBytes();
+        byte[] random = new byte[5000];
+        new Random(1).nextBytes(random);
+
+        ColdLocation first = store.append(new ByteArrayInputStream(text));
+        ColdLocation second = store.append(new ByteArrayInputStream(random));
+
+        assertTrue(first.length() < text.length);
+        assertArrayEquals(text, readAll(first));
+        assertArrayEquals(random, readAll(second));
+        assertArrayEquals(new byte[0], readAll(store.append(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    void testAppend_WhenSegmentIsFull() throws IOException {
+        byte[] random = new byte[2000];
+        new Random(2).nextBytes(random);
+
+        ColdLocation first = store.append(new ByteArrayInputStream(random));
+        ColdLocation second = store.append(new ByteArrayInputStream(random));
+
+        assertEquals(first.segment() + 1, second.segment());
+        assertEquals(0, second.offset());
+        assertArrayEquals(random, readAll(first));
+    }
+
+    @Test
+    void testCopyAndDelete() throws IOException {
+        byte[] random = new byte[2000];
+        new Random(3).nextBytes(random);
+
+        ColdLocation first = store.append(new ByteArrayInputStream(random));
+        ColdLocation second = store.append(new ByteArrayInputStream(random));
+
+        assertEquals(Set.of(first.segment()), store.sealedSegments().keySet());
+        assertFalse(store.delete(second.segment()));
+
+        ColdLocation copy = store.copy(first);
+
+        assertEquals(first.length(), copy.length());
+        assertEquals(Set.of(first.segment(), second.segment()), store.sealedSegments().keySet());
+        assertTrue(store.delete(first.segment()));
+        assertArrayEquals(random, readAll(copy));
+        assertThrows(IOException.class, () -> store.open(first));
+    }
+
+    @Test
+    void testOpen_WhenSegmentIsTruncated() throws IOException {
+        ColdLocation location = store.append(new ByteArrayInputStream("content".repeat(100).getBytes()));
+        Path segment = directory.resolve(String.format("segment-%06d.dat", location.segment()));
+        Files.write(segment, new byte[(int) location.length() / 2]);
+
+        assertThrows(IOException.class, () -> store.open(location));
+    }
+
+    private byte[] readAll(ColdLocation location) throws IOException {
+        try (InputStream content = store.open(location)) {
+            return content.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.karasov.file_service.service.storage;
+
+import com.karasov.file_service.repository.FileRepository;
+import com.karasov.file_service.service.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class FileAccessRecorderTest {
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private FileAccessRecorder recorder;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new FileAccessRecorder(fileRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), ShardRouter.single());
+        ReflectionTestUtils.setField(recorder, "enabled", true);
+        ReflectionTestUtils.setField(recorder, "accessGranularity", 3600000L);
+        ReflectionTestUtils.setField(recorder, "bufferSize", 2);
+    }
+
+    @Test
+    void testFlush_SumsAccessesToSameFile() {
+        recorder.record("a.txt");
+        recorder.record("a.txt");
+        recorder.record("b.txt");
+
+        recorder.flush();
+        recorder.flush();
+
+        verify(fileRepository, times(1)).recordAccess(eq("a.txt"), eq(2), any(Instant.class));
+        verify(fileRepository, times(1)).recordAccess(eq("b.txt"), eq(1), any(Instant.class));
+    }
+
+    @Test
+    void testRecord_WhenBufferIsFull() {
+        recorder.record("a.txt");
+        recorder.record("b.txt");
+        recorder.record("c.txt");
+        recorder.record("a.txt");
+
+        recorder.flush();
+
+        verify(fileRepository).recordAccess(eq("a.txt"), eq(2), any(Instant.class));
+        verify(fileRepository, never()).recordAccess(eq("c.txt"), anyInt(), any(Instant.class));
+    }
+
+    @Test
+    void testRecord_WhenTieringIsDisabled() {
+        ReflectionTestUtils.setField(recorder, "enabled", false);
+
+        recorder.record("a.txt");
+        recorder.flush();
+
+        verify(fileRepository, never()).recordAccess(anyString(), anyInt(), any(Instant.class));
+    }
+}
@@ -0,0 +1,105 @@
+package com.karasov.file_service.service.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedRegionCacheTest {
+
+    @TempDir
+    private Path directory;
+    private MappedRegionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MappedRegionCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxMappedBytes", 1L << 20);
+    }
+
+    @Test
+    void testAcquire() throws IOException {
+        Path file = write("first.dat", "0123456789".getBytes());
+
+        try (MappedRegion region = cache.acquire(file, 2, 5).orElseThrow();
+             InputStream content = region.inputStream(1)) {
+            assertEquals(5, region.length());
+            assertArrayEquals("3456".getBytes(), content.readAllBytes());
+        }
+        assertEquals(10, cache.getMappedBytes());
+    }
+
+    @Test
+    void testAcquire_WhenFileGrows() throws IOException {
+        Path file = write("first.dat", "0123456789".getBytes());
+        cache.acquire(file, 0, 10).orElseThrow().close();
+        Files.write(file, "abc".getBytes(), StandardOpenOption.APPEND);
+
+        try (MappedRegion region = cache.acquire(file, 8, 5).orElseThrow()) {
+            byte[] bytes = new byte[5];
+            region.read(0, bytes, 0, 5);
+            assertArrayEquals("89abc".getBytes(), bytes);
+        }
+        assertEquals(13, cache.getMappedBytes());
+    }
+
+    @Test
+    void testAcquire_WhenRegionIsOutOfBounds() throws IOException {
+        Path file = write("first.dat", new byte[10]);
+
+        assertThrows(IOException.class, () -> cache.acquire(file, 8, 5));
+        try (MappedRegion region = cache.acquire(file, 0, 4).orElseThrow()) {
+            assertThrows(IOException.class, () -> region.getInt(1));
+            assertThrows(IOException.class, () -> region.read(2, new byte[4], 0, 4));
+        }
+    }
+
+    @Test
+    void testAcquire_WhenDisabled() throws IOException {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        Path file = write("first.dat", new byte[10]);
+
+        assertEquals(Optional.empty(), cache.acquire(file, 0, 10));
+    }
+
+    @Test
+    void testEviction_KeepsRegionsReadable() throws IOException {
+        ReflectionTestUtils.setField(cache, "maxMappedBytes", 15L);
+        Path first = write("first.dat", "0123456789".getBytes());
+        Path second = write("second.dat", "abcdefghij".getBytes());
+
+        try (MappedRegion region = cache.acquire(first, 0, 10).orElseThrow()) {
+            cache.acquire(second, 0, 10).orElseThrow().close();
+            assertEquals(10, cache.getMappedBytes());
+
+            byte[] bytes = new byte[10];
+            region.read(0, bytes, 0, 10);
+            assertArrayEquals("0123456789".getBytes(), bytes);
+        }
+    }
+
+    @Test
+    void testRead_WhenRegionIsClosed() throws IOException {
+        Path file = write("first.dat", new byte[10]);
+        MappedRegion region = cache.acquire(file, 0, 10).orElseThrow();
+        region.close();
+
+        assertThrows(IOException.class, () -> region.getInt(0));
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(directory.resolve(name), content);
+    }
+}
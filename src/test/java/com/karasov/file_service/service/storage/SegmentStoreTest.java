@@ -0,0 +1,225 @@
+package com.karasov.file_service.service.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentStoreTest {
+
+    @TempDir
+    private Path directory;
+    private SegmentStore store;
+    private final MappedRegionCache mappedRegionCache = new MappedRegionCache();
+    private final Random random = new Random(7);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(mappedRegionCache, "enabled", true);
+        ReflectionTestUtils.setField(mappedRegionCache, "maxMappedBytes", 1L << 20);
+        store = openStore();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void testPutReadDelete() throws IOException {
+        byte[] first = randomBytes(1000);
+        byte[] second = randomBytes(2000);
+
+        store.put("a.txt", first);
+        store.put("a.txt", second);
+        store.put("b.txt", first);
+        store.delete("b.txt", null);
+
+        assertArrayEquals(second, store.read("a.txt").orElseThrow());
+        assertEquals(Optional.empty(), store.read("b.txt"));
+        assertEquals(Optional.empty(), store.read("missing.txt"));
+    }
+
+    @Test
+    void testDelete_WhenFileWasSavedAgain() throws IOException {
+        SegmentLocation old = store.put("a.txt", randomBytes(100));
+        byte[] current = randomBytes(100);
+        store.put("a.txt", current);
+
+        store.delete("a.txt", old);
+
+        assertArrayEquals(current, store.read("a.txt").orElseThrow());
+    }
+
+    @Test
+    void testReopen_RebuildsIndexFromFootersAndActiveSegment() throws Exception {
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            contents.add(randomBytes(1500));
+            store.put("file-" + i, contents.get(i));
+        }
+        store.delete("file-3", null);
+        store.close();
+
+        store = openStore();
+
+        assertTrue(segmentFiles() > 1);
+        assertEquals(39, store.names().size());
+        assertEquals(Optional.empty(), store.read("file-3"));
+        for (int i = 0; i < 40; i++) {
+            if (i != 3) {
+                assertArrayEquals(contents.get(i), store.read("file-" + i).orElseThrow());
+            }
+        }
+    }
+
+    @Test
+    void testReopen_WhenActiveSegmentHasTornRecord() throws Exception {
+        byte[] content = randomBytes(500);
+        store.put("complete", content);
+        SegmentLocation torn = store.put("torn", randomBytes(500));
+        store.close();
+
+        Path segment = directory.resolve(String.format("needle-%06d.dat", torn.segment()));
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(torn.offset() + 100);
+            file.write(new byte[50]);
+        }
+        store = openStore();
+
+        assertArrayEquals(content, store.read("complete").orElseThrow());
+        assertFalse(store.names().contains("torn"));
+        store.put("after", content);
+        assertArrayEquals(content, store.read("after").orElseThrow());
+    }
+
+    @Test
+    void testCompact_ReclaimsDeletedSpace() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            store.put("file-" + i, randomBytes(1500));
+        }
+        byte[] kept = randomBytes(1500);
+        store.put("file-0", kept);
+        for (int i = 1; i < 40; i++) {
+            store.delete("file-" + i, null);
+        }
+        long before = segmentFiles();
+
+        int removed = store.compact(0.5);
+
+        assertTrue(removed > 0);
+        assertTrue(segmentFiles() < before);
+        assertArrayEquals(kept, store.read("file-0").orElseThrow());
+        store.close();
+        store = openStore();
+        assertArrayEquals(kept, store.read("file-0").orElseThrow());
+        assertEquals(1, store.names().size());
+    }
+
+    @Test
+    void testOpen() throws IOException {
+        byte[] content = randomBytes(3000);
+        store.put("a.txt", content);
+
+        try (InputStream stream = store.open("a.txt").orElseThrow()) {
+            assertArrayEquals(content, stream.readAllBytes());
+        }
+        assertEquals(Optional.empty(), store.open("missing.txt"));
+    }
+
+    @Test
+    void testOpen_WhenContentIsCorrupted() throws Exception {
+        SegmentLocation location = store.put("a.txt", randomBytes(3000));
+        Path segment = directory.resolve(String.format("needle-%06d.dat", location.segment()));
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(location.offset() + location.length());
+            file.write(file.read() ^ 0xFF);
+        }
+
+        try (InputStream stream = store.open("a.txt").orElseThrow()) {
+            assertThrows(IOException.class, stream::readAllBytes);
+        }
+    }
+
+    @Test
+    void testOpen_WhenSegmentIsCompactedDuringRead() throws Exception {
+        byte[] kept = randomBytes(1500);
+        store.put("kept", kept);
+        for (int i = 0; i < 40; i++) {
+            store.put("file-" + i, randomBytes(1500));
+            store.delete("file-" + i, null);
+        }
+
+        try (InputStream stream = store.open("kept").orElseThrow()) {
+            assertTrue(store.compact(0.5) > 0);
+            assertArrayEquals(kept, stream.readAllBytes());
+        }
+        try (InputStream stream = store.open("kept").orElseThrow()) {
+            assertArrayEquals(kept, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void testConcurrentPuts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] content = randomBytes(300);
+            contents.add(content);
+            String name = "file-" + i;
+            futures.add(executor.submit(() -> store.put(name, content)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < 200; i++) {
+            assertArrayEquals(contents.get(i), store.read("file-" + i).orElseThrow());
+        }
+    }
+
+    private SegmentStore openStore() throws IOException {
+        SegmentStore segmentStore = new SegmentStore(mappedRegionCache);
+        ReflectionTestUtils.setField(segmentStore, "enabled", true);
+        ReflectionTestUtils.setField(segmentStore, "directory", directory);
+        ReflectionTestUtils.setField(segmentStore, "segmentSize", 16384L);
+        ReflectionTestUtils.setField(segmentStore, "maxFileSize", 4096);
+        segmentStore.open();
+        return segmentStore;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}